@@ -1,29 +1,149 @@
 package br.ufpa.icen;
 
+import br.ufpa.icen.lib.ConflatingPublisher;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class Main {
     private static final Stack<Runnable> shutdownActions = new Stack<>();
 
+    // Uma mudança nos jogadores do hub: os jogadores que entraram e os que saíram, por ID.
+    static final class MembershipChange {
+        private final Map<String, String> joined;
+        private final Map<String, String> left;
+
+        MembershipChange(Map<String, String> joined, Map<String, String> left) {
+            this.joined = Collections.unmodifiableMap(joined);
+            this.left = Collections.unmodifiableMap(left);
+        }
+
+        public Map<String, String> getJoined() {
+            return joined;
+        }
+
+        public Map<String, String> getLeft() {
+            return left;
+        }
+
+        // Combina duas mudanças consecutivas em uma só, para assinantes que não acompanham o ritmo do hub.
+        static MembershipChange merge(MembershipChange first, MembershipChange second) {
+            final Map<String, String> joined = new HashMap<>(first.joined);
+            final Map<String, String> left = new HashMap<>(first.left);
+            for (Map.Entry<String, String> entry : second.left.entrySet()) {
+                // Um jogador que entrou e saiu não aparece na mudança combinada
+                if (joined.remove(entry.getKey()) == null) {
+                    left.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, String> entry : second.joined.entrySet()) {
+                if (left.remove(entry.getKey()) == null) {
+                    joined.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new MembershipChange(joined, left);
+        }
+
+        @Override
+        public String toString() {
+            return "MembershipChange{joined=" + joined + ", left=" + left + "}";
+        }
+    }
+
+    // Uma listagem dos jogadores do hub, gravada pelo agregador em um único nó. A versão é o `cversion` do nó do hub
+    // na listagem, de forma que uma listagem mais antiga nunca substitui uma mais recente.
+    //
+    // Formato binário: versão (int), número de jogadores (int) e, para cada jogador, ID e nome (UTF modificado).
+    static final class LobbySnapshot {
+        private final int version;
+        private final Map<String, String> players;
+
+        LobbySnapshot(int version, Map<String, String> players) {
+            this.version = version;
+            this.players = Collections.unmodifiableMap(players);
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public Map<String, String> getPlayers() {
+            return players;
+        }
+
+        byte[] encode() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(version);
+                out.writeInt(players.size());
+                // Os IDs têm um sufixo sequencial, então a ordem dos IDs é a ordem de chegada
+                for (Map.Entry<String, String> entry : new TreeMap<>(players).entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        static LobbySnapshot decode(byte[] data) throws IOException {
+            try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                final int version = in.readInt();
+                final int size = in.readInt();
+                final Map<String, String> players = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    players.put(in.readUTF(), in.readUTF());
+                }
+                return new LobbySnapshot(version, players);
+            }
+        }
+    }
+
     static class PlayerHub implements Watcher {
         private static final String ZOOKEEPER_ADDRESS = "localhost:2181";
         private static final int SESSION_TIMEOUT = 3000;
         private static final String HUB_PATH = "/gameHubBarrier";
+        private static final String PLAYER_PREFIX = "player_";
+        // Nó efêmero do cliente eleito para contar os jogadores, no modo com agregador
+        private static final String AGGREGATOR_PATH = HUB_PATH + "/aggregator";
+        // Nó criado pelo agregador quando o hub estiver cheio
+        private static final String STARTED_PATH = HUB_PATH + "/started";
+        // Nó com a listagem de jogadores (`LobbySnapshot`) gravada pelo agregador
+        private static final String LOBBY_PATH = HUB_PATH + "/lobby";
 
         private final ZooKeeper zooKeeper;
         private final int maxPlayers;
+        private final boolean aggregated;
+        private volatile boolean aggregator;
+        // Versão do nó da listagem na última gravação do agregador, ou -1 se desconhecida
+        private int lobbyNodeVersion = -1;
+        // Versão da última listagem lida pelos demais clientes
+        private int lobbyVersion = -1;
         private final CountDownLatch latch = new CountDownLatch(1);
         private final AtomicReference<Map<String, String>> playersReference = new AtomicReference<>();
+        private final ConflatingPublisher<MembershipChange> membership = new ConflatingPublisher<>(MembershipChange::merge);
 
         public PlayerHub(int maxPlayers) throws IOException {
+            this(maxPlayers, false);
+        }
+
+        // No modo com agregador (`aggregated`), apenas um cliente eleito acompanha os jogadores e cria o nó de início
+        // do jogo; os demais apenas observam esse nó, em vez de listar os jogadores a cada mudança.
+        public PlayerHub(int maxPlayers, boolean aggregated) throws IOException {
             this.maxPlayers = maxPlayers;
+            this.aggregated = aggregated;
             zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, this);
         }
 
@@ -36,10 +156,38 @@ public class Main {
             }
             // Aguarda a conexão ser estabelecida com sucesso
             latch.await();
+            if (aggregated) {
+                // Aguarda o início do jogo, acompanha a listagem de jogadores e tenta se tornar o agregador
+                zooKeeper.exists(STARTED_PATH, true);
+                onLobbyChanged();
+                elect();
+                return;
+            }
             // Adiciona escuta de nós em tempo real
             zooKeeper.getChildren(HUB_PATH, true);
         }
 
+        // Tenta se tornar o agregador do hub. Se outro cliente já for o agregador, observa o seu nó para assumir
+        // caso ele saia antes de o jogo iniciar.
+        private void elect() throws KeeperException, InterruptedException {
+            while (true) {
+                try {
+                    zooKeeper.create(AGGREGATOR_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+                } catch (KeeperException.NodeExistsException e) {
+                    if (zooKeeper.exists(AGGREGATOR_PATH, true) != null) {
+                        return;
+                    }
+                    // O agregador saiu entre as duas operações: tenta novamente
+                    continue;
+                }
+                aggregator = true;
+                System.out.println("! Este cliente é o agregador do hub.");
+                // Os jogadores podem ter entrado antes da eleição
+                onPlayersChanged();
+                return;
+            }
+        }
+
         public void run() throws InterruptedException {
             synchronized (zooKeeper) {
                 // Aguarda o processo do ZooKeeper finalizar
@@ -50,7 +198,7 @@ public class Main {
         // Adiciona um jogador ao hub.
         public void add(String playerName) throws KeeperException, InterruptedException {
             final String playerId = zooKeeper.create(
-                    HUB_PATH + "/player_",
+                    HUB_PATH + "/" + PLAYER_PREFIX,
                     playerName.getBytes(StandardCharsets.UTF_8), // Armazena o nome do jogador
                     ZooDefs.Ids.OPEN_ACL_UNSAFE,
                     CreateMode.EPHEMERAL_SEQUENTIAL // Para cada novo ID, adicione um sufixo incremental
@@ -72,9 +220,23 @@ public class Main {
 
         // Retorna os jogadores atualmente esperando no hub.
         public Map<String, String> getPlayers() throws InterruptedException, KeeperException {
-            final List<String> playersIds = zooKeeper.getChildren(HUB_PATH, true);
+            return getPlayers(Collections.emptyMap(), null);
+        }
+
+        // Retorna os jogadores atualmente esperando no hub, lendo apenas os nomes que não estão em `known` (o nome de
+        // um jogador não muda), e guardando os metadados do nó do hub em `stat`.
+        private Map<String, String> getPlayers(Map<String, String> known, Stat stat) throws InterruptedException, KeeperException {
+            final List<String> playersIds = zooKeeper.getChildren(HUB_PATH, true, stat);
             final Map<String, String> players = new HashMap<>();
             for (String playerId : playersIds) {
+                // Ignora os nós de controle do hub
+                if (!playerId.startsWith(PLAYER_PREFIX)) {
+                    continue;
+                }
+                if (known.containsKey(playerId)) {
+                    players.put(playerId, known.get(playerId));
+                    continue;
+                }
                 // Lê o nome do jogador com o respectivo ID
                 final byte[] playerNameData = zooKeeper.getData(HUB_PATH + "/" + playerId, false, null);
                 final String playerName = new String(playerNameData, StandardCharsets.UTF_8);
@@ -83,7 +245,13 @@ public class Main {
             return players;
         }
 
+        // Retorna as mudanças nos jogadores do hub, a partir da listagem inicial (em que todos os jogadores entraram).
+        public Flow.Publisher<MembershipChange> membership() {
+            return membership;
+        }
+
         public void close() throws InterruptedException {
+            membership.close();
             zooKeeper.close();
         }
 
@@ -99,54 +267,187 @@ public class Main {
             }
             // Eventos relacionados ao nó atual
             if (event.getPath().equals(HUB_PATH) && event.getType() == Event.EventType.NodeChildrenChanged) {
-                // Verifica quantos jogadores estão no hub atualmente
-                final Map<String, String> currentPlayers;
+                onPlayersChanged();
+            } else if (event.getPath().equals(LOBBY_PATH)
+                    && (event.getType() == Event.EventType.NodeCreated || event.getType() == Event.EventType.NodeDataChanged)) {
+                onLobbyChanged();
+            } else if (event.getPath().equals(STARTED_PATH) && event.getType() == Event.EventType.NodeCreated) {
+                System.out.println("O jogo iniciou!");
+            } else if (event.getPath().equals(AGGREGATOR_PATH) && event.getType() == Event.EventType.NodeDeleted) {
+                // O agregador saiu: outro cliente assume, a menos que o jogo já tenha iniciado
                 try {
-                    currentPlayers = this.getPlayers();
+                    if (zooKeeper.exists(STARTED_PATH, false) == null) {
+                        elect();
+                    }
                 } catch (InterruptedException | KeeperException e) {
-                    System.out.println("Ocorreu um erro ao verificar quantidade de jogadores faltando.");
+                    System.out.println("Ocorreu um erro ao eleger o agregador do hub.");
                     e.printStackTrace();
-                    return;
                 }
+            }
+        }
 
-                // Se a lista de jogadores ainda não estiver sido preenchida
-                if (playersReference.compareAndSet(null, currentPlayers)) {
-                    System.out.println("+-----------------------+");
-                    System.out.println("|   Hub de jogadores    |");
-                    System.out.println("+-----------------------+");
-                    for (String player : currentPlayers.values()) {
-                        System.out.printf("| %-21s |\n", player);
-                    }
-                    System.out.println("+-----------------------+");
+        // Atualiza a listagem de jogadores e verifica se o jogo pode iniciar.
+        private void onPlayersChanged() {
+            // Verifica quantos jogadores estão no hub atualmente
+            final Map<String, String> currentPlayers;
+            try {
+                final Map<String, String> knownPlayers = playersReference.get();
+                final Stat stat = new Stat();
+                currentPlayers = this.getPlayers(knownPlayers == null ? Collections.emptyMap() : knownPlayers, stat);
+                if (aggregated) {
+                    publishLobby(new LobbySnapshot(stat.getCversion(), currentPlayers));
+                }
+            } catch (InterruptedException | KeeperException e) {
+                System.out.println("Ocorreu um erro ao verificar quantidade de jogadores faltando.");
+                e.printStackTrace();
+                return;
+            }
+            applyPlayers(currentPlayers);
+
+            // Se ainda existem jogadores pendentes
+            final int remainingPlayersAmount = this.maxPlayers - currentPlayers.size();
+            if (remainingPlayersAmount > 0) {
+                if (remainingPlayersAmount == 1) {
+                    System.out.println("! Esperando mais 1 jogador.");
                 } else {
-                    // Atualiza listagem de jogadores e retorna quantos jogadores estavam esperando na última consulta
-                    final Map<String, String> previousPlayers = playersReference.getAndSet(currentPlayers);
-
-                    // Quando jogadores entram
-                    final Set<String> joinersIds = new HashSet<>(currentPlayers.keySet());
-                    joinersIds.removeAll(previousPlayers.keySet());
-                    for (String playerId : joinersIds) {
-                        System.out.println("! Jogador " + currentPlayers.get(playerId) + " entrou.");
+                    System.out.printf("! Esperando mais %d jogadores.\n", remainingPlayersAmount);
+                }
+                return;
+            }
+            if (aggregated) {
+                // Apenas o agregador chega aqui: avisa todos os clientes de uma só vez
+                try {
+                    zooKeeper.create(STARTED_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+                } catch (KeeperException.NodeExistsException ignored) {
+                    // O jogo já foi iniciado
+                } catch (InterruptedException | KeeperException e) {
+                    System.out.println("Ocorreu um erro ao iniciar o jogo.");
+                    e.printStackTrace();
+                }
+                return;
+            }
+            System.out.println("O jogo iniciou!");
+        }
+
+        // Exibe e publica as diferenças entre `currentPlayers` e a última listagem de jogadores.
+        private void applyPlayers(Map<String, String> currentPlayers) {
+            // Se a lista de jogadores ainda não estiver sido preenchida
+            if (playersReference.compareAndSet(null, currentPlayers)) {
+                membership.offer(new MembershipChange(currentPlayers, Collections.emptyMap()));
+                System.out.println("+-----------------------+");
+                System.out.println("|   Hub de jogadores    |");
+                System.out.println("+-----------------------+");
+                for (String player : currentPlayers.values()) {
+                    System.out.printf("| %-21s |\n", player);
+                }
+                System.out.println("+-----------------------+");
+            } else {
+                // Atualiza listagem de jogadores e retorna quantos jogadores estavam esperando na última consulta
+                final Map<String, String> previousPlayers = playersReference.getAndSet(currentPlayers);
+
+                // Quando jogadores entram
+                final Set<String> joinersIds = new HashSet<>(currentPlayers.keySet());
+                joinersIds.removeAll(previousPlayers.keySet());
+                for (String playerId : joinersIds) {
+                    System.out.println("! Jogador " + currentPlayers.get(playerId) + " entrou.");
+                }
+                // Quando jogadores saem
+                final Set<String> leaversIds = new HashSet<>(previousPlayers.keySet());
+                leaversIds.removeAll(currentPlayers.keySet());
+                for (String playerId : leaversIds) {
+                    System.out.println("! Jogador " + previousPlayers.get(playerId) + " saiu.");
+                }
+                // Publica a diferença sem bloquear a thread de eventos do ZooKeeper
+                final Map<String, String> joined = new HashMap<>();
+                for (String playerId : joinersIds) {
+                    joined.put(playerId, currentPlayers.get(playerId));
+                }
+                final Map<String, String> left = new HashMap<>();
+                for (String playerId : leaversIds) {
+                    left.put(playerId, previousPlayers.get(playerId));
+                }
+                if (!joined.isEmpty() || !left.isEmpty()) {
+                    membership.offer(new MembershipChange(joined, left));
+                }
+            }
+        }
+
+        // Grava a listagem de jogadores no nó do lobby, a menos que ele já tenha uma listagem mais recente (por
+        // exemplo, de um agregador que assumiu no lugar deste).
+        private void publishLobby(LobbySnapshot lobby) throws KeeperException, InterruptedException {
+            final byte[] data = lobby.encode();
+            while (true) {
+                if (lobbyNodeVersion >= 0) {
+                    // Normalmente, apenas este cliente grava o nó: tenta gravar sem lê-lo antes
+                    try {
+                        lobbyNodeVersion = zooKeeper.setData(LOBBY_PATH, data, lobbyNodeVersion).getVersion();
+                        return;
+                    } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e) {
+                        lobbyNodeVersion = -1;
                     }
-                    // Quando jogadores saem
-                    final Set<String> leaversIds = new HashSet<>(previousPlayers.keySet());
-                    leaversIds.removeAll(currentPlayers.keySet());
-                    for (String playerId : leaversIds) {
-                        System.out.println("! Jogador " + previousPlayers.get(playerId) + " saiu.");
+                }
+                final Stat stat = new Stat();
+                final byte[] current;
+                try {
+                    current = zooKeeper.getData(LOBBY_PATH, false, stat);
+                } catch (KeeperException.NoNodeException e) {
+                    try {
+                        zooKeeper.create(LOBBY_PATH, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                        lobbyNodeVersion = 0;
+                        return;
+                    } catch (KeeperException.NodeExistsException ignored) {
+                        continue;
                     }
                 }
-                // Se ainda existem jogadores pendentes
-                final int remainingPlayersAmount = this.maxPlayers - currentPlayers.size();
-                if (remainingPlayersAmount > 0) {
-                    if (remainingPlayersAmount == 1) {
-                        System.out.println("! Esperando mais 1 jogador.");
-                    } else {
-                        System.out.printf("! Esperando mais %d jogadores.\n", remainingPlayersAmount);
+                try {
+                    if (LobbySnapshot.decode(current).getVersion() >= lobby.getVersion()) {
+                        return;
                     }
+                } catch (IOException ignored) {
+                    // Uma listagem ilegível é substituída
+                }
+                lobbyNodeVersion = stat.getVersion();
+            }
+        }
+
+        // Lê a listagem de jogadores e observa as suas mudanças, ou retorna `null` se o agregador ainda não a gravou.
+        private LobbySnapshot readLobby() throws KeeperException, InterruptedException, IOException {
+            while (true) {
+                try {
+                    return LobbySnapshot.decode(zooKeeper.getData(LOBBY_PATH, true, null));
+                } catch (KeeperException.NoNodeException e) {
+                    // Aguarda a criação da listagem
+                    if (zooKeeper.exists(LOBBY_PATH, true) == null) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        // Lê a listagem de jogadores gravada pelo agregador, em vez de listar os jogadores e ler o nome de cada um.
+        private void onLobbyChanged() {
+            if (aggregator) {
+                // O agregador já conhece a listagem que gravou
+                return;
+            }
+            final LobbySnapshot lobby;
+            try {
+                lobby = readLobby();
+            } catch (InterruptedException | KeeperException | IOException e) {
+                System.out.println("Ocorreu um erro ao ler a listagem de jogadores.");
+                e.printStackTrace();
+                return;
+            }
+            if (lobby == null) {
+                return;
+            }
+            synchronized (this) {
+                if (lobby.getVersion() <= lobbyVersion) {
                     return;
                 }
-                System.out.println("O jogo iniciou!");
+                lobbyVersion = lobby.getVersion();
             }
+            applyPlayers(lobby.getPlayers());
         }
     }
 
@@ -160,7 +461,8 @@ public class Main {
         }));
 
         // Código principal
-        final PlayerHub hub = new PlayerHub(3);
+        // Com o argumento --agregador, apenas um cliente eleito acompanha os jogadores
+        final PlayerHub hub = new PlayerHub(3, Arrays.asList(args).contains("--agregador"));
         hub.initialize();
 
         System.out.println("Insira o nome do seu jogador:");
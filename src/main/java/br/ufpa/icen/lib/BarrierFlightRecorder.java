@@ -0,0 +1,533 @@
+package br.ufpa.icen.lib;
+
+import org.apache.log4j.LogManager;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um gravador contínuo de eventos das barreiras, em um buffer circular fora do heap.
+ * <p>
+ * Cada evento (chegada, notificação, liberação e operação no ZooKeeper) é gravado como um registro binário de
+ * tamanho fixo, sem alocar objetos, de forma que o gravador pode ficar sempre ligado. Após um incidente, os
+ * últimos segundos podem ser exibidos como uma linha do tempo com {@link #dump(long, PrintStream)}, ou, se o
+ * buffer for um arquivo mapeado em memória, com o {@link #main(String[])} deste arquivo.
+ * <p>
+ * O gravador global é configurado pelas propriedades de sistema {@value #CAPACITY_PROPERTY} (número de
+ * registros, arredondado para uma potência de 2) e {@value #FILE_PROPERTY} (arquivo a ser mapeado em memória;
+ * se ausente, o buffer fica apenas na memória do processo).
+ */
+public final class BarrierFlightRecorder {
+    public static final String CAPACITY_PROPERTY = "br.ufpa.icen.lib.flightRecorder.capacity";
+    public static final String FILE_PROPERTY = "br.ufpa.icen.lib.flightRecorder.file";
+    /**
+     * Código dos eventos de chegada e liberação na entrada de uma barreira (ou em barreiras de uma só fase).
+     */
+    public static final int PHASE_ENTER = 0;
+    /**
+     * Código dos eventos de chegada e liberação na saída de uma barreira dupla.
+     */
+    public static final int PHASE_EXIT = 1;
+
+    /**
+     * Tipos de evento gravados.
+     */
+    public enum Event {
+        /**
+         * Um participante chegou na barreira. O código identifica a fase (0 para entrada, 1 para saída).
+         */
+        ARRIVE,
+        /**
+         * A sessão recebeu uma notificação. O código é o tipo do evento, e o valor é o estado da sessão.
+         */
+        WATCH,
+        /**
+         * Um participante foi liberado. O código identifica a fase, e o valor é o tempo de espera, em nanossegundos.
+         */
+        RELEASE,
+        /**
+         * Uma operação terminou com sucesso. O código é o {@code ZooDefs.OpCode}, e o valor é a sua latência, em
+         * nanossegundos (até a chamada do retorno, se a operação for assíncrona).
+         */
+        ZK_OP,
+        /**
+         * Uma operação falhou. O código é o {@code ZooDefs.OpCode}, e o valor é o {@code KeeperException.Code}.
+         */
+        ZK_ERROR,
+        /**
+         * Um participante prosseguiu após aguardar um instante alvo. O código identifica a fase, e o valor é o atraso
+         * em relação ao instante alvo convertido para o relógio local, em nanossegundos, ou -1 se o instante alvo não
+         * pôde ser lido. O atraso mede apenas a precisão da espera local, e não a diferença entre os participantes
+         * (veja {@link ZooKeeperDoubleBarrier#getStartTime(TimeUnit)}).
+         */
+        SKEW,
+        /**
+         * Um participante passou para uma nova geração de uma barreira reutilizável. O código identifica a fase, e o
+         * valor é o número da geração.
+         */
+        GENERATION,
+        /**
+         * Um participante contou os participantes na rodada atual, antes de aguardar. O código identifica a fase, e o
+         * valor é o número de participantes que chegaram (na entrada) ou que ainda não saíram (na saída).
+         */
+        COUNT
+    }
+
+    /**
+     * Recebe os eventos gravados, na thread que os gravou.
+     * <p>
+     * Como é chamado pelas barreiras a cada evento, um ouvinte não deve bloquear nem consultar o ZooKeeper.
+     */
+    public interface Listener {
+        /**
+         * Chamado após a gravação de cada evento.
+         *
+         * @param event     Tipo do evento.
+         * @param barrierId Identificador da barreira.
+         * @param code      Código do evento (veja {@link Event}).
+         * @param value     Valor do evento (veja {@link Event}).
+         * @param nanos     Instante do evento, em {@link System#nanoTime()}.
+         */
+        void onEvent(Event event, int barrierId, int code, long value, long nanos);
+    }
+
+    private static final int MAGIC = 0x42465231; // "BFR1"
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 32;
+    // Posições dos campos dentro de um registro
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int NANOS_OFFSET = 8;
+    private static final int BARRIER_OFFSET = 16;
+    private static final int EVENT_OFFSET = 20;
+    private static final int CODE_OFFSET = 22;
+    private static final int VALUE_OFFSET = 24;
+    // Valores do campo de sequência: 0 para uma posição nunca usada, WRITING para um registro sendo escrito, e a
+    // sequência do registro mais 1 para um registro completo
+    private static final long WRITING = -1L;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final Event[] EVENTS = Event.values();
+
+    private static final BarrierFlightRecorder GLOBAL = createGlobal();
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final long baseMillis;
+    private final long baseNanos;
+    private final AtomicLong cursor = new AtomicLong();
+    // Registros das barreiras, indexados pelo identificador. Um identificador liberado mantém o seu registro até ser
+    // reaproveitado, para que os eventos antigos ainda sejam exibidos com o nome da barreira
+    private final List<Registration> registrations = new ArrayList<>();
+    private final Map<String, Integer> barrierIds = new HashMap<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final Path namesFile;
+    // Substituído a cada modificação, para que a gravação percorra os ouvintes sem trava e sem iterador
+    private volatile Listener[] listeners = new Listener[0];
+
+    private BarrierFlightRecorder(ByteBuffer buffer, int capacity, Path namesFile) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.mask = capacity - 1;
+        this.namesFile = namesFile;
+        this.baseMillis = System.currentTimeMillis();
+        this.baseNanos = System.nanoTime();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, RECORD_SIZE);
+        buffer.putInt(8, capacity);
+        buffer.putLong(16, baseMillis);
+        buffer.putLong(24, baseNanos);
+        // Invalida registros de uma execução anterior, caso o arquivo seja reaproveitado
+        for (int i = 0; i < capacity; i++) {
+            buffer.putLong(HEADER_SIZE + i * RECORD_SIZE + SEQUENCE_OFFSET, 0L);
+        }
+    }
+
+    /**
+     * Cria um gravador cujo buffer fica apenas na memória do processo, fora do heap.
+     *
+     * @param capacity Número de registros, arredondado para uma potência de 2.
+     */
+    public static BarrierFlightRecorder inMemory(int capacity) {
+        final int size = roundCapacity(capacity);
+        return new BarrierFlightRecorder(ByteBuffer.allocateDirect(HEADER_SIZE + size * RECORD_SIZE), size, null);
+    }
+
+    /**
+     * O registro de uma barreira com um identificador.
+     */
+    private static final class Registration {
+        private final String name;
+        // Instante do registro: os eventos anteriores com o mesmo identificador são de outra barreira
+        private final long sinceNanos;
+        private int references = 1;
+
+        private Registration(String name, long sinceNanos) {
+            this.name = name;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+
+    /**
+     * Cria um gravador cujo buffer é um arquivo mapeado em memória, preservado mesmo se o processo terminar.
+     * <p>
+     * Os caminhos das barreiras são gravados em um arquivo ao lado, com a extensão {@code .names}. Se o arquivo já
+     * existir, por exemplo ao reiniciar um processo após um incidente, ele e o seu arquivo de nomes são renomeados
+     * com a extensão {@code .1} (substituindo uma gravação {@code .1} anterior), para que a gravação anterior possa
+     * ser exibida com {@link #main(String[])}.
+     *
+     * @param file     Caminho do arquivo.
+     * @param capacity Número de registros, arredondado para uma potência de 2.
+     * @throws IOException se o arquivo não puder ser mapeado.
+     */
+    public static BarrierFlightRecorder mapped(Path file, int capacity) throws IOException {
+        final int size = roundCapacity(capacity);
+        if (Files.exists(file) && Files.size(file) > 0) {
+            final Path previous = previousFileOf(file);
+            Files.move(file, previous, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.exists(namesFileOf(file))) {
+                Files.move(namesFileOf(file), namesFileOf(previous), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(namesFileOf(previous));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) size * RECORD_SIZE);
+            final Path namesFile = namesFileOf(file);
+            Files.write(namesFile, new byte[0]);
+            return new BarrierFlightRecorder(buffer, size, namesFile);
+        }
+    }
+
+    /**
+     * Retorna o gravador usado por todas as barreiras deste processo.
+     */
+    public static BarrierFlightRecorder global() {
+        return GLOBAL;
+    }
+
+    private static BarrierFlightRecorder createGlobal() {
+        final int capacity = Integer.getInteger(CAPACITY_PROPERTY, 1 << 16);
+        final String file = System.getProperty(FILE_PROPERTY);
+        if (file != null) {
+            try {
+                return mapped(Paths.get(file), capacity);
+            } catch (IOException e) {
+                // Sem o arquivo, os eventos ainda ficam disponíveis na memória do processo
+                LogManager.getLogger(BarrierFlightRecorder.class).warn("não foi possível mapear o arquivo do gravador "
+                        + file + "; os eventos serão gravados apenas na memória", e);
+            }
+        }
+        return inMemory(capacity);
+    }
+
+    private static int roundCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacidade deve ser positiva: " + capacity);
+        }
+        return capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static Path namesFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".names");
+    }
+
+    static Path previousFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".1");
+    }
+
+    /**
+     * Registra uma barreira, retornando o identificador usado nos seus registros. Instâncias com o mesmo nome
+     * compartilham o identificador.
+     * <p>
+     * Deve ser chamado na criação da barreira, e não a cada evento, e acompanhado de {@link #unregister(int)} no seu
+     * fechamento.
+     */
+    public int register(String barrierName) {
+        synchronized (registrations) {
+            final Integer existing = barrierIds.get(barrierName);
+            if (existing != null) {
+                registrations.get(existing).references++;
+                return existing;
+            }
+            final Integer free = freeIds.pollFirst();
+            final int id = free != null ? free : registrations.size();
+            final Registration registration = new Registration(barrierName, System.nanoTime());
+            if (free != null) {
+                registrations.set(id, registration);
+            } else {
+                registrations.add(registration);
+            }
+            barrierIds.put(barrierName, id);
+            if (namesFile != null) {
+                try {
+                    Files.write(namesFile, (id + "\t" + registration.sinceNanos + "\t" + barrierName + "\n")
+                            .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                } catch (IOException ignored) {
+                    // O nome só é usado para exibir a linha do tempo
+                }
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Libera o identificador retornado por {@link #register(String)}. Quando todas as instâncias com o mesmo nome o
+     * liberam, ele pode ser reaproveitado por outra barreira; os eventos gravados antes disso continuam sendo exibidos
+     * com o nome anterior.
+     */
+    public void unregister(int barrierId) {
+        synchronized (registrations) {
+            final Registration registration = registrations.get(barrierId);
+            // Uma barreira fechada duas vezes libera o identificador apenas uma vez
+            if (registration.references > 0 && --registration.references == 0) {
+                barrierIds.remove(registration.name);
+                freeIds.addLast(barrierId);
+            }
+        }
+    }
+
+    /**
+     * Retorna o caminho da barreira registrada com o identificador {@code barrierId}.
+     */
+    public String nameOf(int barrierId) {
+        synchronized (registrations) {
+            return barrierId >= 0 && barrierId < registrations.size() ? registrations.get(barrierId).name : "#" + barrierId;
+        }
+    }
+
+    /**
+     * Retorna, para cada identificador, os nomes das barreiras que o usaram, indexados pelo instante do registro.
+     */
+    private Map<Integer, NavigableMap<Long, String>> names() {
+        final Map<Integer, NavigableMap<Long, String>> names = new HashMap<>();
+        synchronized (registrations) {
+            for (int id = 0; id < registrations.size(); id++) {
+                final Registration registration = registrations.get(id);
+                names.computeIfAbsent(id, key -> new TreeMap<>()).put(registration.sinceNanos, registration.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adiciona um ouvinte, que passa a receber todos os eventos gravados a seguir.
+     */
+    public synchronized void addListener(Listener listener) {
+        final Listener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+        next[next.length - 1] = listener;
+        listeners = next;
+    }
+
+    /**
+     * Remove um ouvinte adicionado por {@link #addListener(Listener)}.
+     */
+    public synchronized void removeListener(Listener listener) {
+        final List<Listener> next = new ArrayList<>(Arrays.asList(listeners));
+        next.remove(listener);
+        listeners = next.toArray(new Listener[0]);
+    }
+
+    /**
+     * Grava um evento. Pode ser chamado por várias threads ao mesmo tempo, e não aloca objetos (além dos que os
+     * ouvintes alocarem).
+     *
+     * @param event     Tipo do evento.
+     * @param barrierId Identificador da barreira, retornado por {@link #register(String)}.
+     * @param code      Código do evento (veja {@link Event}).
+     * @param value     Valor do evento (veja {@link Event}).
+     */
+    public void record(Event event, int barrierId, int code, long value) {
+        final long sequence = cursor.getAndIncrement();
+        final int offset = HEADER_SIZE + (int) (sequence & mask) * RECORD_SIZE;
+        final long nanos = System.nanoTime();
+        if (claim(offset, sequence)) {
+            buffer.putLong(offset + NANOS_OFFSET, nanos);
+            buffer.putInt(offset + BARRIER_OFFSET, barrierId);
+            buffer.putShort(offset + EVENT_OFFSET, (short) event.ordinal());
+            buffer.putShort(offset + CODE_OFFSET, (short) code);
+            buffer.putLong(offset + VALUE_OFFSET, value);
+            // Publica o registro apenas depois de todos os campos
+            LONGS.setRelease(buffer, offset + SEQUENCE_OFFSET, sequence + 1);
+        }
+        final Listener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].onEvent(event, barrierId, code, value, nanos);
+        }
+    }
+
+    /**
+     * Marca o registro como incompleto, para que leitores concorrentes o ignorem enquanto ele é escrito.
+     * <p>
+     * Apenas um escritor por vez escreve em cada posição: se outro escritor ainda estiver escrevendo nela (o que só
+     * acontece quando o buffer dá uma volta completa durante uma escrita), aguarda o seu término. Se um escritor de
+     * um evento mais recente já tiver ocupado a posição, o evento mais antigo é descartado.
+     *
+     * @return {@code true} se o registro deve ser escrito.
+     */
+    private boolean claim(int offset, long sequence) {
+        while (true) {
+            final long current = (long) LONGS.getVolatile(buffer, offset + SEQUENCE_OFFSET);
+            if (current > sequence + 1) {
+                return false;
+            }
+            if (current != WRITING && LONGS.compareAndSet(buffer, offset + SEQUENCE_OFFSET, current, WRITING)) {
+                // Impede que os campos escritos a seguir fiquem visíveis antes da marcação
+                VarHandle.storeStoreFence();
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Exibe os eventos dos últimos {@code lastMillis} milissegundos, em ordem.
+     */
+    public void dump(long lastMillis, PrintStream out) {
+        dump(buffer, names(), System.currentTimeMillis() - lastMillis, out);
+    }
+
+    /**
+     * Retorna os registros completos do buffer, em ordem. Cada registro contém a sequência mais 1, o instante, o
+     * identificador da barreira, o tipo, o código e o valor do evento.
+     */
+    List<long[]> records() {
+        return read(buffer);
+    }
+
+    private static List<long[]> read(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("o buffer não contém um gravador de eventos");
+        }
+        final int capacity = buffer.getInt(8);
+        final List<long[]> records = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            final int offset = HEADER_SIZE + i * RECORD_SIZE;
+            final long sequence = (long) LONGS.getAcquire(buffer, offset + SEQUENCE_OFFSET);
+            if (sequence == 0 || sequence == WRITING) {
+                continue;
+            }
+            final long[] record = {
+                    sequence,
+                    buffer.getLong(offset + NANOS_OFFSET),
+                    buffer.getInt(offset + BARRIER_OFFSET),
+                    buffer.getShort(offset + EVENT_OFFSET),
+                    buffer.getShort(offset + CODE_OFFSET),
+                    buffer.getLong(offset + VALUE_OFFSET),
+            };
+            // Descarta registros sobrescritos durante a leitura. A barreira impede que a releitura da sequência seja
+            // feita antes da leitura dos campos
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getAcquire(buffer, offset + SEQUENCE_OFFSET) == sequence) {
+                records.add(record);
+            }
+        }
+        records.sort(Comparator.comparingLong(record -> record[0]));
+        return records;
+    }
+
+    private static void dump(ByteBuffer buffer, Map<Integer, NavigableMap<Long, String>> names, long sinceMillis,
+                             PrintStream out) {
+        final List<long[]> records = read(buffer);
+        final long baseMillis = buffer.getLong(16);
+        final long baseNanos = buffer.getLong(24);
+
+        for (long[] record : records) {
+            final long nanos = record[1] - baseNanos;
+            final long epochMillis = baseMillis + TimeUnit.NANOSECONDS.toMillis(nanos);
+            if (epochMillis < sinceMillis) {
+                continue;
+            }
+            final int barrierId = (int) record[2];
+            // O nome é o da barreira que usava o identificador no instante do evento
+            final NavigableMap<Long, String> candidates = names.get(barrierId);
+            final Map.Entry<Long, String> name = candidates != null ? candidates.floorEntry(record[1]) : null;
+            final String barrier = name != null ? name.getValue() : "#" + barrierId;
+            final Event event = EVENTS[(int) record[3]];
+            out.printf("%s %-9s %-30s code=%-4d value=%d%n",
+                    Instant.ofEpochMilli(baseMillis).plusNanos(nanos), event, barrier, record[4], record[5]);
+        }
+    }
+
+    /**
+     * Exibe a linha do tempo de um arquivo gravado por {@link #mapped(Path, int)}.
+     * <p>
+     * Uso: {@code BarrierFlightRecorder <arquivo> [segundos]}. Sem o número de segundos, exibe todos os eventos.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("uso: BarrierFlightRecorder <arquivo> [segundos]");
+            System.exit(1);
+        }
+        dump(Paths.get(args[0]), args.length > 1 ? Long.parseLong(args[1]) : -1, System.out);
+    }
+
+    /**
+     * Exibe a linha do tempo de um arquivo gravado por {@link #mapped(Path, int)}.
+     *
+     * @param seconds Janela exibida, contada a partir do último evento gravado, ou -1 para exibir todos os eventos.
+     */
+    static void dump(Path file, long seconds, PrintStream out) throws IOException {
+        final Map<Integer, NavigableMap<Long, String>> names = new HashMap<>();
+        final Path namesFile = namesFileOf(file);
+        if (Files.exists(namesFile)) {
+            for (String line : Files.readAllLines(namesFile, StandardCharsets.UTF_8)) {
+                // Cada linha contém o identificador, o instante do registro e o nome. Linhas sem o instante são de
+                // versões anteriores, que não reaproveitavam identificadores
+                final String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    names.computeIfAbsent(Integer.parseInt(fields[0]), id -> new TreeMap<>())
+                            .put(Long.parseLong(fields[1]), fields[2]);
+                } else if (fields.length == 2) {
+                    names.computeIfAbsent(Integer.parseInt(fields[0]), id -> new TreeMap<>())
+                            .put(Long.MIN_VALUE, fields[1]);
+                }
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+
+        long sinceMillis = Long.MIN_VALUE;
+        if (seconds >= 0) {
+            // A janela é contada a partir do último evento gravado, e não do horário atual
+            sinceMillis = lastEventMillis(buffer) - TimeUnit.SECONDS.toMillis(seconds);
+        }
+        dump(buffer, names, sinceMillis, out);
+    }
+
+    private static long lastEventMillis(ByteBuffer buffer) {
+        final int capacity = buffer.getInt(8);
+        long lastSequence = 0;
+        long lastNanos = buffer.getLong(24);
+        for (int i = 0; i < capacity; i++) {
+            final int offset = HEADER_SIZE + i * RECORD_SIZE;
+            final long sequence = buffer.getLong(offset + SEQUENCE_OFFSET);
+            if (sequence > lastSequence) {
+                lastSequence = sequence;
+                lastNanos = buffer.getLong(offset + NANOS_OFFSET);
+            }
+        }
+        return buffer.getLong(16) + TimeUnit.NANOSECONDS.toMillis(lastNanos - buffer.getLong(24));
+    }
+}
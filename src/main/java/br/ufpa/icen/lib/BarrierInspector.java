@@ -0,0 +1,223 @@
+package br.ufpa.icen.lib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um servidor HTTP opcional que exibe, em JSON, o estado das barreiras deste processo registrado no
+ * {@link BarrierRegistry}, sem consultar o ZooKeeper.
+ * <p>
+ * O servidor usa o {@code com.sun.net.httpserver} do JDK, e responde apenas a {@code GET /barriers}:
+ * <pre>{@code
+ * try (final BarrierInspector inspector = BarrierInspector.start(8081)) {
+ *     // curl http://localhost:8081/barriers
+ * }
+ * }</pre>
+ * Para cada barreira com instâncias abertas ou threads aguardando, a resposta contém o seu caminho e tipo, a geração,
+ * as chegadas contadas e os participantes esperados, as threads bloqueadas e há quanto tempo, e o último erro do
+ * ZooKeeper. Campos desconhecidos são {@code null}.
+ * <p>
+ * Por padrão, o servidor aceita apenas conexões da própria máquina; para expô-lo em outras interfaces, informe o
+ * endereço explicitamente em {@link #start(InetSocketAddress, BarrierRegistry)}.
+ * <p>
+ * O servidor mantém o processo em execução até ser fechado.
+ */
+public final class BarrierInspector implements AutoCloseable {
+    /**
+     * Caminho do recurso que lista as barreiras.
+     */
+    public static final String PATH = "/barriers";
+
+    private static final Map<Integer, String> OP_NAMES = opNames();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BarrierRegistry registry;
+
+    private BarrierInspector(HttpServer server, BarrierRegistry registry) {
+        this.server = server;
+        this.registry = registry;
+        // Uma única thread basta, pois cada resposta é montada apenas a partir da memória
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "barrier-inspector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Inicia o servidor na interface de loopback, com o estado das barreiras do {@link BarrierRegistry#global()}.
+     *
+     * @param port Porta do servidor, ou 0 para escolher uma porta livre (veja {@link #getAddress()}).
+     * @throws IOException se a porta não puder ser usada.
+     */
+    public static BarrierInspector start(int port) throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BarrierRegistry.global());
+    }
+
+    /**
+     * Inicia o servidor.
+     * <p>
+     * O estado das barreiras inclui os caminhos dos nós e os nomes das threads, e não há autenticação: um endereço
+     * curinga ({@code new InetSocketAddress(port)}) expõe essas informações a qualquer máquina que alcance a porta.
+     *
+     * @param address  Endereço do servidor.
+     * @param registry Registro das barreiras a serem exibidas.
+     * @throws IOException se o endereço não puder ser usado.
+     */
+    public static BarrierInspector start(InetSocketAddress address, BarrierRegistry registry) throws IOException {
+        final BarrierInspector inspector = new BarrierInspector(HttpServer.create(address, 0), registry);
+        inspector.server.start();
+        return inspector;
+    }
+
+    /**
+     * Retorna o endereço em que o servidor está aguardando conexões.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!exchange.getRequestURI().getPath().equals(PATH)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final byte[] body = toJson(registry.snapshot()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static String toJson(List<BarrierRegistry.Barrier> barriers) {
+        final StringBuilder json = new StringBuilder("{\"barriers\":[");
+        for (int i = 0; i < barriers.size(); i++) {
+            final BarrierRegistry.Barrier barrier = barriers.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":");
+            string(json, barrier.getName());
+            json.append(",\"type\":");
+            string(json, barrier.getType());
+            json.append(",\"instances\":").append(barrier.getInstances());
+            json.append(",\"generation\":");
+            number(json, barrier.getGeneration());
+            json.append(",\"arrived\":");
+            number(json, barrier.getArrived());
+            json.append(",\"expected\":");
+            number(json, barrier.getExpected());
+            json.append(",\"waiting\":[");
+            final List<BarrierRegistry.WaitingThread> waiting = barrier.getWaiting();
+            for (int j = 0; j < waiting.size(); j++) {
+                final BarrierRegistry.WaitingThread waiter = waiting.get(j);
+                if (j > 0) {
+                    json.append(',');
+                }
+                json.append("{\"thread\":");
+                string(json, waiter.getThread());
+                json.append(",\"phase\":");
+                string(json, waiter.getPhase() == BarrierFlightRecorder.PHASE_EXIT ? "exit" : "enter");
+                json.append(",\"blockedMillis\":").append(TimeUnit.NANOSECONDS.toMillis(waiter.getBlockedNanos()));
+                json.append('}');
+            }
+            json.append("],\"lastError\":");
+            if (barrier.getLastErrorAgeNanos() < 0) {
+                json.append("null");
+            } else {
+                final KeeperException.Code code = KeeperException.Code.get(barrier.getLastErrorCode());
+                json.append("{\"op\":");
+                string(json, OP_NAMES.getOrDefault(barrier.getLastErrorOpCode(), String.valueOf(barrier.getLastErrorOpCode())));
+                json.append(",\"code\":");
+                string(json, code != null ? code.name() : String.valueOf(barrier.getLastErrorCode()));
+                json.append(",\"ageMillis\":").append(TimeUnit.NANOSECONDS.toMillis(barrier.getLastErrorAgeNanos()));
+                json.append('}');
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void number(StringBuilder json, long value) {
+        // Os valores negativos indicam que a informação é desconhecida
+        if (value < 0) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static void string(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Retorna os nomes das constantes de {@link ZooDefs.OpCode}, indexados pelos seus valores.
+     */
+    private static Map<Integer, String> opNames() {
+        final Map<Integer, String> names = new HashMap<>();
+        for (Field field : ZooDefs.OpCode.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == int.class) {
+                try {
+                    names.putIfAbsent(field.getInt(null), field.getName());
+                } catch (IllegalAccessException ignored) {
+                    // As constantes são públicas
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Encerra o servidor.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,24 @@
+package br.ufpa.icen.lib;
+
+/**
+ * As fases de um participante em uma barreira dupla, publicadas por {@link ZooKeeperDoubleBarrier#phases()} e
+ * {@link ZooKeeperReusableDoubleBarrier#phases()}.
+ */
+public enum BarrierPhase {
+    /**
+     * O participante chegou na barreira e aguarda os demais para entrar.
+     */
+    ENTERING,
+    /**
+     * Todos os participantes chegaram, e o participante está executando a computação.
+     */
+    ENTERED,
+    /**
+     * O participante terminou a computação e aguarda os demais para sair.
+     */
+    EXITING,
+    /**
+     * Todos os participantes saíram da barreira.
+     */
+    EXITED
+}
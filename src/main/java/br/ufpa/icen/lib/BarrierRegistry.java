@@ -0,0 +1,345 @@
+package br.ufpa.icen.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * O estado atual das barreiras deste processo, mantido em memória a partir dos eventos do
+ * {@link BarrierFlightRecorder}, para ser inspecionado durante a execução (veja {@link BarrierInspector}).
+ * <p>
+ * Para cada barreira, o registro guarda quantas instâncias estão abertas, a geração e o número de chegadas mais
+ * recentes observados pelos participantes deste processo, as threads que estão aguardando e desde quando, e o último
+ * erro retornado pelo ZooKeeper. Nenhuma dessas informações é consultada no ZooKeeper: elas refletem apenas o que os
+ * participantes deste processo já leram.
+ * <p>
+ * Uma thread que chegou em uma barreira e saiu dela sem ser liberada (por uma exceção, ou pelo fim do tempo de espera
+ * de um semáforo) continua listada até chegar novamente na mesma barreira, terminar, ou até que todas as instâncias da
+ * barreira sejam fechadas. Quando todas as instâncias são fechadas, o estado da barreira é descartado, já que o seu
+ * identificador pode ser reaproveitado pelo gravador para outra barreira.
+ */
+public final class BarrierRegistry implements BarrierFlightRecorder.Listener {
+    private static final BarrierRegistry GLOBAL = attach(BarrierFlightRecorder.global());
+
+    private final BarrierFlightRecorder recorder;
+    // Indexado pelo identificador da barreira no gravador, que é sequencial
+    private volatile Entry[] entries = new Entry[16];
+
+    private BarrierRegistry(BarrierFlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Cria um registro alimentado pelos eventos de {@code recorder}.
+     */
+    public static BarrierRegistry attach(BarrierFlightRecorder recorder) {
+        final BarrierRegistry registry = new BarrierRegistry(recorder);
+        recorder.addListener(registry);
+        return registry;
+    }
+
+    /**
+     * Retorna o registro alimentado pelo gravador global, usado por todas as barreiras deste processo.
+     */
+    public static BarrierRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Registra a abertura de uma instância da barreira.
+     *
+     * @param barrierId Identificador da barreira no gravador.
+     * @param type      Nome da classe da barreira.
+     */
+    public synchronized void open(int barrierId, String type) {
+        Entry entry = entry(barrierId);
+        if (entry.instances.get() == 0) {
+            // Eventos recebidos depois do fechamento da barreira anterior com o mesmo identificador são descartados
+            entry = new Entry();
+            final Entry[] current = entries;
+            current[barrierId] = entry;
+            entries = current;
+        }
+        entry.type = type;
+        entry.instances.incrementAndGet();
+    }
+
+    /**
+     * Registra o número de participantes esperados em cada rodada da barreira.
+     */
+    public void expect(int barrierId, int participants) {
+        entry(barrierId).expected = participants;
+    }
+
+    /**
+     * Registra o fechamento de uma instância da barreira. Quando não restam instâncias abertas, o estado da barreira é
+     * descartado, e ela deixa de ser listada.
+     */
+    public synchronized void close(int barrierId) {
+        final Entry[] current = entries;
+        if (barrierId >= current.length || current[barrierId] == null) {
+            return;
+        }
+        if (current[barrierId].instances.decrementAndGet() <= 0) {
+            current[barrierId] = null;
+            // Publica a remoção para as threads que leem o vetor sem o monitor
+            entries = current;
+        }
+    }
+
+    @Override
+    public void onEvent(BarrierFlightRecorder.Event event, int barrierId, int code, long value, long nanos) {
+        switch (event) {
+            case ARRIVE: {
+                // O objeto da thread é reaproveitado enquanto ela não for liberada, como nas novas tentativas de um
+                // semáforo
+                final Waiter waiter = entry(barrierId).waiters.computeIfAbsent(Thread.currentThread(), thread -> new Waiter());
+                waiter.phase = code;
+                waiter.since = nanos;
+                break;
+            }
+            case RELEASE:
+                // Remove a thread liberada, para que o registro não mantenha threads que não voltem a esta barreira
+                entry(barrierId).waiters.remove(Thread.currentThread());
+                break;
+            case GENERATION:
+                entry(barrierId).generation = value;
+                break;
+            case COUNT:
+                entry(barrierId).arrived = value;
+                break;
+            case ZK_ERROR:
+                // Erros são raros, e um objeto imutável evita que o código e o instante sejam lidos de erros diferentes
+                entry(barrierId).lastError = new LastError(code, (int) value, nanos);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Entry entry(int barrierId) {
+        final Entry[] current = entries;
+        if (barrierId < current.length) {
+            final Entry entry = current[barrierId];
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return createEntry(barrierId);
+    }
+
+    private synchronized Entry createEntry(int barrierId) {
+        Entry[] current = entries;
+        if (barrierId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(barrierId + 1, current.length * 2));
+        }
+        if (current[barrierId] == null) {
+            current[barrierId] = new Entry();
+        }
+        entries = current;
+        return current[barrierId];
+    }
+
+    /**
+     * Retorna o estado das barreiras com instâncias abertas ou threads aguardando, na ordem em que foram registradas.
+     */
+    public List<Barrier> snapshot() {
+        final long now = System.nanoTime();
+        final Entry[] current = entries;
+        final List<Barrier> barriers = new ArrayList<>();
+        for (int id = 0; id < current.length; id++) {
+            final Entry entry = current[id];
+            if (entry == null) {
+                continue;
+            }
+            final List<WaitingThread> waiting = new ArrayList<>();
+            for (Iterator<Map.Entry<Thread, Waiter>> it = entry.waiters.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry<Thread, Waiter> waiter = it.next();
+                if (!waiter.getKey().isAlive()) {
+                    // Descarta as threads que terminaram sem serem liberadas
+                    it.remove();
+                    continue;
+                }
+                waiting.add(new WaitingThread(waiter.getKey().getName(), waiter.getValue().phase, now - waiter.getValue().since));
+            }
+            final int instances = entry.instances.get();
+            if (instances == 0 && waiting.isEmpty()) {
+                continue;
+            }
+            final LastError error = entry.lastError;
+            barriers.add(new Barrier(recorder.nameOf(id), entry.type, instances, entry.generation, entry.arrived,
+                    entry.expected, waiting, error == null ? -1 : error.opCode, error == null ? 0 : error.code,
+                    error == null ? -1 : now - error.nanos));
+        }
+        return barriers;
+    }
+
+    private static final class Entry {
+        private volatile String type;
+        private final AtomicInteger instances = new AtomicInteger();
+        private volatile int expected = -1;
+        private volatile long generation = -1;
+        private volatile long arrived = -1;
+        private volatile LastError lastError;
+        private final Map<Thread, Waiter> waiters = new ConcurrentHashMap<>();
+    }
+
+    private static final class Waiter {
+        private volatile int phase;
+        // Instante da chegada, em System.nanoTime()
+        private volatile long since;
+    }
+
+    private static final class LastError {
+        private final int opCode;
+        private final int code;
+        private final long nanos;
+
+        private LastError(int opCode, int code, long nanos) {
+            this.opCode = opCode;
+            this.code = code;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * O estado de uma barreira em um instante.
+     */
+    public static final class Barrier {
+        private final String name;
+        private final String type;
+        private final int instances;
+        private final long generation;
+        private final long arrived;
+        private final int expected;
+        private final List<WaitingThread> waiting;
+        private final int lastErrorOpCode;
+        private final int lastErrorCode;
+        private final long lastErrorAgeNanos;
+
+        private Barrier(String name, String type, int instances, long generation, long arrived, int expected,
+                        List<WaitingThread> waiting, int lastErrorOpCode, int lastErrorCode, long lastErrorAgeNanos) {
+            this.name = name;
+            this.type = type;
+            this.instances = instances;
+            this.generation = generation;
+            this.arrived = arrived;
+            this.expected = expected;
+            this.waiting = List.copyOf(waiting);
+            this.lastErrorOpCode = lastErrorOpCode;
+            this.lastErrorCode = lastErrorCode;
+            this.lastErrorAgeNanos = lastErrorAgeNanos;
+        }
+
+        /**
+         * Retorna o caminho do nó da barreira.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retorna o nome da classe da barreira, ou {@code null} se ela não foi aberta por este processo.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Retorna o número de instâncias abertas neste processo.
+         */
+        public int getInstances() {
+            return instances;
+        }
+
+        /**
+         * Retorna a geração mais recente alcançada por este processo, ou -1 se a barreira não for reutilizável ou
+         * ainda não tiver sido liberada.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Retorna o número de chegadas na última contagem feita por este processo, ou -1 se ainda não houve contagem.
+         */
+        public long getArrived() {
+            return arrived;
+        }
+
+        /**
+         * Retorna o número de participantes esperados em cada rodada, ou -1 se a barreira não tiver um número fixo.
+         */
+        public int getExpected() {
+            return expected;
+        }
+
+        /**
+         * Retorna as threads deste processo que estão aguardando a barreira.
+         */
+        public List<WaitingThread> getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * Retorna o {@code ZooDefs.OpCode} da operação do último erro, ou -1 se não houve erro.
+         */
+        public int getLastErrorOpCode() {
+            return lastErrorOpCode;
+        }
+
+        /**
+         * Retorna o {@code KeeperException.Code} do último erro.
+         */
+        public int getLastErrorCode() {
+            return lastErrorCode;
+        }
+
+        /**
+         * Retorna há quantos nanossegundos ocorreu o último erro, ou -1 se não houve erro.
+         */
+        public long getLastErrorAgeNanos() {
+            return lastErrorAgeNanos;
+        }
+    }
+
+    /**
+     * Uma thread aguardando uma barreira.
+     */
+    public static final class WaitingThread {
+        private final String thread;
+        private final int phase;
+        private final long blockedNanos;
+
+        private WaitingThread(String thread, int phase, long blockedNanos) {
+            this.thread = thread;
+            this.phase = phase;
+            this.blockedNanos = blockedNanos;
+        }
+
+        /**
+         * Retorna o nome da thread.
+         */
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * Retorna a fase aguardada ({@link BarrierFlightRecorder#PHASE_ENTER} ou {@link BarrierFlightRecorder#PHASE_EXIT}).
+         */
+        public int getPhase() {
+            return phase;
+        }
+
+        /**
+         * Retorna há quantos nanossegundos a thread está aguardando.
+         */
+        public long getBlockedNanos() {
+            return blockedNanos;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package br.ufpa.icen.lib;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Um {@link Flow.Publisher} de eventos das barreiras, com buffer limitado e conflação por assinante.
+ * <p>
+ * Os eventos são publicados com {@link #offer(Object)}, que nunca bloqueia, e por isso pode ser chamado na thread de
+ * eventos do ZooKeeper. Cada assinante tem o seu próprio buffer de no máximo {@code capacity} eventos, entregues no
+ * {@link Executor} de acordo com a demanda pedida em {@link Flow.Subscription#request(long)}. Se um assinante lento
+ * deixar o seu buffer encher, o evento mais recente é combinado com o último evento do buffer pela função de
+ * conflação (por exemplo, mantendo apenas a geração mais recente, ou unindo duas diferenças de participantes), em
+ * vez de crescer sem limite ou descartar eventos sem combiná-los.
+ *
+ * @param <T> tipo dos eventos publicados.
+ */
+public final class ConflatingPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+    /**
+     * Capacidade padrão do buffer de cada assinante.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final Executor executor;
+    private final int capacity;
+    private final BinaryOperator<T> conflate;
+    private final List<ConflatingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Cria um publicador que entrega os eventos no {@link ForkJoinPool#commonPool()}, com buffers de
+     * {@value #DEFAULT_CAPACITY} eventos.
+     *
+     * @param conflate Combina o último evento do buffer cheio (primeiro argumento) com um evento novo.
+     */
+    public ConflatingPublisher(BinaryOperator<T> conflate) {
+        this(ForkJoinPool.commonPool(), DEFAULT_CAPACITY, conflate);
+    }
+
+    /**
+     * @param executor Executor em que os eventos são entregues aos assinantes.
+     * @param capacity Capacidade do buffer de cada assinante.
+     * @param conflate Combina o último evento do buffer cheio (primeiro argumento) com um evento novo.
+     */
+    public ConflatingPublisher(Executor executor, int capacity, BinaryOperator<T> conflate) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity deve ser positiva: " + capacity);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.capacity = capacity;
+        this.conflate = Objects.requireNonNull(conflate);
+    }
+
+    /**
+     * Cria um publicador que, com o buffer cheio, mantém apenas o evento mais recente.
+     */
+    public static <T> ConflatingPublisher<T> latest() {
+        return new ConflatingPublisher<>((previous, next) -> next);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        final ConflatingSubscription subscription = new ConflatingSubscription(Objects.requireNonNull(subscriber));
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete(null);
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Publica um evento para os assinantes atuais, sem bloquear. Eventos publicados após {@link #close()} são
+     * ignorados.
+     */
+    public void offer(T item) {
+        Objects.requireNonNull(item);
+        if (closed) {
+            return;
+        }
+        for (ConflatingSubscription subscription : subscriptions) {
+            subscription.enqueue(item);
+        }
+    }
+
+    public int getNumberOfSubscribers() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Encerra o publicador: os assinantes recebem {@code onComplete} após os eventos que ainda estão nos seus
+     * buffers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (ConflatingSubscription subscription : subscriptions) {
+            subscription.complete(null);
+        }
+    }
+
+    /**
+     * Encerra o publicador com um erro: os assinantes recebem {@code onError} imediatamente, descartando os eventos
+     * que ainda estão nos seus buffers.
+     */
+    public void closeExceptionally(Throwable error) {
+        closed = true;
+        for (ConflatingSubscription subscription : subscriptions) {
+            subscription.complete(Objects.requireNonNull(error));
+        }
+    }
+
+    private final class ConflatingSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        // Garante que um único drenador entregue sinais ao assinante por vez
+        private final AtomicInteger pending = new AtomicInteger();
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+        private long demand;
+        private boolean subscribed;
+        private boolean completed;
+        private boolean cancelled;
+        private Throwable error;
+
+        ConflatingSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void enqueue(T item) {
+            synchronized (this) {
+                if (completed || cancelled) {
+                    return;
+                }
+                if (buffer.size() < capacity) {
+                    buffer.addLast(item);
+                } else {
+                    buffer.addLast(conflate.apply(buffer.pollLast(), item));
+                }
+            }
+            schedule();
+        }
+
+        void complete(Throwable error) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                if (error != null) {
+                    this.error = error;
+                    buffer.clear();
+                }
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                complete(new IllegalArgumentException("a demanda deve ser positiva: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            while (true) {
+                final T item;
+                final Throwable failure;
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (error != null || (completed && buffer.isEmpty())) {
+                        cancelled = true;
+                        failure = error;
+                        item = null;
+                    } else if (demand > 0 && !buffer.isEmpty()) {
+                        demand--;
+                        item = buffer.pollFirst();
+                        failure = null;
+                    } else {
+                        return;
+                    }
+                }
+                if (item == null) {
+                    subscriptions.remove(this);
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(item);
+                } catch (Throwable t) {
+                    // Um assinante que falha deixa de receber eventos
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Uma conexão com o ZooKeeper que grava a latência de cada operação, síncrona ou assíncrona, no
+ * {@link BarrierFlightRecorder} global, além das notificações recebidas pelo observador padrão e pelos observadores
+ * passados a cada operação.
+ * <p>
+ * Apenas os métodos que de fato enviam a requisição são sobrescritos (as sobrecargas com {@code boolean watch},
+ * por exemplo, delegam para as sobrecargas com {@link Watcher}), para que cada operação seja gravada uma única vez.
+ * As criações são gravadas com o código da operação que o cliente de fato envia para o modo de criação
+ * ({@code createContainer} e {@code createTTL}, por exemplo).
+ * <p>
+ * Para não alocar objetos a cada operação, as respostas assíncronas passam por um único retorno por tipo de resposta,
+ * que recebe o retorno e o contexto originais em um objeto reaproveitado entre as operações.
+ */
+class FlightRecordingZooKeeper extends ZooKeeper {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    // Operações assíncronas simultâneas acima deste número alocam o seu contexto
+    private static final int CALL_POOL_SIZE = 64;
+
+    private final int barrierId;
+    private final RecordingWatcher defaultWatcher;
+    private final ArrayBlockingQueue<Call> calls = new ArrayBlockingQueue<>(CALL_POOL_SIZE);
+
+    FlightRecordingZooKeeper(String connectString, int sessionTimeout, Watcher watcher, int barrierId)
+            throws IOException {
+        this(connectString, sessionTimeout, new RecordingWatcher(watcher, barrierId), barrierId);
+    }
+
+    private FlightRecordingZooKeeper(String connectString, int sessionTimeout, RecordingWatcher defaultWatcher,
+                                     int barrierId) throws IOException {
+        super(connectString, sessionTimeout, defaultWatcher);
+        this.defaultWatcher = defaultWatcher;
+        this.barrierId = barrierId;
+    }
+
+    /**
+     * Um observador que grava as notificações antes de repassá-las.
+     * <p>
+     * Dois observadores que repassam para o mesmo observador são iguais, pois o ZooKeeper descarta observadores iguais
+     * registrados no mesmo nó: sem isso, um observador registrado duas vezes seria notificado duas vezes.
+     */
+    private static final class RecordingWatcher implements Watcher {
+        private final Watcher watcher;
+        private final int barrierId;
+
+        private RecordingWatcher(Watcher watcher, int barrierId) {
+            this.watcher = watcher;
+            this.barrierId = barrierId;
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            RECORDER.record(BarrierFlightRecorder.Event.WATCH, barrierId,
+                    event.getType().getIntValue(), event.getState().getIntValue());
+            watcher.process(event);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof RecordingWatcher && ((RecordingWatcher) other).watcher.equals(watcher);
+        }
+
+        @Override
+        public int hashCode() {
+            return watcher.hashCode();
+        }
+    }
+
+    /**
+     * Uma operação assíncrona em andamento, passada como contexto para o retorno compartilhado.
+     */
+    private static final class Call {
+        private int opCode;
+        private long start;
+        private Object cb;
+        private Object ctx;
+    }
+
+    /**
+     * Retorna um observador que grava as notificações de {@code watcher}. O observador padrão, passado pelas
+     * sobrecargas com {@code boolean watch} ou diretamente, é envolvido uma única vez, na criação da conexão.
+     */
+    private Watcher recording(Watcher watcher) {
+        if (watcher == null || watcher instanceof RecordingWatcher) {
+            return watcher;
+        }
+        if (watcher == defaultWatcher.watcher) {
+            return defaultWatcher;
+        }
+        return new RecordingWatcher(watcher, barrierId);
+    }
+
+    /**
+     * Inicia uma operação assíncrona, reaproveitando um contexto livre.
+     */
+    private Call start(int opCode, Object cb, Object ctx) {
+        Call call = calls.poll();
+        if (call == null) {
+            call = new Call();
+        }
+        call.opCode = opCode;
+        call.cb = cb;
+        call.ctx = ctx;
+        call.start = System.nanoTime();
+        return call;
+    }
+
+    /**
+     * Grava o resultado de uma operação assíncrona e devolve o seu contexto, retornando o contexto original.
+     */
+    private Object complete(Call call, int rc) {
+        // Um nó inexistente não é um erro de exists()
+        final boolean missing = call.opCode == ZooDefs.OpCode.exists && rc == KeeperException.Code.NONODE.intValue();
+        recordResult(call.opCode, call.start, missing ? KeeperException.Code.OK.intValue() : rc);
+        final Object ctx = call.ctx;
+        call.cb = null;
+        call.ctx = null;
+        calls.offer(call);
+        return ctx;
+    }
+
+    private final AsyncCallback.StringCallback stringCallback = (rc, path, ctx, name) -> {
+        final AsyncCallback.StringCallback cb = (AsyncCallback.StringCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, name);
+        }
+    };
+
+    private final AsyncCallback.Create2Callback create2Callback = (rc, path, ctx, name, stat) -> {
+        final AsyncCallback.Create2Callback cb = (AsyncCallback.Create2Callback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, name, stat);
+        }
+    };
+
+    private final AsyncCallback.VoidCallback voidCallback = (rc, path, ctx) -> {
+        final AsyncCallback.VoidCallback cb = (AsyncCallback.VoidCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original);
+        }
+    };
+
+    private final AsyncCallback.MultiCallback multiCallback = (rc, path, ctx, results) -> {
+        final AsyncCallback.MultiCallback cb = (AsyncCallback.MultiCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, results);
+        }
+    };
+
+    private final AsyncCallback.StatCallback statCallback = (rc, path, ctx, stat) -> {
+        final AsyncCallback.StatCallback cb = (AsyncCallback.StatCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, stat);
+        }
+    };
+
+    private final AsyncCallback.DataCallback dataCallback = (rc, path, ctx, data, stat) -> {
+        final AsyncCallback.DataCallback cb = (AsyncCallback.DataCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, data, stat);
+        }
+    };
+
+    private final AsyncCallback.ChildrenCallback childrenCallback = (rc, path, ctx, children) -> {
+        final AsyncCallback.ChildrenCallback cb = (AsyncCallback.ChildrenCallback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, children);
+        }
+    };
+
+    private final AsyncCallback.Children2Callback children2Callback = (rc, path, ctx, children, stat) -> {
+        final AsyncCallback.Children2Callback cb = (AsyncCallback.Children2Callback) ((Call) ctx).cb;
+        final Object original = complete((Call) ctx, rc);
+        if (cb != null) {
+            cb.processResult(rc, path, original, children, stat);
+        }
+    };
+
+    private void recordSuccess(int opCode, long start) {
+        RECORDER.record(BarrierFlightRecorder.Event.ZK_OP, barrierId, opCode, System.nanoTime() - start);
+    }
+
+    private void recordError(int opCode, KeeperException e) {
+        RECORDER.record(BarrierFlightRecorder.Event.ZK_ERROR, barrierId, opCode, e.code().intValue());
+    }
+
+    /**
+     * Grava o resultado de uma operação assíncrona, a partir do código recebido no retorno.
+     */
+    private void recordResult(int opCode, long start, int rc) {
+        if (rc == KeeperException.Code.OK.intValue()) {
+            recordSuccess(opCode, start);
+        } else {
+            RECORDER.record(BarrierFlightRecorder.Event.ZK_ERROR, barrierId, opCode, rc);
+        }
+    }
+
+    private static int createOpCode(CreateMode createMode, int opCode) {
+        if (createMode.isContainer()) {
+            return ZooDefs.OpCode.createContainer;
+        }
+        if (createMode.isTTL()) {
+            return ZooDefs.OpCode.createTTL;
+        }
+        return opCode;
+    }
+
+    @Override
+    public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode)
+            throws KeeperException, InterruptedException {
+        final int opCode = createOpCode(createMode, ZooDefs.OpCode.create);
+        final long start = System.nanoTime();
+        try {
+            final String result = super.create(path, data, acl, createMode);
+            recordSuccess(opCode, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(opCode, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode, Stat stat, long ttl)
+            throws KeeperException, InterruptedException {
+        final int opCode = createOpCode(createMode, ZooDefs.OpCode.create2);
+        final long start = System.nanoTime();
+        try {
+            final String result = super.create(path, data, acl, createMode, stat, ttl);
+            recordSuccess(opCode, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(opCode, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void create(String path, byte[] data, List<ACL> acl, CreateMode createMode,
+                       AsyncCallback.StringCallback cb, Object ctx) {
+        final int opCode = createOpCode(createMode, ZooDefs.OpCode.create);
+        super.create(path, data, acl, createMode, stringCallback, start(opCode, cb, ctx));
+    }
+
+    @Override
+    public void create(String path, byte[] data, List<ACL> acl, CreateMode createMode,
+                       AsyncCallback.Create2Callback cb, Object ctx, long ttl) {
+        final int opCode = createOpCode(createMode, ZooDefs.OpCode.create2);
+        super.create(path, data, acl, createMode, create2Callback, start(opCode, cb, ctx), ttl);
+    }
+
+    @Override
+    public void delete(String path, int version) throws InterruptedException, KeeperException {
+        final long start = System.nanoTime();
+        try {
+            super.delete(path, version);
+            recordSuccess(ZooDefs.OpCode.delete, start);
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.delete, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String path, int version, AsyncCallback.VoidCallback cb, Object ctx) {
+        super.delete(path, version, voidCallback, start(ZooDefs.OpCode.delete, cb, ctx));
+    }
+
+    @Override
+    public List<OpResult> multi(Iterable<Op> ops) throws InterruptedException, KeeperException {
+        final long start = System.nanoTime();
+        try {
+            final List<OpResult> result = super.multi(ops);
+            recordSuccess(ZooDefs.OpCode.multi, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.multi, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void multi(Iterable<Op> ops, AsyncCallback.MultiCallback cb, Object ctx) {
+        super.multi(ops, multiCallback, start(ZooDefs.OpCode.multi, cb, ctx));
+    }
+
+    @Override
+    public void removeWatches(String path, Watcher watcher, Watcher.WatcherType watcherType, boolean local)
+            throws InterruptedException, KeeperException {
+        // Os observadores foram registrados com o envoltório que grava as notificações
+        final long start = System.nanoTime();
+        try {
+            super.removeWatches(path, recording(watcher), watcherType, local);
+            recordSuccess(ZooDefs.OpCode.removeWatches, start);
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.removeWatches, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeWatches(String path, Watcher watcher, Watcher.WatcherType watcherType, boolean local,
+                              AsyncCallback.VoidCallback cb, Object ctx) {
+        super.removeWatches(path, recording(watcher), watcherType, local, voidCallback,
+                start(ZooDefs.OpCode.removeWatches, cb, ctx));
+    }
+
+    @Override
+    public Stat exists(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final Stat result = super.exists(path, recording(watcher));
+            recordSuccess(ZooDefs.OpCode.exists, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.exists, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void exists(String path, Watcher watcher, AsyncCallback.StatCallback cb, Object ctx) {
+        super.exists(path, recording(watcher), statCallback, start(ZooDefs.OpCode.exists, cb, ctx));
+    }
+
+    @Override
+    public byte[] getData(String path, Watcher watcher, Stat stat) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final byte[] result = super.getData(path, recording(watcher), stat);
+            recordSuccess(ZooDefs.OpCode.getData, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.getData, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void getData(String path, Watcher watcher, AsyncCallback.DataCallback cb, Object ctx) {
+        super.getData(path, recording(watcher), dataCallback, start(ZooDefs.OpCode.getData, cb, ctx));
+    }
+
+    @Override
+    public Stat setData(String path, byte[] data, int version) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final Stat result = super.setData(path, data, version);
+            recordSuccess(ZooDefs.OpCode.setData, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.setData, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setData(String path, byte[] data, int version, AsyncCallback.StatCallback cb, Object ctx) {
+        super.setData(path, data, version, statCallback, start(ZooDefs.OpCode.setData, cb, ctx));
+    }
+
+    @Override
+    public List<String> getChildren(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final List<String> result = super.getChildren(path, recording(watcher));
+            recordSuccess(ZooDefs.OpCode.getChildren, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.getChildren, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void getChildren(String path, Watcher watcher, AsyncCallback.ChildrenCallback cb, Object ctx) {
+        super.getChildren(path, recording(watcher), childrenCallback, start(ZooDefs.OpCode.getChildren, cb, ctx));
+    }
+
+    @Override
+    public List<String> getChildren(String path, Watcher watcher, Stat stat)
+            throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final List<String> result = super.getChildren(path, recording(watcher), stat);
+            recordSuccess(ZooDefs.OpCode.getChildren2, start);
+            return result;
+        } catch (KeeperException e) {
+            recordError(ZooDefs.OpCode.getChildren2, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void getChildren(String path, Watcher watcher, AsyncCallback.Children2Callback cb, Object ctx) {
+        super.getChildren(path, recording(watcher), children2Callback, start(ZooDefs.OpCode.getChildren2, cb, ctx));
+    }
+}
@@ -0,0 +1,135 @@
+package br.ufpa.icen.lib;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Define como os participantes de uma barreira são liberados.
+ * <p>
+ * Por padrão ({@link #immediate()}), todos os participantes são liberados ao mesmo tempo. Se centenas de
+ * participantes acessarem o mesmo sistema logo após a barreira, o pico de carga pode custar mais do que a
+ * sincronização economizou. Com {@link #waves(int, long, TimeUnit)}, os participantes são liberados em ondas de
+ * no máximo {@code waveSize} participantes a cada intervalo, transformando o pico em uma rampa previsível.
+ * <p>
+ * No extremo oposto, {@link #synchronizedStart(long, TimeUnit)} reduz a diferença entre os instantes em que os
+ * participantes são liberados: as notificações do ZooKeeper chegam aos participantes espalhadas por alguns
+ * milissegundos, então, em vez de prosseguir ao receber a notificação, cada participante aguarda um mesmo instante
+ * alvo, um pouco no futuro.
+ * <p>
+ * Instâncias são imutáveis.
+ */
+public final class ReleasePolicy {
+    private static final ReleasePolicy IMMEDIATE = new ReleasePolicy(0, 0L, false, 0L);
+
+    private final int waveSize;
+    private final long intervalNanos;
+    private final boolean byPriority;
+    private final long startLeadNanos;
+
+    private ReleasePolicy(int waveSize, long intervalNanos, boolean byPriority, long startLeadNanos) {
+        this.waveSize = waveSize;
+        this.intervalNanos = intervalNanos;
+        this.byPriority = byPriority;
+        this.startLeadNanos = startLeadNanos;
+    }
+
+    /**
+     * Libera todos os participantes ao mesmo tempo.
+     */
+    public static ReleasePolicy immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * Libera no máximo {@code waveSize} participantes a cada {@code interval}, na ordem de chegada.
+     *
+     * @param waveSize Número máximo de participantes liberados em cada onda.
+     * @param interval Intervalo entre duas ondas.
+     * @param unit     Unidade de {@code interval}.
+     */
+    public static ReleasePolicy waves(int waveSize, long interval, TimeUnit unit) {
+        if (waveSize < 1) {
+            throw new IllegalArgumentException("waveSize deve ser positivo: " + waveSize);
+        }
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval não pode ser negativo: " + interval);
+        }
+        return new ReleasePolicy(waveSize, unit.toNanos(interval), false, 0L);
+    }
+
+    /**
+     * Libera todos os participantes em um mesmo instante alvo, {@code lead} após a liberação da barreira no relógio
+     * do servidor.
+     * <p>
+     * O instante alvo é calculado a partir do {@code ctime} do nó que libera a barreira, e convertido para o relógio
+     * local de cada participante pela diferença entre os relógios medida na sua chegada. O participante dorme até
+     * pouco antes do instante alvo e aguarda o restante em espera ativa. {@code lead} deve ser maior que o tempo que
+     * a notificação leva para chegar a todos os participantes; quem a receber depois do instante alvo prossegue
+     * imediatamente.
+     * <p>
+     * Apenas a {@link ZooKeeperDoubleBarrier} considera o instante alvo; as demais barreiras liberam os participantes
+     * ao receberem a notificação.
+     *
+     * @param lead Antecedência do instante alvo em relação à liberação da barreira.
+     * @param unit Unidade de {@code lead}.
+     */
+    public static ReleasePolicy synchronizedStart(long lead, TimeUnit unit) {
+        if (lead <= 0) {
+            throw new IllegalArgumentException("lead deve ser positivo: " + lead);
+        }
+        return new ReleasePolicy(0, 0L, false, unit.toNanos(lead));
+    }
+
+    /**
+     * Retorna uma política igual a esta, mas que libera primeiro os participantes de maior prioridade, e, entre
+     * participantes de mesma prioridade, na ordem de chegada.
+     * <p>
+     * Apenas barreiras cujos participantes informam uma prioridade (como a {@link ZooKeeperWaveBarrier}) a
+     * consideram; as demais usam apenas a ordem de chegada.
+     */
+    public ReleasePolicy byPriority() {
+        return new ReleasePolicy(waveSize, intervalNanos, true, startLeadNanos);
+    }
+
+    /**
+     * Retorna {@code true} se todos os participantes são liberados ao receberem a notificação, sem ondas nem
+     * instante alvo.
+     */
+    public boolean isImmediate() {
+        return waveSize == 0 && startLeadNanos == 0L;
+    }
+
+    /**
+     * Retorna {@code true} se os participantes são liberados em um mesmo instante alvo.
+     */
+    public boolean isSynchronizedStart() {
+        return startLeadNanos > 0L;
+    }
+
+    public long getStartLead(TimeUnit unit) {
+        return unit.convert(startLeadNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isByPriority() {
+        return byPriority;
+    }
+
+    /**
+     * Retorna o número máximo de participantes liberados em cada onda, ou {@link Integer#MAX_VALUE} se todos
+     * forem liberados ao mesmo tempo.
+     */
+    public int getWaveSize() {
+        return waveSize == 0 ? Integer.MAX_VALUE : waveSize;
+    }
+
+    public long getInterval(TimeUnit unit) {
+        return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retorna quanto tempo, após a liberação da barreira, o participante na posição {@code position} da ordem de
+     * liberação (começando em 0) deve aguardar antes de prosseguir.
+     */
+    public long delayNanos(int position) {
+        return waveSize == 0 ? 0L : (position / waveSize) * intervalNanos;
+    }
+}
@@ -0,0 +1,127 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Uma barreira distribuída dupla em que apenas um participante eleito, o agregador, conta as chegadas.
+ * <p>
+ * Na {@link ZooKeeperDoubleBarrier}, cada participante lista os filhos da barreira ao chegar para decidir se é o
+ * último, de forma que a entrada de N participantes custa O(N²) leituras no total. Nesta barreira, o primeiro
+ * participante a criar o nó efêmero {@code barrierNode-aggregator} se torna o agregador: ele observa os filhos da
+ * barreira e cria o nó /ready quando {@value #PARTICIPANTS} participantes chegarem. Os demais participantes fazem
+ * apenas um número constante de operações (criar o próprio nó, tentar criar o nó do agregador e observar o nó
+ * /ready e o nó do agregador), e assumem a agregação se o agregador sair antes de liberar a barreira.
+ * <p>
+ * A saída da barreira é a mesma da {@link ZooKeeperDoubleBarrier}.
+ */
+public class ZooKeeperAggregatedDoubleBarrier extends ZooKeeperDoubleBarrier {
+    private final String aggregatorNode;
+    // Acordado pelos observadores da espera atual e pela criação do nó /ready
+    private volatile CountDownLatch wake = new CountDownLatch(1);
+    private volatile boolean ready;
+
+    /**
+     * Inicializa a barreira dupla com agregador do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperAggregatedDoubleBarrier(String connectString, String barrierNode)
+            throws IOException, InterruptedException, KeeperException {
+        this(connectString, barrierNode, ReleasePolicy.immediate());
+    }
+
+    /**
+     * Inicializa a barreira dupla com agregador do ZooKeeper, liberando os participantes na entrada de acordo com
+     * {@code releasePolicy}.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @param releasePolicy Política de liberação dos participantes na entrada.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperAggregatedDoubleBarrier(String connectString, String barrierNode, ReleasePolicy releasePolicy)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, barrierNode, releasePolicy);
+        // O nó do agregador fica fora da barreira, para não ser contado como participante
+        this.aggregatorNode = barrierNode + "-aggregator";
+    }
+
+    @Override
+    protected void onReady() {
+        super.onReady();
+        ready = true;
+        wake.countDown();
+    }
+
+    /**
+     * Prepara uma nova espera, retornando {@code true} se a barreira já foi liberada.
+     * <p>
+     * O nó /ready é removido pelo último participante a sair, de forma que um participante atrasado pode não
+     * encontrá-lo; por isso a liberação é reconhecida pelo observador registrado na chegada ({@link #onReady()}).
+     */
+    private boolean prepareWait() {
+        wake = new CountDownLatch(1);
+        return ready;
+    }
+
+    @Override
+    protected Stat awaitRelease() throws KeeperException, InterruptedException {
+        for (; ; ) {
+            // Acordado pela criação do nó /ready ou pela saída do agregador
+            if (prepareWait()) {
+                return null;
+            }
+            final CountDownLatch current = wake;
+            final Watcher watcher = event -> current.countDown();
+            if (zk.exists(readyPath, watcher) != null) {
+                return null;
+            }
+            try {
+                zk.create(aggregatorNode, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            } catch (KeeperException.NodeExistsException e) {
+                if (zk.exists(aggregatorNode, watcher) != null) {
+                    ZooKeeperWaits.await(current);
+                }
+                // O agregador saiu: verifica se ele liberou a barreira antes, ou se outro deve assumir
+                continue;
+            }
+            return aggregate();
+        }
+    }
+
+    /**
+     * Observa os filhos da barreira até que {@value #PARTICIPANTS} participantes cheguem, e então cria o nó /ready.
+     */
+    private Stat aggregate() throws KeeperException, InterruptedException {
+        try {
+            for (; ; ) {
+                if (prepareWait()) {
+                    return null;
+                }
+                final CountDownLatch changed = wake;
+                final List<String> children = zk.getChildren(barrierNode, event -> changed.countDown());
+                if (children.contains("ready")) {
+                    // Um agregador anterior já liberou a barreira antes de sair
+                    return null;
+                }
+                if (children.size() >= PARTICIPANTS) {
+                    return createReady(children);
+                }
+                ZooKeeperWaits.await(changed);
+            }
+        } finally {
+            // Libera a eleição para a próxima rodada; os demais participantes observam o nó /ready antes deste
+            try {
+                zk.delete(aggregatorNode, -1);
+            } catch (KeeperException.NoNodeException ignored) {
+            }
+        }
+    }
+}
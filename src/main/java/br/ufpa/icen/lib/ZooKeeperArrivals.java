@@ -0,0 +1,430 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Chegadas em uma barreira restrita e reutilizável, representadas por nós efêmeros ligados às sessões dos
+ * participantes.
+ * <p>
+ * O nó da barreira guarda a geração atual, e cada chegada é um nó efêmero e sequencial
+ * {@code node/gen-<g>/arrive-<sequência>}, em um contêiner por geração. Se a sessão de um participante terminar, a
+ * sua chegada desaparece e a prontidão da geração é recalculada, de forma que um participante que falhou não
+ * completa a barreira antes da hora nem a mantém bloqueada: basta que outro participante chegue no seu lugar.
+ * <p>
+ * Os {@code participants} primeiros nós da geração, em ordem de sequência, formam o grupo. O participante cujo nó é
+ * o último do grupo completa a geração, e é ele quem a libera com {@link #release(Arrival)}, gravando a sequência do
+ * seu nó no contêiner da geração e avançando a geração do nó da barreira em uma única requisição {@code multi()}.
+ * Chegadas além do grupo aguardam a liberação e então chegam novamente na geração seguinte.
+ * <p>
+ * Para evitar que cada chegada acorde todos os participantes, os membros do grupo observam apenas o nó da barreira.
+ * As chegadas além do grupo formam uma fila: apenas a primeira observa o nó da barreira e os filhos da geração, pois
+ * a falha de um membro pode torná-la a última do grupo, e cada uma das demais observa apenas a chegada anterior.
+ * Quando a geração é liberada, a primeira entra na geração seguinte e sai desta, o que acorda a próxima, e assim por
+ * diante: cada chegada além do grupo custa uma notificação e uma criação, e elas mantêm a ordem de chegada. Uma
+ * chegada que veja a liberação antes da anterior ter se movido (por ter acabado de chegar, por exemplo) também
+ * aguarda a sua saída antes de entrar na geração seguinte.
+ */
+final class ZooKeeperArrivals {
+    private static final String GENERATION_PREFIX = "gen-";
+    private static final String ARRIVAL_PREFIX = "arrive-";
+    private static final Comparator<String> BY_SEQUENCE = Comparator.comparingLong(ZooKeeperArrivals::sequenceOf);
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+
+    private final ZooKeeper zk;
+    private final String node;
+    private final int participants;
+    private final long ttlMillis;
+    // Identificador da barreira no gravador, ou -1 se as contagens de chegadas não devem ser gravadas
+    private final int recorderId;
+
+    /**
+     * Uma chegada em uma geração da barreira.
+     */
+    static final class Arrival {
+        private final long generation;
+        private final String path;
+        private final boolean last;
+
+        private Arrival(long generation, String path, boolean last) {
+            this.generation = generation;
+            this.path = path;
+            this.last = last;
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Retorna {@code true} se esta chegada completou a geração, e por isso deve liberá-la.
+         */
+        boolean isLast() {
+            return last;
+        }
+    }
+
+    ZooKeeperArrivals(ZooKeeper zk, String node, int participants, long ttlMillis) {
+        this(zk, node, participants, ttlMillis, -1);
+    }
+
+    ZooKeeperArrivals(ZooKeeper zk, String node, int participants, long ttlMillis, int recorderId) {
+        if (participants < 1) {
+            throw new IllegalArgumentException("participants deve ser positivo: " + participants);
+        }
+        this.zk = zk;
+        this.node = node;
+        this.participants = participants;
+        this.ttlMillis = ttlMillis;
+        this.recorderId = recorderId;
+    }
+
+    String getNode() {
+        return node;
+    }
+
+    int getParticipants() {
+        return participants;
+    }
+
+    /**
+     * Cria o nó da barreira, caso ainda não exista.
+     */
+    void initialize() throws KeeperException, InterruptedException {
+        if (zk.exists(node, false) == null) {
+            ZooKeeperNodes.createPersistent(zk, node, encode(0), ttlMillis);
+        }
+    }
+
+    /**
+     * Chega na geração atual e aguarda até que ela seja completada por esta chegada ou liberada.
+     * <p>
+     * Se o nó da barreira não existir (por ter sido removido pelo servidor após ficar sem modificações, por
+     * exemplo), ele é recriado, e a chegada aguarda os demais participantes normalmente.
+     *
+     * @return a chegada, que deve ser liberada com {@link #release(Arrival)} se for a última do grupo, e então
+     * removida com {@link #leave(Arrival)}.
+     */
+    Arrival arrive() throws KeeperException, InterruptedException {
+        // Chegada na geração anterior, da qual esta ficou além do grupo liberado
+        String previous = null;
+        while (true) {
+            final long generation = currentGeneration();
+            final String path;
+            try {
+                path = join(generation);
+            } catch (KeeperException.NoNodeException e) {
+                // O nó da barreira foi removido entre a leitura da geração e a chegada
+                continue;
+            }
+            // Uma chegada além do grupo entra na geração seguinte antes de sair desta: como a próxima chegada além do
+            // grupo só se move quando esta sai (veja `await`), elas mantêm a ordem de chegada
+            if (previous != null) {
+                leave(previous);
+            }
+            final Arrival arrival = await(generation, path);
+            if (arrival != null) {
+                return arrival;
+            }
+            previous = path;
+        }
+    }
+
+    /**
+     * Cria uma chegada na geração {@code generation}, sem aguardar.
+     *
+     * @return o caminho do nó da chegada.
+     */
+    String join(long generation) throws KeeperException, InterruptedException {
+        final String generationNode = generationNode(generation);
+        while (true) {
+            try {
+                return zk.create(generationNode + "/" + ARRIVAL_PREFIX, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                        CreateMode.EPHEMERAL_SEQUENTIAL);
+            } catch (KeeperException.NoNodeException e) {
+                // O contêiner da geração ainda não existe, ou foi removido pelo servidor enquanto estava vazio
+                if (zk.exists(node, false) == null) {
+                    throw e;
+                }
+                ZooKeeperNodes.createContainer(zk, generationNode);
+            }
+        }
+    }
+
+    private Arrival await(long generation, String path) throws KeeperException, InterruptedException {
+        final String generationNode = generationNode(generation);
+        final String name = path.substring(generationNode.length() + 1);
+        // Apenas uma chegada além do grupo pode passar a fazer parte dele, se um membro falhar
+        boolean beyondGroup = true;
+        while (true) {
+            final CountDownLatch changed = new CountDownLatch(1);
+            final Watcher watcher = event -> changed.countDown();
+            if (!beyondGroup) {
+                // Um membro do grupo aguarda apenas a liberação
+                final long current = generation(watcher);
+                if (current < 0 || current > generation) {
+                    return new Arrival(generation, path, false);
+                }
+                ZooKeeperWaits.await(changed);
+                continue;
+            }
+            final long current = generation(null);
+            if (current < 0 || current > generation) {
+                final long last = current < 0 ? Long.MAX_VALUE : lastSequence(generationNode);
+                if (sequenceOf(name) <= last) {
+                    return new Arrival(generation, path, false);
+                }
+                // A chegada ficou além do grupo liberado. Ela só entra na geração seguinte depois da chegada além
+                // do grupo anterior, que sai desta geração ao entrar na seguinte: assim, elas mantêm a ordem de
+                // chegada mesmo que esta veja a liberação primeiro
+                final String previous = previousBeyond(generationNode, name, last);
+                if (previous == null || zk.exists(generationNode + "/" + previous, watcher) == null) {
+                    return null;
+                }
+                ZooKeeperWaits.await(changed);
+                continue;
+            }
+            final List<String> arrivals;
+            try {
+                arrivals = arrivals(generationNode, null);
+            } catch (KeeperException.NoNodeException e) {
+                // O contêiner só é removido depois das chegadas, como ao remover a barreira
+                continue;
+            }
+            final int index = arrivals.indexOf(name);
+            if (index < 0 && generation(null) != generation) {
+                // A chegada foi removida junto com a barreira, depois de a geração ter sido liberada
+                continue;
+            }
+            if (index < 0) {
+                // A sessão expirou e a chegada foi removida pelo servidor
+                throw new KeeperException.NoNodeException(path);
+            }
+            // Os membros de um grupo liberado removem as suas chegadas, o que também diminui a posição das
+            // chegadas além do grupo: a posição só vale se a geração não tiver sido liberada nesse meio tempo
+            if (generation(null) != generation) {
+                continue;
+            }
+            if (recorderId >= 0) {
+                RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_ENTER, arrivals.size());
+            }
+            if (index == participants - 1) {
+                return new Arrival(generation, path, true);
+            }
+            // Como chegadas novas sempre ficam no fim da fila, a posição de um nó nunca aumenta
+            beyondGroup = index >= participants;
+            if (!beyondGroup) {
+                continue;
+            }
+            if (index == participants) {
+                // A primeira chegada além do grupo observa a liberação e as chegadas, pois a falha de um membro a
+                // torna a última do grupo. As observações são feitas antes de confirmar a posição, para que nenhuma
+                // mudança seja perdida
+                if (generation(watcher) != generation || arrivals(generationNode, watcher).indexOf(name) != index) {
+                    continue;
+                }
+            } else if (zk.exists(generationNode + "/" + arrivals.get(index - 1), watcher) == null) {
+                // As demais formam uma fila: cada uma observa apenas a anterior, que sai da geração ao entrar na
+                // seguinte, ou que passa a ser a primeira além do grupo
+                continue;
+            }
+            ZooKeeperWaits.await(changed);
+        }
+    }
+
+    /**
+     * Libera a geração completada por {@code arrival}, caso ela ainda não tenha sido liberada.
+     */
+    void release(Arrival arrival) throws KeeperException, InterruptedException {
+        final String generationNode = generationNode(arrival.generation);
+        final byte[] lastSequence = encode(sequenceOf(arrival.path));
+        final Stat stat = new Stat();
+        while (true) {
+            final long current;
+            try {
+                current = decode(zk.getData(node, false, stat));
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            }
+            if (current > arrival.generation) {
+                return;
+            }
+            try {
+                zk.multi(Arrays.asList(
+                        Op.setData(generationNode, lastSequence, -1),
+                        Op.setData(node, encode(arrival.generation + 1), stat.getVersion())));
+                return;
+            } catch (KeeperException.BadVersionException | KeeperException.NoNodeException ignored) {
+                // O nó foi modificado ou removido ao mesmo tempo; verifica novamente a geração
+            }
+        }
+    }
+
+    /**
+     * Remove a chegada, após a liberação da sua geração.
+     */
+    void leave(Arrival arrival) {
+        leave(arrival.path);
+    }
+
+    private void leave(String path) {
+        // O resultado não é aguardado: o nó é efêmero e seria removido junto com a sessão de qualquer forma
+        zk.delete(path, -1, (rc, p, ctx) -> {
+        }, null);
+    }
+
+    /**
+     * Remove o nó da barreira e os contêineres das gerações, liberando os participantes da geração atual.
+     * <p>
+     * A geração é avançada antes da remoção das chegadas, para que os participantes que aguardam a vejam liberada
+     * em vez de perderem as suas chegadas. Um participante que chegar depois recria o nó.
+     */
+    void remove() throws KeeperException, InterruptedException {
+        final long generation = generation(null);
+        if (generation < 0) {
+            return;
+        }
+        try {
+            zk.setData(node, encode(generation + 1), -1);
+        } catch (KeeperException.NoNodeException e) {
+            return;
+        }
+        while (true) {
+            try {
+                for (String child : zk.getChildren(node, false)) {
+                    deleteGeneration(node + "/" + child);
+                }
+                zk.delete(node, -1);
+                return;
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            } catch (KeeperException.NotEmptyException e) {
+                // Um participante chegou durante a remoção
+            }
+        }
+    }
+
+    private void deleteGeneration(String generationNode) throws KeeperException, InterruptedException {
+        while (true) {
+            try {
+                for (String arrival : zk.getChildren(generationNode, false)) {
+                    try {
+                        zk.delete(generationNode + "/" + arrival, -1);
+                    } catch (KeeperException.NoNodeException ignored) {
+                        // O participante já saiu
+                    }
+                }
+                zk.delete(generationNode, -1);
+                return;
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            } catch (KeeperException.NotEmptyException e) {
+                // Um participante chegou durante a remoção
+            }
+        }
+    }
+
+    /**
+     * Obtém o número de chegadas vivas na geração atual.
+     */
+    int count() throws KeeperException, InterruptedException {
+        final long generation = generation(null);
+        if (generation < 0) {
+            return 0;
+        }
+        try {
+            return zk.getChildren(generationNode(generation), false).size();
+        } catch (KeeperException.NoNodeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Obtém a geração atual, recriando o nó da barreira caso ele não exista.
+     */
+    private long currentGeneration() throws KeeperException, InterruptedException {
+        while (true) {
+            final long generation = generation(null);
+            if (generation >= 0) {
+                return generation;
+            }
+            initialize();
+        }
+    }
+
+    /**
+     * Obtém a geração atual, ou -1 se o nó da barreira não existir.
+     */
+    long generation(Watcher watcher) throws KeeperException, InterruptedException {
+        try {
+            return decode(watcher == null ? zk.getData(node, false, null) : zk.getData(node, watcher, null));
+        } catch (KeeperException.NoNodeException e) {
+            return -1;
+        }
+    }
+
+    private long lastSequence(String generationNode) throws KeeperException, InterruptedException {
+        try {
+            final byte[] data = zk.getData(generationNode, false, null);
+            return data.length == 0 ? Long.MAX_VALUE : decode(data);
+        } catch (KeeperException.NoNodeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Retorna a chegada imediatamente anterior a {@code name} entre as chegadas além do grupo liberado, cuja
+     * sequência é maior que {@code lastSequence}, ou {@code null} se {@code name} for a primeira delas.
+     */
+    private String previousBeyond(String generationNode, String name, long lastSequence)
+            throws KeeperException, InterruptedException {
+        final List<String> arrivals;
+        try {
+            arrivals = arrivals(generationNode, null);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+        final int index = arrivals.indexOf(name);
+        if (index <= 0) {
+            return null;
+        }
+        final String previous = arrivals.get(index - 1);
+        return sequenceOf(previous) > lastSequence ? previous : null;
+    }
+
+    private List<String> arrivals(String generationNode, Watcher watcher) throws KeeperException, InterruptedException {
+        final List<String> arrivals = zk.getChildren(generationNode, watcher);
+        arrivals.sort(BY_SEQUENCE);
+        return arrivals;
+    }
+
+    private String generationNode(long generation) {
+        return node + "/" + GENERATION_PREFIX + generation;
+    }
+
+    private static long sequenceOf(String arrival) {
+        return Long.parseLong(arrival, arrival.length() - 10, arrival.length(), 10);
+    }
+
+    private static byte[] encode(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê um número gravado em um nó. Nós de barreiras criados por versões anteriores guardam um contador, ou
+     * {@code <geração>:<chegadas>}; apenas o primeiro número é considerado.
+     */
+    private static long decode(byte[] data) {
+        int end = 0;
+        while (end < data.length && data[end] != ':') {
+            end++;
+        }
+        return ZooKeeperNodes.parseLong(data, 0, end);
+    }
+}
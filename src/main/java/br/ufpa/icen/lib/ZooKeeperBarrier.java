@@ -17,7 +17,12 @@ import java.util.concurrent.*;
 public class ZooKeeperBarrier implements AutoCloseable {
     protected final ZooKeeper zk;
     protected final String barrierNode;
-    private final CountDownLatch latch = new CountDownLatch(1);
+    protected static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    protected static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    protected final int recorderId;
+    protected final ZooKeeperNodeCache cache;
+    private final Runnable cacheListener = this::onBarrierChanged;
+    private volatile CountDownLatch latch = new CountDownLatch(1);
 
     /**
      * Inicializa a barreira do ZooKeeper.
@@ -28,11 +33,16 @@ public class ZooKeeperBarrier implements AutoCloseable {
      */
     public ZooKeeperBarrier(String connectString, String barrierNode) throws IOException, InterruptedException, KeeperException {
         this.barrierNode = barrierNode;
+        this.recorderId = RECORDER.register(barrierNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
         this.zk = createZooKeeperConnection(connectString, event -> {
             if (event.getType() == Watcher.Event.EventType.NodeDeleted && event.getPath().equals(this.barrierNode)) {
                 latch.countDown();
             }
         });
+        this.cache = acquireNodeCache(connectString);
+        cache.retain(barrierNode);
+        cache.addListener(barrierNode, cacheListener);
     }
 
     public static void main(String[] args) {
@@ -103,22 +113,42 @@ public class ZooKeeperBarrier implements AutoCloseable {
     }
 
     protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
-        return new ZooKeeper(connectString, 3000, watcher);
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    /**
+     * Obtém o cache de nós consultado pela barreira: o compartilhado pelas barreiras do processo conectadas a
+     * {@code connectString}, ou, nos testes com um ZooKeeper simulado, um cache com sessões simuladas.
+     */
+    ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+        return ZooKeeperNodeCache.acquire(connectString);
+    }
+
+    private void onBarrierChanged() {
+        latch.countDown();
     }
 
     /**
      * Aguarda até que a barreira seja removida.
+     * <p>
+     * A existência do nó é consultada no {@link ZooKeeperNodeCache} compartilhado, de forma que várias barreiras
+     * aguardando o mesmo nó no processo geram uma única consulta ao ZooKeeper.
      *
      * @throws KeeperException      se o ZooKeeper encontrar um erro.
      * @throws InterruptedException se a thread for interrompida.
      */
     public void waitForBarrier() throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
         while (true) {
-            Stat stat = zk.exists(barrierNode, true);
+            // Cria a trava antes da consulta, para não perder uma notificação recebida entre as duas
+            latch = new CountDownLatch(1);
+            Stat stat = cache.exists(barrierNode);
             if (stat == null) {
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
                 return; // A barreira foi removida, pode prosseguir
             }
-            latch.await(); // Aguarda até que o nó seja excluído
+            ZooKeeperWaits.await(latch); // Aguarda até que o nó seja excluído
         }
     }
 
@@ -143,6 +173,11 @@ public class ZooKeeperBarrier implements AutoCloseable {
     @Override
     public void close() throws InterruptedException {
         zk.close();
+        cache.removeListener(barrierNode, cacheListener);
+        cache.release(barrierNode);
+        cache.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
     }
 }
 
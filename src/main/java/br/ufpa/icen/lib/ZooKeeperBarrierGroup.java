@@ -0,0 +1,189 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Um grupo de barreiras simples ({@link ZooKeeperBarrier}) aguardadas com uma única sessão do Apache ZooKeeper.
+ * <p>
+ * Cada caminho é uma barreira independente, liberada quando o seu nó é removido. Em vez de uma instância, uma
+ * sessão e uma thread bloqueada por barreira, o grupo verifica todos os caminhos com uma única requisição
+ * {@code multi()} e encaminha os eventos de todas as barreiras para um único observador.
+ */
+public class ZooKeeperBarrierGroup implements AutoCloseable {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    private final ZooKeeper zk;
+    private final int recorderId = RECORDER.register(getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()));
+    // Para cada caminho, as esperas interessadas na sua remoção
+    private final Map<String, List<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Inicializa o grupo de barreiras do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperBarrierGroup(String connectString) throws IOException {
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        this.zk = createZooKeeperConnection(connectString, event -> {
+            // Todos os eventos de remoção são encaminhados para as esperas do respectivo caminho
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                release(event.getPath());
+            }
+        });
+    }
+
+    protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    /**
+     * Aguarda até que todas as barreiras sejam removidas.
+     *
+     * @param paths Caminhos dos nós das barreiras.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro, inclusive ao observar uma das barreiras.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void waitAll(Collection<String> paths) throws KeeperException, InterruptedException {
+        final Set<String> distinctPaths = new LinkedHashSet<>(paths);
+        if (distinctPaths.isEmpty()) {
+            return;
+        }
+        await(new Waiter(distinctPaths, distinctPaths.size()));
+    }
+
+    /**
+     * Aguarda até que qualquer uma das barreiras seja removida.
+     *
+     * @param paths Caminhos dos nós das barreiras.
+     * @return o caminho da primeira barreira removida.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro, inclusive ao observar uma das barreiras.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public String waitAny(Collection<String> paths) throws KeeperException, InterruptedException {
+        final Set<String> distinctPaths = new LinkedHashSet<>(paths);
+        if (distinctPaths.isEmpty()) {
+            throw new IllegalArgumentException("nenhuma barreira informada");
+        }
+        final Waiter waiter = new Waiter(distinctPaths, 1);
+        await(waiter);
+        return waiter.first.get();
+    }
+
+    private void await(Waiter waiter) throws KeeperException, InterruptedException {
+        final List<String> paths = new ArrayList<>(waiter.pending);
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, paths.size());
+        // Registra a espera antes de consultar o ZooKeeper, para não perder nenhum evento
+        for (String path : paths) {
+            waiters.computeIfAbsent(path, p -> new CopyOnWriteArrayList<>()).add(waiter);
+        }
+        try {
+            // Verifica todos os caminhos com uma única requisição
+            final List<Op> ops = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                ops.add(Op.getData(path));
+            }
+            final List<OpResult> results = zk.multi(ops);
+            for (int i = 0; i < results.size(); i++) {
+                final String path = paths.get(i);
+                final OpResult result = results.get(i);
+                if (result instanceof OpResult.ErrorResult) {
+                    final KeeperException.Code code = KeeperException.Code.get(((OpResult.ErrorResult) result).getErr());
+                    if (code != KeeperException.Code.NONODE) {
+                        throw KeeperException.create(code, path);
+                    }
+                    // A barreira já foi removida
+                    release(path);
+                } else {
+                    // A barreira ainda existe: observa a sua remoção sem bloquear, em paralelo com as demais.
+                    // Se o nó for removido entre as duas requisições, a resposta informa que ele não existe.
+                    zk.exists(path, true, (rc, p, ctx, stat) -> {
+                        if (rc == KeeperException.Code.NONODE.intValue()) {
+                            release(p);
+                        } else if (rc != KeeperException.Code.OK.intValue()) {
+                            // Sem a resposta, o observador pode não ter sido registrado, e nenhum evento liberaria
+                            // este caminho
+                            waiter.fail(KeeperException.create(KeeperException.Code.get(rc), p));
+                        }
+                    }, null);
+                }
+            }
+            ZooKeeperWaits.await(waiter.latch);
+            if (waiter.error != null) {
+                throw waiter.error;
+            }
+            RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+        } finally {
+            // Remove esta espera dos caminhos que não foram liberados
+            for (String path : waiter.pending) {
+                waiters.computeIfPresent(path, (p, list) -> {
+                    list.remove(waiter);
+                    return list.isEmpty() ? null : list;
+                });
+            }
+        }
+    }
+
+    /**
+     * Libera todas as esperas interessadas na remoção de {@code path}.
+     */
+    private void release(String path) {
+        final List<Waiter> list = waiters.remove(path);
+        if (list != null) {
+            for (Waiter waiter : list) {
+                waiter.release(path);
+            }
+        }
+    }
+
+    /**
+     * Fecha a conexão com o ZooKeeper.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        zk.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
+    }
+
+    /**
+     * Uma chamada a {@link #waitAll(Collection)} ou {@link #waitAny(Collection)} em andamento.
+     */
+    private static final class Waiter {
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final CountDownLatch latch;
+        private final AtomicReference<String> first = new AtomicReference<>();
+        private volatile KeeperException error;
+
+        Waiter(Set<String> paths, int count) {
+            this.pending.addAll(paths);
+            this.latch = new CountDownLatch(count);
+        }
+
+        void release(String path) {
+            // Um caminho pode ser liberado tanto pelo evento quanto pela resposta de uma consulta
+            if (pending.remove(path)) {
+                first.compareAndSet(null, path);
+                latch.countDown();
+            }
+        }
+
+        void fail(KeeperException e) {
+            // Interrompe a espera, mesmo que restem outros caminhos
+            error = e;
+            while (latch.getCount() > 0) {
+                latch.countDown();
+            }
+        }
+    }
+}
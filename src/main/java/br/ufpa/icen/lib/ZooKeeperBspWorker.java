@@ -0,0 +1,380 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * Um trabalhador de um job <i>bulk-synchronous parallel</i> (BSP) sincronizado pelo Apache ZooKeeper.
+ * <p>
+ * O job é executado em superpassos. Em cada superpasso, cada trabalhador executa a função de computação com as
+ * mensagens recebidas no superpasso anterior, enviando novas mensagens para os demais trabalhadores. As mensagens
+ * ficam em memória até o fim da computação, e então são gravadas em um único lote por destinatário, na mesma
+ * requisição {@code multi()} que registra a chegada do trabalhador na barreira do superpasso. Assim, a troca de
+ * mensagens e a sincronização custam uma única escrita por superpasso.
+ * <p>
+ * Os nós de cada superpasso ficam em {@code jobNode/step-<s>}:
+ * <ul>
+ *     <li>{@code msg-<destino>-<origem>}: o lote de mensagens de um trabalhador para outro;</li>
+ *     <li>{@code arrive-<origem>}: a chegada de um trabalhador, indicando se ele votou para parar;</li>
+ *     <li>{@code ready}: criado pelo último trabalhador a chegar, indicando se o job terminou.</li>
+ * </ul>
+ * O job termina quando, em um mesmo superpasso, todos os trabalhadores votam para parar e nenhuma mensagem é
+ * enviada. O voto vale apenas para o superpasso em que foi feito: a computação é executada em todos os
+ * trabalhadores a cada superpasso, e um trabalhador que receber mensagens pode voltar a enviá-las.
+ * <p>
+ * Como cada lote é gravado em um único nó, o total de mensagens de um trabalhador para outro em um superpasso
+ * deve respeitar o tamanho máximo de um nó do ZooKeeper (1 MB, por padrão).
+ *
+ * @param <M> tipo das mensagens trocadas entre os trabalhadores.
+ */
+public class ZooKeeperBspWorker<M> implements AutoCloseable {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    private static final String READY = "ready";
+    private static final byte[] HALT = {1};
+    private static final byte[] CONTINUE = {0};
+
+    private final ZooKeeper zk;
+    private final String jobNode;
+    private final int workerIndex;
+    private final int numWorkers;
+    private final Function<M, byte[]> encoder;
+    private final Function<byte[], M> decoder;
+    private final int recorderId;
+    // Lotes lidos no superpasso atual, removidos junto com a chegada deste trabalhador
+    private final List<String> consumedBatches = new ArrayList<>();
+    private volatile String readyNode;
+    private volatile CountDownLatch readyLatch;
+
+    /**
+     * A computação executada por um trabalhador em cada superpasso.
+     *
+     * @param <M> tipo das mensagens trocadas entre os trabalhadores.
+     */
+    @FunctionalInterface
+    public interface Computation<M> {
+        void compute(Superstep<M> superstep) throws KeeperException, InterruptedException;
+    }
+
+    /**
+     * O contexto de um superpasso, usado pela computação para ler e enviar mensagens.
+     *
+     * @param <M> tipo das mensagens trocadas entre os trabalhadores.
+     */
+    public static final class Superstep<M> {
+        private final long index;
+        private final int workerIndex;
+        private final int numWorkers;
+        private final List<M> messages;
+        private final List<List<M>> outbox;
+        private boolean halted;
+        private boolean sent;
+
+        private Superstep(long index, int workerIndex, int numWorkers, List<M> messages) {
+            this.index = index;
+            this.workerIndex = workerIndex;
+            this.numWorkers = numWorkers;
+            this.messages = Collections.unmodifiableList(messages);
+            this.outbox = new ArrayList<>(numWorkers);
+            for (int i = 0; i < numWorkers; i++) {
+                outbox.add(new ArrayList<>());
+            }
+        }
+
+        /**
+         * Retorna o número deste superpasso, começando em 0.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public int getWorkerIndex() {
+            return workerIndex;
+        }
+
+        public int getNumWorkers() {
+            return numWorkers;
+        }
+
+        /**
+         * Retorna as mensagens enviadas para este trabalhador no superpasso anterior, agrupadas por remetente.
+         */
+        public List<M> getMessages() {
+            return messages;
+        }
+
+        /**
+         * Envia uma mensagem, entregue ao trabalhador {@code worker} no próximo superpasso.
+         */
+        public void send(int worker, M message) {
+            if (worker < 0 || worker >= numWorkers) {
+                throw new IllegalArgumentException("trabalhador inválido: " + worker);
+            }
+            outbox.get(worker).add(message);
+            sent = true;
+        }
+
+        /**
+         * Vota para encerrar o job neste superpasso.
+         */
+        public void voteToHalt() {
+            halted = true;
+        }
+    }
+
+    /**
+     * Inicializa um trabalhador do job BSP.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param jobNode       Caminho do nó do job, compartilhado por todos os trabalhadores.
+     * @param workerIndex   Índice deste trabalhador, entre 0 e {@code numWorkers - 1}.
+     * @param numWorkers    Número de trabalhadores do job.
+     * @param encoder       Função que converte uma mensagem em bytes, para ser gravada no ZooKeeper.
+     * @param decoder       Função que converte bytes lidos do ZooKeeper em uma mensagem.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperBspWorker(String connectString, String jobNode, int workerIndex, int numWorkers,
+                              Function<M, byte[]> encoder, Function<byte[], M> decoder)
+            throws IOException, InterruptedException, KeeperException {
+        if (workerIndex < 0 || workerIndex >= numWorkers) {
+            throw new IllegalArgumentException("índice inválido: " + workerIndex);
+        }
+        this.jobNode = jobNode;
+        this.workerIndex = workerIndex;
+        this.numWorkers = numWorkers;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.recorderId = RECORDER.register(jobNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        REGISTRY.expect(recorderId, numWorkers);
+        this.zk = createZooKeeperConnection(connectString, event -> {
+            // Se o nó /ready do superpasso atual for criado, todos os trabalhadores já chegaram
+            if (event.getType() == Watcher.Event.EventType.NodeCreated && event.getPath().equals(readyNode)) {
+                readyLatch.countDown();
+            }
+        });
+        ZooKeeperNodes.createContainer(zk, jobNode);
+        ZooKeeperNodes.createContainer(zk, stepNode(0));
+    }
+
+    protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    private String stepNode(long step) {
+        return jobNode + "/step-" + step;
+    }
+
+    private static String messageName(int destination, int source) {
+        return "msg-" + destination + "-" + source;
+    }
+
+    private static String arrivalName(int source) {
+        return "arrive-" + source;
+    }
+
+    /**
+     * Executa o job até que todos os trabalhadores votem para parar em um mesmo superpasso, sem enviar mensagens.
+     *
+     * @param computation Computação executada em cada superpasso.
+     * @return o número de superpassos executados.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public long run(Computation<M> computation) throws KeeperException, InterruptedException {
+        for (long step = 0; ; step++) {
+            final long start = System.nanoTime();
+            final List<M> messages = step > 0 ? readInbox(step - 1) : new ArrayList<>();
+            final Superstep<M> superstep = new Superstep<>(step, workerIndex, numWorkers, messages);
+            computation.compute(superstep);
+
+            RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, step);
+            final boolean halt = arrive(step, superstep);
+            RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+            RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_ENTER, step + 1);
+            if (halt) {
+                cleanUp(step);
+                return step + 1;
+            }
+        }
+    }
+
+    /**
+     * Lê, com uma única requisição, os lotes enviados para este trabalhador no superpasso {@code step}.
+     */
+    private List<M> readInbox(long step) throws KeeperException, InterruptedException {
+        final String stepNode = stepNode(step);
+        final List<Op> ops = new ArrayList<>(numWorkers);
+        for (int source = 0; source < numWorkers; source++) {
+            ops.add(Op.getData(stepNode + "/" + messageName(workerIndex, source)));
+        }
+        final List<M> messages = new ArrayList<>();
+        final List<OpResult> results = zk.multi(ops);
+        for (int source = 0; source < numWorkers; source++) {
+            final OpResult result = results.get(source);
+            if (result instanceof OpResult.GetDataResult) {
+                decodeBatch(((OpResult.GetDataResult) result).getData(), messages);
+                consumedBatches.add(stepNode + "/" + messageName(workerIndex, source));
+            } else if (result instanceof OpResult.ErrorResult
+                    && ((OpResult.ErrorResult) result).getErr() != KeeperException.Code.NONODE.intValue()) {
+                throw KeeperException.create(KeeperException.Code.get(((OpResult.ErrorResult) result).getErr()));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Grava os lotes de mensagens e a chegada deste trabalhador em uma única requisição, e aguarda os demais.
+     *
+     * @return {@code true} se o job terminou neste superpasso.
+     */
+    private boolean arrive(long step, Superstep<M> superstep) throws KeeperException, InterruptedException {
+        final String stepNode = stepNode(step);
+        readyLatch = new CountDownLatch(1);
+        readyNode = stepNode + "/" + READY;
+
+        final List<Op> ops = new ArrayList<>();
+        for (int destination = 0; destination < numWorkers; destination++) {
+            final List<M> batch = superstep.outbox.get(destination);
+            if (!batch.isEmpty()) {
+                ops.add(Op.create(stepNode + "/" + messageName(destination, workerIndex), encodeBatch(batch),
+                        ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+            }
+        }
+        final boolean halted = superstep.halted && !superstep.sent;
+        ops.add(Op.create(stepNode + "/" + arrivalName(workerIndex), halted ? HALT : CONTINUE,
+                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL));
+        if (step > 0) {
+            // Remove os nós deste trabalhador no superpasso anterior: a sua chegada e as mensagens já lidas
+            ops.add(Op.delete(stepNode(step - 1) + "/" + arrivalName(workerIndex), -1));
+            for (String path : consumedBatches) {
+                ops.add(Op.delete(path, -1));
+            }
+        }
+        zk.multi(ops);
+        consumedBatches.clear();
+
+        // Observa a criação do nó /ready antes de contar as chegadas, para não perder o evento
+        if (zk.exists(readyNode, true) == null) {
+            final List<String> arrivals = new ArrayList<>();
+            for (String child : zk.getChildren(stepNode, false)) {
+                if (child.startsWith("arrive-")) {
+                    arrivals.add(child);
+                }
+            }
+            RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_ENTER, arrivals.size());
+            if (arrivals.size() < numWorkers) {
+                ZooKeeperWaits.await(readyLatch);
+            } else {
+                release(step, arrivals);
+            }
+        }
+        try {
+            return zk.getData(readyNode, false, null)[0] == HALT[0];
+        } catch (KeeperException.NoNodeException e) {
+            // O nó /ready só é removido antes de ser lido quando o job terminou
+            return true;
+        }
+    }
+
+    /**
+     * Libera o superpasso, executado pelo último trabalhador a chegar.
+     */
+    private void release(long step, List<String> arrivals) throws KeeperException, InterruptedException {
+        final String stepNode = stepNode(step);
+        final List<Op> ops = new ArrayList<>(arrivals.size());
+        for (String arrival : arrivals) {
+            ops.add(Op.getData(stepNode + "/" + arrival));
+        }
+        boolean halt = true;
+        for (OpResult result : zk.multi(ops)) {
+            if (!(result instanceof OpResult.GetDataResult) || ((OpResult.GetDataResult) result).getData()[0] != HALT[0]) {
+                halt = false;
+            }
+        }
+        try {
+            if (!halt) {
+                // Cria o nó do próximo superpasso antes de liberar os trabalhadores
+                ZooKeeperNodes.createContainer(zk, stepNode(step + 1));
+            }
+            zk.create(readyNode, halt ? HALT : CONTINUE, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException ignored) {
+            // Outro trabalhador chegou ao mesmo tempo e já liberou o superpasso
+            return;
+        }
+        if (step > 0) {
+            // Todos os trabalhadores já leram o nó /ready do superpasso anterior
+            try {
+                zk.delete(stepNode(step - 1) + "/" + READY, -1);
+            } catch (KeeperException.NoNodeException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Remove os nós deste trabalhador no último superpasso, e o nó /ready se todos já o tiverem lido.
+     */
+    private void cleanUp(long step) throws KeeperException, InterruptedException {
+        final String stepNode = stepNode(step);
+        try {
+            zk.delete(stepNode + "/" + arrivalName(workerIndex), -1);
+            final List<String> children = zk.getChildren(stepNode, false);
+            if (children.size() == 1 && children.get(0).equals(READY)) {
+                zk.delete(stepNode + "/" + READY, -1);
+            }
+        } catch (KeeperException.NoNodeException ignored) {
+        }
+        if (step > 0) {
+            try {
+                zk.delete(stepNode(step - 1) + "/" + READY, -1);
+            } catch (KeeperException.NoNodeException ignored) {
+            }
+        }
+    }
+
+    private byte[] encodeBatch(List<M> batch) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(batch.size());
+            for (M message : batch) {
+                final byte[] data = encoder.apply(message);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void decodeBatch(byte[] batch, List<M> messages) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch))) {
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                messages.add(decoder.apply(data));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fecha a conexão com o ZooKeeper.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        zk.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
+    }
+}
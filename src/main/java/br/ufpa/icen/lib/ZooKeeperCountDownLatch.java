@@ -0,0 +1,169 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uma trava de contagem regressiva distribuída usando o Apache ZooKeeper.
+ * <p>
+ * O nó da trava guarda o número de sinais que ainda faltam. Diferente de uma barreira restrita, em que cada
+ * participante precisa da sua própria chegada, {@link #countDown(long)} subtrai um lote inteiro em uma única escrita
+ * condicional (pela versão do nó): um produtor que termina 10.000 itens sinaliza com uma única operação no
+ * ZooKeeper. Os participantes em {@link #await()} observam o nó e são liberados quando a contagem chega a zero.
+ * <p>
+ * As escritas passam pelo {@link ZooKeeperOpBatcher} compartilhado: sinais de várias travas (ou de várias threads)
+ * enviados ao mesmo tempo seguem em uma única requisição ao servidor.
+ */
+public class ZooKeeperCountDownLatch extends ZooKeeperBarrier {
+    private final ZooKeeperOpBatcher batcher;
+
+    /**
+     * Inicializa a trava de contagem regressiva do ZooKeeper, criando o nó com a contagem inicial caso ainda não
+     * exista.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param latchNode     Caminho do nó da trava.
+     * @param count         Contagem inicial, usada apenas se o nó ainda não existir.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperCountDownLatch(String connectString, String latchNode, long count)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, latchNode);
+        if (count < 0) {
+            throw new IllegalArgumentException("count não pode ser negativo: " + count);
+        }
+        ZooKeeperNodes.createPersistent(zk, latchNode, encode(count), 0);
+        this.batcher = ZooKeeperOpBatcher.acquire(connectString);
+    }
+
+    /**
+     * Decrementa a contagem em um.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void countDown() throws KeeperException, InterruptedException {
+        countDown(1);
+    }
+
+    /**
+     * Decrementa a contagem em {@code n} com uma única escrita, sem que ela fique negativa.
+     *
+     * @param n Número de sinais do lote.
+     * @return a contagem após esta chamada.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public long countDown(long n) throws KeeperException, InterruptedException {
+        if (n < 0) {
+            throw new IllegalArgumentException("n não pode ser negativo: " + n);
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, n);
+        final Stat stat = new Stat();
+        while (true) {
+            final long count;
+            try {
+                count = decode(zk.getData(barrierNode, false, stat));
+            } catch (KeeperException.NoNodeException e) {
+                // Uma trava removida é considerada liberada
+                return 0;
+            }
+            if (count == 0 || n == 0) {
+                return count;
+            }
+            final long remaining = Math.max(0, count - n);
+            try {
+                batcher.setData(barrierNode, encode(remaining), stat.getVersion());
+                return remaining;
+            } catch (KeeperException.BadVersionException ignored) {
+                // Outro produtor sinalizou ao mesmo tempo; tenta novamente com o novo valor
+            }
+        }
+    }
+
+    /**
+     * Obtém a contagem atual, ou 0 se a trava foi removida.
+     */
+    public long getCount() throws KeeperException, InterruptedException {
+        try {
+            return decode(zk.getData(barrierNode, false, null));
+        } catch (KeeperException.NoNodeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Aguarda até que a contagem chegue a zero.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void await() throws KeeperException, InterruptedException {
+        await(-1, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Aguarda até que a contagem chegue a zero, por no máximo {@code timeout}.
+     *
+     * @return {@code true} se a contagem chegou a zero, ou {@code false} se o tempo se esgotou antes.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        final long deadline = timeout < 0 ? Long.MAX_VALUE : start + unit.toNanos(timeout);
+        while (true) {
+            final CountDownLatch changed = new CountDownLatch(1);
+            long count;
+            try {
+                count = decode(zk.getData(barrierNode, event -> changed.countDown(), null));
+            } catch (KeeperException.NoNodeException e) {
+                count = 0;
+            }
+            if (count == 0) {
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+                return true;
+            }
+            if (deadline == Long.MAX_VALUE) {
+                ZooKeeperWaits.await(changed);
+            } else {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !ZooKeeperWaits.await(changed, remaining, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Aguarda até que a contagem chegue a zero.
+     */
+    @Override
+    public void waitForBarrier() throws KeeperException, InterruptedException {
+        await();
+    }
+
+    /**
+     * Fecha a conexão com o ZooKeeper e libera o agrupador de escritas.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        super.close();
+        batcher.close();
+    }
+
+    private static byte[] encode(long count) {
+        return String.valueOf(count).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long decode(byte[] data) {
+        return ZooKeeperNodes.parseLong(data, 0, data.length);
+    }
+}
@@ -4,30 +4,65 @@ import org.apache.curator.test.TestingServer;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Uma barreira distribuída dupla usando o Apache ZooKeeper.
  */
 public class ZooKeeperDoubleBarrier implements AutoCloseable {
-    private final ZooKeeper zk;
-    private final String barrierNode;
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    /**
+     * Número de participantes que libera a entrada na barreira.
+     */
+    protected static final int PARTICIPANTS = 3;
+    // Trecho final da espera pelo instante alvo feito em espera ativa, abaixo da precisão de Thread.sleep
+    private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    protected final ZooKeeper zk;
+    protected final String barrierNode;
+    /**
+     * Caminho do nó /ready, que libera a entrada na barreira. O nó é persistente, e é removido pelo último
+     * participante a sair, ou, se a rodada terminou sem que ele fosse removido, pelo primeiro a chegar na rodada
+     * seguinte.
+     */
+    protected final String readyPath;
+    private final int recorderId;
+    private final ZooKeeperNodeCache cache;
+    private final ReleasePolicy releasePolicy;
     private final CountDownLatch enterLatch = new CountDownLatch(1);
     private final String id = UUID.randomUUID().toString();
+    private final String nodePath;
+    // Conteúdo do nó deste participante, reaproveitado a cada entrada
+    private final byte[] stampBuffer = new byte[ZooKeeperExitOrder.STAMP_LENGTH];
+    private final ZooKeeperExitOrder exitOrder;
     private CountDownLatch exitLatch;
+    private final ConflatingPublisher<BarrierPhase> phases = ConflatingPublisher.latest();
+    // Diferença entre o relógio do servidor e o relógio local, em milissegundos, medida na última entrada, e o erro
+    // máximo dessa medida
+    private long clockOffsetMillis;
+    private long clockOffsetErrorMillis;
+    private volatile long startSkewNanos;
+    // Instante alvo e instante da partida na última entrada, no relógio do servidor, em nanossegundos desde a época
+    private volatile long startTargetNanos = -1;
+    private volatile long startTimeNanos = -1;
+    private volatile long startErrorNanos = -1;
 
     /**
      * Inicializa a barreira dupla do ZooKeeper.
@@ -37,14 +72,38 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
      * @throws IOException se a conexão falhar.
      */
     public ZooKeeperDoubleBarrier(String connectString, String barrierNode) throws IOException, InterruptedException, KeeperException {
+        this(connectString, barrierNode, ReleasePolicy.immediate());
+    }
+
+    /**
+     * Inicializa a barreira dupla do ZooKeeper, liberando os participantes na entrada de acordo com
+     * {@code releasePolicy}.
+     * <p>
+     * Os participantes são liberados na ordem de chegada: como os nós desta barreira não guardam uma prioridade,
+     * {@link ReleasePolicy#byPriority()} é ignorado. Com {@link ReleasePolicy#synchronizedStart(long, TimeUnit)}, o
+     * instante da partida de cada participante no relógio do servidor fica disponível em {@link #getStartTime(TimeUnit)}.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @param releasePolicy Política de liberação dos participantes na entrada.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperDoubleBarrier(String connectString, String barrierNode, ReleasePolicy releasePolicy)
+            throws IOException, InterruptedException, KeeperException {
         this.barrierNode = barrierNode;
+        this.readyPath = barrierNode + "/ready";
+        this.nodePath = barrierNode + "/" + id;
+        this.releasePolicy = releasePolicy;
         this.exitLatch = null;
+        this.recorderId = RECORDER.register(barrierNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        REGISTRY.expect(recorderId, PARTICIPANTS);
         this.zk = createZooKeeperConnection(connectString, event -> {
             // Se um nó /ready for criado (ou seja, se o último cliente entrar na barreira),
             // libere este cliente para prosseguir com o seu processamento (`enterLatch`)
             if (event.getType() == Watcher.Event.EventType.NodeCreated) {
-                if (event.getPath().equals(barrierNode + "/ready")) {
-                    enterLatch.countDown();
+                if (event.getPath().equals(readyPath)) {
+                    onReady();
                 }
                 // Se um nó for removido (ou seja, se um cliente terminar seu processamento
                 // na barreira), libere este cliente para sair da barreira (`exitLatch`)
@@ -54,11 +113,11 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
                 }
             }
         });
-        // Cria o nó de barreira
-        if (zk.exists(barrierNode, false) == null) {
-            zk.create(barrierNode, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-        }
-
+        this.cache = acquireNodeCache(connectString);
+        cache.retain(barrierNode);
+        this.exitOrder = new ZooKeeperExitOrder(cache);
+        // Cria o nó de barreira como contêiner, para que o ZooKeeper o remova quando todos saírem
+        ZooKeeperNodes.createContainer(zk, barrierNode);
     }
 
     public static void main(String[] args) {
@@ -72,11 +131,14 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
                 final ZooKeeperDoubleBarrier controller = new ZooKeeperDoubleBarrier(t.getConnectString(), "/armazem")) {
             System.out.println("Pedidos ainda não estão prontos. Entregadores aguardando para a primeira barreira...");
 
-            final List<Future<Void>> enterBarrierFutures = new ArrayList<>(numCouriers);
+            // Cada entregador usa a mesma instância para entrar e sair: o seu nó na barreira é efêmero, e deixaria de
+            // ser contado na saída se a instância fosse fechada após a entrada
+            final CountDownLatch allEntered = new CountDownLatch(numCouriers);
+            final List<Future<Void>> courierFutures = new ArrayList<>(numCouriers);
             for (int i = 0; i < numCouriers; i++) {
                 final int courierId = i;
                 // Para cada entregador, execute uma ação (Future)
-                enterBarrierFutures.add(CompletableFuture.runAsync(() -> {
+                courierFutures.add(CompletableFuture.runAsync(() -> {
                     // Cria uma instância do ZooKeeper conectada à barreira
                     try (final ZooKeeperDoubleBarrier courier = new ZooKeeperDoubleBarrier(t.getConnectString(), "/armazem")) {
                         System.out.println("Entregador " + courier + " chegando na base...");
@@ -88,35 +150,9 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
                             logger.error("erro em entregador " + courierId + " ao aguardar por barreira", e);
                             return;
                         }
+                        System.out.println("Entregador " + courierId + " chegou na base.");
+                        allEntered.countDown();
 
-                    } catch (InterruptedException | IOException e) {
-                        logger.error("erro em entregador " + courierId + " ao criar barreira", e);
-                        return;
-                    } catch (KeeperException e) {
-                        throw new RuntimeException(e);
-                    }
-                    System.out.println("Entregador " + courierId + " chegou na base.");
-                }));
-            }
-
-            // Inicia processamento de entregadores em paralelo
-            try {
-                //noinspection SuspiciousToArrayCall
-                CompletableFuture.allOf(enterBarrierFutures.toArray(new CompletableFuture[0])).get();
-            } catch (InterruptedException e) {
-                logger.error("erro ao executar pedidos", e);
-                return;
-            }
-            System.out.println("Todos os entregadores chegaram na base.");
-
-// ========== SAÍDA
-            final List<Future<Void>> exitBarrierFutures = new ArrayList<>(numCouriers);
-            for (int i = 0; i < numCouriers; i++) {
-                final int courierId = i;
-                // Para cada entregador, execute uma ação (Future)
-                exitBarrierFutures.add(CompletableFuture.runAsync(() -> {
-                    // Cria uma instância do ZooKeeper conectada à barreira
-                    try (final ZooKeeperDoubleBarrier courier = new ZooKeeperDoubleBarrier(t.getConnectString(), "/armazem")) {
                         System.out.println("Entregador " + courier + " saindo para entrega...");
                         Thread.sleep(ThreadLocalRandom.current().nextInt(1000, 3001));
                         try {
@@ -126,7 +162,6 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
                             logger.error("erro em entregador " + courierId + " ao aguardar por barreira", e);
                             return;
                         }
-
                     } catch (InterruptedException | IOException e) {
                         logger.error("erro em entregador " + courierId + " ao criar barreira", e);
                         return;
@@ -139,15 +174,16 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
 
             // Inicia processamento de entregadores em paralelo
             try {
+                allEntered.await();
+                System.out.println("Todos os entregadores chegaram na base.");
                 //noinspection SuspiciousToArrayCall
-                CompletableFuture.allOf(exitBarrierFutures.toArray(new CompletableFuture[0])).get();
+                CompletableFuture.allOf(courierFutures.toArray(new CompletableFuture[0])).get();
             } catch (InterruptedException e) {
                 logger.error("erro ao executar pedidos", e);
                 return;
             }
             System.out.println("Todos os entregadores saíram para entrega.");
 
-
         } catch (Exception e) {
             logger.error("erro ao inicializar programa", e);
         }
@@ -155,13 +191,81 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
 
 
     protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
-        return new ZooKeeper(connectString, 3000, watcher);
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    /**
+     * Obtém o cache de nós consultado pela barreira: o compartilhado pelas barreiras do processo conectadas a
+     * {@code connectString}, ou, nos testes com um ZooKeeper simulado, um cache com sessões simuladas.
+     */
+    ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+        return ZooKeeperNodeCache.acquire(connectString);
+    }
+
+    /**
+     * Chamado pela thread de eventos do ZooKeeper quando o nó /ready é criado, liberando a entrada deste
+     * participante. Como o observador é registrado antes da chegada, a criação é notificada mesmo que o nó /ready
+     * seja removido antes de o participante consultá-lo.
+     */
+    protected void onReady() {
+        enterLatch.countDown();
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * Retorna as mudanças de fase deste participante. Um assinante lento recebe apenas a fase mais recente.
+     */
+    public Flow.Publisher<BarrierPhase> phases() {
+        return phases;
+    }
+
+    /**
+     * Retorna o atraso deste participante em relação ao instante alvo, convertido para o relógio local, na última
+     * entrada com {@link ReleasePolicy#synchronizedStart(long, TimeUnit)}, ou 0 se ele ainda não entrou com essa
+     * política, ou -1 se o instante alvo não pôde ser lido.
+     * <p>
+     * O atraso mede apenas a precisão da espera local, e não a diferença entre os participantes: cada um converte o
+     * instante alvo para o seu próprio relógio, com o erro de {@link #getStartError(TimeUnit)}. Para comparar
+     * participantes, use {@link #getStartTime(TimeUnit)}.
+     */
+    public long getStartSkew(TimeUnit unit) {
+        return startSkewNanos < 0 ? -1 : unit.convert(startSkewNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retorna o instante alvo da última entrada com {@link ReleasePolicy#synchronizedStart(long, TimeUnit)}, no
+     * relógio do servidor e desde a época Unix: a criação do nó /ready mais a antecedência. Retorna -1 se o instante
+     * alvo não pôde ser lido ou se o participante ainda não entrou com essa política.
+     */
+    public long getStartTarget(TimeUnit unit) {
+        return startTargetNanos < 0 ? -1 : unit.convert(startTargetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retorna o instante em que este participante prosseguiu na última entrada com
+     * {@link ReleasePolicy#synchronizedStart(long, TimeUnit)}, convertido para o relógio do servidor e desde a época
+     * Unix, ou -1 se o instante alvo não pôde ser lido ou se o participante ainda não entrou com essa política.
+     * <p>
+     * A diferença entre os instantes de dois participantes estima o desalinhamento entre eles, com erro de até a
+     * soma dos seus {@link #getStartError(TimeUnit)}.
+     */
+    public long getStartTime(TimeUnit unit) {
+        return startTimeNanos < 0 ? -1 : unit.convert(startTimeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retorna o erro máximo de {@link #getStartTime(TimeUnit)} na última entrada com
+     * {@link ReleasePolicy#synchronizedStart(long, TimeUnit)}, ou -1: metade da ida e volta da criação do nó deste
+     * participante, usada para estimar a diferença entre os relógios, mais a resolução de 1 ms do {@code ctime} do
+     * seu nó e do nó /ready.
+     */
+    public long getStartError(TimeUnit unit) {
+        return startErrorNanos < 0 ? -1 : unit.convert(startErrorNanos, TimeUnit.NANOSECONDS);
+    }
+
     /**
      * Faz com que o cliente atual entre na barreira.
      *
@@ -169,84 +273,302 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
      * @throws InterruptedException se a thread for interrompida.
      */
     public void enterBarrier() throws KeeperException, InterruptedException {
-        // 1. Create a name n = b+"/"+p
-        final String n = barrierNode + "/" + id;
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        phases.offer(BarrierPhase.ENTERING);
+        // 1. Create a name n = b+"/"+p (calculado no construtor, em `nodePath`)
         // 2. Set watch: exists(b + "/ready", true)
-        zk.exists(barrierNode + "/ready", true);
+        final Stat previous = zk.exists(readyPath, true);
+        if (previous != null && discardStaleReady(previous)) {
+            // A remoção consumiu o observador: observa a criação do nó /ready desta rodada
+            zk.exists(readyPath, true);
+        }
         // 3. Create child: create( n, EPHEMERAL)
-        zk.create(n,
-                // Guarda a data de criação deste nó para consulta em `exitBarrier`
-                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+        // Guarda o instante de chegada deste nó para consulta em `exitBarrier`
+        final byte[] creationDateData = ZooKeeperExitOrder.encode(ZooKeeperExitOrder.now(), stampBuffer);
+        final Stat created = new Stat();
+        final long sent = System.currentTimeMillis();
+        try {
+            zk.create(nodePath, creationDateData, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL, created);
+        } catch (KeeperException.NoNodeException e) {
+            // O contêiner da barreira foi removido pelo ZooKeeper após a saída da rodada anterior
+            ZooKeeperNodes.createContainer(zk, barrierNode);
+            zk.create(nodePath, creationDateData, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL, created);
+        }
+        if (!releasePolicy.isImmediate()) {
+            // O servidor criou o nó, em média, na metade da ida e volta
+            final long received = System.currentTimeMillis();
+            clockOffsetMillis = created.getCtime() - (sent + received) / 2;
+            clockOffsetErrorMillis = (received - sent + 1) / 2;
+        }
+        final Stat ready = awaitRelease();
+        if (releasePolicy.isSynchronizedStart()) {
+            awaitStart(ready);
+        } else if (!releasePolicy.isImmediate()) {
+            awaitWave();
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+        phases.offer(BarrierPhase.ENTERED);
+    }
+
+    /**
+     * Remove o nó /ready deixado por uma rodada anterior, retornando {@code true} se ele foi removido.
+     * <p>
+     * O nó /ready só é criado depois que todos os participantes da sua rodada chegam, de forma que, enquanto a rodada
+     * estiver em andamento, algum nó de participante é mais antigo (czxid menor) que ele. Se nenhum for, os
+     * participantes da rodada fecharam sem sair, ou o último a sair falhou antes de removê-lo: sem a remoção, a
+     * próxima rodada nunca seria notificada da criação do nó.
+     */
+    private boolean discardStaleReady(Stat ready) throws KeeperException, InterruptedException {
+        final List<String> children = zk.getChildren(barrierNode, false);
+        children.remove("ready");
+        if (!children.isEmpty()) {
+            final List<Op> ops = new ArrayList<>(children.size());
+            for (String child : children) {
+                ops.add(Op.getData(barrierNode + "/" + child));
+            }
+            for (OpResult result : zk.multi(ops)) {
+                if (result instanceof OpResult.GetDataResult
+                        && ((OpResult.GetDataResult) result).getStat().getCzxid() < ready.getCzxid()) {
+                    return false;
+                }
+            }
+        }
+        try {
+            zk.delete(readyPath, ready.getVersion());
+        } catch (KeeperException.NoNodeException | KeeperException.BadVersionException ignored) {
+            // Outro participante da nova rodada já o removeu
+        }
+        return true;
+    }
+
+    /**
+     * Aguarda a liberação da entrada: o participante que encontrar {@value #PARTICIPANTS} participantes na barreira
+     * cria o nó /ready, e os demais aguardam a sua criação.
+     *
+     * @return {@link Stat} do nó /ready, se este participante o criou, ou {@code null}.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    protected Stat awaitRelease() throws KeeperException, InterruptedException {
         // 4. L = getChildren(b, false)
         final List<String> children = zk.getChildren(barrierNode, false);
-        if (children.size() < 3) {
+        RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_ENTER, children.size());
+        if (children.size() < PARTICIPANTS) {
             // 5. if fewer children in L than x, wait for watch event
-            enterLatch.await();
+            ZooKeeperWaits.await(enterLatch);
+            return null;
+        }
+        // 6. else create(b + "/ready", REGULAR)
+        return createReady(children);
+    }
+
+    /**
+     * Cria o nó /ready, liberando a entrada na barreira.
+     *
+     * @param children Filhos do nó da barreira, usados para calcular a ordem de liberação em ondas.
+     * @return {@link Stat} do nó /ready, ou {@code null} se outro participante já o criou.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    protected final Stat createReady(List<String> children) throws KeeperException, InterruptedException {
+        // Com liberação em ondas, o nó /ready guarda a ordem de liberação dos participantes; com instante alvo,
+        // guarda a antecedência do instante alvo em relação à sua criação. O nó é persistente, para que continue
+        // disponível aos participantes atrasados mesmo que quem o criou saia, e é removido pelo último a sair (ou, se
+        // ele não sair, na chegada da próxima rodada, em `discardStaleReady`).
+        final byte[] readyData;
+        if (releasePolicy.isSynchronizedStart()) {
+            readyData = Long.toString(releasePolicy.getStartLead(TimeUnit.NANOSECONDS)).getBytes(StandardCharsets.UTF_8);
         } else {
-            // 6. else create(b + "/ready", REGULAR)
-            zk.create(barrierNode + "/ready", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            readyData = releasePolicy.isImmediate() ? new byte[0] : releaseOrder(children);
         }
+        final Stat ready = new Stat();
+        try {
+            zk.create(readyPath, readyData, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, ready);
+        } catch (KeeperException.NodeExistsException ignored) {
+            // Outro participante chegou ao mesmo tempo e já liberou a barreira
+            return null;
+        }
+        return ready;
+    }
+
+    /**
+     * Retorna os IDs dos participantes na ordem em que chegaram na barreira, separados por quebras de linha.
+     */
+    private byte[] releaseOrder(List<String> children) throws KeeperException, InterruptedException {
+        final List<String> ids = new ArrayList<>(children);
+        ids.remove("ready");
+        final List<Op> ops = new ArrayList<>(ids.size());
+        for (String child : ids) {
+            ops.add(Op.getData(barrierNode + "/" + child));
+        }
+        // A ordem de chegada é a ordem de criação dos nós no ZooKeeper (czxid), que não depende dos relógios
+        final List<OpResult> results = zk.multi(ops);
+        final Map<String, Long> creation = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            final OpResult result = results.get(i);
+            creation.put(ids.get(i), result instanceof OpResult.GetDataResult
+                    ? ((OpResult.GetDataResult) result).getStat().getCzxid()
+                    : Long.MAX_VALUE);
+        }
+        ids.sort(Comparator.comparing(creation::get));
+        return String.join("\n", ids).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Aguarda a onda deste participante, de acordo com a sua posição na ordem de liberação.
+     * <p>
+     * Os atrasos são contados a partir da criação do nó /ready, no relógio do servidor convertido para o relógio
+     * local, e não a partir da notificação de cada participante: assim, os participantes de uma mesma onda prosseguem
+     * juntos, mesmo que as notificações cheguem espalhadas.
+     */
+    private void awaitWave() throws KeeperException, InterruptedException {
+        final Stat ready = new Stat();
+        final List<String> order;
+        try {
+            order = Arrays.asList(new String(zk.getData(readyPath, false, ready), StandardCharsets.UTF_8).split("\n"));
+        } catch (KeeperException.NoNodeException e) {
+            // O nó /ready só é removido pelo último participante a sair, e este participante ainda não saiu: a
+            // barreira foi removida por fora, e não há ordem de liberação a seguir
+            return;
+        }
+        final int position = order.indexOf(id);
+        final long delay = releasePolicy.delayNanos(position < 0 ? order.size() : position);
+        final long releasedMillis = ready.getCtime() - clockOffsetMillis;
+        final long remaining = TimeUnit.MILLISECONDS.toNanos(releasedMillis - System.currentTimeMillis()) + delay;
+        if (remaining > 0) {
+            ZooKeeperWaits.sleep(remaining);
+        }
+    }
+
+    /**
+     * Aguarda o instante alvo gravado no nó /ready, convertido para o relógio local.
+     *
+     * @param ready {@link Stat} do nó /ready, se este participante o criou, ou {@code null} para consultá-lo.
+     */
+    private void awaitStart(Stat ready) throws KeeperException, InterruptedException {
+        final long leadNanos;
+        if (ready == null) {
+            ready = new Stat();
+            try {
+                leadNanos = Long.parseLong(new String(zk.getData(readyPath, false, ready), StandardCharsets.UTF_8));
+            } catch (KeeperException.NoNodeException e) {
+                // O nó /ready só é removido pelo último participante a sair, e este participante ainda não saiu: a
+                // barreira foi removida por fora, e o participante prossegue sem instante alvo
+                startSkewNanos = -1;
+                startTargetNanos = -1;
+                startTimeNanos = -1;
+                startErrorNanos = -1;
+                RECORDER.record(BarrierFlightRecorder.Event.SKEW, recorderId, BarrierFlightRecorder.PHASE_ENTER, -1L);
+                return;
+            }
+        } else {
+            leadNanos = releasePolicy.getStartLead(TimeUnit.NANOSECONDS);
+        }
+        // O instante alvo é a criação do nó /ready, no relógio do servidor, mais a antecedência
+        final long targetMillis = ready.getCtime() - clockOffsetMillis;
+        final long remaining = TimeUnit.MILLISECONDS.toNanos(targetMillis - System.currentTimeMillis()) + leadNanos;
+        final long deadline = System.nanoTime() + remaining;
+        if (remaining > SPIN_NANOS) {
+            ZooKeeperWaits.sleep(remaining - SPIN_NANOS);
+        }
+        while (System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+        final long skew = System.nanoTime() - deadline;
+        // O instante da partida no relógio do servidor é o instante alvo mais o atraso local; o erro vem da conversão
+        // entre os relógios e da resolução dos dois ctime usados
+        startTargetNanos = TimeUnit.MILLISECONDS.toNanos(ready.getCtime()) + leadNanos;
+        startTimeNanos = startTargetNanos + skew;
+        startErrorNanos = TimeUnit.MILLISECONDS.toNanos(clockOffsetErrorMillis + 2);
+        startSkewNanos = skew;
+        RECORDER.record(BarrierFlightRecorder.Event.SKEW, recorderId, BarrierFlightRecorder.PHASE_ENTER, skew);
     }
 
     /**
      * Faz com que o cliente atual saia da barreira.
+     * <p>
+     * Os filhos da barreira e os seus conteúdos são consultados no {@link ZooKeeperNodeCache} compartilhado, de forma
+     * que cada nova volta do laço só gera consultas ao ZooKeeper se os participantes tiverem mudado.
      *
      * @throws KeeperException      se o ZooKeeper encontrar um erro.
      * @throws InterruptedException se a thread for interrompida.
      */
     public void exitBarrier() throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_EXIT, 0L);
+        phases.offer(BarrierPhase.EXITING);
+        boolean ownSession = false;
         for (; ; ) {
             // 1. L = getChildren(b, false)
-            final List<Map.Entry<String, LocalDateTime>> children = zk.getChildren(barrierNode, false)
-                    // Para cada nó
-                    .stream().collect(Collectors.toMap(id -> id, id -> {
-                        // Leia seu conteúdo utilizando zk.getData()
-                        final byte[] creationDateData;
-                        try {
-                            creationDateData = zk.getData(barrierNode + "/" + id, false, null);
-                        } catch (KeeperException.NoNodeException e) {
-                            // Se nó não existe, adiciona valor padrão que removeremos posteriormente
-                            return LocalDateTime.MIN;
-                        } catch (KeeperException | InterruptedException e) {
-                            throw new RuntimeException(e);
-                        }
-                        // Converta o conteúdo para um LocalDateTime, para encontrar a data de criação deste nó
-                        return LocalDateTime.parse(new String(creationDateData, StandardCharsets.UTF_8), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                    }))
-                    // Transforme em um Map<String, LocalDateTime>, onde
-                    //  - as `keys` são os IDs do nó; e
-                    //  - os `values` são suas datas de criação
-                    .entrySet().stream()
-                    // Remove nós que não existem por valor padrão que adicionamos anteriormente
-                    .filter(entry -> entry.getValue() != LocalDateTime.MIN)
-                    // Ordene o Map<String, LocalDateTime> pelos `values` de forma crescente
-                    .sorted(Map.Entry.comparingByValue())
-                    // Transforme em uma List<Map.Entry<String, LocalDateTime>>, onde
-                    // - o nó mais antigo criado (lowest) está na primeira posição (entries.get(0))
-                    // - o nó mais recente criado (highest) está na última posição (entries.get(entries.size() - 1))
-                    .collect(Collectors.toList());
+            List<String> ids;
+            try {
+                ids = ownSession ? zk.getChildren(barrierNode, false) : cache.children(barrierNode);
+            } catch (KeeperException.NoNodeException e) {
+                // O contêiner da barreira já foi removido pelo ZooKeeper, ou seja, todos já saíram
+                ids = Collections.emptyList();
+            }
+            final boolean ownNodeDeleted = ownSession;
+            ownSession = false;
+            // Encontra os nós mais antigo (lowest) e mais recente (highest), ignorando o nó /ready
+            exitOrder.scan(barrierNode, ids);
+            RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_EXIT, exitOrder.count());
             // 2. if no children, exit
-            if (children.isEmpty()) {
+            if (exitOrder.count() == 0) {
+                if (ownNodeDeleted) {
+                    // O nó deste participante foi o último a ser removido
+                    deleteReady();
+                }
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_EXIT, System.nanoTime() - start);
+                phases.offer(BarrierPhase.EXITED);
                 return;
             }
             // 3. if p is only process node in L, delete(n) and exit
-            if (children.size() == 1 && children.get(0).getKey().equals(id)) {
-                zk.delete(barrierNode + "/" + id, -1);
+            if (exitOrder.count() == 1 && exitOrder.lowest().equals(id)) {
+                try {
+                    zk.delete(nodePath, -1);
+                } catch (KeeperException.NoNodeException e) {
+                    // O cache usa outra sessão e ainda lista o nó deste participante, que já foi removido: confere
+                    // os participantes restantes com a sessão da barreira, que já viu a remoção
+                    cache.invalidate(barrierNode);
+                    ownSession = true;
+                    continue;
+                }
+                deleteReady();
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_EXIT, System.nanoTime() - start);
+                phases.offer(BarrierPhase.EXITED);
                 return;
             }
             exitLatch = new CountDownLatch(1);
-            if (children.get(0).getKey().equals(id)) {
+            final Stat watched;
+            if (exitOrder.lowest().equals(id)) {
                 // 4. if p is the lowest process node in L, wait on highest process node in L
-                zk.exists(barrierNode + "/" + children.get(children.size() - 1).getKey(), true);
+                watched = zk.exists(exitOrder.path(barrierNode, exitOrder.highest()), true);
             } else {
                 // 5. else delete(n) if still exists and wait on lowest process node in L
                 try {
-                    zk.delete(barrierNode + "/" + id, -1);
+                    zk.delete(nodePath, -1);
                 } catch (KeeperException.NoNodeException ignored) {
                 }
-                zk.exists(barrierNode + "/" + children.get(0).getKey(), true);
+                watched = zk.exists(exitOrder.path(barrierNode, exitOrder.lowest()), true);
             }
-            exitLatch.await();
+            if (watched == null) {
+                // O cache ainda não recebeu a remoção do nó observado: descarta a resposta e consulta novamente
+                cache.invalidate(barrierNode);
+                continue;
+            }
+            ZooKeeperWaits.await(exitLatch);
+        }
+    }
+
+    /**
+     * Remove o nó /ready, para que a próxima rodada possa ser liberada e o contêiner da barreira possa ser removido.
+     * Chamado pelo último participante a sair.
+     */
+    private void deleteReady() throws KeeperException, InterruptedException {
+        try {
+            zk.delete(readyPath, -1);
+        } catch (KeeperException.NoNodeException ignored) {
         }
     }
 
@@ -257,6 +579,11 @@ public class ZooKeeperDoubleBarrier implements AutoCloseable {
      */
     @Override
     public void close() throws InterruptedException {
+        phases.close();
         zk.close();
+        cache.release(barrierNode);
+        cache.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
     }
 }
\ No newline at end of file
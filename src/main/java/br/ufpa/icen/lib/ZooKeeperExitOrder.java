@@ -0,0 +1,171 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.KeeperException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordem de saída dos participantes de uma barreira dupla: o participante mais antigo aguarda o mais recente, e os
+ * demais aguardam o mais antigo.
+ * <p>
+ * O nó de cada participante guarda o instante da sua chegada, em nanossegundos desde a época, como 8 bytes
+ * big-endian. Nós criados por versões anteriores guardam a data em texto ({@link DateTimeFormatter#ISO_LOCAL_DATE_TIME},
+ * no fuso local), que continua sendo lida. Empates são desfeitos pelo nome do nó, para que todos os participantes
+ * concordem sobre o mais antigo e o mais recente.
+ * <p>
+ * A compatibilidade vale apenas em um sentido: versões anteriores não leem o conteúdo binário e falham ao encontrar o
+ * nó de um participante desta versão. Em uma atualização gradual, todos os participantes de uma mesma barreira devem
+ * ser atualizados antes que qualquer um deles passe a usar esta versão, ou a barreira deve ser drenada antes da
+ * atualização.
+ * <p>
+ * A busca é feita em uma única passada sobre os filhos, sem coleções intermediárias, e os caminhos dos filhos são
+ * guardados entre as voltas do laço de saída: uma volta que encontra os mesmos participantes no
+ * {@link ZooKeeperNodeCache} não aloca nada. Os caminhos guardados são descartados quando passam do dobro dos filhos
+ * atuais, já que a barreira dupla não reutilizável usa o mesmo nó pai para todos os participantes que já passaram por
+ * ela. Uma instância não deve ser usada por mais de uma thread ao mesmo tempo.
+ */
+final class ZooKeeperExitOrder {
+    /**
+     * Tamanho, em bytes, do conteúdo do nó de um participante.
+     */
+    static final int STAMP_LENGTH = 8;
+    private static final String READY = "ready";
+    // Caminhos guardados além do dobro dos filhos atuais antes que sejam descartados
+    private static final int STALE_PATHS = 16;
+
+    private final ZooKeeperNodeCache cache;
+    // Caminhos dos filhos do nó `parent`, reaproveitados entre as voltas do laço de saída
+    private final Map<String, String> paths = new HashMap<>();
+    private String parent;
+    private String lowest;
+    private String highest;
+    private int count;
+
+    ZooKeeperExitOrder(ZooKeeperNodeCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Retorna o instante atual, em nanossegundos desde a época, com a precisão de {@link System#currentTimeMillis()}.
+     * Chegadas no mesmo milissegundo são desempatadas pelo nome do nó.
+     */
+    static long now() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * Grava {@code stamp} em {@code buffer}, que deve ter {@value #STAMP_LENGTH} bytes.
+     *
+     * @return {@code buffer}.
+     */
+    static byte[] encode(long stamp, byte[] buffer) {
+        for (int i = STAMP_LENGTH - 1; i >= 0; i--) {
+            buffer[i] = (byte) stamp;
+            stamp >>>= 8;
+        }
+        return buffer;
+    }
+
+    /**
+     * Lê o instante de chegada gravado no nó de um participante, em qualquer um dos dois formatos.
+     */
+    static long decode(byte[] data) {
+        if (data.length == STAMP_LENGTH) {
+            long stamp = 0;
+            for (int i = 0; i < STAMP_LENGTH; i++) {
+                stamp = (stamp << 8) | (data[i] & 0xFF);
+            }
+            return stamp;
+        }
+        // Uma data em texto nunca tem 8 bytes
+        final Instant legacy = LocalDateTime.parse(new String(data, StandardCharsets.UTF_8), DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                .atZone(ZoneId.systemDefault()).toInstant();
+        return TimeUnit.SECONDS.toNanos(legacy.getEpochSecond()) + legacy.getNano();
+    }
+
+    /**
+     * Retorna o caminho do filho {@code child} de {@code parent}.
+     */
+    String path(String parent, String child) {
+        if (!parent.equals(this.parent)) {
+            // Uma nova geração: os caminhos anteriores não serão mais usados
+            paths.clear();
+            this.parent = parent;
+        }
+        String path = paths.get(child);
+        if (path == null) {
+            path = parent + "/" + child;
+            paths.put(child, path);
+        }
+        return path;
+    }
+
+    /**
+     * Procura os participantes mais antigo e mais recente entre os filhos de {@code parent}, consultando o conteúdo
+     * de cada um no cache. Filhos removidos durante a busca e o nó /ready são ignorados.
+     *
+     * @param children Filhos de {@code parent}, que não são modificados.
+     */
+    void scan(String parent, List<String> children) throws KeeperException, InterruptedException {
+        if (paths.size() > 2 * children.size() + STALE_PATHS) {
+            // Descarta os caminhos dos participantes que já saíram
+            paths.clear();
+        }
+        lowest = null;
+        highest = null;
+        count = 0;
+        long lowestStamp = 0;
+        long highestStamp = 0;
+        // Um laço por índice, pois as listas do cache permitem acesso aleatório e dispensam um iterador
+        for (int i = 0; i < children.size(); i++) {
+            final String child = children.get(i);
+            if (READY.equals(child)) {
+                continue;
+            }
+            final long stamp;
+            try {
+                stamp = decode(cache.data(path(parent, child)));
+            } catch (KeeperException.NoNodeException e) {
+                continue;
+            }
+            if (count == 0 || stamp < lowestStamp || (stamp == lowestStamp && child.compareTo(lowest) < 0)) {
+                lowest = child;
+                lowestStamp = stamp;
+            }
+            if (count == 0 || stamp > highestStamp || (stamp == highestStamp && child.compareTo(highest) > 0)) {
+                highest = child;
+                highestStamp = stamp;
+            }
+            count++;
+        }
+    }
+
+    /**
+     * Retorna o número de participantes encontrados na última busca.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Retorna o participante mais antigo encontrado na última busca, ou {@code null} se não houver nenhum.
+     */
+    String lowest() {
+        return lowest;
+    }
+
+    /**
+     * Retorna o participante mais recente encontrado na última busca, ou {@code null} se não houver nenhum.
+     */
+    String highest() {
+        return highest;
+    }
+}
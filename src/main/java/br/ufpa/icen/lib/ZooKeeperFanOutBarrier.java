@@ -0,0 +1,189 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Uma barreira distribuída simples cuja liberação é propagada em árvore usando o Apache ZooKeeper.
+ * <p>
+ * Na {@link ZooKeeperBarrier}, todos os participantes observam o mesmo nó, e a sua remoção faz com que o
+ * servidor envie todas as notificações de uma só vez. Aqui, cada participante cria o seu próprio nó de
+ * retransmissão ({@code barrierNode/relay-<n>}) e observa apenas ele. Os nós formam uma árvore implícita
+ * de grau {@code fanOut}: os filhos do participante {@code n} são {@code fanOut * (n + 1) + i}, para
+ * {@code 0 <= i < fanOut}. Ao ser liberado, cada participante remove os nós dos seus filhos, de forma que
+ * nenhuma conexão envia mais do que {@code fanOut} notificações, e a liberação leva um número de etapas
+ * logarítmico no número de participantes.
+ * <p>
+ * Ao contrário da {@link ZooKeeperBarrier}, a liberação não remove o nó da barreira: ela grava
+ * {@code released} no seu conteúdo, para que participantes que cheguem depois prossigam sem esperar.
+ * <p>
+ * Os nós de retransmissão são efêmeros, e por isso não se acumulam entre execuções. Cada participante também observa
+ * o nó do seu pai: se ele desaparecer, seja pela liberação do pai ou pela queda da sua sessão, o participante passa a
+ * observar o conteúdo do nó da barreira, e prossegue assim que ele indicar a liberação. Assim, a queda de um
+ * participante não bloqueia a sua subárvore.
+ */
+public class ZooKeeperFanOutBarrier extends ZooKeeperBarrier {
+    private static final byte[] RELEASED = "released".getBytes(StandardCharsets.UTF_8);
+    private static final String RELAY_PREFIX = "relay-";
+
+    private final int fanOut;
+
+    /**
+     * Inicializa a barreira em árvore do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @param fanOut        Número máximo de participantes notificados por cada participante liberado.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperFanOutBarrier(String connectString, String barrierNode, int fanOut)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, barrierNode);
+        if (fanOut < 1) {
+            throw new IllegalArgumentException("fanOut deve ser positivo: " + fanOut);
+        }
+        this.fanOut = fanOut;
+    }
+
+    @Override
+    public void waitForBarrier() throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        if (isReleased()) {
+            RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+            return;
+        }
+        // Cria o nó de retransmissão deste participante e observa a sua remoção
+        final String relayNode = zk.create(barrierNode + "/" + RELAY_PREFIX, new byte[0],
+                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        final long index = relayIndex(relayNode.substring(barrierNode.length() + 1));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean exists = zk.exists(relayNode, event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                latch.countDown();
+            }
+        }) != null;
+        if (exists) {
+            // A liberação marca a barreira antes de remover qualquer nó de retransmissão. Se ela já ocorreu,
+            // o pai deste participante pode ter tentado remover o seu nó antes dele ser criado.
+            if (!isReleased()) {
+                watchParent(index, latch);
+                ZooKeeperWaits.await(latch);
+            }
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+        // Repassa a liberação para os filhos deste participante, e remove o seu próprio nó, caso ele tenha sido
+        // liberado pelo conteúdo do nó da barreira
+        final long[] relays = new long[fanOut + 1];
+        for (int i = 0; i < fanOut; i++) {
+            relays[i] = fanOut * (index + 1) + i;
+        }
+        relays[fanOut] = index;
+        deleteRelays(relays);
+    }
+
+    /**
+     * Observa o nó de retransmissão do pai do participante {@code index}. Se ele não existir ou for removido, passa a
+     * observar o conteúdo do nó da barreira, liberando {@code latch} assim que a barreira for liberada.
+     * <p>
+     * As raízes da árvore não têm pai, e são liberadas por {@link #removeBarrier()}, assim como os participantes cujo
+     * pai caiu antes da liberação.
+     */
+    private void watchParent(long index, CountDownLatch latch) throws KeeperException, InterruptedException {
+        final long parent = index / fanOut - 1;
+        if (parent < 0) {
+            return;
+        }
+        final Stat stat = zk.exists(relayNode(parent), event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                watchReleased(latch);
+            }
+        });
+        if (stat == null) {
+            watchReleased(latch);
+        }
+    }
+
+    /**
+     * Libera {@code latch} assim que o conteúdo do nó da barreira indicar a liberação, ou o nó for removido.
+     */
+    private void watchReleased(CountDownLatch latch) {
+        if (latch.getCount() == 0) {
+            return;
+        }
+        // Consulta assíncrona, pois é chamada pela thread de eventos do ZooKeeper
+        zk.getData(barrierNode, event -> watchReleased(latch), (rc, path, ctx, data, stat) -> {
+            if (rc == KeeperException.Code.NONODE.intValue()
+                    || rc == KeeperException.Code.OK.intValue() && Arrays.equals(data, RELEASED)) {
+                latch.countDown();
+            }
+        }, null);
+    }
+
+    /**
+     * Libera a barreira, removendo os nós de retransmissão que estão na raiz da árvore.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void removeBarrier() throws KeeperException, InterruptedException {
+        try {
+            zk.setData(barrierNode, RELEASED, -1);
+        } catch (KeeperException.NoNodeException e) {
+            return;
+        }
+        // As raízes são os nós cujo pai não existe. Se o nó da barreira for novo, elas são os `fanOut`
+        // primeiros participantes; caso contrário, os números de sequência não começam em zero. Os filhos de um
+        // participante que caiu também são raízes.
+        final List<String> children = zk.getChildren(barrierNode, false);
+        final Set<Long> indexes = new HashSet<>();
+        for (String child : children) {
+            if (child.startsWith(RELAY_PREFIX)) {
+                indexes.add(relayIndex(child));
+            }
+        }
+        deleteRelays(indexes.stream()
+                .filter(index -> !indexes.contains(index / fanOut - 1))
+                .mapToLong(Long::longValue)
+                .toArray());
+    }
+
+    private boolean isReleased() throws KeeperException, InterruptedException {
+        try {
+            return Arrays.equals(zk.getData(barrierNode, false, null), RELEASED);
+        } catch (KeeperException.NoNodeException e) {
+            // Assim como na barreira simples, a ausência do nó também libera a barreira
+            return true;
+        }
+    }
+
+    /**
+     * Remove os nós de retransmissão em paralelo, aguardando todas as respostas.
+     */
+    private void deleteRelays(long[] indexes) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(indexes.length);
+        for (long index : indexes) {
+            // Nós inexistentes pertencem a participantes que ainda não chegaram (e que encontrarão a
+            // barreira liberada) ou que já foram liberados
+            zk.delete(relayNode(index), -1, (rc, path, ctx) -> latch.countDown(), null);
+        }
+        ZooKeeperWaits.await(latch);
+    }
+
+    private String relayNode(long index) {
+        return String.format("%s/%s%010d", barrierNode, RELAY_PREFIX, index);
+    }
+
+    private static long relayIndex(String relayName) {
+        return Long.parseLong(relayName, RELAY_PREFIX.length(), relayName.length(), 10);
+    }
+}
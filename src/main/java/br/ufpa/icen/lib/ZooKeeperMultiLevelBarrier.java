@@ -1,18 +1,65 @@
 package br.ufpa.icen.lib;
 
-import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.KeeperException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-
+/**
+ * Uma barreira distribuída hierárquica, com um número arbitrário de níveis, usando o Apache ZooKeeper.
+ * <p>
+ * Os níveis são ordenados do mais baixo (por exemplo, um rack) para o mais alto (por exemplo, a barreira global),
+ * e cada um tem o seu próprio número de participantes. Os participantes do primeiro nível são os processos do
+ * grupo; os participantes de cada nível seguinte são os grupos do nível anterior. Apenas o último participante a
+ * chegar em cada grupo sobe para o próximo nível, e, quando o nível mais alto é completado, a liberação desce pelo
+ * mesmo caminho: cada participante que subiu libera o grupo de onde veio. Assim, cada grupo gera uma única
+ * operação no nível acima (por exemplo, entre datacenters).
+ * <p>
+ * Cada chegada em um nível é um nó efêmero (veja {@link ZooKeeperArrivals}): se a sessão de um participante
+ * terminar antes da liberação, inclusive depois de subir de nível, as suas chegadas deixam de contar e o nível
+ * aguarda outro participante em seu lugar. A liberação de um nível avança a sua geração, de forma que a barreira
+ * pode ser reutilizada.
+ */
 public class ZooKeeperMultiLevelBarrier extends ZooKeeperBarrier {
+    private final List<Level> levels;
+    private final List<ZooKeeperArrivals> arrivals = new ArrayList<>();
+
+    /**
+     * Um nível da barreira.
+     */
+    public static final class Level {
+        private final String node;
+        private final int participants;
+
+        /**
+         * @param node         Caminho do nó do nível.
+         * @param participants Número de participantes do nível: processos, no primeiro nível, ou grupos do nível
+         *                     anterior, nos demais.
+         */
+        public Level(String node, int participants) {
+            if (participants < 1) {
+                throw new IllegalArgumentException("participants deve ser positivo: " + participants);
+            }
+            this.node = node;
+            this.participants = participants;
+        }
+
+        public String getNode() {
+            return node;
+        }
 
-    private final int maxParticipantes;
-    private final String innerBarrierNode;
+        public int getParticipants() {
+            return participants;
+        }
+    }
 
     /**
      * Inicializa a barreira reutilizável e restrita do ZooKeeper com suporte a barreiras duplas aninhadas.
+     * <p>
+     * Equivale a uma barreira com os níveis {@code barrierNode} ({@code maxParticipantes} participantes) e
+     * {@code innerBarrier} (um participante, o último a chegar em {@code barrierNode}).
      *
      * @param connectString   String de conexão com o ZooKeeper.
      * @param barrierNode     Caminho do nó da barreira externa.
@@ -24,66 +71,142 @@ public class ZooKeeperMultiLevelBarrier extends ZooKeeperBarrier {
      */
     public ZooKeeperMultiLevelBarrier(String connectString, String barrierNode, String innerBarrier, int maxParticipantes)
             throws IOException, InterruptedException, KeeperException {
-        super(connectString, barrierNode);
-        this.innerBarrierNode = innerBarrier;
-        this.maxParticipantes = maxParticipantes;
-        initializeBarrier(barrierNode);
-        if (innerBarrierNode != null) {
-            initializeBarrier(innerBarrierNode);
+        this(connectString, barrierNode, innerBarrier, maxParticipantes, 0);
+    }
+
+    /**
+     * Inicializa a barreira reutilizável e restrita do ZooKeeper com suporte a barreiras duplas aninhadas, cujos
+     * nós são removidos pelo ZooKeeper após ficarem {@code ttlMillis} milissegundos sem modificações.
+     * <p>
+     * Um participante que chegar depois da remoção recria os nós e aguarda os demais normalmente.
+     *
+     * @param connectString   String de conexão com o ZooKeeper.
+     * @param barrierNode     Caminho do nó da barreira externa.
+     * @param innerBarrier    Caminho do nó da barreira interna (opcional).
+     * @param maxParticipants Número máximo de participantes na barreira.
+     * @param ttlMillis       Tempo de vida dos nós sem modificações, ou 0 para nunca removê-los.
+     * @throws IOException          se a conexão falhar.
+     * @throws InterruptedException se a inicialização for interrompida.
+     * @throws KeeperException      se houver erro na comunicação com o ZooKeeper.
+     */
+    public ZooKeeperMultiLevelBarrier(String connectString, String barrierNode, String innerBarrier, int maxParticipantes,
+                                      long ttlMillis)
+            throws IOException, InterruptedException, KeeperException {
+        this(connectString, legacyLevels(barrierNode, innerBarrier, maxParticipantes), ttlMillis);
+    }
+
+    /**
+     * Inicializa a barreira hierárquica do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param levels        Níveis da barreira, do mais baixo para o mais alto.
+     * @throws IOException          se a conexão falhar.
+     * @throws InterruptedException se a inicialização for interrompida.
+     * @throws KeeperException      se houver erro na comunicação com o ZooKeeper.
+     */
+    public ZooKeeperMultiLevelBarrier(String connectString, List<Level> levels)
+            throws IOException, InterruptedException, KeeperException {
+        this(connectString, levels, 0);
+    }
+
+    /**
+     * Inicializa a barreira hierárquica do ZooKeeper, cujos nós são removidos pelo ZooKeeper após ficarem
+     * {@code ttlMillis} milissegundos sem modificações.
+     * <p>
+     * Um participante que chegar em um nível depois da remoção recria o nó e aguarda os demais normalmente. Nós com
+     * tempo de vida só são removidos se o servidor os suportar ({@code zookeeper.extendedTypesEnabled=true}); caso
+     * contrário, os nós são criados sem tempo de vida.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param levels        Níveis da barreira, do mais baixo para o mais alto.
+     * @param ttlMillis     Tempo de vida dos nós sem modificações, ou 0 para nunca removê-los.
+     * @throws IOException          se a conexão falhar.
+     * @throws InterruptedException se a inicialização for interrompida.
+     * @throws KeeperException      se houver erro na comunicação com o ZooKeeper.
+     */
+    public ZooKeeperMultiLevelBarrier(String connectString, List<Level> levels, long ttlMillis)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, levels.get(0).getNode());
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        REGISTRY.expect(recorderId, levels.get(0).getParticipants());
+        for (Level level : this.levels) {
+            final ZooKeeperArrivals levelArrivals = new ZooKeeperArrivals(zk, level.getNode(), level.getParticipants(), ttlMillis);
+            levelArrivals.initialize();
+            arrivals.add(levelArrivals);
         }
     }
 
-   
-    private void initializeBarrier(String node) throws KeeperException, InterruptedException {
-        Stat stat = zk.exists(node, false);
-        if (stat == null) {
-            zk.create(node, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    private static List<Level> legacyLevels(String barrierNode, String innerBarrier, int maxParticipantes) {
+        final List<Level> levels = new ArrayList<>();
+        levels.add(new Level(barrierNode, maxParticipantes));
+        if (innerBarrier != null) {
+            levels.add(new Level(innerBarrier, 1));
         }
+        return levels;
+    }
+
+    public List<Level> getLevels() {
+        return levels;
     }
 
+    /**
+     * Aguarda até que todos os participantes de todos os níveis cheguem na barreira.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
     @Override
     public void waitForBarrier() throws KeeperException, InterruptedException {
-        passBarrier(barrierNode);
-
-       
-        if (innerBarrierNode != null) {
-            passBarrier(innerBarrierNode);
-        }
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        passBarrier(levels.get(0).getNode());
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
     }
 
-   
-    private void passBarrier(String node) throws KeeperException, InterruptedException {
-        while (true) {
-            Stat stat = zk.exists(node, true);
-            if (stat == null) {
-                return; 
-            }
-
-            int count = getParticipantCount(node);
-            if (count < maxParticipantes) {
-                incrementParticipantCount(node);
-                if (count + 1 == maxParticipantes) {
-                    passBarrier(node);
-                    resetBarrier(node);
-                }
-                return;
+    /**
+     * Chega no nível cujo nó é {@code node}, subindo enquanto este participante for o último do seu grupo, e
+     * aguarda a liberação.
+     */
+    void passBarrier(String node) throws KeeperException, InterruptedException {
+        int level = indexOf(node);
+        // Chegadas nos níveis em que este participante foi o último, e que ele deve liberar
+        final ZooKeeperArrivals.Arrival[] ascended = new ZooKeeperArrivals.Arrival[levels.size()];
+        while (level < levels.size()) {
+            final ZooKeeperArrivals.Arrival arrival = arrivals.get(level).arrive();
+            if (!arrival.isLast()) {
+                arrivals.get(level).leave(arrival);
+                break;
             }
+            ascended[level] = arrival;
+            level++;
+        }
+        // A liberação desce pelos níveis em que este participante subiu
+        for (int i = level - 1; i >= 0; i--) {
+            arrivals.get(i).release(ascended[i]);
+            arrivals.get(i).leave(ascended[i]);
         }
     }
 
-    private int getParticipantCount(String node) throws KeeperException, InterruptedException {
-        byte[] data = zk.getData(node, false, null);
-        return Integer.parseInt(new String(data));
-    }
-
-   
-    private void incrementParticipantCount(String node) throws KeeperException, InterruptedException {
-        int count = getParticipantCount(node);
-        zk.setData(node, String.valueOf(count + 1).getBytes(), -1);
+    /**
+     * Remove os nós de todos os níveis, junto com as suas chegadas, liberando os participantes que aguardam em
+     * qualquer nível.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void removeBarrier() throws KeeperException, InterruptedException {
+        for (ZooKeeperArrivals levelArrivals : arrivals) {
+            levelArrivals.remove();
+        }
     }
 
-   
-    private void resetBarrier(String node) throws KeeperException, InterruptedException {
-        zk.create(node, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    private int indexOf(String node) {
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i).getNode().equals(node)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("nível desconhecido: " + node);
     }
 }
@@ -0,0 +1,376 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Um cache dos nós das barreiras, compartilhado por todas as barreiras do processo conectadas ao mesmo ZooKeeper.
+ * <p>
+ * As barreiras consultam repetidamente o mesmo estado (a existência do nó da barreira, ou os filhos de uma
+ * barreira dupla) enquanto aguardam. Com o cache, cada consulta é enviada ao ZooKeeper apenas uma vez, junto com
+ * um observador; as consultas seguintes são respondidas localmente, até que o observador informe que o nó foi
+ * modificado. Assim, apenas as mudanças reais de estado geram tráfego, independentemente do número de barreiras
+ * e de quantas vezes elas verificam o estado.
+ * <p>
+ * O cache usa a sua própria sessão, e por isso não enxerga imediatamente as escritas feitas pela sessão de uma
+ * barreira: uma barreira não deve consultá-lo logo após modificar o nó que deseja ler. Se a barreira detectar
+ * que uma resposta está desatualizada, ela pode descartá-la com {@link #invalidate(String)}.
+ * <p>
+ * Cada barreira reserva o seu nó com {@link #retain(String)} e o libera com {@link #release(String)} ao ser fechada:
+ * quando nenhuma barreira do processo usa mais um nó, as respostas em cache do nó e dos seus descendentes são
+ * descartadas, e os observadores correspondentes são removidos do servidor.
+ */
+public final class ZooKeeperNodeCache implements AutoCloseable {
+    private static final Map<String, ZooKeeperNodeCache> INSTANCES = new HashMap<>();
+
+    /**
+     * Cria a sessão usada pelo cache.
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+        ZooKeeper connect(Watcher watcher) throws IOException;
+    }
+
+    private final String connectString;
+    private final ConnectionFactory factory;
+    // Identificador da sessão do cache no gravador, ou -1 se ela não for gravada
+    private final int recorderId;
+    private final Watcher watcher = this::process;
+    private volatile ZooKeeper zk;
+    private int references;
+    // Respostas em cache, por caminho. `Optional.empty()` indica que o nó não existe.
+    private final Map<String, Optional<Stat>> stats = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> data = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> children = new ConcurrentHashMap<>();
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>();
+    // Número de barreiras abertas que usam cada nó. Acessado com o monitor de `this`.
+    private final Map<String, Integer> retained = new HashMap<>();
+    // Incrementado a cada evento, para descartar respostas obtidas durante uma modificação. Os acessos são
+    // sincronizados em `this`, para que um evento não seja processado entre a verificação e a gravação no cache.
+    private long generation;
+
+    /**
+     * Cria um cache de uso exclusivo, fora das instâncias compartilhadas de {@link #acquire(String)}, cujas sessões
+     * são criadas por {@code factory}. O cache é fechado na primeira chamada a {@link #close()}.
+     */
+    ZooKeeperNodeCache(String connectString, ConnectionFactory factory) throws IOException {
+        this(connectString, factory, -1);
+    }
+
+    private ZooKeeperNodeCache(String connectString, ConnectionFactory factory, int recorderId) throws IOException {
+        this.connectString = connectString;
+        this.factory = factory;
+        this.recorderId = recorderId;
+        this.references = 1;
+        this.zk = factory.connect(watcher);
+    }
+
+    /**
+     * Obtém o cache compartilhado do ZooKeeper em {@code connectString}, criando-o se necessário.
+     * <p>
+     * Cada chamada deve ser acompanhada de uma chamada a {@link #close()}. A sessão do cache é encerrada quando
+     * todas as barreiras que o obtiveram o fecharem.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @throws IOException se a conexão falhar.
+     */
+    public static ZooKeeperNodeCache acquire(String connectString) throws IOException {
+        synchronized (INSTANCES) {
+            ZooKeeperNodeCache cache = INSTANCES.get(connectString);
+            if (cache != null) {
+                cache.references++;
+                return cache;
+            }
+            final int recorderId = BarrierFlightRecorder.global().register(connectString);
+            try {
+                cache = new ZooKeeperNodeCache(connectString, watcher -> connect(connectString, watcher, recorderId), recorderId);
+            } catch (IOException e) {
+                BarrierFlightRecorder.global().unregister(recorderId);
+                throw e;
+            }
+            INSTANCES.put(connectString, cache);
+            return cache;
+        }
+    }
+
+    /**
+     * Abre uma sessão compartilhada pelas barreiras do processo conectadas a {@code connectString}.
+     *
+     * @param recorderId Identificador da sessão no gravador, registrado uma única vez para todas as sessões que a
+     *                   substituírem após uma expiração.
+     */
+    static ZooKeeper connect(String connectString, Watcher watcher, int recorderId) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    private void process(WatchedEvent event) {
+        final String path = event.getPath();
+        if (path == null) {
+            if (event.getState() == Watcher.Event.KeeperState.Expired) {
+                // Os observadores da sessão expirada foram perdidos: descarta todo o cache e abre uma nova sessão
+                synchronized (this) {
+                    generation++;
+                    stats.clear();
+                    data.clear();
+                    children.clear();
+                }
+                final ZooKeeper expired = zk;
+                try {
+                    zk = factory.connect(watcher);
+                } catch (IOException ignored) {
+                    // As próximas consultas falharão com a sessão expirada, assim como sem o cache
+                }
+                try {
+                    expired.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (List<Runnable> list : listeners.values()) {
+                    list.forEach(Runnable::run);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            generation++;
+            switch (event.getType()) {
+                case NodeCreated:
+                    stats.remove(path);
+                    break;
+                case NodeDataChanged:
+                    stats.remove(path);
+                    data.remove(path);
+                    break;
+                case NodeChildrenChanged:
+                    // O Stat do nó também muda, já que contém o número de filhos
+                    stats.remove(path);
+                    children.remove(path);
+                    break;
+                case NodeDeleted:
+                    stats.remove(path);
+                    data.remove(path);
+                    children.remove(path);
+                    break;
+                default:
+                    return;
+            }
+        }
+        final List<Runnable> list = listeners.get(path);
+        if (list != null) {
+            list.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Retorna o {@link Stat} do nó, ou {@code null} se ele não existir, assim como {@link ZooKeeper#exists}.
+     */
+    public Stat exists(String path) throws KeeperException, InterruptedException {
+        final Optional<Stat> cached = stats.get(path);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        final long before = generation();
+        final Stat stat = zk.exists(path, watcher);
+        putIfUnchanged(stats, path, Optional.ofNullable(stat), before);
+        return stat;
+    }
+
+    /**
+     * Retorna o conteúdo do nó, assim como {@link ZooKeeper#getData}.
+     * <p>
+     * O vetor retornado é uma cópia, e pode ser modificado.
+     *
+     * @throws KeeperException.NoNodeException se o nó não existir.
+     */
+    public byte[] getData(String path) throws KeeperException, InterruptedException {
+        return data(path).clone();
+    }
+
+    /**
+     * Retorna o conteúdo do nó, assim como {@link #getData(String)}, mas sem copiar o vetor em cache.
+     * <p>
+     * O vetor retornado não deve ser modificado.
+     *
+     * @throws KeeperException.NoNodeException se o nó não existir.
+     */
+    byte[] data(String path) throws KeeperException, InterruptedException {
+        final byte[] cached = data.get(path);
+        if (cached != null) {
+            return cached;
+        }
+        final long before = generation();
+        final byte[] result = zk.getData(path, watcher, null);
+        final byte[] value = result == null ? new byte[0] : result;
+        putIfUnchanged(data, path, value, before);
+        return value;
+    }
+
+    /**
+     * Retorna os nomes dos filhos do nó, assim como {@link ZooKeeper#getChildren}.
+     * <p>
+     * A lista retornada é uma cópia, e pode ser modificada.
+     *
+     * @throws KeeperException.NoNodeException se o nó não existir.
+     */
+    public List<String> getChildren(String path) throws KeeperException, InterruptedException {
+        final List<String> cached = children.get(path);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        final long before = generation();
+        final List<String> result = zk.getChildren(path, watcher);
+        putIfUnchanged(children, path, Collections.unmodifiableList(new ArrayList<>(result)), before);
+        return result;
+    }
+
+    /**
+     * Retorna os nomes dos filhos do nó, assim como {@link #getChildren(String)}, mas sem copiar a lista em cache.
+     * <p>
+     * A lista retornada não deve ser modificada.
+     *
+     * @throws KeeperException.NoNodeException se o nó não existir.
+     */
+    List<String> children(String path) throws KeeperException, InterruptedException {
+        final List<String> cached = children.get(path);
+        if (cached != null) {
+            return cached;
+        }
+        return getChildren(path);
+    }
+
+    /**
+     * Descarta as respostas em cache do nó, para que a próxima consulta seja enviada ao ZooKeeper.
+     */
+    public synchronized void invalidate(String path) {
+        generation++;
+        stats.remove(path);
+        data.remove(path);
+        children.remove(path);
+    }
+
+    /**
+     * Reserva o nó {@code path} para uma barreira, até a chamada correspondente a {@link #release(String)}.
+     */
+    public synchronized void retain(String path) {
+        retained.merge(path, 1, Integer::sum);
+    }
+
+    /**
+     * Libera o nó reservado por {@link #retain(String)}. Quando nenhuma barreira reserva mais o nó, as respostas em
+     * cache do nó e dos seus descendentes são descartadas, exceto as dos nós ainda reservados por outras barreiras, e
+     * os observadores desses nós são removidos do servidor.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void release(String path) throws InterruptedException {
+        final Set<String> evicted = new HashSet<>();
+        synchronized (this) {
+            final Integer count = retained.get(path);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                retained.put(path, count - 1);
+                return;
+            }
+            retained.remove(path);
+            // Descarta também as respostas que estejam sendo obtidas neste momento
+            generation++;
+            collect(stats.keySet(), path, evicted);
+            collect(data.keySet(), path, evicted);
+            collect(children.keySet(), path, evicted);
+            for (String evictedPath : evicted) {
+                stats.remove(evictedPath);
+                data.remove(evictedPath);
+                children.remove(evictedPath);
+            }
+        }
+        for (String evictedPath : evicted) {
+            try {
+                zk.removeWatches(evictedPath, watcher, Watcher.WatcherType.Any, true);
+            } catch (KeeperException ignored) {
+                // O observador já foi disparado, ou a sessão foi perdida junto com os seus observadores
+            }
+        }
+    }
+
+    /**
+     * Adiciona a {@code evicted} os caminhos de {@code paths} que são {@code path} ou seus descendentes, e que não
+     * pertencem a um nó ainda reservado.
+     */
+    private void collect(Set<String> paths, String path, Set<String> evicted) {
+        for (String candidate : paths) {
+            if (isWithin(candidate, path) && !isRetained(candidate)) {
+                evicted.add(candidate);
+            }
+        }
+    }
+
+    private boolean isRetained(String path) {
+        for (String root : retained.keySet()) {
+            if (isWithin(path, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWithin(String path, String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Grava uma resposta no cache, caso nenhum evento tenha sido recebido desde que ela foi solicitada.
+     */
+    private synchronized <V> void putIfUnchanged(Map<String, V> map, String path, V value, long before) {
+        if (generation == before) {
+            map.put(path, value);
+        }
+    }
+
+    /**
+     * Registra uma ação executada sempre que o nó (ou a sua lista de filhos) for modificado.
+     * <p>
+     * A ação é executada pela thread de eventos do ZooKeeper, e por isso não deve bloquear.
+     */
+    public void addListener(String path, Runnable listener) {
+        listeners.computeIfAbsent(path, p -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeListener(String path, Runnable listener) {
+        listeners.computeIfPresent(path, (p, list) -> {
+            list.remove(listener);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Libera o cache obtido por {@link #acquire(String)}, fechando a sua sessão se ele não for mais usado.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (INSTANCES) {
+            if (--references > 0) {
+                return;
+            }
+            // Um cache de uso exclusivo não está entre as instâncias compartilhadas
+            INSTANCES.remove(connectString, this);
+        }
+        zk.close();
+        if (recorderId >= 0) {
+            BarrierFlightRecorder.global().unregister(recorderId);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Criação dos nós pais das barreiras, de forma que o ZooKeeper os remova quando não forem mais usados.
+ * <p>
+ * Nós cujos filhos representam os participantes são criados como {@link CreateMode#CONTAINER}: o servidor os
+ * remove assim que o último filho for removido. Nós que apenas guardam dados (como contadores) não têm filhos,
+ * e por isso podem ser criados com um tempo de vida ({@link CreateMode#PERSISTENT_WITH_TTL}), removidos pelo
+ * servidor se não forem modificados durante esse tempo.
+ */
+final class ZooKeeperNodes {
+    private ZooKeeperNodes() {
+    }
+
+    /**
+     * Cria um nó contêiner, caso ainda não exista.
+     */
+    static void createContainer(ZooKeeper zk, String path) throws KeeperException, InterruptedException {
+        if (zk.exists(path, false) != null) {
+            return;
+        }
+        try {
+            zk.create(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+        } catch (KeeperException.NodeExistsException ignored) {
+        }
+    }
+
+    /**
+     * Cria um nó persistente, caso ainda não exista.
+     * <p>
+     * Se {@code ttlMillis} for positivo, o nó é criado com esse tempo de vida. Como nós com tempo de vida precisam
+     * ser habilitados no servidor ({@code zookeeper.extendedTypesEnabled=true}), o nó é criado sem tempo de vida
+     * caso o servidor não os suporte.
+     *
+     * @return {@code true} se o nó foi criado por esta chamada.
+     */
+    static boolean createPersistent(ZooKeeper zk, String path, byte[] data, long ttlMillis)
+            throws KeeperException, InterruptedException {
+        try {
+            if (ttlMillis > 0) {
+                try {
+                    zk.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_WITH_TTL, null, ttlMillis);
+                    return true;
+                } catch (KeeperException.UnimplementedException ignored) {
+                    // O servidor não suporta nós com tempo de vida
+                }
+            }
+            zk.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            return true;
+        } catch (KeeperException.NodeExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lê um número decimal gravado em texto ASCII entre {@code from} (inclusivo) e {@code to} (exclusivo), assim
+     * como {@link Long#parseLong(String)}, mas sem criar uma {@link String}.
+     *
+     * @throws NumberFormatException se o trecho não for um número.
+     */
+    static long parseLong(byte[] data, int from, int to) {
+        final boolean negative = from < to && data[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i >= to) {
+            throw new NumberFormatException("número vazio");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            final int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("dígito inválido: " + (char) data[i]);
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+}
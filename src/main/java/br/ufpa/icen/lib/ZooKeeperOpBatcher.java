@@ -0,0 +1,413 @@
+package br.ufpa.icen.lib;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CheckVersionRequest;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.DeleteRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Agrupa as escritas das barreiras do processo conectadas ao mesmo ZooKeeper em requisições {@code multi()}.
+ * <p>
+ * Quando várias barreiras escrevem ao mesmo tempo, cada escrita seria uma requisição (e uma gravação no log do
+ * servidor). Com o agrupador, a primeira escrita aguarda uma janela de {@value #WINDOW_MICROS} µs, e todas as
+ * escritas enviadas nesse meio tempo seguem em uma única requisição {@code multi()}. Enquanto um lote está em
+ * andamento, as novas escritas formam o próximo lote, que é enviado pelo primeiro de seus autores assim que o lote
+ * anterior termina. Cada autor recebe o resultado da sua própria operação.
+ * <p>
+ * Um {@code multi()} é atômico: se uma operação falhar, nenhuma é aplicada. Nesse caso, apenas o autor da operação
+ * que falhou recebe o erro, e as demais são reenviadas sem ela. Operações que certamente falhariam no mesmo lote (uma
+ * segunda escrita condicional à mesma versão de um nó, ou uma segunda criação do mesmo nó) falham imediatamente, sem
+ * custar um reenvio.
+ * <p>
+ * As escritas usam a sessão do agrupador, e não a da barreira: por isso nós efêmeros, que pertencem à sessão de cada
+ * participante, não podem ser criados por aqui.
+ */
+public final class ZooKeeperOpBatcher implements AutoCloseable {
+    /**
+     * Janela, em microssegundos, durante a qual a primeira escrita de um lote aguarda as demais.
+     */
+    public static final long WINDOW_MICROS = 100L;
+    private static final Map<String, ZooKeeperOpBatcher> INSTANCES = new HashMap<>();
+
+    private final String connectString;
+    // Identificador da sessão do agrupador no gravador, mantido quando a sessão é substituída após uma expiração
+    private final int recorderId;
+    private volatile ZooKeeper zk;
+    private int references;
+    // Escritas aguardando o próximo lote, e se há um lote em andamento. Acessados com o monitor de `this`.
+    private List<Pending> open = new ArrayList<>();
+    private boolean committing;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Uma escrita aguardando o resultado do seu lote. A espera é informada ao {@link ForkJoinPool} (veja
+     * {@link ZooKeeperWaits}), pois os autores costumam ser barreiras chamadas de tarefas do pool.
+     */
+    private static final class Pending implements ForkJoinPool.ManagedBlocker {
+        private final Op op;
+        private OpResult result;
+        private KeeperException error;
+        private boolean done;
+        private boolean promoted;
+
+        Pending(Op op) {
+            this.op = op;
+        }
+
+        synchronized void complete(OpResult result, KeeperException error) {
+            this.result = result;
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * Torna o autor desta escrita responsável por enviar o seu lote.
+         */
+        synchronized void promote() {
+            promoted = true;
+            notifyAll();
+        }
+
+        /**
+         * Aguarda o resultado, ou a vez de enviar o lote.
+         *
+         * @return {@code true} se este autor deve enviar o lote.
+         */
+        boolean awaitTurn() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    ZooKeeperWaits.block(this);
+                    break;
+                } catch (InterruptedException e) {
+                    // A escrita já pode estar no servidor: aguarda o resultado mesmo assim
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                final boolean lead = promoted && !done;
+                promoted = false;
+                return lead;
+            }
+        }
+
+        @Override
+        public synchronized boolean block() throws InterruptedException {
+            while (!done && !promoted) {
+                wait();
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isReleasable() {
+            return done || promoted;
+        }
+    }
+
+    private ZooKeeperOpBatcher(String connectString) throws IOException {
+        this.connectString = connectString;
+        this.recorderId = BarrierFlightRecorder.global().register(connectString);
+        try {
+            this.zk = ZooKeeperNodeCache.connect(connectString, this::process, recorderId);
+        } catch (IOException e) {
+            BarrierFlightRecorder.global().unregister(recorderId);
+            throw e;
+        }
+    }
+
+    /**
+     * Obtém o agrupador compartilhado do ZooKeeper em {@code connectString}, criando-o se necessário.
+     * <p>
+     * Cada chamada deve ser acompanhada de uma chamada a {@link #close()}. A sessão do agrupador é encerrada quando
+     * todas as barreiras que o obtiveram o fecharem.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @throws IOException se a conexão falhar.
+     */
+    public static ZooKeeperOpBatcher acquire(String connectString) throws IOException {
+        synchronized (INSTANCES) {
+            ZooKeeperOpBatcher batcher = INSTANCES.get(connectString);
+            if (batcher == null) {
+                batcher = new ZooKeeperOpBatcher(connectString);
+                INSTANCES.put(connectString, batcher);
+            }
+            batcher.references++;
+            return batcher;
+        }
+    }
+
+    private void process(WatchedEvent event) {
+        if (event.getState() == Watcher.Event.KeeperState.Expired) {
+            final ZooKeeper expired = zk;
+            try {
+                zk = ZooKeeperNodeCache.connect(connectString, this::process, recorderId);
+            } catch (IOException ignored) {
+                // As próximas escritas falharão com a sessão expirada
+            }
+            // Libera as threads da conexão expirada
+            try {
+                expired.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Cria um nó persistente ou contêiner, assim como {@link ZooKeeper#create}.
+     *
+     * @return o caminho do nó criado.
+     */
+    public String create(String path, byte[] data, CreateMode createMode) throws KeeperException, InterruptedException {
+        return ((OpResult.CreateResult) submit(Op.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode))).getPath();
+    }
+
+    /**
+     * Modifica o conteúdo de um nó, assim como {@link ZooKeeper#setData}.
+     *
+     * @return {@link Stat} do nó após a modificação.
+     */
+    public Stat setData(String path, byte[] data, int version) throws KeeperException, InterruptedException {
+        return ((OpResult.SetDataResult) submit(Op.setData(path, data, version))).getStat();
+    }
+
+    /**
+     * Remove um nó, assim como {@link ZooKeeper#delete}.
+     */
+    public void delete(String path, int version) throws KeeperException, InterruptedException {
+        submit(Op.delete(path, version));
+    }
+
+    /**
+     * Envia uma operação no próximo lote e aguarda o seu resultado.
+     * <p>
+     * Uma vez enviada, a operação não pode ser cancelada: se a thread for interrompida, ela aguarda o resultado e
+     * restaura o estado de interrupção.
+     *
+     * @param op Criação (não efêmera), modificação, remoção ou verificação de versão.
+     * @return o resultado da operação.
+     * @throws KeeperException se a operação falhar. Erros causados pelas outras operações do lote não são repassados.
+     */
+    public OpResult submit(Op op) throws KeeperException, InterruptedException {
+        checkWrite(op);
+        final Pending pending = new Pending(op);
+        final boolean lead;
+        synchronized (this) {
+            if (references <= 0) {
+                throw new IllegalStateException("o agrupador foi fechado");
+            }
+            open.add(pending);
+            lead = !committing;
+            committing = true;
+        }
+        if (lead) {
+            // Aguarda as escritas enviadas ao mesmo tempo por outras barreiras
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+            commitNext();
+        }
+        while (pending.awaitTurn()) {
+            commitNext();
+        }
+        if (pending.error != null) {
+            throw pending.error;
+        }
+        return pending.result;
+    }
+
+    /**
+     * Retorna o número de requisições {@code multi()} enviadas pelo agrupador.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    private static void checkWrite(Op op) {
+        final Record request = op.toRequestRecord();
+        if (request instanceof CreateRequest) {
+            if (createMode((CreateRequest) request).isEphemeral()) {
+                throw new IllegalArgumentException("nós efêmeros pertencem à sessão do participante: " + op.getPath());
+            }
+        } else if (!(request instanceof SetDataRequest || request instanceof DeleteRequest
+                || request instanceof CheckVersionRequest)) {
+            throw new IllegalArgumentException("apenas escritas podem ser agrupadas: " + op.getPath());
+        }
+    }
+
+    private static CreateMode createMode(CreateRequest request) {
+        try {
+            return CreateMode.fromFlag(request.getFlags());
+        } catch (KeeperException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Envia as escritas pendentes como um lote e, ao terminar, passa a vez para o primeiro autor do próximo lote.
+     */
+    private void commitNext() {
+        final List<Pending> batch;
+        synchronized (this) {
+            batch = open;
+            open = new ArrayList<>();
+        }
+        try {
+            commit(batch);
+        } finally {
+            synchronized (this) {
+                if (open.isEmpty()) {
+                    committing = false;
+                } else {
+                    open.get(0).promote();
+                }
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<Pending> remaining = rejectConflicts(batch);
+        while (!remaining.isEmpty()) {
+            final List<Op> ops = new ArrayList<>(remaining.size());
+            for (Pending pending : remaining) {
+                ops.add(pending.op);
+            }
+            requests.incrementAndGet();
+            try {
+                final List<OpResult> results = zk.multi(ops);
+                for (int i = 0; i < remaining.size(); i++) {
+                    remaining.get(i).complete(results.get(i), null);
+                }
+                return;
+            } catch (KeeperException e) {
+                final int failed = indexOfFailure(e.getResults());
+                if (failed < 0) {
+                    // Falha da requisição inteira (por exemplo, perda de conexão): todos os autores recebem o erro
+                    for (Pending pending : remaining) {
+                        pending.complete(null, e);
+                    }
+                    return;
+                }
+                // Apenas o autor da operação que falhou recebe o erro; as demais seguem em um novo multi()
+                final Pending culprit = remaining.get(failed);
+                final int code = ((OpResult.ErrorResult) e.getResults().get(failed)).getErr();
+                culprit.complete(null, KeeperException.create(KeeperException.Code.get(code), culprit.op.getPath()));
+                remaining = new ArrayList<>(remaining);
+                remaining.remove(failed);
+            } catch (InterruptedException e) {
+                // O resultado do lote é desconhecido, assim como em uma perda de conexão
+                for (Pending pending : remaining) {
+                    pending.complete(null, new KeeperException.ConnectionLossException());
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                for (Pending pending : remaining) {
+                    pending.complete(null, new KeeperException.SystemErrorException());
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Falha as operações que não podem ser aplicadas depois de uma operação anterior do mesmo lote: escritas
+     * condicionais à mesma versão de um nó e criações repetidas do mesmo nó.
+     *
+     * @return as operações restantes, na ordem original.
+     */
+    private static List<Pending> rejectConflicts(List<Pending> batch) {
+        final List<Pending> accepted = new ArrayList<>(batch.size());
+        final Map<String, Integer> versions = new HashMap<>();
+        final Set<String> created = new HashSet<>();
+        for (Pending pending : batch) {
+            final Record request = pending.op.toRequestRecord();
+            final String path = pending.op.getPath();
+            final int version;
+            if (request instanceof SetDataRequest) {
+                version = ((SetDataRequest) request).getVersion();
+            } else if (request instanceof DeleteRequest) {
+                version = ((DeleteRequest) request).getVersion();
+            } else if (request instanceof CheckVersionRequest) {
+                version = ((CheckVersionRequest) request).getVersion();
+            } else {
+                version = -1;
+            }
+            if (version != -1 && Integer.valueOf(version).equals(versions.get(path))) {
+                // A operação anterior modificou (ou exigiu) a mesma versão: esta certamente falharia
+                pending.complete(null, new KeeperException.BadVersionException(path));
+                continue;
+            }
+            if (request instanceof CreateRequest && !createMode((CreateRequest) request).isSequential()
+                    && !created.add(path)) {
+                pending.complete(null, new KeeperException.NodeExistsException(path));
+                continue;
+            }
+            if (request instanceof DeleteRequest) {
+                created.remove(path);
+            }
+            if (version != -1 && !(request instanceof CheckVersionRequest)) {
+                versions.put(path, version);
+            }
+            accepted.add(pending);
+        }
+        return accepted;
+    }
+
+    /**
+     * Retorna o índice da operação que falhou em um {@code multi()}, ou -1 se o servidor não informou resultados.
+     */
+    private static int indexOfFailure(List<OpResult> results) {
+        if (results == null) {
+            return -1;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            final OpResult result = results.get(i);
+            if (result instanceof OpResult.ErrorResult) {
+                final int code = ((OpResult.ErrorResult) result).getErr();
+                if (code != KeeperException.Code.OK.intValue()
+                        && code != KeeperException.Code.RUNTIMEINCONSISTENCY.intValue()) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Libera o agrupador obtido por {@link #acquire(String)}, fechando a sua sessão se ele não for mais usado.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (INSTANCES) {
+            synchronized (this) {
+                if (--references > 0) {
+                    return;
+                }
+            }
+            INSTANCES.remove(connectString);
+        }
+        zk.close();
+        BarrierFlightRecorder.global().unregister(recorderId);
+    }
+}
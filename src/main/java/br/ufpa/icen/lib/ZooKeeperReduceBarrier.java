@@ -0,0 +1,241 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Uma barreira distribuída de redução (<i>all-reduce</i>) usando o Apache ZooKeeper.
+ * <p>
+ * Cada participante fornece um valor ao chegar na barreira. O último participante a chegar combina os valores
+ * de todos e grava o resultado no nó {@code /ready} da rodada, de forma que a liberação da barreira já entrega
+ * o valor agregado a todos os participantes, sem uma rodada extra de leituras após a sincronização.
+ * <p>
+ * A barreira pode ser usada em várias rodadas consecutivas: cada rodada usa o nó {@code barrierNode/<rodada>}.
+ * Todos os participantes devem começar na mesma rodada (a rodada 0, ao criar a instância). Os nós de uma rodada são
+ * removidos pelo último participante a liberar a rodada seguinte; os da última rodada, pelo último participante a
+ * fechar a sua instância com {@link #close()}.
+ *
+ * @param <T> tipo do valor reduzido.
+ */
+public class ZooKeeperReduceBarrier<T> implements AutoCloseable {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    private final ZooKeeper zk;
+    private final String barrierNode;
+    private final int participants;
+    private final Function<T, byte[]> encoder;
+    private final Function<byte[], T> decoder;
+    private final int recorderId;
+    private final String id = UUID.randomUUID().toString();
+    private long round;
+    private volatile String readyNode;
+    private volatile CountDownLatch readyLatch;
+
+    /**
+     * Inicializa a barreira de redução do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @param participants  Número de participantes em cada rodada.
+     * @param encoder       Função que converte um valor em bytes, para ser gravado no ZooKeeper.
+     * @param decoder       Função que converte bytes lidos do ZooKeeper em um valor.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperReduceBarrier(String connectString, String barrierNode, int participants,
+                                  Function<T, byte[]> encoder, Function<byte[], T> decoder)
+            throws IOException, InterruptedException, KeeperException {
+        this.barrierNode = barrierNode;
+        this.participants = participants;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.recorderId = RECORDER.register(barrierNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        REGISTRY.expect(recorderId, participants);
+        this.zk = createZooKeeperConnection(connectString, event -> {
+            // Se o nó /ready da rodada atual for criado, o resultado já está disponível
+            if (event.getType() == Watcher.Event.EventType.NodeCreated && event.getPath().equals(readyNode)) {
+                readyLatch.countDown();
+            }
+        });
+        // Cria o nó de barreira
+        ZooKeeperNodes.createContainer(zk, barrierNode);
+    }
+
+    protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retorna a rodada em que o próximo {@link #enterBarrier(Object, BinaryOperator)} será executado.
+     */
+    public long getRound() {
+        return round;
+    }
+
+    /**
+     * Faz com que o cliente atual entre na barreira com o valor {@code value} e aguarda os demais participantes.
+     * <p>
+     * O {@code combiner} só é usado pelo último participante a chegar, e deve ser associativo e comutativo, já
+     * que os valores são combinados na ordem dos IDs dos participantes, e não na ordem de chegada.
+     *
+     * @param value    Valor deste participante.
+     * @param combiner Função que combina dois valores.
+     * @return o valor combinado dos participantes da rodada. Os valores de participantes cujas sessões terminaram
+     * antes da combinação são desconsiderados, mas o valor deste participante sempre é incluído: o resultado só é
+     * {@code null} se {@code decoder} ou {@code combiner} retornarem {@code null}.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public T enterBarrier(T value, BinaryOperator<T> combiner) throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        final String roundNode = barrierNode + "/" + round;
+        final String previousRoundNode = round > 0 ? barrierNode + "/" + (round - 1) : null;
+        round++;
+
+        readyLatch = new CountDownLatch(1);
+        readyNode = roundNode + "/ready";
+        try {
+            ZooKeeperNodes.createContainer(zk, roundNode);
+        } catch (KeeperException.NoNodeException e) {
+            // O contêiner da barreira foi removido pelo ZooKeeper enquanto não havia rodadas
+            ZooKeeperNodes.createContainer(zk, barrierNode);
+            ZooKeeperNodes.createContainer(zk, roundNode);
+        }
+        // Remove a chegada deste participante na rodada anterior, cujo resultado já foi lido
+        if (previousRoundNode != null) {
+            try {
+                zk.delete(previousRoundNode + "/" + id, -1);
+            } catch (KeeperException.NoNodeException ignored) {
+            }
+        }
+
+        // Observa a criação do nó /ready antes de chegar, para não perder o evento
+        if (zk.exists(readyNode, true) == null) {
+            zk.create(roundNode + "/" + id, encoder.apply(value), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            final List<String> children = zk.getChildren(roundNode, false);
+            children.remove("ready");
+            RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_ENTER, children.size());
+            if (children.size() < participants) {
+                ZooKeeperWaits.await(readyLatch);
+            } else {
+                final T result = reduce(roundNode, children, value, combiner);
+                try {
+                    zk.create(readyNode, encoder.apply(result), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                    // Todos os participantes já chegaram nesta rodada, ou seja, já leram o resultado da anterior
+                    if (previousRoundNode != null) {
+                        deleteRound(previousRoundNode);
+                    }
+                    RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+                    RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_ENTER, round);
+                    return result;
+                } catch (KeeperException.NodeExistsException ignored) {
+                    // Outro participante chegou ao mesmo tempo e já publicou o resultado
+                }
+            }
+        }
+        final T result = decoder.apply(zk.getData(readyNode, false, null));
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+        RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_ENTER, round);
+        return result;
+    }
+
+    /**
+     * Combina os valores de todos os participantes da rodada, lidos em uma única requisição {@code multi()}. O valor
+     * deste participante, {@code own}, é usado diretamente, sem ser lido.
+     */
+    private T reduce(String roundNode, List<String> children, T own, BinaryOperator<T> combiner)
+            throws KeeperException, InterruptedException {
+        Collections.sort(children);
+        children.remove(id);
+        final List<Op> ops = new ArrayList<>(children.size());
+        for (String child : children) {
+            ops.add(Op.getData(roundNode + "/" + child));
+        }
+        final List<OpResult> results = ops.isEmpty() ? Collections.emptyList() : zk.multi(ops);
+        T result = null;
+        boolean ownCombined = false;
+        for (int i = 0; i < children.size(); i++) {
+            if (!ownCombined && children.get(i).compareTo(id) > 0) {
+                // Mantém a ordem dos IDs, para que todas as rodadas combinem os valores da mesma forma
+                result = result == null ? own : combiner.apply(result, own);
+                ownCombined = true;
+            }
+            final OpResult opResult = results.get(i);
+            if (opResult instanceof OpResult.ErrorResult) {
+                final int code = ((OpResult.ErrorResult) opResult).getErr();
+                if (code != KeeperException.Code.NONODE.intValue()) {
+                    throw KeeperException.create(KeeperException.Code.get(code), roundNode + "/" + children.get(i));
+                }
+                // A sessão do participante terminou e ele desistiu da rodada
+                continue;
+            }
+            final T value = decoder.apply(((OpResult.GetDataResult) opResult).getData());
+            result = result == null ? value : combiner.apply(result, value);
+        }
+        if (!ownCombined) {
+            result = result == null ? own : combiner.apply(result, own);
+        }
+        return result;
+    }
+
+    /**
+     * Remove os nós de uma rodada já encerrada.
+     */
+    private void deleteRound(String roundNode) throws KeeperException, InterruptedException {
+        try {
+            zk.delete(roundNode + "/ready", -1);
+            zk.delete(roundNode, -1);
+        } catch (KeeperException.NoNodeException | KeeperException.NotEmptyException ignored) {
+            // Algum participante ainda não removeu sua chegada; o nó será removido em uma rodada futura
+        }
+    }
+
+    /**
+     * Sai da última rodada e, se este for o último participante a sair dela, remove os seus nós, que não seriam
+     * removidos por uma rodada seguinte.
+     */
+    private void leaveLastRound() throws InterruptedException {
+        final String roundNode = barrierNode + "/" + (round - 1);
+        try {
+            zk.delete(roundNode + "/" + id, -1);
+        } catch (KeeperException ignored) {
+            // A chegada já foi removida, junto com a sessão ou a rodada
+        }
+        try {
+            // Cada participante só remove a sua chegada depois de ler o resultado: as duas remoções são feitas em uma
+            // única requisição, para que o resultado não seja removido enquanto a rodada tiver chegadas
+            zk.multi(Arrays.asList(Op.delete(roundNode + "/ready", -1), Op.delete(roundNode, -1)));
+        } catch (KeeperException ignored) {
+            // Outro participante ainda não saiu da rodada, ou ela não foi liberada
+        }
+    }
+
+    /**
+     * Sai da última rodada e fecha a conexão com o ZooKeeper.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (round > 0) {
+            leaveLastRound();
+        }
+        zk.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
+    }
+}
@@ -1,45 +1,86 @@
 package br.ufpa.icen.lib;
 
 import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
-import java.util.stream.Collectors;
+import java.util.concurrent.Flow;
 
+/**
+ * Uma barreira distribuída dupla reutilizável usando o Apache ZooKeeper.
+ * <p>
+ * Cada rodada (geração) usa os seus próprios nós, {@code barrierNode/gen-<g>/<id>} e {@code barrierNode/gen-<g>/ready}.
+ * Assim, um participante pode entrar na geração {@code g + 1} enquanto os demais ainda saem da geração {@code g},
+ * sem que os nós das duas rodadas colidam, e rodadas consecutivas podem se sobrepor. O nó de cada geração é um
+ * contêiner, removido pelo ZooKeeper quando o último participante sair.
+ * <p>
+ * Todos os participantes devem começar na mesma geração (a geração 0, ao criar a instância).
+ */
 public class ZooKeeperReusableDoubleBarrier implements AutoCloseable {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    private static final String READY = "ready";
     private final ZooKeeper zk;
     private final String barrierNode;
+    private final int recorderId;
+    private final ZooKeeperNodeCache cache;
     private final String id = UUID.randomUUID().toString();
-    private CountDownLatch enterLatch;
-    private CountDownLatch exitLatch;
+    // Conteúdo do nó deste participante, reaproveitado a cada entrada
+    private final byte[] stampBuffer = new byte[ZooKeeperExitOrder.STAMP_LENGTH];
+    private final ZooKeeperExitOrder exitOrder;
+    private long generation;
+    private volatile String readyNode;
+    private volatile CountDownLatch enterLatch;
+    private volatile CountDownLatch exitLatch;
+    private final ConflatingPublisher<BarrierPhase> phases = ConflatingPublisher.latest();
+    private final ConflatingPublisher<Long> generations = ConflatingPublisher.latest();
 
+    /**
+     * Inicializa a barreira dupla reutilizável do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @throws IOException se a conexão falhar.
+     */
     public ZooKeeperReusableDoubleBarrier(String connectString, String barrierNode) throws IOException, InterruptedException, KeeperException {
         this.barrierNode = barrierNode;
-        this.zk = createZooKeeperConnection(connectString);
+        this.recorderId = RECORDER.register(barrierNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        REGISTRY.expect(recorderId, 3);
+        this.zk = createZooKeeperConnection(connectString, this::processEvent);
+        this.cache = acquireNodeCache(connectString);
+        cache.retain(barrierNode);
+        this.exitOrder = new ZooKeeperExitOrder(cache);
         ensureBarrierNodeExists();
     }
 
-    private ZooKeeper createZooKeeperConnection(String connectString) throws IOException {
-        return new ZooKeeper(connectString, 3000, this::processEvent);
+    protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    /**
+     * Obtém o cache de nós consultado pela barreira: o compartilhado pelas barreiras do processo conectadas a
+     * {@code connectString}, ou, nos testes com um ZooKeeper simulado, um cache com sessões simuladas.
+     */
+    ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+        return ZooKeeperNodeCache.acquire(connectString);
     }
 
     private void ensureBarrierNodeExists() throws KeeperException, InterruptedException {
-        if (zk.exists(barrierNode, false) == null) {
-            zk.create(barrierNode, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-        }
+        ZooKeeperNodes.createContainer(zk, barrierNode);
     }
 
     private void processEvent(WatchedEvent event) {
-        if (event.getType() == Watcher.Event.EventType.NodeCreated && event.getPath().equals(barrierNode + "/ready")) {
-            if (enterLatch != null) enterLatch.countDown();
+        if (event.getType() == Watcher.Event.EventType.NodeCreated && event.getPath().equals(readyNode)) {
+            final CountDownLatch latch = enterLatch;
+            if (latch != null) latch.countDown();
         } else if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
-            if (exitLatch != null) exitLatch.countDown();
+            final CountDownLatch latch = exitLatch;
+            if (latch != null) latch.countDown();
         }
     }
 
@@ -47,55 +88,163 @@ public class ZooKeeperReusableDoubleBarrier implements AutoCloseable {
         return id;
     }
 
+    /**
+     * Retorna a geração em que o próximo {@link #enterBarrier()} será executado.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Retorna as mudanças de fase deste participante. Um assinante lento recebe apenas a fase mais recente.
+     */
+    public Flow.Publisher<BarrierPhase> phases() {
+        return phases;
+    }
+
+    /**
+     * Retorna as gerações alcançadas por este participante, publicadas ao sair de cada geração. Um assinante lento
+     * recebe apenas a geração mais recente.
+     */
+    public Flow.Publisher<Long> generations() {
+        return generations;
+    }
+
+    private String generationNode() {
+        return barrierNode + "/gen-" + generation;
+    }
+
+    /**
+     * Faz com que o cliente atual entre na barreira da geração atual.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
     public void enterBarrier() throws KeeperException, InterruptedException {
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        phases.offer(BarrierPhase.ENTERING);
+        final String generationNode = generationNode();
         enterLatch = new CountDownLatch(1);
-        String nodePath = barrierNode + "/" + id;
-        zk.exists(barrierNode + "/ready", true);
-        zk.create(nodePath, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8),
-                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-        List<String> children = zk.getChildren(barrierNode, false);
-        if (children.size() < 3) {
-            enterLatch.await();
-        } else {
-            zk.create(barrierNode + "/ready", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+        readyNode = generationNode + "/" + READY;
+        String nodePath = generationNode + "/" + id;
+        byte[] creationDateData = ZooKeeperExitOrder.encode(ZooKeeperExitOrder.now(), stampBuffer);
+        try {
+            ZooKeeperNodes.createContainer(zk, generationNode);
+        } catch (KeeperException.NoNodeException e) {
+            // O contêiner foi removido pelo ZooKeeper entre duas rodadas
+            ensureBarrierNodeExists();
+            ZooKeeperNodes.createContainer(zk, generationNode);
         }
+        // Se a geração já foi liberada, este participante chegou atrasado e pode prosseguir
+        if (zk.exists(readyNode, true) == null) {
+            zk.create(nodePath, creationDateData, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            List<String> children = zk.getChildren(generationNode, false);
+            children.remove(READY);
+            RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_ENTER, children.size());
+            if (children.size() < 3) {
+                ZooKeeperWaits.await(enterLatch);
+            } else {
+                try {
+                    zk.create(readyNode, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+                } catch (KeeperException.NodeExistsException ignored) {
+                    // Outro participante chegou ao mesmo tempo e já liberou a geração
+                }
+            }
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+        phases.offer(BarrierPhase.ENTERED);
     }
 
+    /**
+     * Faz com que o cliente atual saia da barreira da geração atual, avançando para a próxima geração.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
     public void exitBarrier() throws KeeperException, InterruptedException {
-        exitLatch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_EXIT, 0L);
+        phases.offer(BarrierPhase.EXITING);
+        final String generationNode = generationNode();
+        // A partir daqui, os nós desta geração não colidem com a próxima entrada deste participante
+        generation++;
+        final String nodePath = exitOrder.path(generationNode, id);
+        boolean ownSession = false;
         while (true) {
-            List<Map.Entry<String, LocalDateTime>> children = zk.getChildren(barrierNode, false).stream()
-                    .map(id -> {
-                        try {
-                            byte[] data = zk.getData(barrierNode + "/" + id, false, null);
-                            return Map.entry(id, LocalDateTime.parse(new String(data, StandardCharsets.UTF_8), DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-                        } catch (Exception e) {
-                            return Map.entry(id, LocalDateTime.MIN);
-                        }
-                    })
-                    .filter(entry -> entry.getValue() != LocalDateTime.MIN)
-                    .sorted(Map.Entry.comparingByValue())
-                    .collect(Collectors.toList());
-
-            if (children.isEmpty()) return;
-            if (children.size() == 1 && children.get(0).getKey().equals(id)) {
-                zk.delete(barrierNode + "/" + id, -1);
+            exitLatch = new CountDownLatch(1);
+            List<String> ids;
+            try {
+                // Consulta o cache compartilhado, que só volta ao ZooKeeper se os participantes mudarem
+                ids = ownSession ? zk.getChildren(generationNode, false) : cache.children(generationNode);
+            } catch (KeeperException.NoNodeException e) {
+                ids = Collections.emptyList();
+            }
+            ownSession = false;
+            exitOrder.scan(generationNode, ids);
+            RECORDER.record(BarrierFlightRecorder.Event.COUNT, recorderId, BarrierFlightRecorder.PHASE_EXIT, exitOrder.count());
+
+            if (exitOrder.count() == 0) {
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_EXIT, System.nanoTime() - start);
+                RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_EXIT, generation);
+                generations.offer(generation);
+                phases.offer(BarrierPhase.EXITED);
+                return;
+            }
+            if (exitOrder.count() == 1 && exitOrder.lowest().equals(id)) {
+                try {
+                    zk.delete(nodePath, -1);
+                } catch (KeeperException.NoNodeException e) {
+                    // O cache usa outra sessão e ainda lista o nó deste participante, que já foi removido: confere
+                    // os participantes restantes com a sessão da barreira, que já viu a remoção
+                    cache.invalidate(generationNode);
+                    ownSession = true;
+                    continue;
+                }
+                // O último participante a sair remove o nó /ready, para que o contêiner da geração possa ser removido
+                try {
+                    zk.delete(exitOrder.path(generationNode, READY), -1);
+                } catch (KeeperException.NoNodeException ignored) {
+                }
+                RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_EXIT, System.nanoTime() - start);
+                RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_EXIT, generation);
+                generations.offer(generation);
+                phases.offer(BarrierPhase.EXITED);
                 return;
             }
 
-            if (children.get(0).getKey().equals(id)) {
-                zk.exists(barrierNode + "/" + children.get(children.size() - 1).getKey(), true);
+            Stat watched;
+            if (exitOrder.lowest().equals(id)) {
+                watched = zk.exists(exitOrder.path(generationNode, exitOrder.highest()), true);
             } else {
-                zk.delete(barrierNode + "/" + id, -1);
-                zk.exists(barrierNode + "/" + children.get(0).getKey(), true);
+                try {
+                    zk.delete(nodePath, -1);
+                } catch (KeeperException.NoNodeException ignored) {
+                }
+                watched = zk.exists(exitOrder.path(generationNode, exitOrder.lowest()), true);
             }
-            exitLatch.await();
+            if (watched == null) {
+                // O cache ainda não recebeu a remoção do nó observado
+                cache.invalidate(generationNode);
+                continue;
+            }
+            ZooKeeperWaits.await(exitLatch);
         }
     }
 
+    /**
+     * Fecha a conexão com o ZooKeeper.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
     @Override
     public void close() throws InterruptedException {
+        phases.close();
+        generations.close();
         zk.close();
+        cache.release(barrierNode);
+        cache.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
     }
 }
-
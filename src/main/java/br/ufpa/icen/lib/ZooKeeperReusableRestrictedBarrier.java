@@ -1,16 +1,22 @@
 package br.ufpa.icen.lib;
 
-import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.KeeperException;
 
 import java.io.IOException;
+import java.util.concurrent.Flow;
 
 /**
  * Uma barreira distribuída reutilizável e restrita usando o Apache ZooKeeper.
+ * <p>
+ * Os participantes aguardam até que {@code maxParticipants} participantes cheguem na rodada atual, e então todos
+ * são liberados e a barreira passa para a próxima rodada. Cada chegada é um nó efêmero (veja
+ * {@link ZooKeeperArrivals}): se a sessão de um participante terminar antes da liberação, a sua chegada deixa de
+ * contar, e a rodada aguarda outro participante em seu lugar.
  */
 public class ZooKeeperReusableRestrictedBarrier extends ZooKeeperBarrier {
-    
-	private final int maxParticipants;
+
+    private final ZooKeeperArrivals arrivals;
+    private final ConflatingPublisher<Long> generations = ConflatingPublisher.latest();
 
     /**
      * Inicializa a barreira reutilizável e restrita do ZooKeeper.
@@ -22,62 +28,74 @@ public class ZooKeeperReusableRestrictedBarrier extends ZooKeeperBarrier {
      */
     public ZooKeeperReusableRestrictedBarrier(String connectString, String barrierNode, int maxParticipants)
             throws IOException, InterruptedException, KeeperException {
-        super(connectString, barrierNode);
-        this.maxParticipants = maxParticipants;
-        initializeBarrier();
+        this(connectString, barrierNode, maxParticipants, 0);
     }
 
     /**
-     * Inicializa a barreira criando o nó e o contador de participantes, se necessário.
+     * Inicializa a barreira reutilizável e restrita do ZooKeeper, cujo nó é removido pelo ZooKeeper após ficar
+     * {@code ttlMillis} milissegundos sem modificações.
+     * <p>
+     * Um participante que chegar depois da remoção recria o nó e aguarda os demais normalmente. Nós com tempo de vida
+     * só são removidos se o servidor os suportar ({@code zookeeper.extendedTypesEnabled=true}); caso contrário, o nó
+     * é criado sem tempo de vida.
+     *
+     * @param connectString   String de conexão com o ZooKeeper.
+     * @param barrierNode     Caminho do nó da barreira.
+     * @param maxParticipants Número máximo de participantes na barreira.
+     * @param ttlMillis       Tempo de vida do nó sem modificações, ou 0 para nunca removê-lo.
+     * @throws IOException se a conexão falhar.
      */
-    private void initializeBarrier() throws KeeperException, InterruptedException {
-        Stat stat = zk.exists(barrierNode, false);
-        if (stat == null) {
-            zk.create(barrierNode, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-        }
+    public ZooKeeperReusableRestrictedBarrier(String connectString, String barrierNode, int maxParticipants, long ttlMillis)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, barrierNode);
+        REGISTRY.expect(recorderId, maxParticipants);
+        this.arrivals = new ZooKeeperArrivals(zk, barrierNode, maxParticipants, ttlMillis, recorderId);
+        arrivals.initialize();
     }
 
     @Override
     public void waitForBarrier() throws KeeperException, InterruptedException {
-        while (true) {
-            Stat stat = zk.exists(barrierNode, true);
-            if (stat == null) {
-                return; // A barreira foi removida, pode prosseguir
-            }
-
-            int count = getParticipantCount();
-            if (count < maxParticipants) {
-                incrementParticipantCount();
-                if (count + 1 == maxParticipants) {
-                    removeBarrier();
-                    resetBarrier();
-                }
-                return;
-            }
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        final ZooKeeperArrivals.Arrival arrival = arrivals.arrive();
+        if (arrival.isLast()) {
+            arrivals.release(arrival);
         }
+        arrivals.leave(arrival);
+        RECORDER.record(BarrierFlightRecorder.Event.GENERATION, recorderId, BarrierFlightRecorder.PHASE_ENTER, arrival.getGeneration() + 1);
+        generations.offer(arrival.getGeneration() + 1);
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
     }
 
     /**
-     * Obtém o número atual de participantes na barreira.
+     * Remove o nó da barreira, junto com as chegadas de todas as rodadas, liberando os participantes da rodada atual.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
      */
-    private int getParticipantCount() throws KeeperException, InterruptedException {
-        byte[] data = zk.getData(barrierNode, false, null);
-        return Integer.parseInt(new String(data));
+    @Override
+    public void removeBarrier() throws KeeperException, InterruptedException {
+        arrivals.remove();
     }
 
     /**
-     * Incrementa o número de participantes na barreira.
+     * Obtém o número de participantes vivos na rodada atual.
      */
-    private void incrementParticipantCount() throws KeeperException, InterruptedException {
-        int count = getParticipantCount();
-        zk.setData(barrierNode, String.valueOf(count + 1).getBytes(), -1);
+    public int getParticipantCount() throws KeeperException, InterruptedException {
+        return arrivals.count();
     }
 
     /**
-     * Reseta a barreira para ser reutilizada.
+     * Retorna as gerações alcançadas por este participante, publicadas a cada rodada liberada. Um assinante lento
+     * recebe apenas a geração mais recente.
      */
-    private void resetBarrier() throws KeeperException, InterruptedException {
-        zk.create(barrierNode, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    public Flow.Publisher<Long> generations() {
+        return generations;
     }
-}
 
+    @Override
+    public void close() throws InterruptedException {
+        generations.close();
+        super.close();
+    }
+}
@@ -0,0 +1,270 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um semáforo distribuído justo usando o Apache ZooKeeper, para limitar quantas tarefas são executadas ao mesmo
+ * tempo em todo o cluster.
+ * <p>
+ * Cada pedido cria um nó efêmero e sequencial {@code semaphoreNode/lease-<permissões>-<sequência>}, que desaparece se
+ * a sessão do participante terminar. Os pedidos são atendidos na ordem de chegada: um pedido é concedido quando a
+ * soma das permissões dele e de todos os pedidos anteriores não ultrapassa {@code maxPermits}, de forma que um
+ * pedido pequeno nunca passa à frente de um grande.
+ * <p>
+ * Para evitar que todos os participantes consultem o ZooKeeper a cada permissão liberada, cada participante na fila
+ * observa apenas o seu antecessor. Apenas o primeiro da fila, cujo antecessor já tem a sua permissão, observa os
+ * filhos do nó do semáforo. Ao receber a sua permissão, um participante modifica o seu nó, avisando o seu sucessor
+ * que ele passou a ser o primeiro da fila.
+ * <p>
+ * Todos os participantes de um mesmo semáforo devem usar o mesmo {@code maxPermits}.
+ */
+public class ZooKeeperSemaphore implements AutoCloseable {
+    private static final BarrierFlightRecorder RECORDER = BarrierFlightRecorder.global();
+    private static final BarrierRegistry REGISTRY = BarrierRegistry.global();
+    private static final String LEASE_PREFIX = "lease-";
+    private static final byte[] HELD = {1};
+
+    private final ZooKeeper zk;
+    private final String semaphoreNode;
+    private final int maxPermits;
+    private final int recorderId;
+    // Nós das permissões concedidas a este participante, na ordem em que foram concedidas
+    private final Deque<String> leases = new ArrayDeque<>();
+
+    /**
+     * Inicializa o semáforo do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param semaphoreNode Caminho do nó do semáforo.
+     * @param maxPermits    Número máximo de permissões concedidas ao mesmo tempo.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperSemaphore(String connectString, String semaphoreNode, int maxPermits)
+            throws IOException, InterruptedException, KeeperException {
+        if (maxPermits < 1) {
+            throw new IllegalArgumentException("maxPermits deve ser positivo: " + maxPermits);
+        }
+        this.semaphoreNode = semaphoreNode;
+        this.maxPermits = maxPermits;
+        this.recorderId = RECORDER.register(semaphoreNode);
+        REGISTRY.open(recorderId, getClass().getSimpleName());
+        this.zk = createZooKeeperConnection(connectString, event -> {
+        });
+        ZooKeeperNodes.createContainer(zk, semaphoreNode);
+    }
+
+    protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+        return new FlightRecordingZooKeeper(connectString, 3000, watcher, recorderId);
+    }
+
+    /**
+     * Aguarda até que uma permissão seja concedida.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void acquire() throws KeeperException, InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * Aguarda até que {@code permits} permissões sejam concedidas.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void acquire(int permits) throws KeeperException, InterruptedException {
+        tryAcquire(permits, -1, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Aguarda até que uma permissão seja concedida, por no máximo {@code timeout}.
+     *
+     * @return {@code true} se a permissão foi concedida, ou {@code false} se o tempo se esgotou antes.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    /**
+     * Aguarda até que {@code permits} permissões sejam concedidas, por no máximo {@code timeout}. Se o tempo se
+     * esgotar, o pedido sai da fila.
+     *
+     * @return {@code true} se as permissões foram concedidas, ou {@code false} se o tempo se esgotou antes.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+        if (permits < 1 || permits > maxPermits) {
+            throw new IllegalArgumentException("permits deve estar entre 1 e " + maxPermits + ": " + permits);
+        }
+        final long start = System.nanoTime();
+        final long deadline = timeout < 0 ? Long.MAX_VALUE : start + unit.toNanos(timeout);
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, permits);
+        final String leasePath = createLease(permits);
+        final String lease = leasePath.substring(semaphoreNode.length() + 1);
+        try {
+            while (true) {
+                final CountDownLatch changed = new CountDownLatch(1);
+                if (evaluate(lease, leasePath, changed)) {
+                    synchronized (leases) {
+                        leases.addLast(leasePath);
+                    }
+                    RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+                    return true;
+                }
+                if (deadline == Long.MAX_VALUE) {
+                    ZooKeeperWaits.await(changed);
+                } else {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !ZooKeeperWaits.await(changed, remaining, TimeUnit.NANOSECONDS)) {
+                        deleteLease(leasePath);
+                        return false;
+                    }
+                }
+            }
+        } catch (KeeperException | InterruptedException e) {
+            // Um pedido abandonado não pode continuar na fila
+            deleteLease(leasePath);
+            throw e;
+        }
+    }
+
+    private String createLease(int permits) throws KeeperException, InterruptedException {
+        final String prefix = semaphoreNode + "/" + LEASE_PREFIX + permits + "-";
+        try {
+            return zk.create(prefix, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        } catch (KeeperException.NoNodeException e) {
+            // O contêiner foi removido pelo servidor enquanto estava vazio
+            ZooKeeperNodes.createContainer(zk, semaphoreNode);
+            return zk.create(prefix, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        }
+    }
+
+    /**
+     * Verifica se o pedido pode ser concedido e, caso contrário, registra a observação que indica quando ele deve ser
+     * verificado novamente.
+     *
+     * @return {@code true} se o pedido foi concedido.
+     */
+    private boolean evaluate(String lease, String leasePath, CountDownLatch changed)
+            throws KeeperException, InterruptedException {
+        List<String> queue = queue(null);
+        int index = queue.indexOf(lease);
+        if (index < 0) {
+            throw new KeeperException.NoNodeException(leasePath);
+        }
+        int granted = grantedCount(queue);
+        if (index < granted) {
+            if (index + 1 < queue.size()) {
+                // Avisa o sucessor que ele passou a ser o primeiro da fila
+                zk.setData(leasePath, HELD, -1);
+            }
+            return true;
+        }
+        if (index > granted) {
+            // Observa apenas o antecessor, que ainda está na fila
+            final Stat stat = zk.exists(semaphoreNode + "/" + queue.get(index - 1), event -> changed.countDown());
+            // Um antecessor já modificado recebeu a sua permissão; verifica novamente como primeiro da fila
+            if (stat == null || stat.getVersion() > 0) {
+                changed.countDown();
+            }
+            return false;
+        }
+        // O primeiro da fila observa os filhos, pois qualquer permissão liberada pode ser suficiente
+        queue = queue(event -> changed.countDown());
+        index = queue.indexOf(lease);
+        granted = grantedCount(queue);
+        if (index < granted) {
+            changed.countDown();
+        }
+        return false;
+    }
+
+    private List<String> queue(Watcher watcher) throws KeeperException, InterruptedException {
+        final List<String> queue = watcher == null
+                ? zk.getChildren(semaphoreNode, false)
+                : zk.getChildren(semaphoreNode, watcher);
+        queue.removeIf(child -> !child.startsWith(LEASE_PREFIX));
+        queue.sort(Comparator.comparingLong(ZooKeeperSemaphore::sequenceOf));
+        return queue;
+    }
+
+    /**
+     * Retorna quantos pedidos, a partir do início da fila, são atendidos pelas permissões disponíveis.
+     */
+    private int grantedCount(List<String> queue) {
+        int total = 0;
+        for (int i = 0; i < queue.size(); i++) {
+            total += permitsOf(queue.get(i));
+            if (total > maxPermits) {
+                return i;
+            }
+        }
+        return queue.size();
+    }
+
+    /**
+     * Libera as permissões do pedido concedido há mais tempo a este participante.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void release() throws KeeperException, InterruptedException {
+        final String leasePath;
+        synchronized (leases) {
+            leasePath = leases.pollFirst();
+        }
+        if (leasePath == null) {
+            throw new IllegalStateException("nenhuma permissão concedida a este participante");
+        }
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_EXIT, permitsOf(leasePath));
+        try {
+            zk.delete(leasePath, -1);
+        } catch (KeeperException.NoNodeException ignored) {
+            // A sessão expirou e o pedido já foi removido pelo servidor
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_EXIT, System.nanoTime() - start);
+    }
+
+    private void deleteLease(String leasePath) throws InterruptedException {
+        try {
+            zk.delete(leasePath, -1);
+        } catch (KeeperException ignored) {
+            // O nó é efêmero e será removido junto com a sessão
+        }
+    }
+
+    private static int permitsOf(String lease) {
+        final int end = lease.lastIndexOf('-');
+        return Integer.parseInt(lease, lease.lastIndexOf(LEASE_PREFIX) + LEASE_PREFIX.length(), end, 10);
+    }
+
+    private static long sequenceOf(String lease) {
+        return Long.parseLong(lease, lease.lastIndexOf('-') + 1, lease.length(), 10);
+    }
+
+    /**
+     * Fecha a conexão com o ZooKeeper, liberando as permissões concedidas a este participante.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        zk.close();
+        REGISTRY.close(recorderId);
+        RECORDER.unregister(recorderId);
+    }
+}
@@ -0,0 +1,153 @@
+package br.ufpa.icen.lib;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Distribui as barreiras entre vários ensembles do ZooKeeper por hash consistente.
+ * <p>
+ * Cada escrita de uma barreira (criações e remoções de nós) precisa de um quórum do ensemble, de forma que um único
+ * ensemble limita a vazão de todas as barreiras. Esta classe escolhe, para o caminho de cada barreira, a string de
+ * conexão de um dos ensembles, que é então passada ao construtor da barreira:
+ * <pre>{@code
+ * final ZooKeeperShards shards = new ZooKeeperShards(List.of("zk-a:2181", "zk-b:2181", "zk-c:2181"));
+ * final String node = "/jobs/42/barrier";
+ * try (final ZooKeeperReusableRestrictedBarrier barrier =
+ *              new ZooKeeperReusableRestrictedBarrier(shards.connectStringFor(node), node, 3)) {
+ *     barrier.waitForBarrier();
+ * }
+ * }</pre>
+ * Como a barreira usa uma única conexão, todos os seus nós (os filhos de {@code node} e nós irmãos, como o do
+ * agregador) ficam no mesmo ensemble. Todos os participantes devem usar a mesma lista de ensembles.
+ * <p>
+ * Cada ensemble ocupa {@code virtualNodes} pontos em um anel de hashes MD5, e uma barreira pertence ao primeiro ponto
+ * a partir do hash do seu caminho. Ao adicionar um ensemble, apenas as barreiras cujos caminhos caem nos seus novos
+ * pontos mudam de ensemble (em média, 1/N delas); ao remover um ensemble, apenas as suas barreiras são redistribuídas.
+ * Uma barreira que muda de ensemble começa vazia no novo ensemble, por isso a lista deve ser modificada entre rodadas.
+ */
+public final class ZooKeeperShards {
+    /**
+     * Número padrão de pontos de cada ensemble no anel.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    // Cópia imutável do anel, substituída a cada modificação, para que as consultas não precisem de trava
+    private volatile NavigableMap<Long, String> ring = Collections.emptyNavigableMap();
+    private final List<String> shards = new ArrayList<>();
+
+    /**
+     * Inicializa o anel com os ensembles em {@code connectStrings}, com {@value #DEFAULT_VIRTUAL_NODES} pontos cada.
+     *
+     * @param connectStrings Strings de conexão dos ensembles.
+     */
+    public ZooKeeperShards(Collection<String> connectStrings) {
+        this(connectStrings, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Inicializa o anel com os ensembles em {@code connectStrings}.
+     *
+     * @param connectStrings Strings de conexão dos ensembles.
+     * @param virtualNodes   Número de pontos de cada ensemble no anel. Mais pontos distribuem as barreiras de forma
+     *                       mais uniforme.
+     */
+    public ZooKeeperShards(Collection<String> connectStrings, int virtualNodes) {
+        if (connectStrings.isEmpty()) {
+            throw new IllegalArgumentException("é necessário ao menos um ensemble");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes deve ser positivo: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+        for (String connectString : connectStrings) {
+            addShard(connectString);
+        }
+    }
+
+    /**
+     * Adiciona um ensemble ao anel. Apenas as barreiras que passam a pertencer a ele mudam de ensemble.
+     *
+     * @param connectString String de conexão do ensemble.
+     */
+    public synchronized void addShard(String connectString) {
+        if (shards.contains(connectString)) {
+            throw new IllegalArgumentException("ensemble já adicionado: " + connectString);
+        }
+        final TreeMap<Long, String> next = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++) {
+            // Em uma colisão (improvável), o ponto fica com o ensemble adicionado primeiro
+            next.putIfAbsent(hash(connectString + "#" + i), connectString);
+        }
+        shards.add(connectString);
+        ring = Collections.unmodifiableNavigableMap(next);
+    }
+
+    /**
+     * Remove um ensemble do anel. Apenas as barreiras que pertenciam a ele mudam de ensemble.
+     *
+     * @param connectString String de conexão do ensemble.
+     */
+    public synchronized void removeShard(String connectString) {
+        if (!shards.contains(connectString)) {
+            throw new IllegalArgumentException("ensemble desconhecido: " + connectString);
+        }
+        if (shards.size() == 1) {
+            throw new IllegalStateException("o último ensemble não pode ser removido");
+        }
+        shards.remove(connectString);
+        // Reconstrói o anel, para que os pontos que colidiram com o ensemble removido voltem aos seus donos
+        final TreeMap<Long, String> next = new TreeMap<>();
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                next.putIfAbsent(hash(shard + "#" + i), shard);
+            }
+        }
+        ring = Collections.unmodifiableNavigableMap(next);
+    }
+
+    /**
+     * Retorna as strings de conexão dos ensembles, na ordem em que foram adicionados.
+     */
+    public synchronized List<String> getShards() {
+        return List.copyOf(shards);
+    }
+
+    /**
+     * Retorna a string de conexão do ensemble da barreira cujo nó é {@code barrierNode}.
+     *
+     * @param barrierNode Caminho do nó da barreira, o mesmo passado ao seu construtor.
+     */
+    public String connectStringFor(String barrierNode) {
+        final NavigableMap<Long, String> current = ring;
+        final Map.Entry<Long, String> entry = current.ceilingEntry(hash(barrierNode));
+        // Após o último ponto, o anel volta ao primeiro
+        return (entry != null ? entry : current.firstEntry()).getValue();
+    }
+
+    /**
+     * Retorna os primeiros 8 bytes do MD5 de {@code key}.
+     */
+    private static long hash(String key) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Toda implementação do Java deve oferecer MD5
+            throw new IllegalStateException(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+}
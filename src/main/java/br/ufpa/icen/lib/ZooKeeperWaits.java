@@ -0,0 +1,109 @@
+package br.ufpa.icen.lib;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Esperas das barreiras por notificações do ZooKeeper.
+ * <p>
+ * As barreiras costumam ser chamadas de tarefas de um {@link ForkJoinPool}, como as de
+ * {@link java.util.concurrent.CompletableFuture#runAsync(Runnable)}, que usam o {@link ForkJoinPool#commonPool()}. Uma
+ * thread do pool bloqueada em {@link CountDownLatch#await()} deixa de executar tarefas sem que o pool saiba: com
+ * participantes suficientes aguardando, as tarefas que os liberariam (ou as etapas paralelas seguintes) ficam sem
+ * threads. Quando chamadas de uma thread do pool, estas esperas passam por {@link ForkJoinPool#managedBlock}, e o pool
+ * cria threads compensatórias enquanto elas estiverem bloqueadas.
+ */
+final class ZooKeeperWaits {
+    private ZooKeeperWaits() {
+    }
+
+    /**
+     * Espera de uma trava, informada ao {@link ForkJoinPool}.
+     */
+    private static final class LatchBlocker implements ForkJoinPool.ManagedBlocker {
+        private final CountDownLatch latch;
+        private final long deadline;
+        private final boolean timed;
+
+        LatchBlocker(CountDownLatch latch, long deadline, boolean timed) {
+            this.latch = latch;
+            this.deadline = deadline;
+            this.timed = timed;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!timed) {
+                latch.await();
+                return true;
+            }
+            final long remaining = deadline - System.nanoTime();
+            return remaining <= 0 || latch.await(remaining, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return latch.getCount() == 0 || (timed && deadline - System.nanoTime() <= 0);
+        }
+    }
+
+    /**
+     * Aguarda até que {@code latch} chegue a zero, assim como {@link CountDownLatch#await()}.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    static void await(CountDownLatch latch) throws InterruptedException {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            ForkJoinPool.managedBlock(new LatchBlocker(latch, 0L, false));
+        } else {
+            latch.await();
+        }
+    }
+
+    /**
+     * Aguarda até que {@code latch} chegue a zero, por no máximo {@code timeout}, assim como
+     * {@link CountDownLatch#await(long, TimeUnit)}.
+     *
+     * @return {@code true} se a trava chegou a zero, ou {@code false} se o tempo se esgotou antes.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    static boolean await(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+            return latch.await(timeout, unit);
+        }
+        ForkJoinPool.managedBlock(new LatchBlocker(latch, System.nanoTime() + unit.toNanos(timeout), true));
+        return latch.getCount() == 0;
+    }
+
+    /**
+     * Aguarda até que {@code blocker} possa ser liberado, assim como {@link ForkJoinPool#managedBlock}, mas sem
+     * informar o pool quando a thread atual não pertence a um {@link ForkJoinPool}.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    static void block(ForkJoinPool.ManagedBlocker blocker) throws InterruptedException {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            ForkJoinPool.managedBlock(blocker);
+            return;
+        }
+        while (!blocker.isReleasable() && !blocker.block()) {
+            // block() retornou antes da liberação: verifica novamente
+        }
+    }
+
+    /**
+     * Aguarda {@code nanos} nanossegundos, assim como {@link TimeUnit#sleep(long)}.
+     *
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    static void sleep(long nanos) throws InterruptedException {
+        if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return;
+        }
+        // Uma trava que nunca chega a zero: a espera termina apenas com o tempo
+        await(new CountDownLatch(1), nanos, TimeUnit.NANOSECONDS);
+    }
+}
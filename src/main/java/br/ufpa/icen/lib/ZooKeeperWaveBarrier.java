@@ -0,0 +1,150 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uma barreira distribuída simples cuja liberação é feita em ondas usando o Apache ZooKeeper.
+ * <p>
+ * Cada participante cria um nó de espera ({@code barrierNode/ticket-<prioridade>-<sequência>}) e observa apenas
+ * ele. Ao remover a barreira, o controlador remove os nós de espera em ondas de acordo com a {@link ReleasePolicy}:
+ * no máximo {@code waveSize} participantes por intervalo, na ordem de chegada ou de prioridade. O nó da barreira
+ * só é removido após a última onda, de forma que participantes que cheguem durante a liberação entram no fim da
+ * fila, e participantes que cheguem depois prosseguem sem esperar.
+ */
+public class ZooKeeperWaveBarrier extends ZooKeeperBarrier {
+    private static final String TICKET_PREFIX = "ticket-";
+
+    private final ReleasePolicy policy;
+
+    /**
+     * Inicializa a barreira com liberação em ondas do ZooKeeper.
+     *
+     * @param connectString String de conexão com o ZooKeeper.
+     * @param barrierNode   Caminho do nó da barreira.
+     * @param policy        Política de liberação dos participantes.
+     * @throws IOException se a conexão falhar.
+     */
+    public ZooKeeperWaveBarrier(String connectString, String barrierNode, ReleasePolicy policy)
+            throws IOException, InterruptedException, KeeperException {
+        super(connectString, barrierNode);
+        this.policy = policy;
+    }
+
+    @Override
+    public void waitForBarrier() throws KeeperException, InterruptedException {
+        waitForBarrier(0);
+    }
+
+    /**
+     * Aguarda até que este participante seja liberado.
+     *
+     * @param priority Prioridade do participante, usada se a política liberar por prioridade. Participantes de
+     *                 maior prioridade são liberados primeiro.
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    public void waitForBarrier(int priority) throws KeeperException, InterruptedException {
+        if (priority < 0) {
+            throw new IllegalArgumentException("prioridade não pode ser negativa: " + priority);
+        }
+        final long start = System.nanoTime();
+        RECORDER.record(BarrierFlightRecorder.Event.ARRIVE, recorderId, BarrierFlightRecorder.PHASE_ENTER, priority);
+        final String ticketNode;
+        try {
+            ticketNode = zk.create(String.format("%s/%s%010d-", barrierNode, TICKET_PREFIX, priority), new byte[0],
+                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        } catch (KeeperException.NoNodeException e) {
+            // A barreira não existe ou já foi completamente liberada
+            RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean exists = zk.exists(ticketNode, event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                latch.countDown();
+            }
+        }) != null;
+        if (exists) {
+            ZooKeeperWaits.await(latch);
+        }
+        RECORDER.record(BarrierFlightRecorder.Event.RELEASE, recorderId, BarrierFlightRecorder.PHASE_ENTER, System.nanoTime() - start);
+    }
+
+    /**
+     * Libera a barreira em ondas, retornando após a liberação de todos os participantes e a remoção do nó da
+     * barreira.
+     *
+     * @throws KeeperException      se o ZooKeeper encontrar um erro.
+     * @throws InterruptedException se a thread for interrompida.
+     */
+    @Override
+    public void removeBarrier() throws KeeperException, InterruptedException {
+        final long interval = policy.getInterval(TimeUnit.NANOSECONDS);
+        // As ondas são agendadas a partir do início da liberação, para que a duração das remoções não se acumule
+        final long begin = System.nanoTime();
+        int waves = 0;
+        while (true) {
+            final List<String> tickets = new ArrayList<>();
+            try {
+                for (String child : zk.getChildren(barrierNode, false)) {
+                    if (child.startsWith(TICKET_PREFIX)) {
+                        tickets.add(child);
+                    }
+                }
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            }
+            if (tickets.isEmpty()) {
+                try {
+                    zk.delete(barrierNode, -1);
+                    return;
+                } catch (KeeperException.NoNodeException e) {
+                    return;
+                } catch (KeeperException.NotEmptyException e) {
+                    // Um participante chegou após a última onda
+                    continue;
+                }
+            }
+
+            tickets.sort(policy.isByPriority()
+                    ? Comparator.comparing(ZooKeeperWaveBarrier::priorityOf).reversed().thenComparing(ZooKeeperWaveBarrier::sequenceOf)
+                    : Comparator.comparing(ZooKeeperWaveBarrier::sequenceOf));
+            final List<String> wave = tickets.subList(0, Math.min(policy.getWaveSize(), tickets.size()));
+            deleteTickets(wave);
+            waves++;
+            if (wave.size() < tickets.size() && interval > 0) {
+                final long remaining = begin + waves * interval - System.nanoTime();
+                if (remaining > 0) {
+                    ZooKeeperWaits.sleep(remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove os nós de espera em paralelo, aguardando todas as respostas.
+     */
+    private void deleteTickets(List<String> tickets) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(tickets.size());
+        for (String ticket : tickets) {
+            // Nós inexistentes pertencem a participantes que desistiram da barreira
+            zk.delete(barrierNode + "/" + ticket, -1, (rc, path, ctx) -> latch.countDown(), null);
+        }
+        ZooKeeperWaits.await(latch);
+    }
+
+    private static int priorityOf(String ticket) {
+        return Integer.parseInt(ticket, TICKET_PREFIX.length(), TICKET_PREFIX.length() + 10, 10);
+    }
+
+    private static long sequenceOf(String ticket) {
+        return Long.parseLong(ticket, ticket.lastIndexOf('-') + 1, ticket.length(), 10);
+    }
+}
@@ -0,0 +1,266 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BarrierFlightRecorderTest {
+    private static String dump(BarrierFlightRecorder recorder) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.dump(TimeUnit.MINUTES.toMillis(1), new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testDump_QuandoEventosGravados_DeveExibirNaOrdemComNomeDaBarreira() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(16);
+        final int id = recorder.register("/armazem");
+        recorder.record(BarrierFlightRecorder.Event.ARRIVE, id, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        recorder.record(BarrierFlightRecorder.Event.RELEASE, id, BarrierFlightRecorder.PHASE_ENTER, 42L);
+
+        final String[] lines = dump(recorder).split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertTrue(lines[0].contains("ARRIVE") && lines[0].contains("/armazem"));
+        Assertions.assertTrue(lines[1].contains("RELEASE") && lines[1].contains("value=42"));
+    }
+
+    @Test
+    public void testRecord_QuandoBufferCheio_DeveManterApenasOsEventosMaisRecentes() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(4);
+        final int id = recorder.register("/armazem");
+        for (int i = 0; i < 10; i++) {
+            recorder.record(BarrierFlightRecorder.Event.ZK_OP, id, 1, i);
+        }
+
+        final String[] lines = dump(recorder).split("\n");
+        Assertions.assertEquals(4, lines.length);
+        Assertions.assertTrue(lines[0].endsWith("value=6"));
+        Assertions.assertTrue(lines[3].endsWith("value=9"));
+    }
+
+    @Test
+    public void testRecord_QuandoEscritoresConcorrentes_NaoDeveExibirRegistrosIncompletos() throws Exception {
+        // Um buffer pequeno faz com que os escritores sobrescrevam as posições enquanto elas são lidas
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(2);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            final Thread writer = new Thread(() -> {
+                // Todos os campos de um registro são derivados do mesmo número, para que um registro misturado
+                // seja detectado
+                for (int i = 0; running.get(); i++) {
+                    recorder.record(BarrierFlightRecorder.Event.ZK_OP, i, i & 0x7FFF, i * 31L);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        try {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            int checked = 0;
+            while (System.nanoTime() < deadline) {
+                for (long[] record : recorder.records()) {
+                    Assertions.assertEquals(record[2] & 0x7FFF, record[4], "registro incompleto");
+                    Assertions.assertEquals(record[2] * 31L, record[5], "registro incompleto");
+                    checked++;
+                }
+            }
+            Assertions.assertTrue(checked > 0);
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    @Test
+    public void testMapped_QuandoArquivoReaberto_DeveRegistrarNomesAoLado(@TempDir Path dir) throws Exception {
+        final Path file = dir.resolve("barreiras.bfr");
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.mapped(file, 8);
+        final int id = recorder.register("/armazem");
+        recorder.record(BarrierFlightRecorder.Event.WATCH, id, 2, 3);
+
+        Assertions.assertTrue(dump(recorder).contains("/armazem"));
+        Assertions.assertTrue(dir.resolve("barreiras.bfr.names").toFile().length() > 0);
+    }
+
+    @Test
+    public void testRegister_QuandoIdentificadorLiberado_DeveReaproveitarSemRenomearEventosAntigos() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(16);
+        final int first = recorder.register("/grupo@1");
+        Assertions.assertEquals(first, recorder.register("/grupo@1"));
+        recorder.record(BarrierFlightRecorder.Event.ARRIVE, first, BarrierFlightRecorder.PHASE_ENTER, 1L);
+        recorder.unregister(first);
+        // Ainda há uma instância com o mesmo nome
+        Assertions.assertNotEquals(first, recorder.register("/grupo@2"));
+        recorder.unregister(first);
+
+        final int reused = recorder.register("/grupo@3");
+        Assertions.assertEquals(first, reused);
+        recorder.record(BarrierFlightRecorder.Event.ARRIVE, reused, BarrierFlightRecorder.PHASE_ENTER, 3L);
+
+        final String[] lines = dump(recorder).split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertTrue(lines[0].contains("#" + first) && lines[0].endsWith("value=1"), lines[0]);
+        Assertions.assertTrue(lines[1].contains("/grupo@3") && lines[1].endsWith("value=3"), lines[1]);
+    }
+
+    @Test
+    public void testMapped_QuandoArquivoExistente_DevePreservarGravacaoAnterior(@TempDir Path dir) throws Exception {
+        final Path file = dir.resolve("barreiras.bfr");
+        final BarrierFlightRecorder crashed = BarrierFlightRecorder.mapped(file, 8);
+        crashed.record(BarrierFlightRecorder.Event.ZK_ERROR, crashed.register("/incidente"), 1, 42L);
+
+        // Reinicia o processo com o mesmo arquivo
+        final BarrierFlightRecorder restarted = BarrierFlightRecorder.mapped(file, 8);
+        Assertions.assertFalse(dump(restarted).contains("/incidente"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BarrierFlightRecorder.dump(BarrierFlightRecorder.previousFileOf(file), -1, new PrintStream(out, true, StandardCharsets.UTF_8));
+        final String timeline = out.toString(StandardCharsets.UTF_8);
+        Assertions.assertTrue(timeline.contains("ZK_ERROR") && timeline.contains("/incidente"), timeline);
+    }
+
+    /**
+     * Retorna os eventos do gravador global da barreira {@code barrierId}, com o tipo {@code event}.
+     */
+    private static List<long[]> recorded(int barrierId, BarrierFlightRecorder.Event event) {
+        final List<long[]> records = new ArrayList<>();
+        for (long[] record : BarrierFlightRecorder.global().records()) {
+            if (record[2] == barrierId && record[3] == event.ordinal()) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testFlightRecordingZooKeeper_QuandoOperacoesAssincronas_DeveGravarOperacoesENotificacoes() throws Exception {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.global();
+        final int id = recorder.register("/gravador-async-" + UUID.randomUUID());
+        final AtomicInteger notifications = new AtomicInteger();
+        try (final TestingServer testingServer = new TestingServer();
+             final ZooKeeper zk = new FlightRecordingZooKeeper(testingServer.getConnectString(), 3000, event -> {
+             }, id)) {
+            ZooKeeperNodes.createContainer(zk, "/conteiner");
+            zk.create("/conteiner/no", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+            // Uma leitura assíncrona com um observador próprio, que deve ser notificado uma única vez
+            final CountDownLatch read = new CountDownLatch(1);
+            final Watcher watcher = event -> notifications.incrementAndGet();
+            zk.getData("/conteiner/no", watcher, (rc, path, ctx, data, stat) -> read.countDown(), null);
+            zk.exists("/conteiner/no", watcher);
+            Assertions.assertTrue(read.await(5, TimeUnit.SECONDS));
+
+            final CountDownLatch written = new CountDownLatch(1);
+            zk.setData("/conteiner/no", new byte[]{1}, 5, (rc, path, ctx, stat) -> written.countDown(), null);
+            Assertions.assertTrue(written.await(5, TimeUnit.SECONDS));
+            zk.setData("/conteiner/no", new byte[]{1}, -1);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (notifications.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            recorder.unregister(id);
+        }
+
+        final List<long[]> ops = recorded(id, BarrierFlightRecorder.Event.ZK_OP);
+        Assertions.assertTrue(ops.stream().anyMatch(record -> record[4] == ZooDefs.OpCode.createContainer));
+        Assertions.assertTrue(ops.stream().anyMatch(record -> record[4] == ZooDefs.OpCode.getData && record[5] >= 0));
+        // A versão incorreta da escrita assíncrona é gravada como erro
+        Assertions.assertTrue(recorded(id, BarrierFlightRecorder.Event.ZK_ERROR).stream().anyMatch(record ->
+                record[4] == ZooDefs.OpCode.setData && record[5] == KeeperException.Code.BADVERSION.intValue()));
+        // A notificação do observador próprio é gravada, e o observador registrado duas vezes no nó é chamado uma vez
+        Assertions.assertTrue(recorded(id, BarrierFlightRecorder.Event.WATCH).stream().anyMatch(record ->
+                record[4] == Watcher.Event.EventType.NodeDataChanged.getIntValue()));
+        Assertions.assertEquals(1, notifications.get());
+    }
+
+    @Test
+    public void testFlightRecordingZooKeeper_QuandoObservadorPadraoEContexto_DeveRepassarSemAlterar() throws Exception {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.global();
+        final int id = recorder.register("/gravador-contexto-" + UUID.randomUUID());
+        final AtomicInteger notifications = new AtomicInteger();
+        final Watcher watcher = event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeCreated) {
+                notifications.incrementAndGet();
+            }
+        };
+        try (final TestingServer testingServer = new TestingServer();
+             final ZooKeeper zk = new FlightRecordingZooKeeper(testingServer.getConnectString(), 3000, watcher, id)) {
+            // Mais operações simultâneas do que contextos reaproveitados, cada uma com o seu próprio contexto
+            final int count = 100;
+            final CountDownLatch answered = new CountDownLatch(count);
+            final AtomicInteger mismatches = new AtomicInteger();
+            for (int i = 0; i < count; i++) {
+                zk.exists("/no", watcher, (rc, path, ctx, stat) -> {
+                    if (rc != KeeperException.Code.NONODE.intValue() || !ctx.equals(path + ":" + answered.getCount())) {
+                        mismatches.incrementAndGet();
+                    }
+                    answered.countDown();
+                }, "/no:" + (count - i));
+            }
+            Assertions.assertTrue(answered.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, mismatches.get());
+
+            // O observador padrão, passado diretamente ou com watch = true, é o mesmo observador no nó
+            zk.exists("/no", true);
+            zk.create("/no", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (notifications.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+        } finally {
+            recorder.unregister(id);
+        }
+        Assertions.assertEquals(1, notifications.get());
+        // Um nó inexistente não é gravado como erro de exists()
+        Assertions.assertTrue(recorded(id, BarrierFlightRecorder.Event.ZK_ERROR).isEmpty());
+        Assertions.assertTrue(recorded(id, BarrierFlightRecorder.Event.ZK_OP).stream()
+                .filter(record -> record[4] == ZooDefs.OpCode.exists).count() >= 100);
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoBarreiraRemovida_DeveGravarChegadaELiberacao() throws Exception {
+        try (final TestingServer testingServer = new TestingServer();
+             final ZooKeeperBarrier controller = new ZooKeeperBarrier(testingServer.getConnectString(), "/gravador");
+             final ZooKeeperBarrier participant = new ZooKeeperBarrier(testingServer.getConnectString(), "/gravador")) {
+            controller.zk.create("/gravador", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            final Future<Void> future = CompletableFuture.runAsync(() -> {
+                try {
+                    participant.waitForBarrier();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            controller.removeBarrier();
+            future.get(1L, TimeUnit.SECONDS);
+        }
+
+        final String timeline = dump(BarrierFlightRecorder.global());
+        Assertions.assertTrue(timeline.matches("(?s).*ARRIVE +/gravador.*RELEASE +/gravador.*"));
+        Assertions.assertTrue(timeline.matches("(?s).*ZK_OP +/gravador.*"));
+    }
+}
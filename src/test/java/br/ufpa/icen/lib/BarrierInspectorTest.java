@@ -0,0 +1,201 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class BarrierInspectorTest {
+    private static TestingServer testingServer;
+    private BarrierInspector inspector;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        inspector = BarrierInspector.start(0);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        inspector.close();
+        testingServer.close();
+    }
+
+    private HttpURLConnection connect(String method) throws IOException {
+        final URL url = new URL("http://localhost:" + inspector.getAddress().getPort() + BarrierInspector.PATH);
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private String get() throws IOException {
+        final HttpURLConnection connection = connect("GET");
+        Assertions.assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Retorna o objeto JSON da barreira {@code barrierNode}, ou {@code null} se ela não foi listada.
+     */
+    private static String barrier(String json, String barrierNode) {
+        final int start = json.indexOf("{\"name\":\"" + barrierNode + "\"");
+        if (start < 0) {
+            return null;
+        }
+        final int end = json.indexOf("]", json.indexOf("\"waiting\":[", start));
+        return json.substring(start, json.indexOf('}', end) + 1);
+    }
+
+    @Test
+    public void testGet_QuandoParticipanteAguardando_DeveListarBarreiraEEspera() throws Exception {
+        final String node = "/barrier-" + UUID.randomUUID();
+        final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "waiter-1"));
+        try (final ZooKeeperReusableRestrictedBarrier first = new ZooKeeperReusableRestrictedBarrier(testingServer.getConnectString(), node, 2);
+             final ZooKeeperReusableRestrictedBarrier second = new ZooKeeperReusableRestrictedBarrier(testingServer.getConnectString(), node, 2)) {
+            final Future<Void> waiting = executor.submit(() -> {
+                first.waitForBarrier();
+                return null;
+            });
+
+            // Aguarda até que a chegada do primeiro participante seja contada
+            String barrier = null;
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (System.nanoTime() < deadline) {
+                barrier = barrier(get(), node);
+                if (barrier != null && barrier.contains("\"arrived\":1")) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+            Assertions.assertNotNull(barrier);
+            Assertions.assertTrue(barrier.contains("\"type\":\"ZooKeeperReusableRestrictedBarrier\""), barrier);
+            Assertions.assertTrue(barrier.contains("\"instances\":2"), barrier);
+            Assertions.assertTrue(barrier.contains("\"arrived\":1,\"expected\":2"), barrier);
+            Assertions.assertTrue(barrier.contains("\"generation\":null"), barrier);
+
+            Thread.sleep(100);
+            final Matcher blocked = Pattern.compile("\\{\"thread\":\"waiter-1\",\"phase\":\"enter\",\"blockedMillis\":(\\d+)}")
+                    .matcher(barrier(get(), node));
+            Assertions.assertTrue(blocked.find());
+            Assertions.assertTrue(Long.parseLong(blocked.group(1)) >= 100);
+
+            second.waitForBarrier();
+            waiting.get(10, TimeUnit.SECONDS);
+            barrier = barrier(get(), node);
+            Assertions.assertTrue(barrier.contains("\"generation\":1"), barrier);
+            Assertions.assertTrue(barrier.contains("\"waiting\":[]"), barrier);
+        } finally {
+            executor.shutdownNow();
+        }
+        // Sem instâncias abertas, a barreira deixa de ser listada
+        Assertions.assertNull(barrier(get(), node));
+    }
+
+    @Test
+    public void testSnapshot_QuandoErroDoZooKeeper_DeveGuardarUltimoErro() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(64);
+        final BarrierRegistry registry = BarrierRegistry.attach(recorder);
+        final int id = recorder.register("/errors");
+        registry.open(id, "ZooKeeperBarrier");
+        recorder.record(BarrierFlightRecorder.Event.ZK_ERROR, id, ZooDefs.OpCode.create, KeeperException.Code.NONODE.intValue());
+        recorder.record(BarrierFlightRecorder.Event.ZK_ERROR, id, ZooDefs.OpCode.delete, KeeperException.Code.BADVERSION.intValue());
+
+        final List<BarrierRegistry.Barrier> barriers = registry.snapshot();
+        Assertions.assertEquals(1, barriers.size());
+        Assertions.assertEquals(ZooDefs.OpCode.delete, barriers.get(0).getLastErrorOpCode());
+        Assertions.assertEquals(KeeperException.Code.BADVERSION.intValue(), barriers.get(0).getLastErrorCode());
+        Assertions.assertTrue(barriers.get(0).getLastErrorAgeNanos() >= 0);
+
+        final String json = BarrierInspector.toJson(barriers);
+        Assertions.assertTrue(json.contains("\"lastError\":{\"op\":\"delete\",\"code\":\"BADVERSION\",\"ageMillis\":"), json);
+    }
+
+    @Test
+    public void testSnapshot_QuandoParticipanteLiberado_NaoDeveListarEspera() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(64);
+        final BarrierRegistry registry = BarrierRegistry.attach(recorder);
+        final int id = recorder.register("/released");
+        registry.open(id, "ZooKeeperDoubleBarrier");
+        recorder.record(BarrierFlightRecorder.Event.ARRIVE, id, BarrierFlightRecorder.PHASE_EXIT, 0L);
+        Assertions.assertEquals(BarrierFlightRecorder.PHASE_EXIT, registry.snapshot().get(0).getWaiting().get(0).getPhase());
+
+        recorder.record(BarrierFlightRecorder.Event.RELEASE, id, BarrierFlightRecorder.PHASE_EXIT, 0L);
+        Assertions.assertTrue(registry.snapshot().get(0).getWaiting().isEmpty());
+
+        registry.close(id);
+        Assertions.assertTrue(registry.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testSnapshot_QuandoThreadTermina_DeveDescartarEspera() throws Exception {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(64);
+        final BarrierRegistry registry = BarrierRegistry.attach(recorder);
+        final int id = recorder.register("/abandoned");
+        registry.open(id, "ZooKeeperSemaphore");
+        // Uma thread chega na barreira e termina sem ser liberada
+        final Thread thread = new Thread(() -> recorder.record(BarrierFlightRecorder.Event.ARRIVE, id, BarrierFlightRecorder.PHASE_ENTER, 0L));
+        thread.start();
+        thread.join();
+
+        Assertions.assertTrue(registry.snapshot().get(0).getWaiting().isEmpty());
+        registry.close(id);
+    }
+
+    @Test
+    public void testOpen_QuandoIdentificadorReaproveitado_DeveDescartarEstadoAnterior() {
+        final BarrierFlightRecorder recorder = BarrierFlightRecorder.inMemory(64);
+        final BarrierRegistry registry = BarrierRegistry.attach(recorder);
+        final int id = recorder.register("/first");
+        registry.open(id, "ZooKeeperReusableBarrier");
+        recorder.record(BarrierFlightRecorder.Event.GENERATION, id, BarrierFlightRecorder.PHASE_ENTER, 7L);
+        recorder.record(BarrierFlightRecorder.Event.ZK_ERROR, id, ZooDefs.OpCode.create, KeeperException.Code.NONODE.intValue());
+        recorder.record(BarrierFlightRecorder.Event.ARRIVE, id, BarrierFlightRecorder.PHASE_ENTER, 0L);
+        registry.close(id);
+        recorder.unregister(id);
+
+        final int reused = recorder.register("/second");
+        Assertions.assertEquals(id, reused);
+        registry.open(reused, "ZooKeeperBarrier");
+        final BarrierRegistry.Barrier barrier = registry.snapshot().get(0);
+        Assertions.assertEquals("/second", barrier.getName());
+        Assertions.assertEquals(1, barrier.getInstances());
+        Assertions.assertEquals(-1L, barrier.getGeneration());
+        Assertions.assertEquals(-1L, barrier.getLastErrorAgeNanos());
+        Assertions.assertTrue(barrier.getWaiting().isEmpty());
+        registry.close(reused);
+    }
+
+    @Test
+    public void testStart_QuandoApenasPorta_DeveAtenderSomenteNoLoopback() {
+        Assertions.assertTrue(inspector.getAddress().getAddress().isLoopbackAddress(), inspector.getAddress().toString());
+    }
+
+    @Test
+    public void testRequest_QuandoMetodoNaoForGet_DeveRetornar405() throws Exception {
+        final HttpURLConnection connection = connect("POST");
+        Assertions.assertEquals(405, connection.getResponseCode());
+    }
+}
@@ -0,0 +1,115 @@
+package br.ufpa.icen.lib;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+public class ConflatingPublisherTest {
+
+    /**
+     * Um assinante que registra os sinais recebidos e só pede eventos quando o teste mandar.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        private final List<Integer> items = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static ConflatingPublisher<Integer> newPublisher(int capacity) {
+        // Entrega os eventos na própria thread, tornando o teste determinístico
+        return new ConflatingPublisher<>(Runnable::run, capacity, Integer::sum);
+    }
+
+    @Test
+    public void testOffer_QuandoSemDemanda_DeveAguardarRequest() {
+        final ConflatingPublisher<Integer> publisher = newPublisher(16);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        for (int i = 1; i <= 5; i++) {
+            publisher.offer(i);
+        }
+        Assertions.assertTrue(subscriber.items.isEmpty());
+
+        subscriber.subscription.request(2);
+        Assertions.assertEquals(Arrays.asList(1, 2), subscriber.items);
+        subscriber.subscription.request(10);
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 4, 5), subscriber.items);
+    }
+
+    @Test
+    public void testOffer_QuandoBufferCheio_DeveCombinarComUltimoEvento() {
+        final ConflatingPublisher<Integer> publisher = newPublisher(2);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        for (int i = 1; i <= 5; i++) {
+            publisher.offer(i);
+        }
+
+        subscriber.subscription.request(10);
+        Assertions.assertEquals(Arrays.asList(1, 2 + 3 + 4 + 5), subscriber.items);
+    }
+
+    @Test
+    public void testClose_QuandoEventosNoBuffer_DeveCompletarAposEntregaLos() {
+        final ConflatingPublisher<Integer> publisher = newPublisher(16);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.offer(1);
+        publisher.close();
+        Assertions.assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        Assertions.assertEquals(Arrays.asList(1), subscriber.items);
+        Assertions.assertTrue(subscriber.completed);
+        Assertions.assertEquals(0, publisher.getNumberOfSubscribers());
+    }
+
+    @Test
+    public void testRequest_QuandoDemandaNaoPositiva_DeveSinalizarErro() {
+        final ConflatingPublisher<Integer> publisher = newPublisher(16);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assertions.assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+        // O assinante não recebe mais eventos
+        publisher.offer(1);
+        subscriber.subscription.request(1);
+        Assertions.assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void testCancel_QuandoCancelado_DeveRemoverAssinante() {
+        final ConflatingPublisher<Integer> publisher = newPublisher(16);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        Assertions.assertEquals(1, publisher.getNumberOfSubscribers());
+        subscriber.subscription.cancel();
+        Assertions.assertEquals(0, publisher.getNumberOfSubscribers());
+    }
+}
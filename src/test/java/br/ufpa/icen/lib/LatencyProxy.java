@@ -0,0 +1,189 @@
+package br.ufpa.icen.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um proxy TCP local que simula um enlace de longa distância entre os clientes e o servidor do ZooKeeper.
+ * <p>
+ * Em um {@code TestingServer} local, cada ida e volta custa microssegundos, escondendo padrões de acesso com uma
+ * requisição por participante que se tornam caros entre regiões. Conectando os clientes ao proxy (com
+ * {@link #getConnectString()}), cada trecho de dados é entregue apenas após a latência configurada, somada a uma
+ * variação aleatória e ao tempo de transmissão pela banda configurada. A ordem dos dados em cada sentido é preservada,
+ * como em uma conexão TCP real. {@link #dropConnections()} derruba as conexões abertas, simulando uma queda do enlace.
+ * <p>
+ * A latência vale para cada sentido: uma ida e volta custa o dobro de {@link #setLatency(long, TimeUnit)}. As
+ * configurações podem ser alteradas com o proxy em execução, e valem para os dados recebidos a partir de então.
+ */
+public class LatencyProxy implements AutoCloseable {
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final ServerSocket serverSocket;
+    private final InetSocketAddress upstream;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile long bytesPerSecond;
+
+    /**
+     * Inicia o proxy em uma porta livre, encaminhando as conexões para {@code upstreamHost:upstreamPort}.
+     *
+     * @throws IOException se não for possível abrir a porta do proxy.
+     */
+    public LatencyProxy(String upstreamHost, int upstreamPort) throws IOException {
+        this.upstream = new InetSocketAddress(upstreamHost, upstreamPort);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "latency-proxy-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Retorna a string de conexão que os clientes devem usar para passar pelo proxy.
+     */
+    public String getConnectString() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Define a latência de cada sentido da conexão.
+     */
+    public LatencyProxy setLatency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * Define a variação máxima, para mais, somada aleatoriamente à latência de cada trecho de dados.
+     */
+    public LatencyProxy setJitter(long jitter, TimeUnit unit) {
+        this.jitterNanos = unit.toNanos(jitter);
+        return this;
+    }
+
+    /**
+     * Define a banda de cada sentido da conexão, em bytes por segundo, ou 0 para não limitá-la.
+     */
+    public LatencyProxy setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Derruba todas as conexões abertas. Os clientes do ZooKeeper se reconectam ao proxy, mantendo as suas sessões
+     * caso a reconexão ocorra antes do tempo limite da sessão.
+     */
+    public void dropConnections() {
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                return; // O proxy foi fechado
+            }
+            try {
+                final Socket server = new Socket();
+                server.connect(upstream);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                pipe(client, server, "upstream");
+                pipe(server, client, "downstream");
+            } catch (IOException e) {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Encaminha os dados de {@code from} para {@code to}: uma thread lê e agenda cada trecho, e outra o entrega no
+     * horário agendado.
+     */
+    private void pipe(Socket from, Socket to, String direction) throws IOException {
+        final InputStream in = from.getInputStream();
+        final OutputStream out = to.getOutputStream();
+        final BlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+        final Thread reader = new Thread(() -> {
+            final byte[] buffer = new byte[16 * 1024];
+            // Horário em que o último trecho termina de ser transmitido, para que os trechos não se ultrapassem
+            long lastDelivery = 0;
+            try {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    final long now = System.nanoTime();
+                    final long jitter = jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos + 1) : 0;
+                    final long bandwidth = bytesPerSecond;
+                    final long transmission = bandwidth > 0 ? TimeUnit.SECONDS.toNanos(read) / bandwidth : 0;
+                    lastDelivery = Math.max(now + latencyNanos + jitter, lastDelivery) + transmission;
+                    queue.add(new Object[]{lastDelivery, Arrays.copyOf(buffer, read)});
+                }
+            } catch (IOException ignored) {
+                // A conexão foi derrubada ou fechada
+            }
+            queue.add(new Object[]{0L, END_OF_STREAM});
+        }, "latency-proxy-" + direction + "-read");
+        final Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    final Object[] chunk = queue.take();
+                    final byte[] data = (byte[]) chunk[1];
+                    if (data == END_OF_STREAM) {
+                        break;
+                    }
+                    final long delay = (long) chunk[0] - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                    out.write(data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // A conexão foi derrubada ou fechada
+            }
+            closeQuietly(from);
+            closeQuietly(to);
+            sockets.remove(from);
+            sockets.remove(to);
+        }, "latency-proxy-" + direction + "-write");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Fecha o proxy e todas as conexões abertas.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+}
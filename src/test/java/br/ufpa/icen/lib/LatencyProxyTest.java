@@ -0,0 +1,80 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyProxyTest {
+    private static TestingServer testingServer;
+    private LatencyProxy proxy;
+    private ZooKeeper zk;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        proxy = new LatencyProxy("127.0.0.1", testingServer.getPort());
+        final CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(proxy.getConnectString(), 3000, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        connected.await(5L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSetLatency_QuandoConfigurada_DeveAtrasarCadaIdaEVolta() throws Exception {
+        proxy.setLatency(25L, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            zk.exists("/node", false);
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Cada ida e volta custa duas vezes a latência configurada
+        Assertions.assertTrue(elapsed >= 4 * 50L, "tempo decorrido: " + elapsed + " ms");
+    }
+
+    @Test
+    public void testDropConnections_QuandoClienteReconecta_DeveManterSessao() throws Exception {
+        final long sessionId = zk.getSessionId();
+        zk.create("/node", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+        proxy.dropConnections();
+
+        // A requisição em andamento na queda falha, mas o cliente se reconecta pelo proxy e o nó efêmero continua
+        // existindo
+        Assertions.assertNotNull(existsAfterReconnect("/node"));
+        Assertions.assertEquals(sessionId, zk.getSessionId());
+    }
+
+    private Stat existsAfterReconnect(String path) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (true) {
+            try {
+                return zk.exists(path, false);
+            } catch (KeeperException.ConnectionLossException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50L);
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        zk.close();
+        proxy.close();
+    }
+}
@@ -0,0 +1,227 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.client.HostProvider;
+import org.apache.zookeeper.client.ZKClientConfig;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Uma sessão de uma {@link ZooKeeperSimulation}, com a mesma API do {@link ZooKeeper}.
+ * <p>
+ * As operações usadas pelas barreiras são respondidas pela simulação. O cliente real herdado nunca se conecta: o
+ * seu {@link HostProvider} fica bloqueado até que a sessão seja fechada.
+ */
+public final class SimulatedZooKeeper extends ZooKeeper {
+    private final ZooKeeperSimulation simulation;
+    private final ZooKeeperSimulation.Session session;
+    private final ParkedHostProvider hostProvider;
+    private boolean closed;
+
+    /**
+     * Um {@link HostProvider} que nunca fornece um servidor, mantendo a thread de envio do cliente parada.
+     */
+    private static final class ParkedHostProvider implements HostProvider {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile ZooKeeper owner;
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        public InetSocketAddress next(long spinDelay) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Aguarda o cliente ser encerrado, para que a thread de envio termine em vez de tentar se conectar
+            while (owner != null && owner.getState().isAlive()) {
+                Thread.onSpinWait();
+            }
+            throw new IllegalStateException("sessão simulada encerrada");
+        }
+
+        @Override
+        public void onConnected() {
+        }
+
+        @Override
+        public boolean updateServerList(Collection<InetSocketAddress> serverAddresses, InetSocketAddress currentHost) {
+            return false;
+        }
+    }
+
+    SimulatedZooKeeper(ZooKeeperSimulation simulation, ZooKeeperSimulation.Session session) throws IOException {
+        this(simulation, session, new ParkedHostProvider());
+    }
+
+    private SimulatedZooKeeper(ZooKeeperSimulation simulation, ZooKeeperSimulation.Session session,
+                               ParkedHostProvider hostProvider) throws IOException {
+        super(simulation.getConnectString(), 3000, event -> {
+        }, false, hostProvider, clientConfig());
+        this.simulation = simulation;
+        this.session = session;
+        this.hostProvider = hostProvider;
+        hostProvider.owner = this;
+    }
+
+    private static ZKClientConfig clientConfig() {
+        final ZKClientConfig config = new ZKClientConfig();
+        // O socket Netty não aguarda ao ser encerrado, ao contrário do NIO
+        config.setProperty(ZKClientConfig.ZOOKEEPER_CLIENT_CNXN_SOCKET, "org.apache.zookeeper.ClientCnxnSocketNetty");
+        return config;
+    }
+
+    ZooKeeperSimulation.Session getSession() {
+        return session;
+    }
+
+    @Override
+    public long getSessionId() {
+        return session.getId();
+    }
+
+    @Override
+    public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode)
+            throws KeeperException, InterruptedException {
+        return create(path, data, acl, createMode, null);
+    }
+
+    @Override
+    public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode, Stat stat)
+            throws KeeperException, InterruptedException {
+        return simulation.call(session, "create " + path + " " + createMode,
+                () -> simulation.create(session, path, data, createMode, stat));
+    }
+
+    @Override
+    public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode, Stat stat, long ttl)
+            throws KeeperException, InterruptedException {
+        // Nós com tempo de vida nunca expiram na simulação
+        return create(path, data, acl, createMode, stat);
+    }
+
+    @Override
+    public void delete(String path, int version) throws InterruptedException, KeeperException {
+        simulation.call(session, "delete " + path, () -> {
+            simulation.delete(path, version);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String path, int version, AsyncCallback.VoidCallback cb, Object ctx) {
+        simulation.submit(session, "delete " + path, () -> {
+            simulation.delete(path, version);
+            return null;
+        }, (code, result) -> cb.processResult(code.intValue(), path, ctx));
+    }
+
+    @Override
+    public Stat exists(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        return simulation.call(session, "exists " + path, () -> simulation.exists(session, path, watcher));
+    }
+
+    @Override
+    public Stat exists(String path, boolean watch) throws KeeperException, InterruptedException {
+        return exists(path, session.watcher(watch));
+    }
+
+    @Override
+    public void exists(String path, Watcher watcher, AsyncCallback.StatCallback cb, Object ctx) {
+        simulation.submit(session, "exists " + path, () -> simulation.exists(session, path, watcher),
+                (code, stat) -> cb.processResult(stat == null && code == KeeperException.Code.OK
+                        ? KeeperException.Code.NONODE.intValue() : code.intValue(), path, ctx, stat));
+    }
+
+    @Override
+    public void exists(String path, boolean watch, AsyncCallback.StatCallback cb, Object ctx) {
+        exists(path, session.watcher(watch), cb, ctx);
+    }
+
+    @Override
+    public byte[] getData(String path, Watcher watcher, Stat stat) throws KeeperException, InterruptedException {
+        return simulation.call(session, "getData " + path, () -> simulation.getData(session, path, watcher, stat));
+    }
+
+    @Override
+    public byte[] getData(String path, boolean watch, Stat stat) throws KeeperException, InterruptedException {
+        return getData(path, session.watcher(watch), stat);
+    }
+
+    @Override
+    public Stat setData(String path, byte[] data, int version) throws KeeperException, InterruptedException {
+        return simulation.call(session, "setData " + path, () -> simulation.setData(path, data, version));
+    }
+
+    @Override
+    public List<String> getChildren(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        return getChildren(path, watcher, null);
+    }
+
+    @Override
+    public List<String> getChildren(String path, boolean watch) throws KeeperException, InterruptedException {
+        return getChildren(path, session.watcher(watch), null);
+    }
+
+    @Override
+    public List<String> getChildren(String path, Watcher watcher, Stat stat) throws KeeperException, InterruptedException {
+        return simulation.call(session, "getChildren " + path, () -> simulation.getChildren(session, path, watcher, stat));
+    }
+
+    @Override
+    public List<String> getChildren(String path, boolean watch, Stat stat) throws KeeperException, InterruptedException {
+        return getChildren(path, session.watcher(watch), stat);
+    }
+
+    @Override
+    public void removeWatches(String path, Watcher watcher, Watcher.WatcherType watcherType, boolean local)
+            throws InterruptedException, KeeperException {
+        simulation.call(session, "removeWatches " + path,
+                () -> simulation.removeWatches(session, path, watcher, watcherType));
+    }
+
+    @Override
+    public List<OpResult> multi(Iterable<Op> ops) throws InterruptedException, KeeperException {
+        return simulation.call(session, "multi", () -> simulation.multi(session, ops));
+    }
+
+    /**
+     * Encerra a sessão simulada, removendo os seus nós efêmeros, e o cliente herdado.
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            simulation.call(session, "close " + session.getId(), () -> {
+                simulation.end(session, false);
+                return null;
+            });
+        } catch (KeeperException ignored) {
+            // A sessão já expirou
+        } finally {
+            // A thread de envio precisa ser liberada antes do encerramento, que aguarda o seu término
+            hostProvider.released.countDown();
+            // O encerramento aguarda as threads do cliente herdado, e não o escalonador
+            simulation.outside(cnxn::disconnect);
+        }
+    }
+
+    @Override
+    public boolean close(int waitForShutdownTimeoutMs) throws InterruptedException {
+        close();
+        return true;
+    }
+}
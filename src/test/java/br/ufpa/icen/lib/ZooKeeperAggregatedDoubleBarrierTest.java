@@ -0,0 +1,145 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperAggregatedDoubleBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static TestingServer testingServer;
+    private final List<ZooKeeperAggregatedDoubleBarrier> participants = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        for (int i = 0; i < 3; i++) {
+            participants.add(new ZooKeeperAggregatedDoubleBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH));
+        }
+    }
+
+    private static CompletableFuture<Void> enterAsync(ZooKeeperAggregatedDoubleBarrier participant) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                participant.enterBarrier();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoTodosChegarem_DeveLiberarTodos() throws Exception {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            futures.add(enterAsync(participant));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+
+        // Após a liberação, o agregador deixa a eleição livre para a próxima rodada
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            Assertions.assertNotNull(zk.exists(BARRIER_NODE_PATH + "/ready", false));
+            Assertions.assertNull(zk.exists(BARRIER_NODE_PATH + "-aggregator", false));
+        }
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoFaltarParticipante_DeveAguardar() throws Exception {
+        final CompletableFuture<Void> first = enterAsync(participants.get(0));
+        final CompletableFuture<Void> second = enterAsync(participants.get(1));
+        Assertions.assertThrows(TimeoutException.class, () -> first.get(1L, TimeUnit.SECONDS));
+        Assertions.assertThrows(TimeoutException.class, () -> second.get(1L, TimeUnit.SECONDS));
+
+        final CompletableFuture<Void> third = enterAsync(participants.get(2));
+        Assertions.assertDoesNotThrow(() -> first.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> second.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> third.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoAgregadorSair_DeveOutroAssumir() throws Exception {
+        // Simula um agregador que venceu a eleição e nunca libera a barreira
+        final ZooKeeper crashed = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        crashed.create(BARRIER_NODE_PATH + "-aggregator", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            futures.add(enterAsync(participant));
+        }
+        Assertions.assertThrows(TimeoutException.class, () -> futures.get(0).get(1L, TimeUnit.SECONDS));
+
+        // A sessão do agregador termina, e um dos participantes assume a agregação
+        crashed.close();
+        for (CompletableFuture<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testExitBarrier_QuandoTodosSairem_DeveProsseguir() throws Exception {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    participant.enterBarrier();
+                    participant.exitBarrier();
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoRodadaAnteriorNaoSaiu_DeveAguardarNovaRodada() throws Exception {
+        // Uma rodada em que os participantes fecham após a entrada, sem sair, deixando o nó /ready
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            futures.add(enterAsync(participant));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            participant.close();
+        }
+        participants.clear();
+        for (int i = 0; i < 3; i++) {
+            participants.add(new ZooKeeperAggregatedDoubleBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH));
+        }
+
+        // O nó /ready da rodada anterior não libera a nova rodada antes de todos chegarem
+        final CompletableFuture<Void> first = enterAsync(participants.get(0));
+        final CompletableFuture<Void> second = enterAsync(participants.get(1));
+        Assertions.assertThrows(TimeoutException.class, () -> first.get(1L, TimeUnit.SECONDS));
+        Assertions.assertThrows(TimeoutException.class, () -> second.get(1L, TimeUnit.SECONDS));
+
+        final CompletableFuture<Void> third = enterAsync(participants.get(2));
+        Assertions.assertDoesNotThrow(() -> first.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> second.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> third.get(5L, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperAggregatedDoubleBarrier participant : participants) {
+            participant.close();
+        }
+    }
+}
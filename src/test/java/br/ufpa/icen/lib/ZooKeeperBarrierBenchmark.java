@@ -0,0 +1,181 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede a latência das barreiras com os clientes conectados ao servidor por um {@link LatencyProxy}, com 1, 10 e 50
+ * milissegundos de ida e volta.
+ * <p>
+ * Para cada barreira, é medido o tempo de uma rodada com {@value #PARTICIPANTS} participantes, do início da rodada
+ * até a liberação do último participante. A coluna "RTTs" divide a mediana pela ida e volta: um valor que cresce com
+ * o número de participantes indica requisições feitas uma a uma, em vez de em paralelo ou em lote.
+ * <p>
+ * Uso: {@code ZooKeeperBarrierBenchmark [rodadas]}, com 5 rodadas por padrão.
+ */
+public class ZooKeeperBarrierBenchmark {
+    private static final long[] RTT_MILLIS = {1, 10, 50};
+    private static final int PARTICIPANTS = 3;
+
+    /**
+     * Uma rodada de uma barreira.
+     */
+    @FunctionalInterface
+    private interface Round {
+        /**
+         * Executa a rodada, retornando a sua duração em nanossegundos.
+         */
+        long run(String connectString, String node) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        try (final TestingServer server = new TestingServer()) {
+            System.out.printf("%-36s %8s %10s %10s %10s %6s%n", "barreira", "RTT (ms)", "mediana", "p90", "máximo", "RTTs");
+            for (long rtt : RTT_MILLIS) {
+                try (final LatencyProxy proxy = new LatencyProxy("127.0.0.1", server.getPort())) {
+                    // A latência do proxy vale para cada sentido
+                    proxy.setLatency(TimeUnit.MILLISECONDS.toMicros(rtt) / 2, TimeUnit.MICROSECONDS);
+                    final String connectString = proxy.getConnectString();
+                    report("ZooKeeperBarrier", rtt, measure(rounds, connectString, "/barrier-" + rtt,
+                            (cs, node) -> barrierRound(cs, server.getConnectString(), node, rtt)));
+                    report("ZooKeeperDoubleBarrier", rtt, measure(rounds, connectString, "/double-" + rtt,
+                            ZooKeeperBarrierBenchmark::doubleBarrierRound));
+                    report("ZooKeeperReusableRestrictedBarrier", rtt, measure(rounds, connectString, "/restricted-" + rtt,
+                            ZooKeeperBarrierBenchmark::restrictedBarrierRound));
+                }
+            }
+        }
+    }
+
+    private static long[] measure(int rounds, String connectString, String node, Round round) throws Exception {
+        final long[] durations = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            durations[i] = round.run(connectString, node + "-" + i);
+        }
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    private static void report(String barrier, long rtt, long[] durations) {
+        final double median = millis(durations[durations.length / 2]);
+        final double p90 = millis(durations[(int) Math.ceil(durations.length * 0.9) - 1]);
+        final double max = millis(durations[durations.length - 1]);
+        System.out.printf("%-36s %8d %10.2f %10.2f %10.2f %6.1f%n", barrier, rtt, median, p90, max, median / rtt);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Mede o tempo entre a remoção da barreira pelo controlador e a liberação do último participante.
+     */
+    private static long barrierRound(String connectString, String directConnectString, String node, long rtt) throws Exception {
+        try (final ZooKeeper admin = new ZooKeeper(directConnectString, 3000, event -> {
+        })) {
+            admin.create(node, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+        final List<ZooKeeperBarrier> barriers = new ArrayList<>();
+        try {
+            for (int i = 0; i <= PARTICIPANTS; i++) {
+                barriers.add(new ZooKeeperBarrier(connectString, node));
+            }
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 1; i <= PARTICIPANTS; i++) {
+                final ZooKeeperBarrier barrier = barriers.get(i);
+                futures.add(runAsync(() -> {
+                    barrier.waitForBarrier();
+                    return System.nanoTime();
+                }));
+            }
+            // Aguarda os participantes observarem o nó antes de removê-lo
+            TimeUnit.MILLISECONDS.sleep(4 * rtt + 100);
+            final long start = System.nanoTime();
+            barriers.get(0).removeBarrier();
+            return latest(futures) - start;
+        } finally {
+            for (ZooKeeperBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    /**
+     * Mede o tempo de entrada e saída de todos os participantes da barreira dupla.
+     */
+    private static long doubleBarrierRound(String connectString, String node) throws Exception {
+        final List<ZooKeeperDoubleBarrier> barriers = new ArrayList<>();
+        try {
+            for (int i = 0; i < PARTICIPANTS; i++) {
+                barriers.add(new ZooKeeperDoubleBarrier(connectString, node));
+            }
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (ZooKeeperDoubleBarrier barrier : barriers) {
+                futures.add(runAsync(() -> {
+                    barrier.enterBarrier();
+                    barrier.exitBarrier();
+                    return System.nanoTime();
+                }));
+            }
+            return latest(futures) - start;
+        } finally {
+            for (ZooKeeperDoubleBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    /**
+     * Mede o tempo de uma rodada da barreira restrita.
+     */
+    private static long restrictedBarrierRound(String connectString, String node) throws Exception {
+        final List<ZooKeeperReusableRestrictedBarrier> barriers = new ArrayList<>();
+        try {
+            for (int i = 0; i < PARTICIPANTS; i++) {
+                barriers.add(new ZooKeeperReusableRestrictedBarrier(connectString, node, PARTICIPANTS));
+            }
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (ZooKeeperReusableRestrictedBarrier barrier : barriers) {
+                futures.add(runAsync(() -> {
+                    barrier.waitForBarrier();
+                    return System.nanoTime();
+                }));
+            }
+            return latest(futures) - start;
+        } finally {
+            for (ZooKeeperReusableRestrictedBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    private static CompletableFuture<Long> runAsync(Callable<Long> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static long latest(List<CompletableFuture<Long>> futures) throws Exception {
+        long latest = Long.MIN_VALUE;
+        for (CompletableFuture<Long> future : futures) {
+            latest = Math.max(latest, future.get(30L, TimeUnit.SECONDS));
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,121 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperBarrierGroupTest {
+    private static final List<String> BARRIER_NODE_PATHS = Arrays.asList("/barrier1", "/barrier2", "/barrier3");
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private ZooKeeperBarrierGroup group;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        group = new ZooKeeperBarrierGroup(testingServer.getConnectString()) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                zk = super.createZooKeeperConnection(connectString, watcher);
+                return zk;
+            }
+        };
+        for (String path : BARRIER_NODE_PATHS) {
+            zk.create(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+    }
+
+    @Test
+    public void testWaitAll_QuandoNosExistem_DeveAguardarRemocaoDeTodos() throws Exception {
+        final Future<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                group.waitAll(BARRIER_NODE_PATHS);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assertions.assertThrows(TimeoutException.class, () -> future.get(1L, TimeUnit.SECONDS));
+
+        // Enquanto restar alguma barreira, o cliente continua aguardando
+        zk.delete(BARRIER_NODE_PATHS.get(0), -1);
+        zk.delete(BARRIER_NODE_PATHS.get(1), -1);
+        Assertions.assertThrows(TimeoutException.class, () -> future.get(1L, TimeUnit.SECONDS));
+
+        zk.delete(BARRIER_NODE_PATHS.get(2), -1);
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitAll_QuandoNosNaoExistem_DeveProsseguir() throws Exception {
+        for (String path : BARRIER_NODE_PATHS) {
+            zk.delete(path, -1);
+        }
+        final Future<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                group.waitAll(BARRIER_NODE_PATHS);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitAny_QuandoUmNoForRemovido_DeveRetornarSeuCaminho() throws Exception {
+        final Future<String> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return group.waitAny(BARRIER_NODE_PATHS);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assertions.assertThrows(TimeoutException.class, () -> future.get(1L, TimeUnit.SECONDS));
+
+        zk.delete(BARRIER_NODE_PATHS.get(1), -1);
+        Assertions.assertEquals(BARRIER_NODE_PATHS.get(1), Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testWaitAll_QuandoObservacaoFalhar_DeveLancarErro() throws Exception {
+        group.close();
+        // As consultas assíncronas de existência falham como se a conexão tivesse sido perdida
+        group = new ZooKeeperBarrierGroup(testingServer.getConnectString()) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                return new ZooKeeper(connectString, 3000, watcher) {
+                    @Override
+                    public void exists(String path, boolean watch, AsyncCallback.StatCallback cb, Object ctx) {
+                        cb.processResult(KeeperException.Code.CONNECTIONLOSS.intValue(), path, ctx, null);
+                    }
+                };
+            }
+        };
+        final Future<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                group.waitAll(BARRIER_NODE_PATHS);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause().getCause() instanceof KeeperException.ConnectionLossException, e.toString());
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        group.close();
+    }
+}
@@ -0,0 +1,127 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class ZooKeeperBspWorkerTest {
+    private static final String JOB_NODE_PATH = "/job";
+    private static final int WORKERS = 3;
+    private static TestingServer testingServer;
+    private final List<ZooKeeperBspWorker<Integer>> workers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(new ZooKeeperBspWorker<>(testingServer.getConnectString(), JOB_NODE_PATH, i, WORKERS,
+                    value -> String.valueOf(value).getBytes(StandardCharsets.UTF_8),
+                    data -> Integer.parseInt(new String(data, StandardCharsets.UTF_8))));
+        }
+    }
+
+    private List<Long> runAll(Function<Integer, ZooKeeperBspWorker.Computation<Integer>> computations) throws Exception {
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            final ZooKeeperBspWorker<Integer> worker = workers.get(i);
+            final ZooKeeperBspWorker.Computation<Integer> computation = computations.apply(i);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return worker.run(computation);
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        final List<Long> results = new ArrayList<>();
+        for (CompletableFuture<Long> future : futures) {
+            results.add(future.get(10L, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @Test
+    public void testRun_QuandoMensagensEnviadas_DeveEntregarNoProximoSuperpasso() throws Exception {
+        final List<List<Integer>> received = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            received.add(new ArrayList<>());
+        }
+        final List<Long> steps = runAll(index -> superstep -> {
+            if (superstep.getIndex() == 0) {
+                // Envia o próprio índice para todos os trabalhadores, inclusive para si mesmo
+                for (int worker = 0; worker < superstep.getNumWorkers(); worker++) {
+                    superstep.send(worker, superstep.getWorkerIndex());
+                }
+            } else {
+                received.get(index).addAll(superstep.getMessages());
+                superstep.voteToHalt();
+            }
+        });
+
+        Assertions.assertEquals(Arrays.asList(2L, 2L, 2L), steps);
+        for (List<Integer> messages : received) {
+            Assertions.assertEquals(Arrays.asList(0, 1, 2), messages);
+        }
+    }
+
+    @Test
+    public void testRun_QuandoValoresPropagadosEmAnel_DeveTerminarComOMaiorValor() throws Exception {
+        final int[] values = {3, 7, 5};
+        final List<Long> steps = runAll(index -> superstep -> {
+            final int next = (superstep.getWorkerIndex() + 1) % superstep.getNumWorkers();
+            if (superstep.getIndex() == 0) {
+                superstep.send(next, values[index]);
+            } else {
+                final int max = superstep.getMessages().stream().mapToInt(Integer::intValue).max().orElse(values[index]);
+                // Só repassa o valor recebido se ele for maior que o atual
+                if (max > values[index]) {
+                    values[index] = max;
+                    superstep.send(next, max);
+                }
+            }
+            superstep.voteToHalt();
+        });
+
+        Assertions.assertArrayEquals(new int[]{7, 7, 7}, values);
+        Assertions.assertEquals(steps.get(0), steps.get(1));
+        Assertions.assertEquals(steps.get(0), steps.get(2));
+    }
+
+    @Test
+    public void testRun_QuandoJobTermina_DeveRemoverNosDosSuperpassos() throws Exception {
+        runAll(index -> superstep -> {
+            if (superstep.getIndex() < 3) {
+                superstep.send((superstep.getWorkerIndex() + 1) % superstep.getNumWorkers(), 1);
+            }
+            superstep.voteToHalt();
+        });
+
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            // Restam apenas contêineres vazios, removidos posteriormente pelo ZooKeeper
+            for (String step : zk.getChildren(JOB_NODE_PATH, false)) {
+                Assertions.assertEquals(0, zk.exists(JOB_NODE_PATH + "/" + step, false).getNumChildren(), step);
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperBspWorker<Integer> worker : workers) {
+            worker.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperCountDownLatchTest {
+    private static final String LATCH_NODE_PATH = "/latch";
+    private static TestingServer testingServer;
+    private final List<ZooKeeperCountDownLatch> latches = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+    }
+
+    private ZooKeeperCountDownLatch newLatch(long count) throws Exception {
+        final ZooKeeperCountDownLatch latch = new ZooKeeperCountDownLatch(testingServer.getConnectString(), LATCH_NODE_PATH, count);
+        latches.add(latch);
+        return latch;
+    }
+
+    private static Future<Void> awaitAsync(ZooKeeperCountDownLatch latch) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                latch.await();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testAwait_QuandoLotesCompletamContagem_DeveLiberar() throws Exception {
+        final ZooKeeperCountDownLatch producer1 = newLatch(10_000);
+        final ZooKeeperCountDownLatch producer2 = newLatch(10_000);
+        final Future<Void> future = awaitAsync(newLatch(10_000));
+
+        Assertions.assertEquals(4_000, producer1.countDown(6_000));
+        Assertions.assertThrows(TimeoutException.class, () -> future.get(500L, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(0, producer2.countDown(4_000));
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCountDown_QuandoLoteMaiorQueContagem_NaoDeveFicarNegativa() throws Exception {
+        final ZooKeeperCountDownLatch latch = newLatch(3);
+        Assertions.assertEquals(0, latch.countDown(5));
+        Assertions.assertEquals(0, latch.countDown(1));
+        Assertions.assertEquals(0, latch.getCount());
+    }
+
+    @Test
+    public void testCountDown_QuandoProdutoresConcorrentes_NaoDevePerderSinais() throws Exception {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final ZooKeeperCountDownLatch latch = newLatch(100);
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (int j = 0; j < 5; j++) {
+                        latch.countDown(2);
+                    }
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+        Assertions.assertEquals(60, latches.get(0).getCount());
+    }
+
+    @Test
+    public void testAwait_QuandoTempoEsgota_DeveRetornarFalso() throws Exception {
+        final ZooKeeperCountDownLatch latch = newLatch(1);
+        Assertions.assertFalse(latch.await(200L, TimeUnit.MILLISECONDS));
+        latch.countDown();
+        Assertions.assertTrue(latch.await(200L, TimeUnit.MILLISECONDS));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperCountDownLatch latch : latches) {
+            latch.close();
+        }
+    }
+}
@@ -11,6 +11,9 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -30,8 +33,9 @@ public class ZooKeeperDoubleBarrierTest {
         barrier = new ZooKeeperDoubleBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH) {
             @Override
             protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
-                zk = super.createZooKeeperConnection(connectString, watcher);
-                return zk;
+                // A barreira também tem um campo `zk`, que só é atribuído após o retorno deste método
+                ZooKeeperDoubleBarrierTest.this.zk = super.createZooKeeperConnection(connectString, watcher);
+                return ZooKeeperDoubleBarrierTest.this.zk;
             }
         };
     }
@@ -222,6 +226,171 @@ public class ZooKeeperDoubleBarrierTest {
         Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testEnterBarrier_QuandoLiberacaoEmOndas_DeveLiberarUmParticipantePorIntervalo() throws Exception {
+        final ReleasePolicy policy = ReleasePolicy.waves(1, 500L, TimeUnit.MILLISECONDS);
+        final List<ZooKeeperDoubleBarrier> participants = new ArrayList<>();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                final ZooKeeperDoubleBarrier participant = new ZooKeeperDoubleBarrier(testingServer.getConnectString(), "/waves", policy);
+                participants.add(participant);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        participant.enterBarrier();
+                    } catch (KeeperException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return System.nanoTime();
+                }));
+            }
+            final List<Long> releases = new ArrayList<>();
+            for (CompletableFuture<Long> future : futures) {
+                releases.add(future.get(5L, TimeUnit.SECONDS));
+            }
+            Collections.sort(releases);
+
+            // Cada participante é liberado em uma onda diferente
+            Assertions.assertTrue(releases.get(1) - releases.get(0) >= TimeUnit.MILLISECONDS.toNanos(400));
+            Assertions.assertTrue(releases.get(2) - releases.get(1) >= TimeUnit.MILLISECONDS.toNanos(400));
+        } finally {
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                participant.close();
+            }
+        }
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoInicioSincronizado_DeveLiberarTodosNoInstanteAlvo() throws Exception {
+        final ReleasePolicy policy = ReleasePolicy.synchronizedStart(300L, TimeUnit.MILLISECONDS);
+        final List<ZooKeeperDoubleBarrier> participants = new ArrayList<>();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                final ZooKeeperDoubleBarrier participant = new ZooKeeperDoubleBarrier(testingServer.getConnectString(), "/sync", policy);
+                participants.add(participant);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        participant.enterBarrier();
+                    } catch (KeeperException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return System.currentTimeMillis();
+                }));
+            }
+            final List<Long> releases = new ArrayList<>();
+            for (CompletableFuture<Long> future : futures) {
+                releases.add(future.get(5L, TimeUnit.SECONDS));
+            }
+            Collections.sort(releases);
+
+            // Ninguém prossegue antes do instante alvo, e todos prosseguem praticamente juntos
+            final long readyCreation = zk.exists("/sync/ready", false).getCtime();
+            Assertions.assertTrue(releases.get(0) >= readyCreation + 300L - 5L, "liberações: " + releases);
+            Assertions.assertTrue(releases.get(2) - releases.get(0) < 50L, "liberações: " + releases);
+            final List<Long> starts = new ArrayList<>();
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                final long skew = participant.getStartSkew(TimeUnit.MILLISECONDS);
+                Assertions.assertTrue(skew >= 0L && skew < 50L, "atraso: " + skew);
+                // O instante alvo é o mesmo para todos, no relógio do servidor
+                Assertions.assertEquals(readyCreation + 300L, participant.getStartTarget(TimeUnit.MILLISECONDS));
+                Assertions.assertTrue(participant.getStartError(TimeUnit.MILLISECONDS) >= 2L);
+                starts.add(participant.getStartTime(TimeUnit.MILLISECONDS));
+            }
+            Collections.sort(starts);
+            Assertions.assertTrue(starts.get(0) >= readyCreation + 300L, "partidas: " + starts);
+            Assertions.assertTrue(starts.get(2) - starts.get(0) < 50L, "partidas: " + starts);
+        } finally {
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                participant.close();
+            }
+        }
+    }
+
+    @Test
+    public void testExitBarrier_QuandoParticipanteSaiAposEntrada_DeveManterNoReadyAteUltimaSaida() throws Exception {
+        final List<ZooKeeperDoubleBarrier> participants = new ArrayList<>();
+        try {
+            final List<CompletableFuture<Void>> entered = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final ZooKeeperDoubleBarrier participant = new ZooKeeperDoubleBarrier(testingServer.getConnectString(), "/persist");
+                participants.add(participant);
+                entered.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        participant.enterBarrier();
+                    } catch (KeeperException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+                // Aguarda a chegada de cada participante, para que o último crie o nó /ready
+                while (zk.getChildren("/persist", false).size() < i + 1) {
+                    Thread.sleep(10L);
+                }
+            }
+            for (CompletableFuture<Void> future : entered) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+
+            // O participante que criou o nó /ready e outro participante fecham logo após a entrada
+            participants.get(2).close();
+            participants.get(0).close();
+            Assertions.assertNotNull(zk.exists("/persist/ready", false));
+
+            // O último participante a sair remove o nó /ready
+            participants.get(1).exitBarrier();
+            Assertions.assertNull(zk.exists("/persist/ready", false));
+        } finally {
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                participant.close();
+            }
+        }
+    }
+
+    /**
+     * Faz {@code count} novos participantes entrarem em {@code barrierNode}, retornando as suas entradas.
+     */
+    private List<CompletableFuture<Void>> enterAll(List<ZooKeeperDoubleBarrier> participants, String barrierNode, int count)
+            throws Exception {
+        final List<CompletableFuture<Void>> entered = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final ZooKeeperDoubleBarrier participant = new ZooKeeperDoubleBarrier(testingServer.getConnectString(), barrierNode);
+            participants.add(participant);
+            entered.add(CompletableFuture.runAsync(() -> {
+                try {
+                    participant.enterBarrier();
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        return entered;
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoRodadaAnteriorNaoSaiu_DeveLiberarNovaRodada() throws Exception {
+        final List<ZooKeeperDoubleBarrier> participants = new ArrayList<>();
+        try {
+            // Uma rodada em que os participantes fecham após a entrada, sem sair, deixando o nó /ready
+            for (CompletableFuture<Void> future : enterAll(participants, "/stale", 3)) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                participant.close();
+            }
+            participants.clear();
+            Assertions.assertNotNull(zk.exists("/stale/ready", false));
+
+            // Uma nova rodada completa é liberada
+            for (CompletableFuture<Void> future : enterAll(participants, "/stale", 3)) {
+                Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            for (ZooKeeperDoubleBarrier participant : participants) {
+                participant.close();
+            }
+        }
+    }
+
     @AfterEach
     public void tearDown() throws InterruptedException {
         barrier.close();
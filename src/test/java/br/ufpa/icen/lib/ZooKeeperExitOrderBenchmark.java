@@ -0,0 +1,99 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede uma volta do laço de saída das barreiras duplas quando os participantes não mudaram: a listagem dos filhos e
+ * a leitura dos seus conteúdos no {@link ZooKeeperNodeCache}, e a busca dos participantes mais antigo e mais recente.
+ * <p>
+ * Com {@code -prof gc}, a coluna {@code gc.alloc.rate.norm} deve ser 0 B/op para o conteúdo binário. O conteúdo em
+ * texto das versões anteriores é medido para comparação.
+ * <p>
+ * Uso: {@code ZooKeeperExitOrderBenchmark}, que executa o JMH com o {@link GCProfiler}. O JMH só é incluído no build
+ * com o perfil {@code benchmarks} ({@code mvn test-compile -Dbenchmarks}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZooKeeperExitOrderBenchmark {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+
+    @Param({"3", "50"})
+    public int participants;
+
+    @Param({"binary", "legacy"})
+    public String payload;
+
+    private TestingServer server;
+    private ZooKeeper zk;
+    private ZooKeeperNodeCache cache;
+    private ZooKeeperExitOrder exitOrder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new TestingServer();
+        zk = new ZooKeeper(server.getConnectString(), 3000, event -> {
+        });
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (int i = 0; i < participants; i++) {
+            final byte[] data = payload.equals("binary")
+                    ? ZooKeeperExitOrder.encode(ZooKeeperExitOrder.now(), new byte[ZooKeeperExitOrder.STAMP_LENGTH])
+                    : LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8);
+            zk.create(BARRIER_NODE_PATH + "/" + UUID.randomUUID(), data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+        cache = ZooKeeperNodeCache.acquire(server.getConnectString());
+        exitOrder = new ZooKeeperExitOrder(cache);
+        // Preenche o cache, para que as voltas medidas não consultem o ZooKeeper
+        exitOrder.scan(BARRIER_NODE_PATH, cache.children(BARRIER_NODE_PATH));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cache.close();
+        zk.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String exitRound() throws Exception {
+        final List<String> children = cache.children(BARRIER_NODE_PATH);
+        exitOrder.scan(BARRIER_NODE_PATH, children);
+        return exitOrder.lowest();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ZooKeeperExitOrderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ZooKeeperExitOrderTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private ZooKeeperNodeCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        cache = ZooKeeperNodeCache.acquire(testingServer.getConnectString());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        cache.close();
+        zk.close();
+        testingServer.close();
+    }
+
+    private void createParticipant(String id, byte[] data) throws Exception {
+        zk.create(BARRIER_NODE_PATH + "/" + id, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    private static byte[] binary(long stamp) {
+        return ZooKeeperExitOrder.encode(stamp, new byte[ZooKeeperExitOrder.STAMP_LENGTH]);
+    }
+
+    @Test
+    public void testDecode_QuandoConteudoBinario_DeveRetornarInstanteGravado() {
+        final long now = ZooKeeperExitOrder.now();
+        Assertions.assertEquals(now, ZooKeeperExitOrder.decode(binary(now)));
+        Assertions.assertEquals(Long.MAX_VALUE, ZooKeeperExitOrder.decode(binary(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testDecode_QuandoConteudoEmTexto_DeveLerFormatoAnterior() {
+        final LocalDateTime date = LocalDateTime.of(2024, 5, 17, 10, 30, 15, 123_456_000);
+        final long expected = TimeUnit.SECONDS.toNanos(date.atZone(ZoneId.systemDefault()).toEpochSecond()) + 123_456_000;
+        Assertions.assertEquals(expected, ZooKeeperExitOrder.decode(
+                date.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testScan_QuandoFormatosMisturados_DeveEncontrarMaisAntigoEMaisRecente() throws Exception {
+        final LocalDateTime now = LocalDateTime.now();
+        createParticipant("legacy", now.minusMinutes(5).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8));
+        createParticipant("binary", binary(ZooKeeperExitOrder.now()));
+        createParticipant("future", now.plusMinutes(5).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8));
+        createParticipant("ready", new byte[0]);
+
+        final ZooKeeperExitOrder exitOrder = new ZooKeeperExitOrder(cache);
+        exitOrder.scan(BARRIER_NODE_PATH, cache.children(BARRIER_NODE_PATH));
+        Assertions.assertEquals(3, exitOrder.count());
+        Assertions.assertEquals("legacy", exitOrder.lowest());
+        Assertions.assertEquals("future", exitOrder.highest());
+    }
+
+    @Test
+    public void testScan_QuandoInstantesIguais_DeveDesempatarPeloNome() throws Exception {
+        createParticipant("b", binary(42L));
+        createParticipant("a", binary(42L));
+        createParticipant("c", binary(42L));
+
+        final ZooKeeperExitOrder exitOrder = new ZooKeeperExitOrder(cache);
+        exitOrder.scan(BARRIER_NODE_PATH, cache.children(BARRIER_NODE_PATH));
+        Assertions.assertEquals("a", exitOrder.lowest());
+        Assertions.assertEquals("c", exitOrder.highest());
+    }
+
+    @Test
+    public void testScan_QuandoParticipantesEmCache_NaoDeveAlocar() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            createParticipant("p" + i, binary(ZooKeeperExitOrder.now()));
+        }
+        final ZooKeeperExitOrder exitOrder = new ZooKeeperExitOrder(cache);
+        exitOrder.scan(BARRIER_NODE_PATH, cache.children(BARRIER_NODE_PATH));
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1_000; i++) {
+            final List<String> children = cache.children(BARRIER_NODE_PATH);
+            exitOrder.scan(BARRIER_NODE_PATH, children);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Uma margem para as alocações da própria medição, muito menor que uma alocação por volta
+        Assertions.assertTrue(allocated < 1_000, "bytes alocados: " + allocated);
+    }
+}
@@ -0,0 +1,160 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperFanOutBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static final int FAN_OUT = 2;
+    private static final int PARTICIPANTS = 10;
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private ZooKeeperFanOutBarrier controller;
+    private final List<ZooKeeperFanOutBarrier> participants = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        controller = new ZooKeeperFanOutBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH, FAN_OUT) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                final ZooKeeper zk = super.createZooKeeperConnection(connectString, watcher);
+                ZooKeeperFanOutBarrierTest.this.zk = zk;
+                return zk;
+            }
+        };
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            participants.add(new ZooKeeperFanOutBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH, FAN_OUT));
+        }
+    }
+
+    private static Future<Void> waitAsync(ZooKeeperFanOutBarrier barrier) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                barrier.waitForBarrier();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoBarreiraRemovida_DeveLiberarTodosOsParticipantes() throws Exception {
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (ZooKeeperFanOutBarrier participant : participants) {
+            futures.add(waitAsync(participant));
+        }
+        // Como a barreira ainda existe, todos os participantes aguardam
+        for (Future<Void> future : futures) {
+            Assertions.assertThrows(TimeoutException.class, () -> future.get(100L, TimeUnit.MILLISECONDS));
+        }
+        Assertions.assertEquals(PARTICIPANTS, zk.getChildren(BARRIER_NODE_PATH, false).size());
+
+        // A liberação se propaga pela árvore até todos os participantes, removendo os nós de retransmissão
+        controller.removeBarrier();
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(zk.getChildren(BARRIER_NODE_PATH, false).isEmpty());
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoBarreiraJaLiberada_DeveProsseguir() throws Exception {
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        controller.removeBarrier();
+
+        final Future<Void> future = waitAsync(participants.get(0));
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoNoNaoExiste_DeveProsseguir() {
+        final Future<Void> future = waitAsync(participants.get(0));
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoParticipanteCai_DeveLiberarSuaSubarvore() throws Exception {
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        // Um participante que cai antes da liberação, com o primeiro nó de retransmissão: todos os demais estão na
+        // sua subárvore ou são raízes
+        final ZooKeeper crashed = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        crashed.create(BARRIER_NODE_PATH + "/relay-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (ZooKeeperFanOutBarrier participant : participants) {
+            futures.add(waitAsync(participant));
+            // Aguarda a criação de cada nó, para que a árvore seja a mesma em todas as execuções
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (zk.getChildren(BARRIER_NODE_PATH, false).size() < futures.size() + 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        Assertions.assertEquals(PARTICIPANTS + 1, zk.getChildren(BARRIER_NODE_PATH, false).size());
+
+        // O nó de retransmissão é efêmero, e desaparece com a sessão do participante
+        crashed.close();
+        Assertions.assertEquals(PARTICIPANTS, zk.getChildren(BARRIER_NODE_PATH, false).size());
+        for (Future<Void> future : futures) {
+            Assertions.assertThrows(TimeoutException.class, () -> future.get(100L, TimeUnit.MILLISECONDS));
+        }
+
+        controller.removeBarrier();
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(zk.getChildren(BARRIER_NODE_PATH, false).isEmpty());
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoPaiCaiAposLiberacao_DeveLiberarSeusFilhos() throws Exception {
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        final ZooKeeper crashed = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        // Ocupa os nós 0 e 1, as raízes da árvore: os dois primeiros participantes são filhos do nó 0
+        for (int i = 0; i < FAN_OUT; i++) {
+            crashed.create(BARRIER_NODE_PATH + "/relay-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        }
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            futures.add(waitAsync(participants.get(i)));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (zk.getChildren(BARRIER_NODE_PATH, false).size() < 2 * FAN_OUT && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // A barreira é marcada como liberada, mas o pai cai antes de repassar a liberação
+        zk.setData(BARRIER_NODE_PATH, "released".getBytes(StandardCharsets.UTF_8), -1);
+        crashed.close();
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(zk.getChildren(BARRIER_NODE_PATH, false).isEmpty());
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperFanOutBarrier participant : participants) {
+            participant.close();
+        }
+        controller.close();
+    }
+}
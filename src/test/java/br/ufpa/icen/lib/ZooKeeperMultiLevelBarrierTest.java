@@ -1,59 +1,50 @@
 package br.ufpa.icen.lib;
 
+import org.apache.curator.test.TestingServer;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZooKeeper;
-import org.apache.zookeeper.server.ServerCnxnFactory;
-import org.apache.zookeeper.server.ZooKeeperServer;
-import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.File;
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 
 public class ZooKeeperMultiLevelBarrierTest {
 
-    private ServerCnxnFactory factory;
-    private ZooKeeperServer zkServer;
+    private TestingServer testingServer;
     private ZooKeeper zk;
 
     @Before
-    public void setUp() throws IOException, InterruptedException {
-        // Configura o servidor ZooKeeper embutido antes de cada teste
-        File snapDir = new File("/tmp/zookeeper/snap");
-        File logDir = new File("/tmp/zookeeper/log");
-        snapDir.mkdirs();
-        logDir.mkdirs();
-
-        zkServer = new ZooKeeperServer();
-        FileTxnSnapLog ftsl = new FileTxnSnapLog(snapDir, logDir);
-        zkServer.setTxnLogFactory(ftsl);
-        zkServer.setTickTime(2000);
-
-        factory = ServerCnxnFactory.createFactory();
-        factory.configure(new InetSocketAddress("localhost", 2181), 100);
-        factory.startup(zkServer);
-
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer(2181);
         zk = new ZooKeeper("localhost:2181", 3000, null);
     }
 
     @After
-    public void tearDown() throws InterruptedException {
-        // Encerra o servidor ZooKeeper embutido após cada teste
-        if (factory != null) {
-            factory.shutdown();
-        }
-        if (zkServer != null) {
-            zkServer.shutdown();
-        }
+    public void tearDown() throws Exception {
+        // Encerra o servidor ZooKeeper após cada teste
         if (zk != null) {
             zk.close();
         }
+        if (testingServer != null) {
+            testingServer.close();
+        }
+        System.clearProperty(ZooKeeperNodesTest.CHECK_INTERVAL_PROPERTY);
+        System.clearProperty(ZooKeeperNodesTest.EXTENDED_TYPES_PROPERTY);
     }
 
     @Test
@@ -67,44 +58,201 @@ public class ZooKeeperMultiLevelBarrierTest {
     }
 
     @Test
-    public void testWaitForBarrier() throws KeeperException, InterruptedException, IOException {
-        // Testa a espera na barreira
-        try (ZooKeeperMultiLevelBarrier barrier = new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3)) {
-            barrier.waitForBarrier();
+    public void testWaitForBarrier() throws Exception {
+        // Testa a espera na barreira: os participantes só são liberados quando o grupo está completo
+        final List<ZooKeeperMultiLevelBarrier> barriers = new ArrayList<>();
+        final List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                barriers.add(new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3));
+            }
+            for (int i = 0; i < 2; i++) {
+                futures.add(waitAsync(barriers.get(i)));
+            }
+            assertTimesOut(futures.get(0));
             // Verifica se o contador de participantes foi incrementado corretamente
-            assertEquals(1, barrier.getParticipantCount("/testBarrier"));
-            assertEquals(1, barrier.getParticipantCount("/testInnerBarrier"));
+            assertEquals(2, participantCount("/testBarrier"));
+            assertEquals(0, participantCount("/testInnerBarrier"));
+
+            futures.add(waitAsync(barriers.get(2)));
+            for (Future<Void> future : futures) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+            // Verifica se a barreira foi resetada para ser reutilizada
+            assertEquals(0, participantCount("/testBarrier"));
+            assertEquals(0, participantCount("/testInnerBarrier"));
+        } finally {
+            for (ZooKeeperMultiLevelBarrier barrier : barriers) {
+                barrier.close();
+            }
         }
     }
 
     @Test
-    public void testPassBarrier() throws KeeperException, InterruptedException, IOException {
-        // Testa a passagem pela barreira
+    public void testWaitForBarrierWithLevels() throws Exception {
+        // Testa uma barreira com três níveis: 2 racks por datacenter e 2 datacenters
+        final List<ZooKeeperMultiLevelBarrier> barriers = new ArrayList<>();
+        final List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int dc = 0; dc < 2; dc++) {
+                for (int rack = 0; rack < 2; rack++) {
+                    for (int i = 0; i < 2; i++) {
+                        barriers.add(new ZooKeeperMultiLevelBarrier("localhost:2181", Arrays.asList(
+                                new ZooKeeperMultiLevelBarrier.Level("/rack-" + dc + "-" + rack, 2),
+                                new ZooKeeperMultiLevelBarrier.Level("/dc-" + dc, 2),
+                                new ZooKeeperMultiLevelBarrier.Level("/global", 2))));
+                    }
+                }
+            }
+            for (int i = 0; i < barriers.size() - 1; i++) {
+                futures.add(waitAsync(barriers.get(i)));
+            }
+            assertTimesOut(futures.get(0));
+            // Apenas o último participante de cada grupo completo sobe de nível
+            final ZooKeeperMultiLevelBarrier lastRack = barriers.get(barriers.size() - 1);
+            assertEquals(1, participantCount("/rack-1-1"));
+            assertEquals(1, participantCount("/dc-1"));
+            assertEquals(1, participantCount("/global"));
+
+            futures.add(waitAsync(lastRack));
+            for (Future<Void> future : futures) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+            assertEquals(0, participantCount("/global"));
+        } finally {
+            for (ZooKeeperMultiLevelBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoNivelRemovidoPorInatividade_DeveRecriarEAguardarRodada() throws Exception {
+        // Reinicia o servidor com nós com tempo de vida habilitados, verificados a cada 100 ms
+        zk.close();
+        testingServer.close();
+        System.setProperty(ZooKeeperNodesTest.CHECK_INTERVAL_PROPERTY, "100");
+        System.setProperty(ZooKeeperNodesTest.EXTENDED_TYPES_PROPERTY, "true");
+        testingServer = new TestingServer(2181);
+        zk = new ZooKeeper("localhost:2181", 3000, null);
+        final List<ZooKeeperMultiLevelBarrier> barriers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                barriers.add(new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3, 300L));
+            }
+            // Os nós dos dois níveis são criados com tempo de vida
+            ZooKeeperNodesTest.awaitRemoval(zk, "/testBarrier");
+            ZooKeeperNodesTest.awaitRemoval(zk, "/testInnerBarrier");
+
+            // Os nós são recriados, e a rodada continua aguardando todos os participantes
+            final List<Future<Void>> futures = new ArrayList<>();
+            futures.add(waitAsync(barriers.get(0)));
+            futures.add(waitAsync(barriers.get(1)));
+            assertTimesOut(futures.get(0));
+            assertEquals(2, participantCount("/testBarrier"));
+
+            futures.add(waitAsync(barriers.get(2)));
+            for (Future<Void> future : futures) {
+                future.get(2L, TimeUnit.SECONDS);
+            }
+        } finally {
+            for (ZooKeeperMultiLevelBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveBarrier() throws Exception {
+        // Testa a remoção dos níveis com gerações, que libera os participantes que aguardam
         try (ZooKeeperMultiLevelBarrier barrier = new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3)) {
-            barrier.passBarrier("/testBarrier");
-            // Verifica se o contador de participantes foi incrementado corretamente
-            assertEquals(1, barrier.getParticipantCount("/testBarrier"));
+            final Future<Void> future = waitAsync(barrier);
+            assertTimesOut(future);
+            barrier.removeBarrier();
+            future.get(2L, TimeUnit.SECONDS);
+            assertNull(zk.exists("/testBarrier", false));
+            assertNull(zk.exists("/testInnerBarrier", false));
         }
     }
 
     @Test
-    public void testIncrementParticipantCount() throws KeeperException, InterruptedException, IOException {
-        // Testa o incremento do contador de participantes
+    public void testPassBarrier() throws Exception {
+        // Testa a passagem pela barreira
         try (ZooKeeperMultiLevelBarrier barrier = new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3)) {
-            barrier.incrementParticipantCount("/testBarrier");
+            final Future<Void> future = CompletableFuture.runAsync(() -> {
+                try {
+                    barrier.passBarrier("/testBarrier");
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertTimesOut(future);
             // Verifica se o contador de participantes foi incrementado corretamente
-            assertEquals(1, barrier.getParticipantCount("/testBarrier"));
+            assertEquals(1, participantCount("/testBarrier"));
         }
     }
 
+    private static Future<Void> waitAsync(ZooKeeperMultiLevelBarrier barrier) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                barrier.waitForBarrier();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void assertTimesOut(Future<Void> future) {
+        assertThrows(TimeoutException.class, () -> future.get(500L, TimeUnit.MILLISECONDS));
+    }
+
     @Test
-    public void testResetBarrier() throws KeeperException, InterruptedException, IOException {
-        // Testa o reset da barreira
+    public void testParticipantArrival() throws Exception {
+        // Testa o registro da chegada de um participante, visível para os demais no ZooKeeper
         try (ZooKeeperMultiLevelBarrier barrier = new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3)) {
-            barrier.incrementParticipantCount("/testBarrier");
-            barrier.resetBarrier("/testBarrier");
-            // Verifica se o contador de participantes foi resetado corretamente
-            assertEquals(0, barrier.getParticipantCount("/testBarrier"));
+            final Future<Void> future = waitAsync(barrier);
+            assertTimesOut(future);
+            assertEquals(1, participantCount("/testBarrier"));
+            assertEquals(0, participantCount("/testInnerBarrier"));
+        }
+    }
+
+    @Test
+    public void testBarrierReuse() throws Exception {
+        // Testa a reutilização da barreira: cada rodada liberada avança a geração dos dois níveis
+        final List<ZooKeeperMultiLevelBarrier> barriers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                barriers.add(new ZooKeeperMultiLevelBarrier("localhost:2181", "/testBarrier", "/testInnerBarrier", 3));
+            }
+            for (int round = 1; round <= 2; round++) {
+                final List<Future<Void>> futures = new ArrayList<>();
+                for (ZooKeeperMultiLevelBarrier barrier : barriers) {
+                    futures.add(waitAsync(barrier));
+                }
+                for (Future<Void> future : futures) {
+                    future.get(5L, TimeUnit.SECONDS);
+                }
+                assertEquals(String.valueOf(round), new String(zk.getData("/testBarrier", false, null), StandardCharsets.UTF_8));
+                assertEquals(String.valueOf(round), new String(zk.getData("/testInnerBarrier", false, null), StandardCharsets.UTF_8));
+                assertEquals(0, participantCount("/testBarrier"));
+            }
+        } finally {
+            for (ZooKeeperMultiLevelBarrier barrier : barriers) {
+                barrier.close();
+            }
+        }
+    }
+
+    /**
+     * Conta as chegadas vivas na geração atual do nível cujo nó é {@code node}.
+     */
+    private int participantCount(String node) throws KeeperException, InterruptedException {
+        final String generation = new String(zk.getData(node, false, null), StandardCharsets.UTF_8);
+        try {
+            return zk.getChildren(node + "/gen-" + generation, false).size();
+        } catch (KeeperException.NoNodeException e) {
+            return 0;
         }
     }
 }
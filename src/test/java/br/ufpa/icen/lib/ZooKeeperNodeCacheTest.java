@@ -0,0 +1,135 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ZooKeeperNodeCacheTest {
+    private static final String NODE_PATH = "/barrier";
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private ZooKeeperNodeCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        cache = ZooKeeperNodeCache.acquire(testingServer.getConnectString());
+    }
+
+    @Test
+    public void testAcquire_QuandoMesmaConexao_DeveCompartilharInstancia() throws Exception {
+        try (final ZooKeeperNodeCache other = ZooKeeperNodeCache.acquire(testingServer.getConnectString())) {
+            Assertions.assertSame(cache, other);
+        }
+        // A instância continua aberta enquanto houver referências
+        Assertions.assertNull(cache.exists(NODE_PATH));
+    }
+
+    @Test
+    public void testExists_QuandoNoCriadoERemovido_DeveAtualizarCacheENotificar() throws Exception {
+        Assertions.assertNull(cache.exists(NODE_PATH));
+
+        final CountDownLatch created = new CountDownLatch(1);
+        final Runnable listener = created::countDown;
+        cache.addListener(NODE_PATH, listener);
+        zk.create(NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assertions.assertTrue(created.await(1L, TimeUnit.SECONDS));
+        Assertions.assertNotNull(cache.exists(NODE_PATH));
+
+        final CountDownLatch deleted = new CountDownLatch(1);
+        cache.removeListener(NODE_PATH, listener);
+        cache.addListener(NODE_PATH, deleted::countDown);
+        zk.delete(NODE_PATH, -1);
+        Assertions.assertTrue(deleted.await(1L, TimeUnit.SECONDS));
+        Assertions.assertNull(cache.exists(NODE_PATH));
+    }
+
+    @Test
+    public void testGetChildren_QuandoFilhoCriado_DeveRetornarNovaLista() throws Exception {
+        zk.create(NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assertions.assertEquals(Collections.emptyList(), cache.getChildren(NODE_PATH));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        cache.addListener(NODE_PATH, changed::countDown);
+        zk.create(NODE_PATH + "/a", "1".getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assertions.assertTrue(changed.await(1L, TimeUnit.SECONDS));
+
+        final List<String> children = cache.getChildren(NODE_PATH);
+        Assertions.assertEquals(Collections.singletonList("a"), children);
+        Assertions.assertEquals("1", new String(cache.getData(NODE_PATH + "/a"), StandardCharsets.UTF_8));
+        // A lista retornada é uma cópia, e não altera o cache
+        children.clear();
+        Assertions.assertEquals(Collections.singletonList("a"), cache.getChildren(NODE_PATH));
+    }
+
+    @Test
+    public void testGetData_QuandoConteudoModificado_DeveRetornarNovoConteudo() throws Exception {
+        zk.create(NODE_PATH, "0".getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assertions.assertEquals("0", new String(cache.getData(NODE_PATH), StandardCharsets.UTF_8));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        cache.addListener(NODE_PATH, changed::countDown);
+        zk.setData(NODE_PATH, "1".getBytes(StandardCharsets.UTF_8), -1);
+        Assertions.assertTrue(changed.await(1L, TimeUnit.SECONDS));
+        Assertions.assertEquals("1", new String(cache.getData(NODE_PATH), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGetData_QuandoVetorModificado_NaoDeveAlterarCache() throws Exception {
+        zk.create(NODE_PATH, "0".getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        cache.getData(NODE_PATH)[0] = '9';
+        Assertions.assertEquals("0", new String(cache.getData(NODE_PATH), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRelease_QuandoUltimaReserva_DeveDescartarRespostasEObservadores() throws Exception {
+        final String child = NODE_PATH + "/a";
+        final String other = "/other";
+        cache.retain(NODE_PATH);
+        cache.retain(NODE_PATH);
+        cache.retain(other);
+        Assertions.assertNull(cache.exists(NODE_PATH));
+        Assertions.assertNull(cache.exists(child));
+        Assertions.assertNull(cache.exists(other));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        cache.addListener(child, changed::countDown);
+        final CountDownLatch otherChanged = new CountDownLatch(1);
+        cache.addListener(other, otherChanged::countDown);
+
+        // Enquanto houver uma reserva, as respostas e os observadores são mantidos
+        cache.release(NODE_PATH);
+        zk.create(NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assertions.assertNull(cache.exists(child));
+
+        cache.release(NODE_PATH);
+        zk.create(child, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create(other, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        // Os nós de outras reservas continuam observados
+        Assertions.assertTrue(otherChanged.await(1L, TimeUnit.SECONDS));
+        Assertions.assertFalse(changed.await(200L, TimeUnit.MILLISECONDS));
+        // Sem a resposta em cache, a próxima consulta é enviada ao ZooKeeper
+        Assertions.assertNotNull(cache.exists(child));
+        cache.release(other);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        cache.close();
+        zk.close();
+    }
+}
@@ -0,0 +1,87 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class ZooKeeperNodesTest {
+    static final String CHECK_INTERVAL_PROPERTY = "znode.container.checkIntervalMs";
+    static final String EXTENDED_TYPES_PROPERTY = "zookeeper.extendedTypesEnabled";
+    private static final String NODE_PATH = "/barrier";
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // O servidor procura contêineres vazios e nós expirados a cada 100 ms, em vez de a cada minuto
+        System.setProperty(CHECK_INTERVAL_PROPERTY, "100");
+        testingServer = new TestingServer();
+        zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        zk.close();
+        testingServer.close();
+        System.clearProperty(CHECK_INTERVAL_PROPERTY);
+        System.clearProperty(EXTENDED_TYPES_PROPERTY);
+    }
+
+    /**
+     * Aguarda até que o servidor remova o nó {@code path}.
+     */
+    static void awaitRemoval(ZooKeeper zk, String path) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (zk.exists(path, false) != null) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "o nó não foi removido: " + path);
+            Thread.sleep(50L);
+        }
+    }
+
+    @Test
+    public void testCreateContainer_QuandoUltimoFilhoRemovido_DeveSerRemovidoPeloServidor() throws Exception {
+        ZooKeeperNodes.createContainer(zk, NODE_PATH);
+        // Criar um contêiner existente não falha
+        ZooKeeperNodes.createContainer(zk, NODE_PATH);
+        final String child = zk.create(NODE_PATH + "/arrive-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+
+        // Enquanto houver filhos, o contêiner é mantido
+        Thread.sleep(300L);
+        Assertions.assertNotNull(zk.exists(NODE_PATH, false));
+
+        zk.delete(child, -1);
+        awaitRemoval(zk, NODE_PATH);
+    }
+
+    @Test
+    public void testCreatePersistent_QuandoTiposEstendidosHabilitados_DeveCriarNoComTempoDeVida() throws Exception {
+        System.setProperty(EXTENDED_TYPES_PROPERTY, "true");
+        Assertions.assertTrue(ZooKeeperNodes.createPersistent(zk, NODE_PATH, "0".getBytes(StandardCharsets.UTF_8), 500L));
+        Assertions.assertFalse(ZooKeeperNodes.createPersistent(zk, NODE_PATH, "1".getBytes(StandardCharsets.UTF_8), 500L));
+
+        Assertions.assertEquals("0", new String(zk.getData(NODE_PATH, false, null), StandardCharsets.UTF_8));
+
+        // Sem filhos e sem modificações, o nó é removido após o tempo de vida
+        final long start = System.nanoTime();
+        awaitRemoval(zk, NODE_PATH);
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400L));
+    }
+
+    @Test
+    public void testCreatePersistent_QuandoServidorNaoSuportaTempoDeVida_DeveCriarNoPersistente() throws Exception {
+        // Sem zookeeper.extendedTypesEnabled, o servidor responde UNIMPLEMENTED à criação de nós com tempo de vida
+        Assertions.assertTrue(ZooKeeperNodes.createPersistent(zk, NODE_PATH, "0".getBytes(StandardCharsets.UTF_8), 200L));
+
+        Thread.sleep(500L);
+        Assertions.assertNotNull(zk.exists(NODE_PATH, false));
+    }
+}
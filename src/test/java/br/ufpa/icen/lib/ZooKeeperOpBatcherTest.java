@@ -0,0 +1,164 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ZooKeeperOpBatcherTest {
+    private static TestingServer testingServer;
+    private final List<ZooKeeperOpBatcher> batchers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (ZooKeeperOpBatcher batcher : batchers) {
+            batcher.close();
+        }
+        testingServer.close();
+    }
+
+    private ZooKeeperOpBatcher newBatcher() throws Exception {
+        final ZooKeeperOpBatcher batcher = ZooKeeperOpBatcher.acquire(testingServer.getConnectString());
+        batchers.add(batcher);
+        return batcher;
+    }
+
+    private static List<Future<OpResult>> submitAll(ZooKeeperOpBatcher batcher, List<Op> ops) {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<OpResult>> futures = new ArrayList<>();
+        for (Op op : ops) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                    return batcher.submit(op);
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }, runnable -> new Thread(runnable).start()));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    @Test
+    public void testSubmit_QuandoEscritasSimultaneas_DeveAgruparEmMenosRequisicoes() throws Exception {
+        final ZooKeeperOpBatcher batcher = newBatcher();
+        final List<Op> ops = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ops.add(Op.create("/node-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        }
+        final List<Future<OpResult>> futures = submitAll(batcher, ops);
+        for (int i = 0; i < futures.size(); i++) {
+            final OpResult result = futures.get(i).get(5L, TimeUnit.SECONDS);
+            Assertions.assertEquals("/node-" + i, ((OpResult.CreateResult) result).getPath());
+        }
+        Assertions.assertTrue(batcher.getRequestCount() < ops.size(), "requisições: " + batcher.getRequestCount());
+    }
+
+    @Test
+    public void testSubmit_QuandoOperacaoFalha_DeveFalharApenasSeuAutor() throws Exception {
+        final ZooKeeperOpBatcher batcher = newBatcher();
+        batcher.create("/node", "0".getBytes(StandardCharsets.UTF_8), CreateMode.PERSISTENT);
+        final List<Op> ops = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ops.add(Op.create("/other-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        }
+        // Uma escrita condicional a uma versão que o nó não tem
+        ops.add(5, Op.setData("/node", "1".getBytes(StandardCharsets.UTF_8), 7));
+        final List<Future<OpResult>> futures = submitAll(batcher, ops);
+
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<OpResult> future = futures.get(i);
+            if (i == 5) {
+                final ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+                Assertions.assertTrue(e.getCause().getCause() instanceof KeeperException.BadVersionException);
+            } else {
+                Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testSetData_QuandoMesmaVersaoNoMesmoLote_DeveAplicarApenasUma() throws Exception {
+        final ZooKeeperOpBatcher batcher = newBatcher();
+        batcher.create("/node", "0".getBytes(StandardCharsets.UTF_8), CreateMode.PERSISTENT);
+        final List<Op> ops = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            ops.add(Op.setData("/node", String.valueOf(i).getBytes(StandardCharsets.UTF_8), 0));
+        }
+        int applied = 0;
+        for (Future<OpResult> future : submitAll(batcher, ops)) {
+            try {
+                final Stat stat = ((OpResult.SetDataResult) future.get(5L, TimeUnit.SECONDS)).getStat();
+                Assertions.assertEquals(1, stat.getVersion());
+                applied++;
+            } catch (ExecutionException e) {
+                Assertions.assertTrue(e.getCause().getCause() instanceof KeeperException.BadVersionException);
+            }
+        }
+        Assertions.assertEquals(1, applied);
+    }
+
+    @Test
+    public void testSubmit_QuandoChamadoDeThreadDoPool_DevePermitirOutrasTarefas() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try (final LatencyProxy proxy = new LatencyProxy("127.0.0.1", testingServer.getPort())) {
+            final ZooKeeperOpBatcher batcher = ZooKeeperOpBatcher.acquire(proxy.getConnectString());
+            batchers.add(batcher);
+            // A sessão é estabelecida sem latência; a partir daqui, cada lote leva 600 ms
+            batcher.create("/warmup", new byte[0], CreateMode.PERSISTENT);
+            proxy.setLatency(300L, TimeUnit.MILLISECONDS);
+
+            final Future<OpResult> leading = submitAll(batcher, List.of(
+                    Op.create("/lead", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT))).get(0);
+            Thread.sleep(100L);
+            // A escrita da thread do pool aguarda o lote em andamento para formar o próximo
+            final Future<String> following = pool.submit(() -> batcher.create("/follow", new byte[0], CreateMode.PERSISTENT));
+            Thread.sleep(100L);
+
+            final Future<?> other = pool.submit(() -> {
+            });
+            Assertions.assertDoesNotThrow(() -> other.get(300L, TimeUnit.MILLISECONDS));
+            Assertions.assertFalse(following.isDone());
+            Assertions.assertEquals("/lead", ((OpResult.CreateResult) leading.get(5L, TimeUnit.SECONDS)).getPath());
+            Assertions.assertEquals("/follow", following.get(5L, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSubmit_QuandoNoEfemero_DeveRejeitar() throws Exception {
+        final ZooKeeperOpBatcher batcher = newBatcher();
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> batcher.create("/node", new byte[0], CreateMode.EPHEMERAL));
+    }
+
+    @Test
+    public void testAcquire_QuandoMesmaConexao_DeveCompartilharInstancia() throws Exception {
+        Assertions.assertSame(newBatcher(), newBatcher());
+    }
+}
@@ -0,0 +1,168 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperReduceBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static final int PARTICIPANTS = 3;
+    private static TestingServer testingServer;
+    private final List<ZooKeeperReduceBarrier<Integer>> barriers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            barriers.add(new ZooKeeperReduceBarrier<>(
+                    testingServer.getConnectString(),
+                    BARRIER_NODE_PATH,
+                    PARTICIPANTS,
+                    value -> String.valueOf(value).getBytes(StandardCharsets.UTF_8),
+                    data -> Integer.parseInt(new String(data, StandardCharsets.UTF_8))
+            ));
+        }
+    }
+
+    private Future<Integer> enterAsync(ZooKeeperReduceBarrier<Integer> barrier, int value) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return barrier.enterBarrier(value, Integer::sum);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoFaltamParticipantes_DeveAguardar() {
+        final Future<Integer> first = enterAsync(barriers.get(0), 1);
+        final Future<Integer> second = enterAsync(barriers.get(1), 2);
+
+        // Como o terceiro participante ainda não chegou, os demais precisam esperar na barreira
+        Assertions.assertThrows(TimeoutException.class, () -> first.get(1L, TimeUnit.SECONDS));
+        Assertions.assertThrows(TimeoutException.class, () -> second.get(1L, TimeUnit.SECONDS));
+
+        // O último participante libera a barreira e todos recebem a soma dos valores
+        final Future<Integer> third = enterAsync(barriers.get(2), 3);
+        Assertions.assertEquals(6, Assertions.assertDoesNotThrow(() -> first.get(1L, TimeUnit.SECONDS)));
+        Assertions.assertEquals(6, Assertions.assertDoesNotThrow(() -> second.get(1L, TimeUnit.SECONDS)));
+        Assertions.assertEquals(6, Assertions.assertDoesNotThrow(() -> third.get(1L, TimeUnit.SECONDS)));
+    }
+
+    /**
+     * Cria um participante que executa {@code beforeMulti} antes de cada requisição {@code multi()}.
+     */
+    private ZooKeeperReduceBarrier<Integer> newBarrier(Runnable beforeMulti) throws Exception {
+        final ZooKeeperReduceBarrier<Integer> barrier = new ZooKeeperReduceBarrier<>(
+                testingServer.getConnectString(),
+                BARRIER_NODE_PATH,
+                PARTICIPANTS,
+                value -> String.valueOf(value).getBytes(StandardCharsets.UTF_8),
+                data -> Integer.parseInt(new String(data, StandardCharsets.UTF_8))) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                return new ZooKeeper(connectString, 3000, watcher) {
+                    @Override
+                    public List<OpResult> multi(Iterable<Op> ops) throws InterruptedException, KeeperException {
+                        beforeMulti.run();
+                        return super.multi(ops);
+                    }
+                };
+            }
+        };
+        barriers.add(barrier);
+        return barrier;
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoParticipanteDesapareceDuranteCombinacao_DeveDesconsiderarSeuValor() throws Exception {
+        try (final ZooKeeper other = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            // Um participante que chegou na rodada, mas cuja sessão termina enquanto o último combina os valores
+            other.create(BARRIER_NODE_PATH + "/0", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+            other.create(BARRIER_NODE_PATH + "/0/vanished", "100".getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            final ZooKeeperReduceBarrier<Integer> last = newBarrier(() -> {
+                try {
+                    other.close();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            final Future<Integer> first = enterAsync(barriers.get(0), 1);
+            while (other.getChildren(BARRIER_NODE_PATH + "/0", false).size() < 2) {
+                Thread.sleep(10L);
+            }
+            Assertions.assertEquals(3, last.enterBarrier(2, Integer::sum));
+            Assertions.assertEquals(3, Assertions.assertDoesNotThrow(() -> first.get(5L, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoRodadasConsecutivas_DeveReduzirCadaRodada() {
+        for (int round = 0; round < 3; round++) {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < PARTICIPANTS; i++) {
+                futures.add(enterAsync(barriers.get(i), round * 10 + i));
+            }
+            final int expected = 3 * round * 10 + 3;
+            for (Future<Integer> future : futures) {
+                Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS)));
+            }
+        }
+    }
+
+    @Test
+    public void testClose_QuandoTodosSaemDaUltimaRodada_DeveRemoverSeusNos() throws Exception {
+        for (int round = 0; round < 2; round++) {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < PARTICIPANTS; i++) {
+                futures.add(enterAsync(barriers.get(i), i));
+            }
+            for (Future<Integer> future : futures) {
+                Assertions.assertEquals(3, Assertions.assertDoesNotThrow(() -> future.get(5L, TimeUnit.SECONDS)));
+            }
+        }
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            // A rodada anterior foi removida ao liberar a seguinte
+            Assertions.assertNull(zk.exists(BARRIER_NODE_PATH + "/0", false));
+            Assertions.assertNotNull(zk.exists(BARRIER_NODE_PATH + "/1/ready", false));
+
+            // O resultado da última rodada é mantido enquanto algum participante não saiu dela
+            barriers.get(0).close();
+            barriers.get(1).close();
+            Assertions.assertNotNull(zk.exists(BARRIER_NODE_PATH + "/1/ready", false));
+            barriers.get(2).close();
+            Assertions.assertNull(zk.exists(BARRIER_NODE_PATH + "/1", false));
+        }
+        barriers.clear();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperReduceBarrier<Integer> barrier : barriers) {
+            barrier.close();
+        }
+    }
+}
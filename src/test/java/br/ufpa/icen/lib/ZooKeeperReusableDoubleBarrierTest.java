@@ -0,0 +1,160 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperReusableDoubleBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static final int PARTICIPANTS = 3;
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private final List<ZooKeeperReusableDoubleBarrier> participants = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+        participants.add(new ZooKeeperReusableDoubleBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                zk = super.createZooKeeperConnection(connectString, watcher);
+                return zk;
+            }
+        });
+        for (int i = 1; i < PARTICIPANTS; i++) {
+            participants.add(new ZooKeeperReusableDoubleBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH));
+        }
+    }
+
+    private interface BarrierAction {
+        void run(ZooKeeperReusableDoubleBarrier barrier) throws KeeperException, InterruptedException;
+    }
+
+    private static Future<Void> runAsync(ZooKeeperReusableDoubleBarrier barrier, BarrierAction action) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                action.run(barrier);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void runRound() throws Exception {
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (ZooKeeperReusableDoubleBarrier participant : participants) {
+            futures.add(runAsync(participant, barrier -> {
+                barrier.enterBarrier();
+                barrier.exitBarrier();
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoRodadaAnteriorConcluida_DeveAguardarTodosNovamente() throws Exception {
+        runRound();
+        for (ZooKeeperReusableDoubleBarrier participant : participants) {
+            Assertions.assertEquals(1L, participant.getGeneration());
+        }
+
+        // O nó /ready da rodada anterior não libera a nova rodada
+        final Future<Void> first = runAsync(participants.get(0), ZooKeeperReusableDoubleBarrier::enterBarrier);
+        Assertions.assertThrows(TimeoutException.class, () -> first.get(1L, TimeUnit.SECONDS));
+
+        final Future<Void> second = runAsync(participants.get(1), ZooKeeperReusableDoubleBarrier::enterBarrier);
+        final Future<Void> third = runAsync(participants.get(2), ZooKeeperReusableDoubleBarrier::enterBarrier);
+        Assertions.assertDoesNotThrow(() -> first.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> second.get(5L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> third.get(5L, TimeUnit.SECONDS));
+        Assertions.assertNotNull(zk.exists(BARRIER_NODE_PATH + "/gen-1/ready", false));
+    }
+
+    @Test
+    public void testEnterBarrier_QuandoRodadasConsecutivas_DeveConcluirTodas() throws Exception {
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (ZooKeeperReusableDoubleBarrier participant : participants) {
+            futures.add(runAsync(participant, barrier -> {
+                // Cada participante entra na próxima rodada assim que sai da anterior
+                for (int round = 0; round < 5; round++) {
+                    barrier.enterBarrier();
+                    barrier.exitBarrier();
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(10L, TimeUnit.SECONDS));
+        }
+        for (ZooKeeperReusableDoubleBarrier participant : participants) {
+            Assertions.assertEquals(5L, participant.getGeneration());
+        }
+    }
+
+    @Test
+    public void testPhases_QuandoRodadasConcluidas_DevePublicarFasesEGeracoes() throws Exception {
+        final List<BarrierPhase> phases = new CopyOnWriteArrayList<>();
+        final List<Long> generations = new CopyOnWriteArrayList<>();
+        participants.get(0).phases().subscribe(collect(phases));
+        participants.get(0).generations().subscribe(collect(generations));
+        runRound();
+        runRound();
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while ((phases.size() < 8 || generations.size() < 2) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        final List<BarrierPhase> round = Arrays.asList(BarrierPhase.ENTERING, BarrierPhase.ENTERED, BarrierPhase.EXITING, BarrierPhase.EXITED);
+        final List<BarrierPhase> expected = new ArrayList<>(round);
+        expected.addAll(round);
+        Assertions.assertEquals(expected, phases);
+        Assertions.assertEquals(Arrays.asList(1L, 2L), generations);
+    }
+
+    private static <T> Flow.Subscriber<T> collect(List<T> items) {
+        return new Flow.Subscriber<T>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperReusableDoubleBarrier participant : participants) {
+            participant.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ZooKeeperReusableRestrictedBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static final int MAX_PARTICIPANTS = 3;
+    private static TestingServer testingServer;
+    private final List<ZooKeeperReusableRestrictedBarrier> barriers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+    }
+
+    private ZooKeeperReusableRestrictedBarrier newBarrier() throws Exception {
+        final ZooKeeperReusableRestrictedBarrier barrier = new ZooKeeperReusableRestrictedBarrier(
+                testingServer.getConnectString(), BARRIER_NODE_PATH, MAX_PARTICIPANTS);
+        barriers.add(barrier);
+        return barrier;
+    }
+
+    private static Future<Void> waitAsync(ZooKeeperReusableRestrictedBarrier barrier) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                barrier.waitForBarrier();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void awaitCount(ZooKeeperReusableRestrictedBarrier barrier, int count) throws Exception {
+        while (barrier.getParticipantCount() < count) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoRodadaCompleta_DeveLiberarTodosEReutilizar() throws Exception {
+        final List<ZooKeeperReusableRestrictedBarrier> participants = new ArrayList<>();
+        for (int i = 0; i < MAX_PARTICIPANTS; i++) {
+            participants.add(newBarrier());
+        }
+        for (int round = 0; round < 2; round++) {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < MAX_PARTICIPANTS - 1; i++) {
+                futures.add(waitAsync(participants.get(i)));
+            }
+            Assertions.assertThrows(TimeoutException.class, () -> futures.get(0).get(300L, TimeUnit.MILLISECONDS));
+
+            futures.add(waitAsync(participants.get(MAX_PARTICIPANTS - 1)));
+            for (Future<Void> future : futures) {
+                Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoSessaoDeParticipanteTermina_NaoDeveContarChegada() throws Exception {
+        final ZooKeeperReusableRestrictedBarrier first = newBarrier();
+        // Simula um participante que chegou na rodada e falhou antes da liberação
+        try (final ZooKeeper crashed = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            crashed.create(BARRIER_NODE_PATH + "/gen-0", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+            crashed.create(BARRIER_NODE_PATH + "/gen-0/arrive-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+            Assertions.assertEquals(1, first.getParticipantCount());
+        }
+        Assertions.assertEquals(0, first.getParticipantCount());
+
+        final Future<Void> future1 = waitAsync(first);
+        final Future<Void> future2 = waitAsync(newBarrier());
+        // Com a chegada do participante que falhou, a rodada estaria completa
+        Assertions.assertThrows(TimeoutException.class, () -> future1.get(500L, TimeUnit.MILLISECONDS));
+
+        final Future<Void> future3 = waitAsync(newBarrier());
+        for (Future<Void> future : List.of(future1, future2, future3)) {
+            Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoUltimoDoGrupoFalhaAntesDeLiberar_DeveCompletarComChegadaSeguinte() throws Exception {
+        final ZooKeeperReusableRestrictedBarrier first = newBarrier();
+        final Future<Void> future1 = waitAsync(first);
+        awaitCount(first, 1);
+        final Future<Void> future2 = waitAsync(newBarrier());
+        awaitCount(first, 2);
+        // Simula o participante que completou a rodada e falhou antes de liberá-la
+        final ZooKeeper crashed = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        });
+        crashed.create(BARRIER_NODE_PATH + "/gen-0/arrive-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        final Future<Void> future4 = waitAsync(newBarrier());
+        awaitCount(first, 4);
+        Assertions.assertThrows(TimeoutException.class, () -> future4.get(300L, TimeUnit.MILLISECONDS));
+
+        // A chegada além do grupo passa a completá-lo
+        crashed.close();
+        for (Future<Void> future : List.of(future1, future2, future4)) {
+            Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoChegadasAlemDoMaximo_DevemAguardarProximaRodada() throws Exception {
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < MAX_PARTICIPANTS + 1; i++) {
+            futures.add(waitAsync(newBarrier()));
+        }
+        // Apenas um participante fica para a próxima rodada
+        final long deadline = System.currentTimeMillis() + 2000L;
+        while (futures.stream().filter(Future::isDone).count() < MAX_PARTICIPANTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Thread.sleep(300L);
+        Assertions.assertEquals(MAX_PARTICIPANTS, futures.stream().filter(Future::isDone).count());
+
+        futures.add(waitAsync(newBarrier()));
+        futures.add(waitAsync(newBarrier()));
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoNoRemovidoPorInatividade_DeveRecriarEAguardarRodada() throws Exception {
+        // Reinicia o servidor com nós com tempo de vida habilitados, verificados a cada 100 ms
+        testingServer.close();
+        System.setProperty(ZooKeeperNodesTest.CHECK_INTERVAL_PROPERTY, "100");
+        System.setProperty(ZooKeeperNodesTest.EXTENDED_TYPES_PROPERTY, "true");
+        testingServer = new TestingServer();
+        final List<ZooKeeperReusableRestrictedBarrier> participants = new ArrayList<>();
+        for (int i = 0; i < MAX_PARTICIPANTS; i++) {
+            final ZooKeeperReusableRestrictedBarrier barrier = new ZooKeeperReusableRestrictedBarrier(
+                    testingServer.getConnectString(), BARRIER_NODE_PATH, MAX_PARTICIPANTS, 300L);
+            barriers.add(barrier);
+            participants.add(barrier);
+        }
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            ZooKeeperNodesTest.awaitRemoval(zk, BARRIER_NODE_PATH);
+        }
+
+        // O nó é recriado, e a rodada continua aguardando todos os participantes
+        final Future<Void> future1 = waitAsync(participants.get(0));
+        final Future<Void> future2 = waitAsync(participants.get(1));
+        Assertions.assertThrows(TimeoutException.class, () -> future1.get(500L, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(2, participants.get(0).getParticipantCount());
+
+        final Future<Void> future3 = waitAsync(participants.get(2));
+        for (Future<Void> future : List.of(future1, future2, future3)) {
+            Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testRemoveBarrier_QuandoHaGeracoes_DeveRemoverNoELiberarParticipantes() throws Exception {
+        final ZooKeeperReusableRestrictedBarrier first = newBarrier();
+        final Future<Void> future1 = waitAsync(first);
+        final Future<Void> future2 = waitAsync(newBarrier());
+        awaitCount(first, 2);
+
+        first.removeBarrier();
+        for (Future<Void> future : List.of(future1, future2)) {
+            Assertions.assertDoesNotThrow(() -> future.get(2L, TimeUnit.SECONDS));
+        }
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            Assertions.assertNull(zk.exists(BARRIER_NODE_PATH, false));
+        }
+
+        // Um participante que chegar depois da remoção recria o nó e aguarda a rodada
+        final Future<Void> future3 = waitAsync(first);
+        Assertions.assertThrows(TimeoutException.class, () -> future3.get(500L, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(1, first.getParticipantCount());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (ZooKeeperReusableRestrictedBarrier barrier : barriers) {
+            barrier.close();
+        }
+        testingServer.close();
+        System.clearProperty(ZooKeeperNodesTest.CHECK_INTERVAL_PROPERTY);
+        System.clearProperty(ZooKeeperNodesTest.EXTENDED_TYPES_PROPERTY);
+    }
+}
@@ -0,0 +1,132 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ZooKeeperSemaphoreTest {
+    private static final String SEMAPHORE_NODE_PATH = "/semaphore";
+    private static TestingServer testingServer;
+    private final List<ZooKeeperSemaphore> semaphores = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+    }
+
+    private ZooKeeperSemaphore newSemaphore(int maxPermits) throws Exception {
+        final ZooKeeperSemaphore semaphore = new ZooKeeperSemaphore(testingServer.getConnectString(), SEMAPHORE_NODE_PATH, maxPermits);
+        semaphores.add(semaphore);
+        return semaphore;
+    }
+
+    private static Future<Void> acquireAsync(ZooKeeperSemaphore semaphore, int permits) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                semaphore.acquire(permits);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private int leaseCount() throws Exception {
+        try (final ZooKeeper zk = new ZooKeeper(testingServer.getConnectString(), 3000, event -> {
+        })) {
+            return zk.getChildren(SEMAPHORE_NODE_PATH, false).size();
+        }
+    }
+
+    @Test
+    public void testAcquire_QuandoVariosParticipantes_NaoDeveUltrapassarMaximo() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            final ZooKeeperSemaphore semaphore = newSemaphore(2);
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    semaphore.acquire();
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(100L);
+                    running.decrementAndGet();
+                    semaphore.release();
+                } catch (KeeperException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get(10L, TimeUnit.SECONDS);
+        }
+        Assertions.assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testAcquire_QuandoPedidoGrandeNaFila_NaoDeveSerUltrapassado() throws Exception {
+        final ZooKeeperSemaphore holder = newSemaphore(2);
+        holder.acquire();
+        final Future<Void> large = acquireAsync(newSemaphore(2), 2);
+        Assertions.assertThrows(TimeoutException.class, () -> large.get(300L, TimeUnit.MILLISECONDS));
+
+        // Há uma permissão disponível, mas o pedido pequeno chegou depois do grande
+        final Future<Void> small = acquireAsync(newSemaphore(2), 1);
+        Assertions.assertThrows(TimeoutException.class, () -> small.get(300L, TimeUnit.MILLISECONDS));
+
+        holder.release();
+        Assertions.assertDoesNotThrow(() -> large.get(1L, TimeUnit.SECONDS));
+        Assertions.assertFalse(small.isDone());
+        semaphores.get(1).release();
+        Assertions.assertDoesNotThrow(() -> small.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTryAcquire_QuandoTempoEsgota_DeveSairDaFila() throws Exception {
+        final ZooKeeperSemaphore holder = newSemaphore(1);
+        holder.acquire();
+        final ZooKeeperSemaphore waiter = newSemaphore(1);
+        Assertions.assertFalse(waiter.tryAcquire(200L, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(1, leaseCount());
+
+        holder.release();
+        Assertions.assertTrue(waiter.tryAcquire(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAcquire_QuandoSessaoDoDetentorTermina_DeveConcederPermissao() throws Exception {
+        final ZooKeeperSemaphore holder = newSemaphore(1);
+        holder.acquire();
+        final Future<Void> future = acquireAsync(newSemaphore(1), 1);
+        Assertions.assertThrows(TimeoutException.class, () -> future.get(300L, TimeUnit.MILLISECONDS));
+
+        // O nó efêmero do detentor é removido junto com a sessão
+        holder.close();
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRelease_QuandoSemPermissao_DeveLancarExcecao() throws Exception {
+        final ZooKeeperSemaphore semaphore = newSemaphore(1);
+        Assertions.assertThrows(IllegalStateException.class, semaphore::release);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperSemaphore semaphore : semaphores) {
+            semaphore.close();
+        }
+    }
+}
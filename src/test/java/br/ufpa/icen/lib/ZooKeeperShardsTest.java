@@ -0,0 +1,107 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ZooKeeperShardsTest {
+    private static final List<String> ENSEMBLES = List.of("zk-a:2181", "zk-b:2181", "zk-c:2181");
+    private static final int BARRIERS = 3_000;
+
+    private static String barrierNode(int i) {
+        return "/jobs/" + i + "/barrier";
+    }
+
+    @Test
+    public void testConnectStringFor_QuandoMesmoCaminho_DeveRetornarMesmoEnsemble() {
+        final ZooKeeperShards shards = new ZooKeeperShards(ENSEMBLES);
+        // A escolha depende apenas do caminho e da lista de ensembles, e não da instância
+        final ZooKeeperShards other = new ZooKeeperShards(ENSEMBLES);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(shards.connectStringFor(barrierNode(i)), shards.connectStringFor(barrierNode(i)));
+            Assertions.assertEquals(shards.connectStringFor(barrierNode(i)), other.connectStringFor(barrierNode(i)));
+        }
+    }
+
+    @Test
+    public void testConnectStringFor_QuandoVariasBarreiras_DeveDistribuirEntreEnsembles() {
+        final ZooKeeperShards shards = new ZooKeeperShards(ENSEMBLES);
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < BARRIERS; i++) {
+            counts.merge(shards.connectStringFor(barrierNode(i)), 1, Integer::sum);
+        }
+        Assertions.assertEquals(ENSEMBLES.size(), counts.size());
+        for (int count : counts.values()) {
+            // Cada ensemble deveria receber 1/3 das barreiras
+            Assertions.assertTrue(count > BARRIERS / 5 && count < BARRIERS / 2, "barreiras no ensemble: " + count);
+        }
+    }
+
+    @Test
+    public void testAddShard_QuandoNovoEnsemble_DeveMoverApenasBarreirasParaEle() {
+        final ZooKeeperShards shards = new ZooKeeperShards(ENSEMBLES);
+        final Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < BARRIERS; i++) {
+            before.put(barrierNode(i), shards.connectStringFor(barrierNode(i)));
+        }
+        shards.addShard("zk-d:2181");
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            final String after = shards.connectStringFor(entry.getKey());
+            if (!after.equals(entry.getValue())) {
+                Assertions.assertEquals("zk-d:2181", after);
+                moved++;
+            }
+        }
+        // Em média, 1/4 das barreiras passa para o novo ensemble
+        Assertions.assertTrue(moved > BARRIERS / 8 && moved < BARRIERS * 3 / 8, "barreiras movidas: " + moved);
+    }
+
+    @Test
+    public void testRemoveShard_QuandoEnsembleRemovido_DeveMoverApenasSuasBarreiras() {
+        final ZooKeeperShards shards = new ZooKeeperShards(ENSEMBLES);
+        final Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < BARRIERS; i++) {
+            before.put(barrierNode(i), shards.connectStringFor(barrierNode(i)));
+        }
+        shards.removeShard("zk-b:2181");
+
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            final String after = shards.connectStringFor(entry.getKey());
+            if (!entry.getValue().equals("zk-b:2181")) {
+                Assertions.assertEquals(entry.getValue(), after);
+            } else {
+                Assertions.assertNotEquals("zk-b:2181", after);
+            }
+        }
+        Assertions.assertEquals(List.of("zk-a:2181", "zk-c:2181"), shards.getShards());
+    }
+
+    @Test
+    public void testConstructor_QuandoSemEnsembles_DeveLancarExcecao() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ZooKeeperShards(List.of()));
+    }
+
+    @Test
+    public void testConnectStringFor_QuandoEnsemblesReais_DeveCriarBarreiraNoEnsembleEscolhido() throws Exception {
+        try (final TestingServer first = new TestingServer();
+             final TestingServer second = new TestingServer()) {
+            final ZooKeeperShards shards = new ZooKeeperShards(List.of(first.getConnectString(), second.getConnectString()));
+            final String node = "/barrier";
+            final String chosen = shards.connectStringFor(node);
+            final String other = chosen.equals(first.getConnectString()) ? second.getConnectString() : first.getConnectString();
+            try (final ZooKeeperCountDownLatch latch = new ZooKeeperCountDownLatch(chosen, node, 1);
+                 final ZooKeeper zk = new ZooKeeper(other, 3000, event -> {
+                 })) {
+                Assertions.assertEquals(1, latch.getCount());
+                Assertions.assertNull(zk.exists(node, false));
+            }
+        }
+    }
+}
@@ -0,0 +1,934 @@
+package br.ufpa.icen.lib;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CheckVersionRequest;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.CreateTTLRequest;
+import org.apache.zookeeper.proto.DeleteRequest;
+import org.apache.zookeeper.proto.GetChildrenRequest;
+import org.apache.zookeeper.proto.GetDataRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Um ZooKeeper em memória com escalonamento determinístico, para explorar as intercalações das barreiras.
+ * <p>
+ * Cada participante roda em uma thread própria ({@link #spawn(String, Callable)}), mas as suas operações no ZooKeeper
+ * só são executadas quando o escalonador as escolhe. A cada passo, o escalonador aguarda todos os participantes
+ * pararem (aguardando uma operação, bloqueados ou terminados) e escolhe, com um {@link Random} inicializado pela
+ * semente, uma das ações possíveis: executar a próxima operação de um participante, entregar o próximo evento de uma
+ * sessão, ou remover um contêiner vazio. Assim, a mesma semente reproduz a mesma intercalação, e sementes diferentes
+ * exploram intercalações diferentes, incluindo a expiração de sessões em qualquer ponto ({@link #expire}).
+ * <p>
+ * Assim como no ZooKeeper, os eventos e as respostas das operações assíncronas de uma sessão são entregues em ordem,
+ * na thread do escalonador, que faz o papel da thread de eventos; já a resposta de uma operação síncrona pode chegar
+ * antes dos eventos pendentes da sessão. A intercalação só é reproduzível se os participantes bloquearem apenas
+ * aguardando o ZooKeeper e usarem nomes determinísticos, e se as sessões forem criadas antes de {@link #run()}.
+ * <p>
+ * As barreiras usam a simulação sobrescrevendo {@code createZooKeeperConnection} para retornar
+ * {@link #connect(Watcher)}, e {@code acquireNodeCache} para retornar {@link #newNodeCache()}. Operações feitas fora
+ * das threads dos participantes, ou antes de {@link #run()}, são executadas imediatamente.
+ */
+public final class ZooKeeperSimulation implements AutoCloseable {
+    private static final AtomicInteger SIMULATIONS = new AtomicInteger();
+    // Tempo dado a um participante acordado por um evento para sair do estado de espera
+    private static final long SETTLE_NANOS = TimeUnit.MICROSECONDS.toNanos(200L);
+    // Tempo máximo que o escalonador aguarda, sem nenhuma ação possível, antes de declarar um impasse
+    private static final long IDLE_LIMIT_NANOS = TimeUnit.SECONDS.toNanos(1L);
+    // Idem, se algum participante estiver em uma espera com tempo limite
+    private static final long TIMED_WAIT_LIMIT_NANOS = TimeUnit.SECONDS.toNanos(10L);
+
+    private final long seed;
+    private final Random random;
+    private final String connectString;
+    private final TreeMap<String, Node> nodes = new TreeMap<>();
+    private final TreeSet<String> emptyContainers = new TreeSet<>();
+    private final List<Session> sessions = new ArrayList<>();
+    private final List<Participant> participants = new ArrayList<>();
+    private final Map<Thread, Participant> participantsByThread = new HashMap<>();
+    private final List<WatchedEvent> changes = new ArrayList<>();
+    private final List<String> trace = new ArrayList<>();
+    private long zxid;
+    private long clock = 1_000_000L;
+    private volatile boolean running;
+
+    /**
+     * Uma operação no ZooKeeper simulado, executada com o monitor da simulação.
+     */
+    @FunctionalInterface
+    interface Operation<T> {
+        T apply() throws KeeperException;
+    }
+
+    /**
+     * Um nó da árvore simulada.
+     */
+    private static final class Node {
+        private final CreateMode mode;
+        private final long ephemeralOwner;
+        private final long czxid;
+        private final long ctime;
+        private final TreeSet<String> children;
+        private byte[] data;
+        private long mzxid;
+        private long mtime;
+        private long pzxid;
+        private int version;
+        private int cversion;
+
+        Node(CreateMode mode, long ephemeralOwner, byte[] data, long zxid, long time) {
+            this.mode = mode;
+            this.ephemeralOwner = ephemeralOwner;
+            this.czxid = zxid;
+            this.ctime = time;
+            this.children = new TreeSet<>();
+            this.data = data == null ? new byte[0] : data.clone();
+            this.mzxid = zxid;
+            this.mtime = time;
+            this.pzxid = zxid;
+        }
+
+        Node(Node other) {
+            this.mode = other.mode;
+            this.ephemeralOwner = other.ephemeralOwner;
+            this.czxid = other.czxid;
+            this.ctime = other.ctime;
+            this.children = new TreeSet<>(other.children);
+            this.data = other.data;
+            this.mzxid = other.mzxid;
+            this.mtime = other.mtime;
+            this.pzxid = other.pzxid;
+            this.version = other.version;
+            this.cversion = other.cversion;
+        }
+
+        void fill(Stat stat) {
+            if (stat == null) {
+                return;
+            }
+            stat.setCzxid(czxid);
+            stat.setMzxid(mzxid);
+            stat.setCtime(ctime);
+            stat.setMtime(mtime);
+            stat.setVersion(version);
+            stat.setCversion(cversion);
+            stat.setAversion(0);
+            stat.setEphemeralOwner(ephemeralOwner);
+            stat.setDataLength(data.length);
+            stat.setNumChildren(children.size());
+            stat.setPzxid(pzxid);
+        }
+
+        Stat stat() {
+            final Stat stat = new Stat();
+            fill(stat);
+            return stat;
+        }
+    }
+
+    /**
+     * Uma sessão simulada, com os seus observadores e os seus eventos ainda não entregues.
+     */
+    static final class Session {
+        private final long id;
+        private final Watcher defaultWatcher;
+        private final Map<String, Set<Watcher>> dataWatches = new HashMap<>();
+        private final Map<String, Set<Watcher>> existWatches = new HashMap<>();
+        private final Map<String, Set<Watcher>> childWatches = new HashMap<>();
+        private final ArrayDeque<Event> events = new ArrayDeque<>();
+        private boolean closed;
+
+        private Session(long id, Watcher defaultWatcher) {
+            this.id = id;
+            this.defaultWatcher = defaultWatcher;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Watcher watcher(boolean watch) {
+            return watch ? defaultWatcher : null;
+        }
+    }
+
+    /**
+     * Um evento (ou a resposta de uma operação assíncrona) aguardando entrega.
+     */
+    private static final class Event {
+        private final String description;
+        private final Runnable delivery;
+
+        Event(String description, Runnable delivery) {
+            this.description = description;
+            this.delivery = delivery;
+        }
+    }
+
+    /**
+     * Uma thread participante da simulação, com as suas operações aguardando o escalonador.
+     */
+    private static final class Participant {
+        private final String name;
+        private final Thread thread;
+        private final ArrayDeque<Request<?>> requests = new ArrayDeque<>();
+        // Verdadeiro enquanto o participante aguarda algo fora da simulação, sem estar parado para o escalonador
+        private volatile boolean outside;
+        private volatile Throwable failure;
+
+        Participant(String name, Thread thread) {
+            this.name = name;
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Uma operação de um participante. Operações síncronas liberam o participante com {@code done}; as assíncronas
+     * entregam o resultado em {@code callback}, na fila de eventos da sessão.
+     */
+    private static final class Request<T> {
+        private final Session session;
+        private final String description;
+        private final Operation<T> operation;
+        private final BiConsumer<KeeperException.Code, T> callback;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean resumed;
+        private T result;
+        private Exception error;
+
+        Request(Session session, String description, Operation<T> operation, BiConsumer<KeeperException.Code, T> callback) {
+            this.session = session;
+            this.description = description;
+            this.operation = operation;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Uma ação que o escalonador pode executar no próximo passo.
+     */
+    private static final class Action {
+        private final String description;
+        private final Runnable body;
+
+        Action(String description, Runnable body) {
+            this.description = description;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Cria uma simulação vazia.
+     *
+     * @param seed Semente das escolhas do escalonador.
+     */
+    public ZooKeeperSimulation(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.connectString = "simulation-" + SIMULATIONS.incrementAndGet() + ":2181";
+        nodes.put("/", new Node(CreateMode.PERSISTENT, 0L, null, 0L, clock));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Retorna a string de conexão desta simulação, que identifica as barreiras no gravador.
+     */
+    public String getConnectString() {
+        return connectString;
+    }
+
+    /**
+     * Retorna as ações executadas pelo escalonador, em ordem.
+     */
+    public synchronized List<String> getTrace() {
+        return new ArrayList<>(trace);
+    }
+
+    /**
+     * Abre uma nova sessão simulada.
+     *
+     * @param watcher Observador padrão da sessão.
+     * @throws IOException se o cliente herdado não puder ser criado.
+     */
+    public SimulatedZooKeeper connect(Watcher watcher) throws IOException {
+        final Session session;
+        synchronized (this) {
+            session = new Session(sessions.size() + 1L, watcher);
+            sessions.add(session);
+        }
+        return new SimulatedZooKeeper(this, session);
+    }
+
+    /**
+     * Cria um {@link ZooKeeperNodeCache} de uso exclusivo de uma barreira, com uma sessão simulada.
+     *
+     * @throws IOException se o cliente herdado não puder ser criado.
+     */
+    public ZooKeeperNodeCache newNodeCache() throws IOException {
+        return new ZooKeeperNodeCache(connectString, this::connect);
+    }
+
+    /**
+     * Adiciona um participante, executado em uma thread própria durante {@link #run()}.
+     *
+     * @param name Nome do participante, usado no registro das ações.
+     * @param task Tarefa do participante. Uma exceção lançada pela tarefa falha a simulação.
+     */
+    public void spawn(String name, Callable<?> task) {
+        final AtomicInteger index = new AtomicInteger(participants.size());
+        final Thread thread = new Thread(() -> {
+            try {
+                task.call();
+            } catch (Throwable t) {
+                participants.get(index.get()).failure = t;
+            }
+        }, name);
+        thread.setDaemon(true);
+        final Participant participant = new Participant(name, thread);
+        participants.add(participant);
+        participantsByThread.put(thread, participant);
+    }
+
+    /**
+     * Expira a sessão de {@code zk}: os seus nós efêmeros são removidos, os seus observadores são descartados e o
+     * seu observador padrão recebe {@link Watcher.Event.KeeperState#Expired}. Chamado por um participante, a
+     * expiração é uma ação escalonada como as operações.
+     */
+    public void expire(SimulatedZooKeeper zk) throws InterruptedException {
+        final Session session = zk.getSession();
+        try {
+            call(session, "expira a sessão " + session.id, () -> {
+                end(session, true);
+                return null;
+            });
+        } catch (KeeperException ignored) {
+            // A sessão já estava encerrada
+        }
+    }
+
+    /**
+     * Executa os participantes até que todos terminem.
+     *
+     * @throws AssertionError se os participantes ficarem bloqueados sem nenhuma ação possível, ou se algum deles
+     *                        falhar. A mensagem contém a semente, para reproduzir a intercalação.
+     */
+    public void run() throws InterruptedException {
+        running = true;
+        try {
+            for (Participant participant : participants) {
+                participant.thread.start();
+            }
+            long idleSince = -1L;
+            for (; ; ) {
+                awaitQuiescence();
+                if (allTerminated()) {
+                    break;
+                }
+                final List<Action> actions = enabledActions();
+                if (actions.isEmpty()) {
+                    // Um participante pode estar em uma espera com tempo limite: deixa o tempo passar antes de
+                    // declarar um impasse
+                    if (idleSince < 0) {
+                        idleSince = System.nanoTime();
+                    } else if (System.nanoTime() - idleSince > (anyTimedWaiting() ? TIMED_WAIT_LIMIT_NANOS : IDLE_LIMIT_NANOS)) {
+                        throw failure("impasse: participantes bloqueados sem nenhuma ação possível", null);
+                    }
+                    TimeUnit.MILLISECONDS.sleep(1L);
+                    continue;
+                }
+                idleSince = -1L;
+                final Action action = actions.get(random.nextInt(actions.size()));
+                synchronized (this) {
+                    trace.add(action.description);
+                }
+                action.body.run();
+            }
+            for (Participant participant : participants) {
+                if (participant.failure != null) {
+                    throw failure("o participante " + participant.name + " falhou", participant.failure);
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    private AssertionError failure(String message, Throwable cause) {
+        final List<String> actions = getTrace();
+        final List<String> last = actions.subList(Math.max(0, actions.size() - 30), actions.size());
+        final StringBuilder states = new StringBuilder();
+        for (Participant participant : participants) {
+            states.append("\n  ").append(participant.name).append(": ").append(participant.thread.getState());
+            for (StackTraceElement element : participant.thread.getStackTrace()) {
+                states.append("\n      at ").append(element);
+            }
+        }
+        return new AssertionError(message + " (semente " + seed + "). Participantes:" + states
+                + "\nÚltimas ações:\n  " + String.join("\n  ", last), cause);
+    }
+
+    /**
+     * Aguarda até que todos os participantes estejam parados: aguardando uma operação, bloqueados ou terminados.
+     */
+    private void awaitQuiescence() {
+        int quietChecks = 0;
+        while (quietChecks < 2) {
+            boolean quiet = true;
+            for (Participant participant : participants) {
+                final Thread.State state = participant.thread.getState();
+                if (state == Thread.State.NEW || state == Thread.State.RUNNABLE || participant.outside) {
+                    quiet = false;
+                    break;
+                }
+            }
+            if (quiet) {
+                quietChecks++;
+                // Dá tempo para que um participante acordado por um evento saia do estado de espera
+                LockSupport.parkNanos(SETTLE_NANOS);
+            } else {
+                quietChecks = 0;
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean allTerminated() {
+        for (Participant participant : participants) {
+            if (participant.thread.getState() != Thread.State.TERMINATED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean anyTimedWaiting() {
+        for (Participant participant : participants) {
+            if (participant.thread.getState() == Thread.State.TIMED_WAITING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lista as ações possíveis, sempre na mesma ordem para o mesmo estado.
+     */
+    private synchronized List<Action> enabledActions() {
+        final List<Action> actions = new ArrayList<>();
+        for (Participant participant : participants) {
+            // As operações de um participante em uma mesma sessão são executadas em ordem
+            final Set<Session> seen = new HashSet<>();
+            for (Request<?> request : participant.requests) {
+                if (seen.add(request.session)) {
+                    actions.add(new Action(participant.name + ": " + request.description, () -> execute(participant, request)));
+                }
+            }
+        }
+        for (Session session : sessions) {
+            final Event event = session.events.peekFirst();
+            if (event != null) {
+                actions.add(new Action("sessão " + session.id + ": " + event.description, () -> deliver(session)));
+            }
+        }
+        for (String container : emptyContainers) {
+            actions.add(new Action("remove o contêiner " + container, () -> removeContainer(container)));
+        }
+        return actions;
+    }
+
+    private <T> void execute(Participant participant, Request<T> request) {
+        synchronized (this) {
+            participant.requests.remove(request);
+            try {
+                request.result = apply(request.session, request.operation);
+            } catch (KeeperException | RuntimeException e) {
+                request.error = e;
+            }
+            if (request.callback != null) {
+                final KeeperException.Code code = request.error instanceof KeeperException
+                        ? ((KeeperException) request.error).code()
+                        : KeeperException.Code.OK;
+                enqueue(request.session, "resposta de " + request.description,
+                        () -> request.callback.accept(code, request.result));
+                return;
+            }
+        }
+        request.done.countDown();
+        // Aguarda o participante acordar, para que ele não pareça parado no próximo passo
+        while (!request.resumed) {
+            Thread.yield();
+        }
+    }
+
+    private void deliver(Session session) {
+        final Event event;
+        synchronized (this) {
+            event = session.events.pollFirst();
+        }
+        try {
+            event.delivery.run();
+        } catch (RuntimeException ignored) {
+            // Assim como na thread de eventos do ZooKeeper, uma falha em um observador não interrompe as demais
+        }
+    }
+
+    private synchronized void removeContainer(String path) {
+        emptyContainers.remove(path);
+        final Node node = nodes.get(path);
+        if (node != null && node.children.isEmpty()) {
+            zxid++;
+            remove(path);
+            flush();
+        }
+    }
+
+    /**
+     * Executa {@code body} sem que o participante atual seja considerado parado enquanto aguarda, para esperas que
+     * terminam por conta própria, fora da simulação (como o encerramento das threads de um cliente). Sem isso, o
+     * escalonador poderia escolher o próximo passo antes ou depois da próxima operação do participante, conforme a
+     * duração da espera.
+     */
+    void outside(Runnable body) {
+        final Participant participant = running ? participantsByThread.get(Thread.currentThread()) : null;
+        if (participant == null) {
+            body.run();
+            return;
+        }
+        participant.outside = true;
+        try {
+            body.run();
+        } finally {
+            participant.outside = false;
+        }
+    }
+
+    /**
+     * Executa uma operação de uma sessão. Nas threads dos participantes, durante {@link #run()}, aguarda o
+     * escalonador; nas demais threads, executa imediatamente.
+     */
+    <T> T call(Session session, String description, Operation<T> operation) throws KeeperException, InterruptedException {
+        final Participant participant = running ? participantsByThread.get(Thread.currentThread()) : null;
+        if (participant == null) {
+            synchronized (this) {
+                return apply(session, operation);
+            }
+        }
+        final Request<T> request = new Request<>(session, description, operation, null);
+        synchronized (this) {
+            participant.requests.addLast(request);
+        }
+        try {
+            request.done.await();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                participant.requests.remove(request);
+            }
+            throw e;
+        } finally {
+            request.resumed = true;
+        }
+        if (request.error instanceof KeeperException) {
+            throw (KeeperException) request.error;
+        } else if (request.error != null) {
+            throw (RuntimeException) request.error;
+        }
+        return request.result;
+    }
+
+    /**
+     * Executa uma operação assíncrona de uma sessão, entregando o resultado a {@code callback} na fila de eventos
+     * da sessão.
+     */
+    <T> void submit(Session session, String description, Operation<T> operation, BiConsumer<KeeperException.Code, T> callback) {
+        final Participant participant = running ? participantsByThread.get(Thread.currentThread()) : null;
+        if (participant != null) {
+            synchronized (this) {
+                participant.requests.addLast(new Request<>(session, description, operation, callback));
+            }
+            return;
+        }
+        KeeperException.Code code = KeeperException.Code.OK;
+        T result = null;
+        synchronized (this) {
+            try {
+                result = apply(session, operation);
+            } catch (KeeperException e) {
+                code = e.code();
+            }
+            if (running) {
+                final KeeperException.Code rc = code;
+                final T value = result;
+                enqueue(session, "resposta de " + description, () -> callback.accept(rc, value));
+                return;
+            }
+        }
+        callback.accept(code, result);
+    }
+
+    private <T> T apply(Session session, Operation<T> operation) throws KeeperException {
+        if (session.closed) {
+            throw new KeeperException.SessionExpiredException();
+        }
+        try {
+            return operation.apply();
+        } finally {
+            flush();
+        }
+    }
+
+    // ===== Árvore de nós (acessada com o monitor da simulação)
+
+    String create(Session session, String path, byte[] data, CreateMode mode, Stat stat) throws KeeperException {
+        final Node parent = nodes.get(parentOf(path));
+        if (parent == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (parent.ephemeralOwner != 0L) {
+            throw new KeeperException.NoChildrenForEphemeralsException(path);
+        }
+        final String actual = mode.isSequential() ? path + String.format("%010d", parent.cversion) : path;
+        if (nodes.containsKey(actual)) {
+            throw new KeeperException.NodeExistsException(actual);
+        }
+        zxid++;
+        clock++;
+        final Node node = new Node(mode, mode.isEphemeral() ? session.id : 0L, data, zxid, clock);
+        nodes.put(actual, node);
+        parent.children.add(actual.substring(actual.lastIndexOf('/') + 1));
+        parent.cversion++;
+        parent.pzxid = zxid;
+        emptyContainers.remove(parentOf(path));
+        changes.add(event(Watcher.Event.EventType.NodeCreated, actual));
+        changes.add(event(Watcher.Event.EventType.NodeChildrenChanged, parentOf(path)));
+        node.fill(stat);
+        return actual;
+    }
+
+    void delete(String path, int version) throws KeeperException {
+        final Node node = nodes.get(path);
+        if (node == null || "/".equals(path)) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (version != -1 && version != node.version) {
+            throw new KeeperException.BadVersionException(path);
+        }
+        if (!node.children.isEmpty()) {
+            throw new KeeperException.NotEmptyException(path);
+        }
+        zxid++;
+        remove(path);
+    }
+
+    Stat setData(String path, byte[] data, int version) throws KeeperException {
+        final Node node = nodes.get(path);
+        if (node == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (version != -1 && version != node.version) {
+            throw new KeeperException.BadVersionException(path);
+        }
+        zxid++;
+        clock++;
+        node.data = data == null ? new byte[0] : data.clone();
+        node.version++;
+        node.mzxid = zxid;
+        node.mtime = clock;
+        changes.add(event(Watcher.Event.EventType.NodeDataChanged, path));
+        return node.stat();
+    }
+
+    private void check(String path, int version) throws KeeperException {
+        final Node node = nodes.get(path);
+        if (node == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (version != -1 && version != node.version) {
+            throw new KeeperException.BadVersionException(path);
+        }
+    }
+
+    Stat exists(Session session, String path, Watcher watcher) {
+        final Node node = nodes.get(path);
+        if (watcher != null) {
+            watch(node == null ? session.existWatches : session.dataWatches, path, watcher);
+        }
+        return node == null ? null : node.stat();
+    }
+
+    byte[] getData(Session session, String path, Watcher watcher, Stat stat) throws KeeperException {
+        final Node node = nodes.get(path);
+        if (node == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (watcher != null) {
+            watch(session.dataWatches, path, watcher);
+        }
+        node.fill(stat);
+        return node.data.clone();
+    }
+
+    List<String> getChildren(Session session, String path, Watcher watcher, Stat stat) throws KeeperException {
+        final Node node = nodes.get(path);
+        if (node == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        if (watcher != null) {
+            watch(session.childWatches, path, watcher);
+        }
+        node.fill(stat);
+        return new ArrayList<>(node.children);
+    }
+
+    /**
+     * Remove o observador {@code watcher} do nó, assim como {@link ZooKeeper#removeWatches}, notificando-o da remoção.
+     */
+    Void removeWatches(Session session, String path, Watcher watcher, Watcher.WatcherType type) throws KeeperException {
+        boolean removed = false;
+        if (type != Watcher.WatcherType.Children) {
+            removed |= unwatch(session.dataWatches, path, watcher);
+            removed |= unwatch(session.existWatches, path, watcher);
+        }
+        if (removed) {
+            final WatchedEvent event = new WatchedEvent(Watcher.Event.EventType.DataWatchRemoved,
+                    Watcher.Event.KeeperState.SyncConnected, path);
+            enqueue(session, "DataWatchRemoved " + path, () -> watcher.process(event));
+        }
+        if (type != Watcher.WatcherType.Data && unwatch(session.childWatches, path, watcher)) {
+            removed = true;
+            final WatchedEvent event = new WatchedEvent(Watcher.Event.EventType.ChildWatchRemoved,
+                    Watcher.Event.KeeperState.SyncConnected, path);
+            enqueue(session, "ChildWatchRemoved " + path, () -> watcher.process(event));
+        }
+        if (!removed) {
+            throw new KeeperException.NoWatcherException(path);
+        }
+        return null;
+    }
+
+    private static boolean unwatch(Map<String, Set<Watcher>> watches, String path, Watcher watcher) {
+        final Set<Watcher> watchers = watches.get(path);
+        if (watchers == null || !watchers.remove(watcher)) {
+            return false;
+        }
+        if (watchers.isEmpty()) {
+            watches.remove(path);
+        }
+        return true;
+    }
+
+    /**
+     * Executa as operações atomicamente: se uma falhar, a árvore volta ao estado anterior e nenhum observador é
+     * acionado. Operações apenas de leitura retornam os resultados individuais, inclusive os erros.
+     */
+    List<OpResult> multi(Session session, Iterable<Op> ops) throws KeeperException {
+        final List<Record> requests = new ArrayList<>();
+        boolean readOnly = true;
+        for (Op op : ops) {
+            final Record request = op.toRequestRecord();
+            readOnly &= request instanceof GetDataRequest || request instanceof GetChildrenRequest;
+            requests.add(request);
+        }
+        final List<OpResult> results = new ArrayList<>(requests.size());
+        if (readOnly) {
+            for (Record request : requests) {
+                try {
+                    if (request instanceof GetDataRequest) {
+                        final Stat stat = new Stat();
+                        final byte[] data = getData(session, ((GetDataRequest) request).getPath(), null, stat);
+                        results.add(new OpResult.GetDataResult(data, stat));
+                    } else {
+                        results.add(new OpResult.GetChildrenResult(
+                                getChildren(session, ((GetChildrenRequest) request).getPath(), null, null)));
+                    }
+                } catch (KeeperException e) {
+                    results.add(new OpResult.ErrorResult(e.code().intValue()));
+                }
+            }
+            return results;
+        }
+        final TreeMap<String, Node> nodesBefore = new TreeMap<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            nodesBefore.put(entry.getKey(), new Node(entry.getValue()));
+        }
+        final Set<String> containersBefore = new TreeSet<>(emptyContainers);
+        final long zxidBefore = zxid;
+        final long clockBefore = clock;
+        try {
+            for (Record request : requests) {
+                results.add(applyOp(session, request));
+            }
+        } catch (KeeperException e) {
+            nodes.clear();
+            nodes.putAll(nodesBefore);
+            emptyContainers.clear();
+            emptyContainers.addAll(containersBefore);
+            zxid = zxidBefore;
+            clock = clockBefore;
+            changes.clear();
+            throw e;
+        }
+        return results;
+    }
+
+    private OpResult applyOp(Session session, Record request) throws KeeperException {
+        if (request instanceof CreateRequest) {
+            final CreateRequest create = (CreateRequest) request;
+            return new OpResult.CreateResult(create(session, create.getPath(), create.getData(),
+                    CreateMode.fromFlag(create.getFlags()), null));
+        } else if (request instanceof CreateTTLRequest) {
+            final CreateTTLRequest create = (CreateTTLRequest) request;
+            return new OpResult.CreateResult(create(session, create.getPath(), create.getData(),
+                    CreateMode.fromFlag(create.getFlags()), null));
+        } else if (request instanceof DeleteRequest) {
+            delete(((DeleteRequest) request).getPath(), ((DeleteRequest) request).getVersion());
+            return new OpResult.DeleteResult();
+        } else if (request instanceof SetDataRequest) {
+            final SetDataRequest setData = (SetDataRequest) request;
+            return new OpResult.SetDataResult(setData(setData.getPath(), setData.getData(), setData.getVersion()));
+        } else if (request instanceof CheckVersionRequest) {
+            check(((CheckVersionRequest) request).getPath(), ((CheckVersionRequest) request).getVersion());
+            return new OpResult.CheckResult();
+        }
+        throw new KeeperException.UnimplementedException();
+    }
+
+    /**
+     * Encerra a sessão, removendo os seus nós efêmeros e descartando os seus observadores.
+     *
+     * @param expired se o observador padrão da sessão deve receber {@link Watcher.Event.KeeperState#Expired}.
+     */
+    void end(Session session, boolean expired) {
+        session.closed = true;
+        session.dataWatches.clear();
+        session.existWatches.clear();
+        session.childWatches.clear();
+        final List<String> ephemerals = new ArrayList<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            if (entry.getValue().ephemeralOwner == session.id) {
+                ephemerals.add(entry.getKey());
+            }
+        }
+        for (String path : ephemerals) {
+            zxid++;
+            remove(path);
+        }
+        if (expired) {
+            final WatchedEvent event = new WatchedEvent(Watcher.Event.EventType.None, Watcher.Event.KeeperState.Expired, null);
+            enqueue(session, "Expired", () -> session.defaultWatcher.process(event));
+        } else {
+            session.events.clear();
+        }
+    }
+
+    private void remove(String path) {
+        final Node node = nodes.remove(path);
+        final String parentPath = parentOf(path);
+        final Node parent = nodes.get(parentPath);
+        parent.children.remove(path.substring(path.lastIndexOf('/') + 1));
+        parent.cversion++;
+        parent.pzxid = zxid;
+        if (node.mode == CreateMode.CONTAINER) {
+            emptyContainers.remove(path);
+        }
+        // Assim como no ZooKeeper, um contêiner que já teve filhos é removido algum tempo depois de esvaziar
+        if (parent.mode == CreateMode.CONTAINER && parent.children.isEmpty()) {
+            emptyContainers.add(parentPath);
+        }
+        changes.add(event(Watcher.Event.EventType.NodeDeleted, path));
+        changes.add(event(Watcher.Event.EventType.NodeChildrenChanged, parentPath));
+    }
+
+    private static String parentOf(String path) {
+        final int slash = path.lastIndexOf('/');
+        return slash == 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static WatchedEvent event(Watcher.Event.EventType type, String path) {
+        return new WatchedEvent(type, Watcher.Event.KeeperState.SyncConnected, path);
+    }
+
+    private static void watch(Map<String, Set<Watcher>> watches, String path, Watcher watcher) {
+        watches.computeIfAbsent(path, p -> new LinkedHashSet<>()).add(watcher);
+    }
+
+    /**
+     * Aciona os observadores das modificações da última operação, enfileirando os eventos nas suas sessões.
+     */
+    private void flush() {
+        for (WatchedEvent change : changes) {
+            final String path = change.getPath();
+            for (Session session : sessions) {
+                if (session.closed) {
+                    continue;
+                }
+                // Cada observador é chamado uma única vez por evento, mesmo se registrado por mais de uma consulta
+                final Set<Watcher> watchers = new LinkedHashSet<>();
+                switch (change.getType()) {
+                    case NodeCreated:
+                    case NodeDataChanged:
+                        take(session.dataWatches, path, watchers);
+                        take(session.existWatches, path, watchers);
+                        break;
+                    case NodeDeleted:
+                        take(session.dataWatches, path, watchers);
+                        take(session.existWatches, path, watchers);
+                        take(session.childWatches, path, watchers);
+                        break;
+                    case NodeChildrenChanged:
+                        take(session.childWatches, path, watchers);
+                        break;
+                    default:
+                        break;
+                }
+                for (Watcher watcher : watchers) {
+                    enqueue(session, change.getType() + " " + path, () -> watcher.process(change));
+                }
+            }
+        }
+        changes.clear();
+    }
+
+    private static void take(Map<String, Set<Watcher>> watches, String path, Set<Watcher> into) {
+        final Set<Watcher> watchers = watches.remove(path);
+        if (watchers != null) {
+            into.addAll(watchers);
+        }
+    }
+
+    private static void enqueue(Session session, String description, Runnable delivery) {
+        session.events.addLast(new Event(description, delivery));
+    }
+
+    /**
+     * Interrompe os participantes que ainda não terminaram.
+     */
+    @Override
+    public void close() {
+        for (Participant participant : participants) {
+            participant.thread.interrupt();
+        }
+    }
+}
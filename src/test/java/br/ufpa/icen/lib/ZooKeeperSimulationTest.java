@@ -0,0 +1,233 @@
+package br.ufpa.icen.lib;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ZooKeeperSimulationTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    // Cada semente é uma intercalação diferente das operações dos participantes
+    private static final int SEEDS = 100;
+    private final List<ZooKeeperSimulation> simulations = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        for (ZooKeeperSimulation simulation : simulations) {
+            simulation.close();
+        }
+    }
+
+    private ZooKeeperSimulation newSimulation(long seed) {
+        final ZooKeeperSimulation simulation = new ZooKeeperSimulation(seed);
+        simulations.add(simulation);
+        return simulation;
+    }
+
+    private static ZooKeeperDoubleBarrier newDoubleBarrier(ZooKeeperSimulation simulation, boolean aggregated) throws Exception {
+        if (aggregated) {
+            return new ZooKeeperAggregatedDoubleBarrier(simulation.getConnectString(), BARRIER_NODE_PATH) {
+                @Override
+                protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                    return simulation.connect(watcher);
+                }
+
+                @Override
+                ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+                    return simulation.newNodeCache();
+                }
+            };
+        }
+        return new ZooKeeperDoubleBarrier(simulation.getConnectString(), BARRIER_NODE_PATH) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                return simulation.connect(watcher);
+            }
+
+            @Override
+            ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+                return simulation.newNodeCache();
+            }
+        };
+    }
+
+    private static ZooKeeperReusableRestrictedBarrier newRestrictedBarrier(ZooKeeperSimulation simulation) throws Exception {
+        return new ZooKeeperReusableRestrictedBarrier(simulation.getConnectString(), BARRIER_NODE_PATH, 3) {
+            @Override
+            protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                return simulation.connect(watcher);
+            }
+
+            @Override
+            ZooKeeperNodeCache acquireNodeCache(String connectString) throws IOException {
+                return simulation.newNodeCache();
+            }
+        };
+    }
+
+    /**
+     * Executa três participantes que entram e saem da barreira dupla, verificando que nenhum deles entra antes de
+     * todos chegarem nem sai antes de todos terminarem.
+     */
+    private void runDoubleBarrier(long seed) throws Exception {
+        final ZooKeeperSimulation simulation = newSimulation(seed);
+        final AtomicInteger entering = new AtomicInteger();
+        final AtomicInteger exiting = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            final ZooKeeperDoubleBarrier participant = newDoubleBarrier(simulation, false);
+            simulation.spawn("p" + i, () -> {
+                try (participant) {
+                    entering.incrementAndGet();
+                    participant.enterBarrier();
+                    Assertions.assertEquals(3, entering.get(), "entrou antes de todos chegarem");
+                    exiting.incrementAndGet();
+                    participant.exitBarrier();
+                    Assertions.assertEquals(3, exiting.get(), "saiu antes de todos terminarem");
+                }
+                return null;
+            });
+        }
+        simulation.run();
+    }
+
+    @Test
+    public void testDoubleBarrier_QuandoIntercalacoesAleatorias_DeveManterEntradaESaida() throws Exception {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            runDoubleBarrier(seed);
+        }
+    }
+
+    /**
+     * Executa seis participantes em uma barreira restrita a três, verificando que a k-ésima liberação só ocorre
+     * após as chegadas que completam o seu grupo.
+     */
+    private ZooKeeperSimulation runRestrictedBarrier(long seed) throws Exception {
+        final ZooKeeperSimulation simulation = newSimulation(seed);
+        final AtomicInteger arrived = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            final ZooKeeperReusableRestrictedBarrier participant = newRestrictedBarrier(simulation);
+            simulation.spawn("p" + i, () -> {
+                try (participant) {
+                    arrived.incrementAndGet();
+                    participant.waitForBarrier();
+                    final int k = released.incrementAndGet();
+                    Assertions.assertTrue(arrived.get() >= 3 * ((k + 2) / 3), "liberado antes de o grupo completar");
+                }
+                return null;
+            });
+        }
+        simulation.run();
+        Assertions.assertEquals(6, released.get());
+        return simulation;
+    }
+
+    @Test
+    public void testRestrictedBarrier_QuandoIntercalacoesAleatorias_DeveLiberarGruposCompletos() throws Exception {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            runRestrictedBarrier(seed);
+        }
+    }
+
+    /**
+     * Retorna os participantes que criaram chegadas em {@code generationNode}, na ordem de sequência das chegadas. Uma
+     * criação que falhou por o contêiner ter sido removido é repetida, e apenas a última de cada participante vale.
+     */
+    private static List<String> arrivalOrder(List<String> trace, String generationNode) {
+        final List<String> order = new ArrayList<>();
+        final Pattern create = Pattern.compile("(p\\d+): create " + Pattern.quote(generationNode + "/arrive-") + " .*");
+        for (String action : trace) {
+            final Matcher matcher = create.matcher(action);
+            if (matcher.matches()) {
+                order.remove(matcher.group(1));
+                order.add(matcher.group(1));
+            }
+        }
+        return order;
+    }
+
+    @Test
+    public void testRestrictedBarrier_QuandoGeracaoLiberadaComChegadasAlemDoGrupo_DevemEntrarNaSeguinteEmOrdem() throws Exception {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            final ZooKeeperSimulation simulation = newSimulation(seed);
+            // Um grupo completo na geração 0, cuja liberação ainda não foi gravada
+            final SimulatedZooKeeper members = simulation.connect(event -> {
+            });
+            members.create(BARRIER_NODE_PATH, "0".getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            members.create(BARRIER_NODE_PATH + "/gen-0", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+            for (int i = 0; i < 3; i++) {
+                members.create(BARRIER_NODE_PATH + "/gen-0/arrive-", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+            }
+
+            // Três participantes chegam além do grupo, ou já na geração seguinte, enquanto a geração 0 é liberada
+            for (int i = 0; i < 3; i++) {
+                final ZooKeeperReusableRestrictedBarrier participant = newRestrictedBarrier(simulation);
+                simulation.spawn("p" + i, () -> {
+                    try (participant) {
+                        participant.waitForBarrier();
+                    }
+                    return null;
+                });
+            }
+            simulation.spawn("libera", () -> members.multi(List.of(
+                    Op.setData(BARRIER_NODE_PATH + "/gen-0", "2".getBytes(StandardCharsets.UTF_8), -1),
+                    Op.setData(BARRIER_NODE_PATH, "1".getBytes(StandardCharsets.UTF_8), -1))));
+            simulation.run();
+
+            // As chegadas além do grupo entram na geração seguinte na mesma ordem
+            final List<String> before = arrivalOrder(simulation.getTrace(), BARRIER_NODE_PATH + "/gen-0");
+            final List<String> after = arrivalOrder(simulation.getTrace(), BARRIER_NODE_PATH + "/gen-1");
+            after.retainAll(before);
+            Assertions.assertEquals(before, after, "semente " + seed);
+        }
+    }
+
+    @Test
+    public void testRun_QuandoMesmaSemente_DeveReproduzirIntercalacao() throws Exception {
+        final List<String> first = runRestrictedBarrier(42L).getTrace();
+        final List<String> second = runRestrictedBarrier(42L).getTrace();
+        Assertions.assertFalse(first.isEmpty());
+        Assertions.assertEquals(first, second);
+    }
+
+    @Test
+    public void testAggregatedBarrier_QuandoSessaoDoAgregadorExpirar_DeveOutroAssumir() throws Exception {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            final ZooKeeperSimulation simulation = newSimulation(seed);
+            // Um agregador que venceu a eleição e nunca libera a barreira, até que a sua sessão expire
+            final SimulatedZooKeeper crashed = simulation.connect(event -> {
+            });
+            crashed.create(BARRIER_NODE_PATH + "-aggregator", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+
+            final AtomicInteger entering = new AtomicInteger();
+            for (int i = 0; i < 3; i++) {
+                final ZooKeeperDoubleBarrier participant = newDoubleBarrier(simulation, true);
+                simulation.spawn("p" + i, () -> {
+                    try (participant) {
+                        entering.incrementAndGet();
+                        participant.enterBarrier();
+                        Assertions.assertEquals(3, entering.get(), "entrou antes de todos chegarem");
+                    }
+                    return null;
+                });
+            }
+            simulation.spawn("falha", () -> {
+                simulation.expire(crashed);
+                return null;
+            });
+            simulation.run();
+        }
+    }
+}
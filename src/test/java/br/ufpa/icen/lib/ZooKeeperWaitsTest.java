@@ -0,0 +1,59 @@
+package br.ufpa.icen.lib;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ZooKeeperWaitsTest {
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void setUp() {
+        // Um pool com uma única thread: sem threads compensatórias, uma espera impediria qualquer outra tarefa
+        pool = new ForkJoinPool(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testAwait_QuandoChamadoDeThreadDoPool_DevePermitirOutrasTarefas() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Future<?> waiting = pool.submit(() -> {
+            ZooKeeperWaits.await(latch);
+            return null;
+        });
+        final Future<?> releasing = pool.submit(latch::countDown);
+
+        Assertions.assertDoesNotThrow(() -> releasing.get(2L, TimeUnit.SECONDS));
+        Assertions.assertDoesNotThrow(() -> waiting.get(2L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwait_QuandoTempoEsgotado_DeveRetornarFalse() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Assertions.assertFalse(pool.submit(() -> ZooKeeperWaits.await(latch, 100L, TimeUnit.MILLISECONDS)).get(2L, TimeUnit.SECONDS));
+        Assertions.assertFalse(ZooKeeperWaits.await(latch, 100L, TimeUnit.MILLISECONDS));
+
+        latch.countDown();
+        Assertions.assertTrue(pool.submit(() -> ZooKeeperWaits.await(latch, 100L, TimeUnit.MILLISECONDS)).get(2L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSleep_QuandoChamadoDeThreadDoPool_DeveAguardarOTempo() throws Exception {
+        final long start = System.nanoTime();
+        pool.submit(() -> {
+            ZooKeeperWaits.sleep(TimeUnit.MILLISECONDS.toNanos(100L));
+            return null;
+        }).get(2L, TimeUnit.SECONDS);
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100L));
+    }
+}
@@ -0,0 +1,125 @@
+package br.ufpa.icen.lib;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class ZooKeeperWaveBarrierTest {
+    private static final String BARRIER_NODE_PATH = "/barrier";
+    private static TestingServer testingServer;
+    private ZooKeeper zk;
+    private final List<ZooKeeperWaveBarrier> barriers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Cria um servidor em memória para cada teste executado
+        testingServer = new TestingServer();
+    }
+
+    private ZooKeeperWaveBarrier newBarrier(ReleasePolicy policy) throws Exception {
+        final ZooKeeperWaveBarrier barrier;
+        if (barriers.isEmpty()) {
+            barrier = new ZooKeeperWaveBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH, policy) {
+                @Override
+                protected ZooKeeper createZooKeeperConnection(String connectString, Watcher watcher) throws IOException {
+                    final ZooKeeper zk = super.createZooKeeperConnection(connectString, watcher);
+                    ZooKeeperWaveBarrierTest.this.zk = zk;
+                    return zk;
+                }
+            };
+        } else {
+            barrier = new ZooKeeperWaveBarrier(testingServer.getConnectString(), BARRIER_NODE_PATH, policy);
+        }
+        barriers.add(barrier);
+        return barrier;
+    }
+
+    private static Future<Void> waitAsync(ZooKeeperWaveBarrier barrier, int priority, List<Integer> released) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                barrier.waitForBarrier(priority);
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            released.add(priority);
+        });
+    }
+
+    /**
+     * Aguarda até que todos os participantes tenham criado os seus nós de espera.
+     */
+    private void awaitTickets(int count) throws Exception {
+        while (zk.getChildren(BARRIER_NODE_PATH, false).size() < count) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void testRemoveBarrier_QuandoLiberacaoEmOndas_DeveLiberarNoMaximoUmaOndaPorIntervalo() throws Exception {
+        final ZooKeeperWaveBarrier controller = newBarrier(ReleasePolicy.waves(2, 1L, TimeUnit.SECONDS));
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        final List<Integer> released = new CopyOnWriteArrayList<>();
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(waitAsync(newBarrier(ReleasePolicy.immediate()), 0, released));
+        }
+        awaitTickets(4);
+
+        final Future<Void> removal = CompletableFuture.runAsync(() -> {
+            try {
+                controller.removeBarrier();
+            } catch (KeeperException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // A primeira onda é liberada imediatamente, e a segunda apenas após o intervalo
+        Thread.sleep(500L);
+        Assertions.assertEquals(2, released.size());
+        Assertions.assertDoesNotThrow(() -> removal.get(2L, TimeUnit.SECONDS));
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+        }
+        Assertions.assertNull(zk.exists(BARRIER_NODE_PATH, false));
+    }
+
+    @Test
+    public void testRemoveBarrier_QuandoLiberacaoPorPrioridade_DeveLiberarMaiorPrioridadePrimeiro() throws Exception {
+        final ZooKeeperWaveBarrier controller = newBarrier(ReleasePolicy.waves(1, 200L, TimeUnit.MILLISECONDS).byPriority());
+        zk.create(BARRIER_NODE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        final List<Integer> released = new CopyOnWriteArrayList<>();
+        final List<Future<Void>> futures = new ArrayList<>();
+        // Participantes de menor prioridade chegam primeiro
+        for (int priority = 1; priority <= 3; priority++) {
+            futures.add(waitAsync(newBarrier(ReleasePolicy.immediate()), priority, released));
+            awaitTickets(priority);
+        }
+
+        controller.removeBarrier();
+        for (Future<Void> future : futures) {
+            Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(List.of(3, 2, 1), released);
+    }
+
+    @Test
+    public void testWaitForBarrier_QuandoNoNaoExiste_DeveProsseguir() throws Exception {
+        final ZooKeeperWaveBarrier barrier = newBarrier(ReleasePolicy.immediate());
+        final Future<Void> future = waitAsync(barrier, 0, new CopyOnWriteArrayList<>());
+        Assertions.assertDoesNotThrow(() -> future.get(1L, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (ZooKeeperWaveBarrier barrier : barriers) {
+            barrier.close();
+        }
+    }
+}